@@ -3,6 +3,7 @@ package edu.gemini.ags.servlet.estimation
 import java.io.{BufferedOutputStream, IOException}
 import java.net.URLDecoder
 import java.util.concurrent.{LinkedBlockingDeque, ThreadFactory, ThreadPoolExecutor, TimeUnit}
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.logging.{Level, Logger}
 import javax.servlet.http.HttpServletResponse.{SC_BAD_GATEWAY, SC_BAD_REQUEST, SC_INTERNAL_SERVER_ERROR, SC_OK}
 import javax.servlet.http.{HttpServlet, HttpServletRequest, HttpServletResponse}
@@ -97,8 +98,11 @@ class AgsServlet(magTable: MagnitudeTable) extends HttpServlet {
 
     def estimate(ctx: ObsContext, s: AgsStrategy): Either[Response, AgsStrategy.Estimate] = {
       import scala.concurrent.duration._
+      // Abandon the calculation once we stop waiting for it (e.g., on timeout)
+      val abandoned = new AtomicBoolean(false)
       Try {
-        Await.result(s.estimate(ctx, magTable)(executionContext), 2.minutes)
+        try Await.result(s.estimate(ctx, magTable, () => abandoned.get)(executionContext), 2.minutes)
+        finally abandoned.set(true)
       } match {
         case Success(e)               => Right(e)
         case Failure(io: IOException) => Left(failure(SC_BAD_GATEWAY, io))
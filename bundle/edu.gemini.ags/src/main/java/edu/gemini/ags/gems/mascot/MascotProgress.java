@@ -1,7 +1,8 @@
 package edu.gemini.ags.gems.mascot;
 
 /**
- * Java interface reporting Mascot progress
+ * Java interface reporting Mascot progress.  Asterisms are computed in parallel and the progress method is called
+ * from the threads doing the computation, one call at a time.
  */
 public interface MascotProgress {
     /**
@@ -14,6 +15,15 @@ public interface MascotProgress {
      */
     boolean progress(Strehl s, int count, int total, boolean usable);
 
+    /**
+     * Polled by the calculations, possibly from several threads, to find out whether they should stop without
+     * waiting for the next call to progress.
+     * @return true to cancel
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+
     /**
      * Sets the title for the progress dialog
      * @param s the title string
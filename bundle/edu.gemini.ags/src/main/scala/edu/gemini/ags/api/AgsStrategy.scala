@@ -63,6 +63,22 @@ trait AgsStrategy {
 
   def select(ctx: ObsContext, mt: MagnitudeTable)(ec: ExecutionContext): Future[Option[AgsStrategy.Selection]]
 
+  /**
+   * Estimates as above but gives up once `cancelled` returns true, in which
+   * case the result is meaningless and should be ignored.  Strategies that
+   * cannot be interrupted simply run to completion.
+   */
+  def estimate(ctx: ObsContext, mt: MagnitudeTable, cancelled: () => Boolean)(ec: ExecutionContext): Future[AgsStrategy.Estimate] =
+    estimate(ctx, mt)(ec)
+
+  /**
+   * Selects as above but gives up once `cancelled` returns true, in which
+   * case the result is meaningless and should be ignored.  Strategies that
+   * cannot be interrupted simply run to completion.
+   */
+  def select(ctx: ObsContext, mt: MagnitudeTable, cancelled: () => Boolean)(ec: ExecutionContext): Future[Option[AgsStrategy.Selection]] =
+    select(ctx, mt)(ec)
+
   def selectForJava(ctx: ObsContext, mt: MagnitudeTable, timeoutSec: Int, ec: ExecutionContext): JOption[JPair[Angle, java.util.List[AgsStrategy.Assignment]]] =
     Await.result(select(ctx, mt)(ec), timeoutSec.seconds).map { sel =>
       new JPair(sel.posAngle, sel.assignments.asJava)
@@ -0,0 +1,65 @@
+package edu.gemini.ags.gems.mascot
+
+import edu.gemini.ags.gems.mascot.Mascot.{AsterismSearchStage, ProgressFunction, StarTriple}
+
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger}
+
+/**
+ * Computes the Strehl of candidate asterisms in parallel.
+ *
+ * The progress function is called once for each computed asterism with the
+ * number of asterisms examined so far.  Calls are made one at a time but from
+ * the threads of the parallel collections' pool rather than from the caller's
+ * thread, so a progress function that updates a user interface must hand the
+ * update over to the appropriate thread itself.  As in the sequential search,
+ * returning false stops the search: asterisms that have not yet been started
+ * are skipped and those already computed are kept.
+ *
+ * The search also polls `cancelled` before starting each asterism so that it
+ * can be stopped from another thread without waiting for the next progress
+ * report.
+ *
+ * @param factor    multiply strehl min, max and average by this value
+ * @param progress  called for each asterism as it is calculated
+ * @param cancelled returns true once the search should be abandoned
+ */
+final class AsterismSearch(factor: Double,
+                           progress: ProgressFunction,
+                           cancelled: () => Boolean = () => false) {
+
+  private val stopped  = new AtomicBoolean(false)
+  private val examined = new AtomicInteger(0)
+
+  private def isStopped: Boolean =
+    stopped.get || (cancelled() && { stopped.set(true); true })
+
+  private def report(s: Strehl, total: Int): Unit =
+    synchronized {
+      if (!progress(s, examined.incrementAndGet(), total)) stopped.set(true)
+    }
+
+  /**
+   * Computes the Strehl for each asterism.  The resulting stage lists the
+   * successfully computed asterisms in the reverse of the given order (as the
+   * sequential search accumulated them), and `continue` is false if the
+   * search was stopped.
+   */
+  def run(asterisms: List[StarTriple]): AsterismSearchStage = {
+    val total = asterisms.length
+
+    def compute(st: StarTriple): Option[Strehl] =
+      if (isStopped) {
+        examined.incrementAndGet()
+        None
+      } else {
+        val s = Mascot.computeStrehl(factor, st)
+        if (s.isEmpty) examined.incrementAndGet()
+        s.foreach(report(_, total))
+        s
+      }
+
+    val results = asterisms.zipWithIndex.par.flatMap { case (st, i) => compute(st).map((_, i)) }.seq
+
+    AsterismSearchStage(results.toList.sortBy(-_._2).map(_._1), examined.get, !isStopped)
+  }
+}
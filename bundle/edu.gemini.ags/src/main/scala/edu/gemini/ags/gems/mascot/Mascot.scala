@@ -11,7 +11,6 @@ import edu.gemini.shared.util.immutable.ScalaConverters._
 import edu.gemini.spModel.core.{BandsList, MagnitudeBand, RBandsList, SiderealTarget}
 import edu.gemini.spModel.target.SPTarget
 
-import scala.annotation.tailrec
 import scalaz._
 import Scalaz._
 
@@ -75,22 +74,27 @@ object Mascot {
     }
   }
 
+  // Result of an AsterismSearch: the asterisms computed, how many were
+  // examined and whether the search ran to completion.
   case class AsterismSearchStage(stars: List[Strehl], count: Int, continue: Boolean)
 
   /**
    * Finds the best asterisms for the given list of stars.
    * @param starList unfiltered list of stars from a catalog query
    * @param factor multiply strehl min, max and average by this value (depends on instrument filter: See REL-426)
-   * @param progress a function(strehl, count, total) called for each asterism as it is calculated
+   * @param progress a function(strehl, count, total) called for each asterism as it is calculated, from the
+   *                 threads computing the asterisms (see AsterismSearch)
    * @param filter a filter function that returns false if the Star should be excluded
    * @param asterismPreFilter a filter function that returns false if a candidate asterism should be excluded
+   * @param cancelled returns true if the search should be abandoned, polled before each asterism
    * @return a tuple: (list of stars actually used, list of asterisms found)
    */
   def findBestAsterism(starList: List[Star],
                        factor: Double = defaultFactor,
                        progress: ProgressFunction = defaultProgress,
                        filter: Star => Boolean = defaultFilter,
-                       asterismPreFilter: List[SiderealTarget] => Boolean = defaultAsterismPreFilter)
+                       asterismPreFilter: List[SiderealTarget] => Boolean = defaultAsterismPreFilter,
+                       cancelled: () => Boolean = () => false)
   : (List[Star], List[Strehl]) = {
     // sort by selected mag and select
     val sortedStarList = starList.distinct.sortWith((s1,s2) => s1.r < s2.r)
@@ -107,34 +111,14 @@ object Mascot {
 
     Log.info(s"Mascot.findBestAsterism: input stars: $ns, total asterisms: $total")
 
-    // Compute strehl for a sets of stars
-    @tailrec
-    def doStars(result: List[Strehl], count: Int, starSets: List[(Star, Option[Star], Option[Star])]):AsterismSearchStage = starSets match {
-      case Nil =>
-        AsterismSearchStage(result, count, continue = true)
-      case s :: Nil =>
-        val strehl = computeStrehl(factor, (StarTriple.apply _).tupled(s))
-        // check if we continue
-        val continue = strehl.map(progress(_, count, total))
-        AsterismSearchStage(strehl.map(_ :: result).getOrElse(result), count, continue.getOrElse(true))
-      case s :: tail =>
-        val strehl = computeStrehl(factor, (StarTriple.apply _).tupled(s))
-        // check if we continue
-        val continue = strehl.map(progress(_, count, total))
-        if (continue === false.some) {
-          AsterismSearchStage(strehl.map(_ :: result).getOrElse(result), count, continue = false)
-        } else {
-          // Continue if the position is skipped or if progress says continue
-          doStars(strehl.map(_ :: result).getOrElse(result), count + 1, tail)
-        }
-    }
-
-    // Search each possible combination of triples, doubles and singles supporting cancellation
+    // Search each possible combination of triples, doubles and singles in
+    // parallel, supporting cancellation
     def go(): List[Strehl] = {
-      val triples = if (ns >= 3) doStars(Nil, 1, trips) else AsterismSearchStage(Nil, 1, continue = true)
-      val doubles = if (ns >= 2 && triples.continue) doStars(triples.stars, triples.count, pairs.map(t => (t._1, t._2, None))) else triples
-      val singles = if (ns >= 1 && doubles.continue) doStars(doubles.stars, doubles.count, sings.map(t => (t, None, None))) else doubles
-      singles.stars
+      val asterisms =
+        trips.map((StarTriple.apply _).tupled) ++
+          pairs.map(t => StarTriple(t._1, t._2, None)) ++
+          sings.map(t => StarTriple(t, None, None))
+      new AsterismSearch(factor, progress, cancelled).run(asterisms).stars
     }
 
     (filteredStarList, sortBestAsterisms(go()))
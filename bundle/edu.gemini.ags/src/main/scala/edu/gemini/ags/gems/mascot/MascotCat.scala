@@ -42,6 +42,7 @@ object MascotCat {
    * @param factor multiply strehl min, max and average by this value (depends on instrument filter: See REL-426)
    * @param progress a function(strehl, count, total) called for each asterism as it is calculated
    * @param filter a filter function that returns false if the Star should be excluded
+   * @param cancelled returns true if the search should be abandoned
    * @return a tuple: (list of stars actually used, list of asterisms found)
    */
   def findBestAsterism(list: List[SiderealTarget],
@@ -49,10 +50,11 @@ object MascotCat {
                        factor: Double = Mascot.defaultFactor,
                        progress: ProgressFunction = defaultProgress,
                        filter: Star => Boolean = Mascot.defaultFilter,
-                       asterismPreFilter: List[SiderealTarget] => Boolean = Mascot.defaultAsterismPreFilter)
+                       asterismPreFilter: List[SiderealTarget] => Boolean = Mascot.defaultAsterismPreFilter,
+                       cancelled: () => Boolean = () => false)
   : (List[Star], List[Strehl]) = {
     val starList = list.map(Star.makeStar(_, centerRA, centerDec))
-    Mascot.findBestAsterism(starList, factor, progress, filter, asterismPreFilter)
+    Mascot.findBestAsterism(starList, factor, progress, filter, asterismPreFilter, cancelled)
   }
 
   case class StrehlResults(starList: List[Star], strehlList: List[Strehl])
@@ -65,6 +67,7 @@ object MascotCat {
    * @param centerDec the base position Dec coordinate
    * @param band determines which magnitudes are used in the calculations: (one of "B", "V", "R", "J", "H", "K")
    * @param mascotProgress optional, called for each asterism as it is calculated, can cancel the calculations by returning false
+   *                       or, from any thread, by answering true to isCancelled
    * @return a tuple: (list of stars actually used, list of asterisms found)
    */
   def findBestAsterismInTargetsList(javaList: List[SiderealTarget],
@@ -82,7 +85,10 @@ object MascotCat {
       true
     }
 
-    val (starList, strehlList) = findBestAsterism(javaList, centerRA, centerDec, factor, progress, Mascot.defaultFilter, asterismPreFilter)
+    val cancelled = () => mascotProgress.exists(_.isCancelled)
+
+    val (starList, strehlList) = findBestAsterism(javaList, centerRA, centerDec, factor, progress, Mascot.defaultFilter, asterismPreFilter, cancelled)
+    if (cancelled()) throw new CancellationException("Canceled")
     StrehlResults(starList, strehlList)
   }
 
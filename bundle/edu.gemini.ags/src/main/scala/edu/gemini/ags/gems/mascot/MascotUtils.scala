@@ -49,21 +49,7 @@ object MascotUtils {
   // Returns true if the 3 (or at least 2) positions can be used
   def doesItFit(n1: Star, n2: Star, n3: Option[Star] = None): Boolean = {
     n3.map{ v3 =>
-            //  d = array(0.,[3,300,300,nstars]);
-      //  for (ns=1;ns<=3;ns++) {
-      //    d(,,ns) = dist(300,xc=150+slist(1,ns),yc=150+slist(2,ns));
-      //  }
-      //  dmin = min(d(,,max));
-      //  if (dmin<=(60-edge_margin)) return 1;
-      //  else return 0;
-      val size = 300
-      val r = size / 2
-      val d1 = dist(size, r + n1.y, r + n1.x)
-      val d2 = dist(size, r + n2.y, r + n2.x)
-      val d3 = dist(size, r + v3.y, r + v3.x)
-      val dmin = min(util.YUtils.max(util.YUtils.max(d1, d2), d3))
-
-      dmin < 60 - edge_margin
+      triangleFits(n1, n2, v3).getOrElse(triangleFitsOnGrid(n1, n2, v3))
     }.getOrElse {
       //      d = slist(1:2,1)-slist(1:2,2);
       //      d = sqrt(sum(d^2.));
@@ -74,6 +60,71 @@ object MascotUtils {
     }
   }
 
+  /**
+   * Cheap bounds for the grid search in `triangleFitsOnGrid`, which looks for
+   * a point of a 300x300 grid whose distance to the farthest star is less than
+   * 60 - edge_margin.  That distance can be no less than the radius of the
+   * smallest circle enclosing the stars and, since every point of the grid
+   * area is within sqrt(0.5) of a grid point, no more than that radius plus
+   * sqrt(0.5) when the circle's center falls inside the grid.  Returns `None`
+   * when neither bound decides the question.
+   */
+  private def triangleFits(n1: Star, n2: Star, n3: Star): Option[Boolean] = {
+    val limit = 60 - edge_margin
+    val r     = 300 / 2
+
+    // Same coordinates as the grid search.
+    val (ax, ay) = (r + n1.y, r + n1.x)
+    val (bx, by) = (r + n2.y, r + n2.x)
+    val (cx, cy) = (r + n3.y, r + n3.x)
+
+    val ab2 = (ax - bx) * (ax - bx) + (ay - by) * (ay - by)
+    val bc2 = (bx - cx) * (bx - cx) + (by - cy) * (by - cy)
+    val ca2 = (cx - ax) * (cx - ax) + (cy - ay) * (cy - ay)
+
+    // Center and radius of the smallest enclosing circle.  For a right or
+    // obtuse triangle that's the midpoint of the longest side, otherwise it is
+    // the circumcircle.
+    val (ox, oy, rad) =
+      if (ab2 >= bc2 + ca2)      ((ax + bx) / 2, (ay + by) / 2, math.sqrt(ab2) / 2)
+      else if (bc2 >= ca2 + ab2) ((bx + cx) / 2, (by + cy) / 2, math.sqrt(bc2) / 2)
+      else if (ca2 >= ab2 + bc2) ((cx + ax) / 2, (cy + ay) / 2, math.sqrt(ca2) / 2)
+      else {
+        val d  = 2 * (ax * (by - cy) + bx * (cy - ay) + cx * (ay - by))
+        val a2 = ax * ax + ay * ay
+        val b2 = bx * bx + by * by
+        val c2 = cx * cx + cy * cy
+        val ux = (a2 * (by - cy) + b2 * (cy - ay) + c2 * (ay - by)) / d
+        val uy = (a2 * (cx - bx) + b2 * (ax - cx) + c2 * (bx - ax)) / d
+        (ux, uy, math.sqrt((ax - ux) * (ax - ux) + (ay - uy) * (ay - uy)))
+      }
+
+    val tolerance = 1e-6
+    val onGrid    = (ox >= 1.5) && (ox <= 299.5) && (oy >= 1.5) && (oy <= 299.5)
+
+    if (rad >= limit + tolerance) Some(false)
+    else if (onGrid && (rad + math.sqrt(0.5) < limit - tolerance)) Some(true)
+    else None
+  }
+
+  private[mascot] def triangleFitsOnGrid(n1: Star, n2: Star, v3: Star): Boolean = {
+    //  d = array(0.,[3,300,300,nstars]);
+    //  for (ns=1;ns<=3;ns++) {
+    //    d(,,ns) = dist(300,xc=150+slist(1,ns),yc=150+slist(2,ns));
+    //  }
+    //  dmin = min(d(,,max));
+    //  if (dmin<=(60-edge_margin)) return 1;
+    //  else return 0;
+    val size = 300
+    val r = size / 2
+    val d1 = dist(size, r + n1.y, r + n1.x)
+    val d2 = dist(size, r + n2.y, r + n2.x)
+    val d3 = dist(size, r + v3.y, r + v3.x)
+    val dmin = min(util.YUtils.max(util.YUtils.max(d1, d2), d3))
+
+    dmin < 60 - edge_margin
+  }
+
 
   //   Returns the noise on the TT sensors in arcsec rms.
   def wfsNoise(mag: Array[Double]): DenseVector[Double] = {
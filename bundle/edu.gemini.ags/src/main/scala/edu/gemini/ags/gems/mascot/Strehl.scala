@@ -6,8 +6,10 @@ import MascotUtils._
 import MascotConf._
 import Amoeba._
 import util.Spline._
-import util.YUtils.{avg, rms, where, sqrt, divide}
-import util.YUtils.{yMultiply, yMultiply4d}
+import util.YUtils.{avg, rms, where}
+import util.YUtils.yMultiply
+import util.StrehlKernel
+import util.StrehlKernel.ModeFields
 import scala.collection.JavaConverters._
 
 // mascot Strehl compute/optimize using distortion modes
@@ -78,9 +80,28 @@ object Strehl {
 
   val nmodes = 5
   val sp = nullModesSpectra()
-  var spv = vibSpectra()
+
+  // limits upper freq range for spline:
+  //  if (max(spv(,1))>sampfreq) {
+  //    w = where(spv(,1)<sampfreq)(0);
+  //    spv = spv(1:w,);
+  //  }
+  // Porting Note: this was done on each call to get_strehl_map, but only has
+  // an effect the first time.  Doing it once here makes the Strehl
+  // computation safe to run concurrently.
+  val spv = {
+    val v = vibSpectra()
+    if (max(v(::, 0)) > sampfreq) {
+      val tmp = where(v(::, 0), _ < sampfreq)
+      val w = tmp(tmp.length - 1)
+      v(0 to w, ::)
+    } else v
+  }
   val novibs = false
 
+  // converts tip/tilt error in arcsec to radians of phase
+  private val radScale = 4.848e-6 * tel_diam * 2.0 * math.Pi / (lambdaim * 1e-6) / 4.0
+
   //  func mascot_compute_strehl(void)
   ///* DOCUMENT mascot_compute_strehl(void)
   //   Main routine. originally from Damien Gratadour.
@@ -228,7 +249,8 @@ object Strehl {
     //              p0=-0.7*array(1.,nmodes_cont),scale=0.2);
     val ftol = 0.01
     // Porting Note: make a partially applied function for getStrehlMap containing any formerly external values
-    val f = getStrehlMap2(mprop, dfields, nmodes_cont, _: DenseVector[Double])
+    val fields = ModeFields(dfields)
+    val f = getStrehlMap2(mprop, fields, nmodes_cont, _: DenseVector[Double])
     val nMax = 1000
     val p0 = DenseVector.ones[Double](nmodes_cont) * -0.7
     val scale = 0.2
@@ -313,6 +335,17 @@ object Strehl {
                    dfields: Array[Array[DenseMatrix[Double]]],
                    nmodes_cont: Int,
                    lgains: DenseVector[Double])
+  : (Double, DenseMatrix[Double], DenseMatrix[Double], DenseMatrix[Double]) =
+    getStrehlMap(mprop, ModeFields(dfields), nmodes_cont, lgains)
+
+  /**
+   * Same as above, but with the distortion fields already in primitive form so
+   * that they need not be converted on each call from amoeba.
+   */
+  def getStrehlMap(mprop: DenseMatrix[Double],
+                   fields: ModeFields,
+                   nmodes_cont: Int,
+                   lgains: DenseVector[Double])
   : (Double, DenseMatrix[Double], DenseMatrix[Double], DenseMatrix[Double]) = {
 
     //    val xxx = new Date().getTime()
@@ -327,23 +360,13 @@ object Strehl {
     g(0 until nmodes_cont) := util.YUtils.pow(10.0, lgains)
     val freq = sp(::, 0)
 
-    // limits upper freq range for spline:
-    //  if (max(spv(,1))>sampfreq) {
-    //    w = where(spv(,1)<sampfreq)(0);
-    //    spv = spv(1:w,);
-    //  }
+    // limits upper freq range for spline (see spv above):
     //  freqv = spv(,1);
     //
     //  rmsvib = array(0.,2);
     //  rmsvib(1) = sum((*tipvibrms)^2.);
     //  rmsvib(2) = sum((*tiltvibrms)^2.);
 
-
-    if (max(spv(::, 0)) > sampfreq) {
-      val tmp = where(spv(::, 0), _ < sampfreq)
-      val w = tmp(tmp.length - 1)
-      spv = spv(0 to w, ::)
-    }
     val freqv = spv(::, 0)
 
     val rmsvib = DenseVector.zeros[Double](2)
@@ -426,15 +449,13 @@ object Strehl {
 
     val nois_cov = yMultiply(nois, yMultiply(nois, mprop).t)
 
+    // The rest of the original routine is done with primitive arrays, see
+    // StrehlKernel.  For reference, in Yorick:
+    //
     // map of tt error in field of view, turbulence residuals:
     //  tiperr  = turb_var(+) * (dfields^2.)(+,,,1);
     //  tilterr = turb_var(+) * (dfields^2.)(+,,,2);
-
-    val dfields2 = util.YUtils.pow(dfields, 2.0)
-    var tiperr = yMultiply4d(turb_var, dfields2, 0)
-    var tilterr = yMultiply4d(turb_var, dfields2, 1)
-
-
+    //
     // noise contribution, covariance:
     //  for (i=1;i<=nmodes_cont;i++) {
     //    for (j=1;j<=nmodes_cont;j++) {
@@ -443,41 +464,27 @@ object Strehl {
     //    }
     //  }
     //
-
-    for (i <- 0 until nmodes_cont; j <- 0 until nmodes_cont) {
-      //      tiperr += yGet4d(dfields, i, 0) :* yGet4d(dfields, j, 0) :* nois_cov(i, j);
-      //      tilterr += yGet4d(dfields, i, 1) :* yGet4d(dfields, j, 1) :* nois_cov(i, j);
-      tiperr += dfields(i)(0) :* dfields(j)(0) :* nois_cov(i, j)
-      tilterr += dfields(i)(1) :* dfields(j)(1) :* nois_cov(i, j)
-    }
-
     //  tiperr  = sqrt(tiperr); // in arcsec
     //  tilterr = sqrt(tilterr);
     //
     //  tiperr_rd = tiperr*4.848e-6*tel_diam*2*pi/(lambdaim*1e-6)/4.;
     //  tilterr_rd = tilterr*4.848e-6*tel_diam*2*pi/(lambdaim*1e-6)/4.;
-
-
-    tiperr = sqrt(tiperr); // in arcsec
-    tilterr = sqrt(tilterr)
-
-    val tiperr_rd = tiperr * 4.848e-6 * tel_diam * 2.0 * math.Pi / (lambdaim * 1e-6) / 4.0
-    val tilterr_rd = tilterr * 4.848e-6 * tel_diam * 2.0 * math.Pi / (lambdaim * 1e-6) / 4.0
-
+    //
     // see strehl_vs_ttrms() below, this is it, fairly good approximation:
     //    strehl = sqrt(1./(1.+2.*tiperr_rd^2.))*sqrt(1./(1.+2.*tilterr_rd^2.));
-
-    val strehl = sqrt(divide(1.0, (tiperr_rd :^ 2.0) * 2.0 + 1.0)) :* sqrt(divide(1.0, (tilterr_rd :^ 2.0) * 2.0 + 1.0))
-
+    //
     //  if (stop) error;
     //
     //  return -log(avg(strehl));
 
-    val ret = -math.log(avg(strehl))
-    //    println("XXX getStrehlMap: " + ((new Date().getTime() - xxx)/1000.) + " sec")
+    val maps = StrehlKernel.strehlMaps(turb_var, nois_cov, nmodes_cont, fields, radScale)
+    val ret  = -math.log(maps.avgStrehl)
+
+    def toMatrix(a: Array[Double]): DenseMatrix[Double] =
+      new DenseMatrix(fields.rows, fields.cols, a)
 
     // Porting note: return value includes the output parameters from the yorick version (which only returned ret)
-    (ret, strehl, tiperr, tilterr)
+    (ret, toMatrix(maps.strehl), toMatrix(maps.tiperr), toMatrix(maps.tilterr))
   }
 
   /**
@@ -489,6 +496,11 @@ object Strehl {
     getStrehlMap(mprop, dfields, nmodes_cont, lgains)._1
   }
 
+  def getStrehlMap2(mprop: DenseMatrix[Double], fields: ModeFields, nmodes_cont: Int,
+                    lgains: DenseVector[Double]): Double = {
+    getStrehlMap(mprop, fields, nmodes_cont, lgains)._1
+  }
+
 
   //  Returns local distortion at (x,y) for mode N in arcsec
   //
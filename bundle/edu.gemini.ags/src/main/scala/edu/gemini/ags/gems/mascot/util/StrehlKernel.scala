@@ -0,0 +1,105 @@
+package edu.gemini.ags.gems.mascot.util
+
+import breeze.linalg._
+
+/**
+ * Primitive array implementation of the field part of the Strehl map
+ * computation, which Amoeba evaluates hundreds of times per asterism.  The
+ * breeze version allocated a new matrix for every term of the noise
+ * covariance sum; here each map element is accumulated in place, in the same
+ * order as the matrix version.
+ */
+object StrehlKernel {
+
+  /**
+   * Distortion vector fields for each mode, stored as flat column-major
+   * arrays of `rows * cols` elements.
+   */
+  final class ModeFields(val rows: Int, val cols: Int, val tip: Array[Array[Double]], val tilt: Array[Array[Double]]) {
+    def size: Int = rows * cols
+  }
+
+  object ModeFields {
+    def apply(dfields: Array[Array[DenseMatrix[Double]]]): ModeFields = {
+      val m = dfields(0)(0)
+      new ModeFields(m.rows, m.cols, dfields.map(_(0).toArray), dfields.map(_(1).toArray))
+    }
+  }
+
+  /** Strehl, tip error and tilt error maps in the layout of the mode fields. */
+  final case class StrehlMaps(strehl: Array[Double], tiperr: Array[Double], tilterr: Array[Double]) {
+    def avgStrehl: Double = {
+      var sum = 0.0
+      var i   = 0
+      while (i < strehl.length) {
+        sum += strehl(i)
+        i += 1
+      }
+      sum / strehl.length
+    }
+  }
+
+  /**
+   * Computes the strehl map given the compensated turbulence variance per mode
+   * and the noise covariance matrix.
+   *
+   * @param turbVar    turbulence residual variance per mode
+   * @param noisCov    noise covariance between modes
+   * @param nmodesCont number of controlled modes
+   * @param fields     distortion vector fields for each mode
+   * @param radScale   factor converting tip/tilt error in arcsec to radians of phase
+   */
+  def strehlMaps(turbVar: DenseVector[Double],
+                 noisCov: DenseMatrix[Double],
+                 nmodesCont: Int,
+                 fields: ModeFields,
+                 radScale: Double): StrehlMaps = {
+    val n       = fields.size
+    val nmodes  = fields.tip.length
+    val tiperr  = new Array[Double](n)
+    val tilterr = new Array[Double](n)
+    val strehl  = new Array[Double](n)
+
+    val tv  = Array.tabulate(nmodes)(turbVar(_))
+    val cov = Array.tabulate(nmodesCont, nmodesCont)(noisCov(_, _))
+
+    var k = 0
+    while (k < n) {
+      // map of tt error in field of view, turbulence residuals
+      var tip  = 0.0
+      var tilt = 0.0
+      var j    = 0
+      while (j < nmodes) {
+        tip  += math.pow(fields.tip(j)(k), 2.0)  * tv(j)
+        tilt += math.pow(fields.tilt(j)(k), 2.0) * tv(j)
+        j += 1
+      }
+
+      // noise contribution, covariance
+      var i = 0
+      while (i < nmodesCont) {
+        j = 0
+        while (j < nmodesCont) {
+          tip  += fields.tip(i)(k)  * fields.tip(j)(k)  * cov(i)(j)
+          tilt += fields.tilt(i)(k) * fields.tilt(j)(k) * cov(i)(j)
+          j += 1
+        }
+        i += 1
+      }
+
+      // in arcsec
+      tip  = math.sqrt(tip)
+      tilt = math.sqrt(tilt)
+
+      val tipRd  = tip  * radScale
+      val tiltRd = tilt * radScale
+
+      tiperr(k)  = tip
+      tilterr(k) = tilt
+      strehl(k)  = math.sqrt(1.0 / (math.pow(tipRd, 2.0) * 2.0 + 1.0)) * math.sqrt(1.0 / (math.pow(tiltRd, 2.0) * 2.0 + 1.0))
+      k += 1
+    }
+
+    StrehlMaps(strehl, tiperr, tilterr)
+  }
+}
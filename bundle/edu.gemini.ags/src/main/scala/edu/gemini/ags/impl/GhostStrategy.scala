@@ -61,6 +61,12 @@ final case class GhostStrategy(key: AgsStrategyKey, delegate: AgsStrategy) exten
   override def select(ctx: ObsContext, mt: AgsMagnitude.MagnitudeTable)(ec: ExecutionContext): Future[Option[AgsStrategy.Selection]] =
     delegate.select(adjContext(ctx), mt)(ec)
 
+  override def estimate(ctx: ObsContext, mt: AgsMagnitude.MagnitudeTable, cancelled: () => Boolean)(ec: ExecutionContext): Future[AgsStrategy.Estimate] =
+    delegate.estimate(adjContext(ctx), mt, cancelled)(ec)
+
+  override def select(ctx: ObsContext, mt: AgsMagnitude.MagnitudeTable, cancelled: () => Boolean)(ec: ExecutionContext): Future[Option[AgsStrategy.Selection]] =
+    delegate.select(adjContext(ctx), mt, cancelled)(ec)
+
   override def guideProbes: List[GuideProbe] =
     delegate.guideProbes
 
@@ -0,0 +1,69 @@
+package edu.gemini.ags.impl
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import scala.annotation.tailrec
+
+/**
+ * Evaluates a function over an ordered list of inputs in parallel, stopping
+ * early once an "optimal" answer has been found.  When an input produces an
+ * optimal result, no input that follows it in the original ordering is
+ * evaluated (or, if already evaluated, its result is discarded).  Inputs that
+ * precede it are always evaluated since they might also produce an optimal
+ * result, which would win a tie.
+ *
+ * This makes the search deterministic: as long as `optimal` only accepts
+ * results that no other result can strictly beat, picking the first minimum
+ * of the returned list gives exactly what a sequential evaluation of the whole
+ * list would give.
+ *
+ * The search is abandoned once `cancelled` returns true: the remaining
+ * evaluations are skipped and `run` returns an empty list.
+ */
+final class PrunedSearch[A] private (inputs: Vector[A], cancelled: () => Boolean) {
+
+  // Index of the first input known to have produced an optimal result.
+  private val cutoff = new AtomicInteger(Int.MaxValue)
+
+  @tailrec
+  private def lowerCutoff(i: Int): Unit = {
+    val cur = cutoff.get
+    if ((i < cur) && !cutoff.compareAndSet(cur, i)) lowerCutoff(i)
+  }
+
+  private def skip(i: Int): Boolean =
+    (i > cutoff.get) || cancelled()
+
+  /**
+   * Evaluates `f` for each input in parallel and returns the defined results
+   * in input order, omitting those pruned by an earlier optimal result.
+   */
+  def run[B](f: A => Option[B])(optimal: B => Boolean): List[B] = {
+    val results = inputs.zipWithIndex.par.map { case (a, i) =>
+      if (skip(i)) None
+      else {
+        val b = f(a)
+        b.filter(optimal).foreach(_ => lowerCutoff(i))
+        b.map((_, i))
+      }
+    }.seq
+
+    if (cancelled()) Nil
+    else {
+      val last = cutoff.get
+      results.toList.collect { case Some((b, i)) if i <= last => b }
+    }
+  }
+
+  /**
+   * Evaluates `p` for each input in parallel, without pruning, and returns the
+   * inputs for which it holds in input order.
+   */
+  def filter(p: A => Boolean): List[A] =
+    run(a => Some(a).filter(p))(_ => false)
+}
+
+object PrunedSearch {
+  def apply[A](inputs: List[A], cancelled: () => Boolean = () => false): PrunedSearch[A] =
+    new PrunedSearch(inputs.toVector, cancelled)
+}
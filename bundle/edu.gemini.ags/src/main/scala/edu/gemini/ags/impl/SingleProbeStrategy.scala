@@ -6,7 +6,7 @@ import edu.gemini.catalog.api.CatalogQuery
 import edu.gemini.catalog.votable.{CatalogException, ConeSearchBackend, VoTableBackend, VoTableClient}
 import edu.gemini.pot.ModelConverters._
 import edu.gemini.spModel.ags.AgsStrategyKey
-import edu.gemini.spModel.core.{Angle, Coordinates}
+import edu.gemini.spModel.core.{Angle, Coordinates, Magnitude}
 import edu.gemini.spModel.core.SiderealTarget
 import edu.gemini.spModel.guide.{GuideProbe, ValidatableGuideProbe, VignettingGuideProbe}
 import edu.gemini.spModel.obs.context.ObsContext
@@ -62,30 +62,36 @@ final case class SingleProbeStrategy(key: AgsStrategyKey, params: SingleProbeStr
     // list of guide stars
     candidates(ctx, mt)(ec).map(_.headOption.foldMap(_.targets))
 
-  override def estimate(ctx: ObsContext, mt: MagnitudeTable)(ec: ExecutionContext): Future[AgsStrategy.Estimate] = {
+  override def estimate(ctx: ObsContext, mt: MagnitudeTable)(ec: ExecutionContext): Future[AgsStrategy.Estimate] =
+    estimate(ctx, mt, NotCancelled)(ec)
+
+  override def estimate(ctx: ObsContext, mt: MagnitudeTable, cancelled: () => Boolean)(ec: ExecutionContext): Future[AgsStrategy.Estimate] = {
     val ct = withCorrectedSite(ctx)
-    catalogResult(ct, mt)(ec).map(estimate(ct, mt, _))
+    catalogResult(ct, mt)(ec).map(estimate(ct, mt, _, cancelled))
   }
 
-  private def estimate(ctx: ObsContext, mt: MagnitudeTable, candidates: List[SiderealTarget]): AgsStrategy.Estimate = {
+  private def estimate(ctx: ObsContext, mt: MagnitudeTable, candidates: List[SiderealTarget], cancelled: () => Boolean): AgsStrategy.Estimate = {
     // If we are unbounded and there are any candidates, we are guaranteed success.
     val pac   = ctx.getPosAngleConstraint(UNBOUNDED)
     val cv    = CandidateValidator(params, mt, candidates)
-    val steps = pac.steps(ctx.getPositionAngle, params.stepSize).toList.asScala
-    val anglesWithResults  = steps.filter { angle => cv.exists(ctx.withPositionAngle(angle)) }
+    val steps = pac.steps(ctx.getPositionAngle, params.stepSize).toList.asScala.toList
+    val anglesWithResults  = PrunedSearch(steps, cancelled).filter { angle => cv.exists(ctx.withPositionAngle(angle)) }
     val successProbability = anglesWithResults.size.toDouble / steps.size.toDouble
     AgsStrategy.Estimate.toEstimate(successProbability)
   }
 
-  override def select(ctx: ObsContext, mt: MagnitudeTable)(ec: ExecutionContext): Future[Option[AgsStrategy.Selection]] = {
+  override def select(ctx: ObsContext, mt: MagnitudeTable)(ec: ExecutionContext): Future[Option[AgsStrategy.Selection]] =
+    select(ctx, mt, NotCancelled)(ec)
+
+  override def select(ctx: ObsContext, mt: MagnitudeTable, cancelled: () => Boolean)(ec: ExecutionContext): Future[Option[AgsStrategy.Selection]] = {
     val ct = withCorrectedSite(ctx)
-    catalogResult(ct, mt)(ec).map(select(ct, mt, _))
+    catalogResult(ct, mt)(ec).map(select(ct, mt, _, cancelled))
   }
 
   private def withCorrectedSite(ctx: ObsContext): ObsContext =
     ctx.getSite.isDefined ? ctx | ctx.withSite(Option(params.site).asGeminiOpt)
 
-  protected [ags] def select(ctx: ObsContext, mt: MagnitudeTable, candidates: List[SiderealTarget]): Option[AgsStrategy.Selection] = {
+  protected [ags] def select(ctx: ObsContext, mt: MagnitudeTable, candidates: List[SiderealTarget], cancelled: () => Boolean = NotCancelled): Option[AgsStrategy.Selection] = {
 
     def feedback(feedback: => String): Unit =
       LOGGER.info(s"AGS $feedback")
@@ -93,14 +99,14 @@ final case class SingleProbeStrategy(key: AgsStrategyKey, params: SingleProbeStr
     def selectMinVigetting(vprobe: VProbe, allValid: List[(ObsContext, List[SiderealTarget])]): Option[AgsStrategy.Selection] = {
 
       // Analyze the candidates to get magnitude and quality.
-      val analyzed = allValid.map { case (ctx0, targets) =>
+      val analyzed = allValid.par.map { case (ctx0, targets) =>
         val analyzedTargets = for {
           target    <- targets
           analysis  <- AgsAnalysis.analysis(ctx0, mt, vprobe, target)
           magnitude <- params.referenceMagnitude(target)
         } yield (target, magnitude, analysis.quality)
         (ctx0, analyzedTargets)
-      }
+      }.toList
 
       // Now we don't care about anything but the best quality, even if it
       // vignettes more than a lower quality option.  Figure out what the
@@ -109,10 +115,22 @@ final case class SingleProbeStrategy(key: AgsStrategyKey, params: SingleProbeStr
       feedback { s"Quality of best candidates is '${bestQuality.map(_.shows) | "None"}'" }
 
       bestQuality.flatMap { quality =>
+        // The brightest best quality target in any context.  A result that
+        // doesn't vignette and uses a target this bright cannot be beaten so
+        // contexts that follow it need not be examined.
+        val brightest = analyzed.flatMap { case (_, targets) =>
+          targets.collect { case (_, mag, q) if q === quality => mag.value }
+        }.minimum
+
+        def optimal(r: (Angle, SiderealTarget, Double, Magnitude)): Boolean =
+          (r._3 == 0.0) && brightest.exists(_ == r._4.value)
+
         // Get vignetting results per context.  Calculates a
         // List[Angle, SiderealTarget, Double] where the Angle is the
-        // position angle and the Double is the percent of vignetting.
-        val ctxResults = analyzed.flatMap { case (ctx0, targets) =>
+        // position angle and the Double is the percent of vignetting.  The
+        // contexts are examined in parallel, but the results are kept in
+        // context order so that ties are broken as before.
+        val ctxResults = PrunedSearch(analyzed, cancelled).run[(Angle, SiderealTarget, Double, Magnitude)] { case (ctx0, targets) =>
 
           feedback { f"Analyzing pos angle: ${ctx0.getPositionAngle.toDegrees}%.2f degrees" }
 
@@ -146,7 +164,7 @@ final case class SingleProbeStrategy(key: AgsStrategyKey, params: SingleProbeStr
           minVig.map { case ((target,mag,_), vignetting) =>
             (ctx0.getPositionAngle, target, vignetting, mag)
           }
-        }
+        }(optimal)
 
         // Pick the lowest vignetting for all the context options.  If they
         // are tied for lowest vignetting, go with the brightest. (Note default
@@ -169,7 +187,7 @@ final case class SingleProbeStrategy(key: AgsStrategyKey, params: SingleProbeStr
           val results = ctx.getPosAngleConstraint match {
             case FIXED | PARALLACTIC_OVERRIDE  => filterBounded(List(ctx), mt, candidates)
             case FIXED_180 | PARALLACTIC_ANGLE => filterBounded(List(ctx, ctx180(ctx)), mt, candidates)
-            case UNBOUNDED                     => filterUnbounded(ctx, mt, candidates)
+            case UNBOUNDED                     => filterUnbounded(ctx, mt, candidates, cancelled)
           }
 
           // Select the highest quality target that vignettes the least.
@@ -180,7 +198,7 @@ final case class SingleProbeStrategy(key: AgsStrategyKey, params: SingleProbeStr
           val results = ctx.getPosAngleConstraint match {
             case FIXED | PARALLACTIC_OVERRIDE  => selectBounded(List(ctx), mt, candidates)
             case FIXED_180 | PARALLACTIC_ANGLE => selectBounded(List(ctx, ctx180(ctx)), mt, candidates)
-            case UNBOUNDED                     => selectUnbounded(ctx, mt, candidates)
+            case UNBOUNDED                     => selectUnbounded(ctx, mt, candidates, cancelled)
           }
           params.brightest(results)(_._2).map {
             case (angle, st) => AgsStrategy.Selection(angle, List(AgsStrategy.Assignment(params.guideProbe, st)))
@@ -196,14 +214,18 @@ final case class SingleProbeStrategy(key: AgsStrategyKey, params: SingleProbeStr
     }
   }
 
-  private def filterUnbounded(ctx: ObsContext, mt: MagnitudeTable, candidates: List[SiderealTarget]): List[(ObsContext, List[SiderealTarget])] = {
-    for {
-      base <- ctx.getBaseCoordinates.asScalaOpt.toList
-      so <- candidates
-      pa = SingleProbeStrategy.calculatePositionAngle(base.toNewModel, so)
-      ctxSo = ctx.withPositionAngle(pa)
-      if CandidateValidator(params, mt, List(so)).exists(ctxSo)
-    } yield (ctxSo, List(so))
+  private def filterUnbounded(ctx: ObsContext, mt: MagnitudeTable, candidates: List[SiderealTarget], cancelled: () => Boolean): List[(ObsContext, List[SiderealTarget])] = {
+    val pairs: List[(ObsContext, List[SiderealTarget])] =
+      for {
+        base <- ctx.getBaseCoordinates.asScalaOpt.toList
+        so   <- candidates
+      } yield (ctx.withPositionAngle(SingleProbeStrategy.calculatePositionAngle(base.toNewModel, so)), List(so))
+
+    // Each candidate has its own position angle so they may be validated
+    // independently, in parallel.
+    PrunedSearch(pairs, cancelled).filter {
+      case (ctxSo, sos) => CandidateValidator(params, mt, sos).exists(ctxSo)
+    }
   }
 
   // List of candidates and their angles for the case where the pos angle constraint is not unbounded.
@@ -215,7 +237,7 @@ final case class SingleProbeStrategy(key: AgsStrategyKey, params: SingleProbeStr
   }
 
   // List of candidates and their angles for the case where the pos angle constraint is unbounded.
-  private def selectUnbounded(ctx: ObsContext, mt: MagnitudeTable, candidates: List[SiderealTarget]): List[(Angle, SiderealTarget)] = {
+  private def selectUnbounded(ctx: ObsContext, mt: MagnitudeTable, candidates: List[SiderealTarget], cancelled: () => Boolean): List[(Angle, SiderealTarget)] = {
 
     val pairs: List[(Angle, SiderealTarget)] =
       for {
@@ -223,7 +245,7 @@ final case class SingleProbeStrategy(key: AgsStrategyKey, params: SingleProbeStr
         so   <- candidates
       } yield (SingleProbeStrategy.calculatePositionAngle(base.toNewModel, so), so)
 
-    pairs.filter {
+    PrunedSearch(pairs, cancelled).filter {
       case (angle, st) => CandidateValidator(params, mt, List(st)).exists(ctx.withPositionAngle(angle))
     }
 
@@ -242,6 +264,8 @@ object SingleProbeStrategy {
 
   type VProbe = VignettingGuideProbe with ValidatableGuideProbe
 
+  private val NotCancelled: () => Boolean = () => false
+
   // TODO: Delete me when we upgrade scalaz
   implicit class MinimumByOp[A](l: List[A]) {
     def minimumBy[B](f: A => B)(implicit cmp: Ordering[B]): Option[A] =
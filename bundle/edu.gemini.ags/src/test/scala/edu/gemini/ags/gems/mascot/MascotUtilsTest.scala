@@ -6,6 +6,7 @@ import breeze.linalg._
 import edu.gemini.ags.gems.mascot.util.YUtils.{assertVectorsEqual, assertMatricesEqual, where}
 import MascotConf._
 import MascotUtils._
+import edu.gemini.spModel.core.SiderealTarget
 
 /**
  * Tests methods in the MascotUtils class.
@@ -105,4 +106,15 @@ class MascotUtilsTest {
     ).t,
     ftcb(1.0, 2.0, 3.0, 4.0, 5), 0.0001)
   }
+
+  // doesItFit short-cuts the grid search for triangles that obviously do or
+  // do not fit; the answer must be the same either way.
+  @Test def testDoesItFitMatchesGrid() {
+    val rnd = new scala.util.Random(42)
+    def star(): Star = Star(SiderealTarget.empty, rnd.nextDouble() * 120.0 - 60.0, rnd.nextDouble() * 120.0 - 60.0, 0.0, 0.0)
+    (1 to 500).foreach { _ =>
+      val (s1, s2, s3) = (star(), star(), star())
+      assertEquals(triangleFitsOnGrid(s1, s2, s3), doesItFit(s1, s2, Some(s3)))
+    }
+  }
 }
\ No newline at end of file
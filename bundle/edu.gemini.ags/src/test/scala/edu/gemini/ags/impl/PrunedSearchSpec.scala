@@ -0,0 +1,47 @@
+package edu.gemini.ags.impl
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.scalacheck.Gen
+import org.scalacheck.Prop._
+import org.specs2.ScalaCheck
+import org.specs2.mutable.Specification
+
+class PrunedSearchSpec extends Specification with ScalaCheck {
+
+  // (vignetting, magnitude) pairs with plenty of ties
+  private val genResults: Gen[List[(Int, Int)]] =
+    Gen.listOf(Gen.zip(Gen.choose(0, 3), Gen.choose(0, 3)))
+
+  "PrunedSearch" should {
+    "filter in input order" in
+      forAll { (is: List[Int]) =>
+        PrunedSearch(is).filter(_ % 3 == 0) == is.filter(_ % 3 == 0)
+      }
+
+    "return everything if nothing is optimal" in
+      forAll(genResults) { rs =>
+        PrunedSearch(rs).run(Some(_))(_ => false) == rs
+      }
+
+    "find the same first minimum as a sequential search" in
+      forAll(genResults) { rs =>
+        val best = if (rs.isEmpty) None else Some(rs.map(_._2).min)
+        def optimal(r: (Int, Int)): Boolean = (r._1 == 0) && best.exists(_ == r._2)
+
+        val pruned = PrunedSearch(rs.zipWithIndex).run(Some(_))(r => optimal(r._1))
+        val expected = if (rs.isEmpty) None else Some(rs.zipWithIndex.minBy(_._1))
+        val actual   = if (pruned.isEmpty) None else Some(pruned.minBy(_._1))
+        actual == expected
+      }
+
+    "stop evaluating and return nothing once cancelled" in {
+      val evaluated = new AtomicInteger(0)
+      val result    = PrunedSearch((1 to 1000).toList, () => evaluated.get >= 10).run { i =>
+        evaluated.incrementAndGet()
+        Some(i)
+      }(_ => false)
+      (result must beEmpty) and (evaluated.get must be_<(1000))
+    }
+  }
+}
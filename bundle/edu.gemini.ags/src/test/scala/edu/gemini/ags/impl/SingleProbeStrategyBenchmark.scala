@@ -0,0 +1,94 @@
+package edu.gemini.ags.impl
+
+import edu.gemini.ags.conf.ProbeLimitsTable
+import edu.gemini.catalog.votable.TestVoTableBackend
+import edu.gemini.shared.util.immutable.{None => JNone, Some => JSome}
+import edu.gemini.spModel.ags.AgsStrategyKey._
+import edu.gemini.spModel.core._
+import edu.gemini.spModel.gemini.flamingos2.Flamingos2
+import edu.gemini.spModel.gemini.gmos.InstGmosNorth
+import edu.gemini.spModel.gemini.gnirs.InstGNIRS
+import edu.gemini.spModel.gemini.obscomp.SPSiteQuality
+import edu.gemini.spModel.obs.context.ObsContext
+import edu.gemini.spModel.obscomp.SPInstObsComp
+import edu.gemini.spModel.target.SPTarget
+import edu.gemini.spModel.target.env.TargetEnvironment
+import edu.gemini.spModel.target.obsComp.PwfsGuideProbe
+import edu.gemini.spModel.telescope.{PosAngleConstraint, PosAngleConstraintAware}
+
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+
+/**
+ * Times unbounded position angle AGS selection and estimation for a few
+ * instrument configurations using the canned catalog results shared with
+ * `SingleProbeStrategySpec`.  Run with
+ * `test:runMain edu.gemini.ags.impl.SingleProbeStrategyBenchmark`.
+ */
+object SingleProbeStrategyBenchmark {
+  private val magTable = ProbeLimitsTable.loadOrThrow()
+
+  private val Warmup     = 5
+  private val Iterations = 20
+
+  final case class Config(name: String, strategy: SingleProbeStrategy, ctx: ObsContext)
+
+  private def target(ra: Angle, dec: Angle): SPTarget =
+    new SPTarget(ra.toDegrees, Declination.fromAngle(dec).getOrElse(Declination.zero).toDegrees)
+
+  private def context(t: SPTarget, inst: SPInstObsComp with PosAngleConstraintAware, site: Site, conds: SPSiteQuality.Conditions): ObsContext = {
+    inst.setPosAngle(0.0)
+    inst.setPosAngleConstraint(PosAngleConstraint.UNBOUNDED)
+    ObsContext.create(TargetEnvironment.create(t), inst, new JSome(site), conds, null, null, JNone.instance())
+  }
+
+  private val configs: List[Config] = List(
+    Config(
+      "GMOS-N OIWFS",
+      SingleProbeStrategy(GmosNorthOiwfsKey, SingleProbeStrategyParams.GmosOiwfsParams(Site.GN), Some(TestVoTableBackend("/gmosn_oiwfs.xml"))),
+      context(
+        target(Angle.fromHMS(0, 23, 54.614).getOrElse(Angle.zero), Angle.zero - Angle.fromDMS(32, 32, 10.34).getOrElse(Angle.zero)),
+        new InstGmosNorth, Site.GN, SPSiteQuality.Conditions.NOMINAL.sb(SPSiteQuality.SkyBackground.ANY)
+      )
+    ),
+    Config(
+      "Flamingos2 OIWFS",
+      SingleProbeStrategy(Flamingos2OiwfsKey, SingleProbeStrategyParams.Flamingos2OiwfsParams, Some(TestVoTableBackend("/f2_oiwfs.xml"))),
+      context(
+        target(Angle.fromHMS(5, 38, 42.396).getOrElse(Angle.zero), Angle.zero - Angle.fromDMS(69, 6, 3.36).getOrElse(Angle.zero)),
+        new Flamingos2, Site.GS, SPSiteQuality.Conditions.WORST
+      )
+    ),
+    Config(
+      "GNIRS PWFS2",
+      SingleProbeStrategy(Pwfs2NorthKey, SingleProbeStrategyParams.PwfsParams(Site.GN, PwfsGuideProbe.pwfs2), Some(TestVoTableBackend("/gnirs_1.xml"))),
+      context(
+        target(Angle.fromHMS(3, 47, 0).getOrElse(Angle.zero), Angle.fromDMS(24, 7, 0).getOrElse(Angle.zero)),
+        new InstGNIRS, Site.GN, SPSiteQuality.Conditions.NOMINAL.cc(SPSiteQuality.CloudCover.PERCENT_70).sb(SPSiteQuality.SkyBackground.ANY)
+      )
+    )
+  )
+
+  private def time[A](n: Int)(a: => A): (A, Double) = {
+    val start = System.nanoTime
+    var res   = a
+    (1 until n).foreach(_ => res = a)
+    (res, (System.nanoTime - start) / 1000000.0 / n)
+  }
+
+  def main(args: Array[String]): Unit =
+    configs.foreach { c =>
+      def select   = Await.result(c.strategy.select(c.ctx, magTable)(global), 1.minute)
+      def estimate = Await.result(c.strategy.estimate(c.ctx, magTable)(global), 1.minute)
+
+      time(Warmup)(select)
+      time(Warmup)(estimate)
+
+      val (sel, selMs) = time(Iterations)(select)
+      val (est, estMs) = time(Iterations)(estimate)
+
+      val selected = sel.flatMap(_.assignments.headOption).map(_.guideStar.name) getOrElse "none"
+      println(f"${c.name}%-20s select: $selMs%8.2f ms ($selected)  estimate: $estMs%8.2f ms (${est.probability}%.2f)")
+    }
+}
@@ -0,0 +1,67 @@
+package edu.gemini.catalog.image
+
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.{Files, Path, StandardCopyOption}
+import java.time.Instant
+import java.util.logging.{Level, Logger}
+
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+import scalaz._
+import Scalaz._
+import scalaz.concurrent.Task
+
+/**
+  * Index of the images in the cache directory with their size and last access time.
+  * It is kept in the cache directory, so that at startup the cache can be populated
+  * from the directory listing without reading the attributes of every file.
+  * Only files missing from the index need to be read.
+  */
+object ImageCacheIndex {
+  val Log: Logger = Logger.getLogger(this.getClass.getName)
+
+  /** Name of the index file in the cache directory, it doesn't match the image files */
+  val FileName = "images.index"
+
+  /** Size and last access time of an image file */
+  case class Entry(fileSize: Long, lastAccess: Instant)
+
+  // One line per file: name, size and access time in ms, tab separated
+  private def format(i: Instant, e: ImageInFile): String =
+    s"${e.file.getFileName}\t${e.fileSize}\t${i.toEpochMilli}"
+
+  private def parse(line: String): Option[(String, Entry)] = line.split('\t') match {
+    case Array(name, size, time) =>
+      \/.fromTryCatchNonFatal((name, Entry(size.toLong, Instant.ofEpochMilli(time.toLong)))).toOption
+    case _                       =>
+      None
+  }
+
+  /**
+    * Read the index of the cache directory by file name. Returns an empty index if
+    * it doesn't exist or can't be read
+    */
+  def read(cacheDir: Path): Task[Map[String, Entry]] = Task.delay {
+    val f = cacheDir.resolve(FileName)
+    if (Files.isReadable(f)) Files.readAllLines(f, UTF_8).asScala.toList.flatMap(parse).toMap
+    else Map.empty[String, Entry]
+  }.handle {
+    case NonFatal(e) =>
+      Log.log(Level.WARNING, s"Cannot read the image cache index at $cacheDir", e)
+      Map.empty[String, Entry]
+  }
+
+  /**
+    * Write the index of the given images, replacing the current one atomically
+    */
+  def write(cacheDir: Path, images: StoredImages): Task[Unit] = Task.delay {
+    val tmp = Files.createTempFile(cacheDir, ".imgindex", ".tmp")
+    try {
+      Files.write(tmp, images.entries.map(Function.tupled(format)).asJava, UTF_8)
+      Files.move(tmp, cacheDir.resolve(FileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    } finally {
+      Files.deleteIfExists(tmp)
+    }
+    ()
+  }
+}
@@ -4,7 +4,8 @@ import java.nio.file._
 import java.nio.file.StandardWatchEventKinds._
 import java.nio.file.attribute.BasicFileAttributes
 import java.time.Instant
-import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.{Executors, ThreadFactory, TimeUnit}
 import java.util.logging.{Level, Logger}
 
 import jsky.util.Preferences
@@ -20,6 +21,9 @@ import Scalaz._
 object ImageCacheWatcher {
   val Log: Logger = Logger.getLogger(this.getClass.getCanonicalName)
 
+  /** Seconds between checks for changes to write the cache index */
+  val IndexInterval: Long = 30
+
   /**
     * Populates the cache when the application starts
     */
@@ -31,21 +35,24 @@ object ImageCacheWatcher {
       Task.delay(Files.newDirectoryStream(cacheDir, "img_*"))
 
     /**
-      * Read each file and its access time to populate the cache
+      * Read each file and its access time to populate the cache. The size and access
+      * time of the files in the index are taken from it, only new files are read
       */
-    def readFiles(stream: DirectoryStream[Path]): Task[StoredImages] = {
+    def readFiles(stream: DirectoryStream[Path], index: Map[String, ImageCacheIndex.Entry]): Task[StoredImages] = {
       // This will read the last access time of the file. Note that this is OS dependent,
       // it may be disabled in some systems and we'd get creation time instead
       def lastAccessTime(file: Path): Instant =
         Files.readAttributes(file, classOf[BasicFileAttributes]).lastAccessTime.toInstant
 
-      def fileAndTime(f: Path): Option[Task[StoredImages]] =
-        ImageInFile.entryFromFile(f.toFile).map(StoredImagesCache.addAt(lastAccessTime(f), _))
+      def fileAndTime(f: Path): Option[(Instant, ImageInFile)] =
+        index.get(f.getFileName.toString) match {
+          case Some(e) => ImageInFile.entryFromFile(f.toFile, e.fileSize).map((e.lastAccess, _))
+          case None    => ImageInFile.entryFromFile(f.toFile).map((lastAccessTime(f), _))
+        }
 
       for {
         cacheFiles   <- Task.delay(stream.iterator().asScala.toList)
-        _            <- cacheFiles.flatMap(fileAndTime).sequenceU
-        initialCache <- StoredImagesCache.get
+        initialCache <- StoredImagesCache.addAll(cacheFiles.flatMap(fileAndTime))
       } yield initialCache
     }
 
@@ -70,12 +77,42 @@ object ImageCacheWatcher {
     def closeStream(stream: DirectoryStream[Path]): Task[Unit] = Task.delay(stream.close())
 
     for {
-      _  <- rmTempFiles
-      ds <- initStream
-      ab <- readFiles(ds).onFinish(_ => closeStream(ds)) // Make sure the stream is closed
+      _     <- rmTempFiles
+      index <- ImageCacheIndex.read(cacheDir)
+      ds    <- initStream
+      ab    <- readFiles(ds, index).onFinish(_ => closeStream(ds)) // Make sure the stream is closed
+      _     <- ImageCacheIndex.write(cacheDir, ab)
     } yield ab
   }
 
+  /**
+    * Periodically write the cache index when the cache changes, so that it is up to
+    * date on the next start
+    */
+  private def keepIndex(cacheDir: Path, initial: StoredImages): Task[Unit] = Task.delay {
+    val written   = new AtomicReference[StoredImages](initial)
+    val scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory {
+      override def newThread(r: Runnable): Thread =
+        new Thread(r, "Image Cache Index") <| {_.setDaemon(true)} <| {_.setPriority(Thread.MIN_PRIORITY)}
+    })
+
+    scheduler.scheduleWithFixedDelay(new Runnable {
+      override def run(): Unit = {
+        val task = StoredImagesCache.get.flatMap { current =>
+          // The cache is immutable, any modification creates a new instance
+          if (current ne written.get) ImageCacheIndex.write(cacheDir, current) *> Task.delay(written.set(current))
+          else Task.now(())
+        }
+        // Log errors, an exception would stop the scheduled task
+        task.unsafePerformSyncAttempt match {
+          case -\/(e) => Log.log(Level.WARNING, "Cannot write the images cache index", e)
+          case \/-(_) =>
+        }
+      }
+    }, IndexInterval, IndexInterval, TimeUnit.SECONDS)
+    ()
+  }
+
   /**
     * Observe the file system to detect when files are modified and update the cache accordingly
     */
@@ -109,7 +146,8 @@ object ImageCacheWatcher {
 
     val task = for {
       cachePath <- Task.delay(Preferences.getPreferences.getCacheDir).map(_.toPath)
-      _         <- populateInitialCache(cachePath)
+      initial   <- populateInitialCache(cachePath)
+      _         <- keepIndex(cachePath, initial)
       cache     <- watch(cachePath)
     } yield cache
 
@@ -136,7 +136,12 @@ object ImageInFile {
   /**
     * Decode a file name into an image entry
     */
-  def entryFromFile(file: File): Option[ImageInFile] = file.getName match {
+  def entryFromFile(file: File): Option[ImageInFile] = entryFromFile(file, file.length())
+
+  /**
+    * Decode a file name into an image entry of a known size, without reading the file attributes
+    */
+  def entryFromFile(file: File, fileSize: => Long): Option[ImageInFile] = file.getName match {
     case FileRegex(c, raStr, decStr, w, h) =>
       for {
         catalog <- ImageCatalog.byId(c)
@@ -144,7 +149,7 @@ object ImageInFile {
         dec     <- Angle.parseDMS(decStr.replace("#", ":")).toOption.map(_.toDegrees).flatMap(Declination.fromDegrees)
         width   <- Angle.fromArcsecs(w.toInt).some
         height  <- Angle.fromArcsecs(h.toInt).some
-      } yield ImageInFile(ImageSearchQuery(catalog, Coordinates(ra, dec), AngularSize(width, height), none), file.toPath, file.length())
+      } yield ImageInFile(ImageSearchQuery(catalog, Coordinates(ra, dec), AngularSize(width, height), none), file.toPath, fileSize)
     case _                                => None
   }
 }
@@ -0,0 +1,90 @@
+package edu.gemini.catalog.image
+
+import java.util.concurrent.ExecutorService
+import java.util.logging.{Level, Logger}
+
+import scala.annotation.tailrec
+import scala.collection.mutable
+import scalaz._
+import scalaz.concurrent.Task
+
+/**
+  * A bounded queue of images to load in the background, e.g. the images of all the
+  * observations of a program when it is opened.
+  * A query that is already waiting or being loaded is not queued again, and at most
+  * `parallelism` queries are loaded at the same time on threads of the given pool.
+  * The pool shouldn't be the one used by the load tasks themselves, as the queue
+  * threads wait for the loads to complete.
+  */
+final class ImagePrefetchQueue(capacity: Int, parallelism: Int, pool: ExecutorService)(load: ImageSearchQuery => Task[Unit]) {
+  import ImagePrefetchQueue.Log
+
+  // All guarded by this
+  private val waiting  = mutable.LinkedHashSet.empty[ImageSearchQuery]
+  private val inFlight = mutable.HashSet.empty[ImageSearchQuery]
+  private var workers  = 0
+
+  /**
+    * Queue the query to be loaded unless it is already waiting or being loaded.
+    * Returns false if the query was dropped because the queue is full
+    */
+  def offer(q: ImageSearchQuery): Task[Boolean] = Task.delay {
+    synchronized {
+      if (waiting.contains(q) || inFlight.contains(q)) {
+        true
+      } else if (waiting.size >= capacity) {
+        false
+      } else {
+        waiting += q
+        startWorkers()
+        true
+      }
+    }
+  }
+
+  /** Number of queries waiting to be loaded */
+  def size: Task[Int] = Task.delay(synchronized(waiting.size))
+
+  /** Indicates whether the query is waiting or being loaded */
+  def isQueued(q: ImageSearchQuery): Task[Boolean] = Task.delay(synchronized(waiting.contains(q) || inFlight.contains(q)))
+
+  /** Drop the queries waiting to be loaded, the ones being loaded complete */
+  def clear: Task[Unit] = Task.delay(synchronized(waiting.clear()))
+
+  // Called with the lock held
+  private def startWorkers(): Unit =
+    while (workers < parallelism && workers < waiting.size) {
+      workers += 1
+      pool.execute(new Runnable {
+        override def run(): Unit = work()
+      })
+    }
+
+  private def next(): Option[ImageSearchQuery] = synchronized {
+    waiting.headOption match {
+      case Some(q) =>
+        waiting -= q
+        inFlight += q
+        Some(q)
+      case None    =>
+        workers -= 1
+        None
+    }
+  }
+
+  @tailrec
+  private def work(): Unit = next() match {
+    case Some(q) =>
+      load(q).unsafePerformSyncAttempt match {
+        case -\/(e) => Log.log(Level.WARNING, s"Cannot load image for $q", e)
+        case \/-(_) =>
+      }
+      synchronized(inFlight -= q)
+      work()
+    case None    =>
+  }
+}
+
+object ImagePrefetchQueue {
+  val Log: Logger = Logger.getLogger(this.getClass.getName)
+}
@@ -35,6 +35,15 @@ object KnownImagesSets {
     */
   def start(i: ImageSearchQuery): Task[KnownImagesSets] = imagesSets.mod(_.start(i)) *> imagesSets.get
 
+  /**
+    * Mark image as in progress unless it already is. Returns true if it was marked,
+    * i.e. if the caller should download it
+    */
+  def tryStart(i: ImageSearchQuery): Task[Boolean] =
+    imagesSets.modify { s =>
+      if (s.inProgress.images.contains(i)) (s, false) else (s.start(i), true)
+    }
+
   /**
     * Mark image as done
     */
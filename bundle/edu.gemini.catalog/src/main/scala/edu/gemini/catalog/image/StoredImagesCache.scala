@@ -14,22 +14,41 @@ import Scalaz._
 import scalaz.concurrent.Task
 
 /**
-  * Keeps track of images in the file system and access time
+  * Keeps track of images in the file system and access time.
+  * The images are also indexed by catalog and declination band, so that finding the
+  * images near a query only looks at the images in the few bands around it.
   */
-protected case class StoredImages(entries: List[(Instant, ImageInFile)]) {
-  def images: List[ImageInFile] = entries.map(_._2)
+protected case class StoredImages(access: Map[ImageInFile, Instant], bands: Map[(ImageCatalog, Int), List[ImageInFile]], maxHalfDec: Double) {
+  import StoredImages._
 
-  def +(i: ImageInFile): StoredImages             = copy((Instant.now, i) :: entries)
-  def +(i: Instant, e: ImageInFile): StoredImages = copy((i, e) :: entries)
-  def -(i: ImageInFile): StoredImages             = copy(entries.filterNot(_._2 === i))
+  def entries: List[(Instant, ImageInFile)] = access.toList.map(_.swap)
+
+  def images: List[ImageInFile] = access.keys.toList
+
+  def +(i: ImageInFile): StoredImages = this + (Instant.now, i)
+
+  def +(i: Instant, e: ImageInFile): StoredImages =
+    if (access.contains(e)) {
+      copy(access = access.updated(e, i))
+    } else {
+      val k = bandKey(e.query)
+      StoredImages(access.updated(e, i), bands.updated(k, e :: bands.getOrElse(k, Nil)), maxHalfDec.max(e.query.size.halfDec.toDegrees))
+    }
+
+  def -(i: ImageInFile): StoredImages =
+    if (access.contains(i)) {
+      val k    = bandKey(i.query)
+      val band = bands.getOrElse(k, Nil).filterNot(_ === i)
+      copy(access = access - i, bands = if (band.isEmpty) bands - k else bands.updated(k, band))
+    } else {
+      this
+    }
 
   /**
     * Indicates the image was used, update the access time
     */
-  def touch(i: ImageInFile): StoredImages = copy(entries.map {
-    case (_, `i`) => (Instant.now, i)
-    case x        => x
-  })
+  def touch(i: ImageInFile): StoredImages =
+    if (access.contains(i)) copy(access = access.updated(i, Instant.now)) else this
 
   /**
     * Return images sorted by access time
@@ -41,13 +60,21 @@ protected case class StoredImages(entries: List[(Instant, ImageInFile)]) {
   val imageInFileOrder: Order[(Angle, ImageInFile)] =
     Order.orderBy(i => (i._1, i._2.query.size))
 
+  /**
+    * Images of the query catalog in the declination bands within the given
+    * distance (degrees) of the query
+    */
+  private def nearby(query: ImageSearchQuery, distance: Double): List[ImageInFile] = {
+    val dec = query.coordinates.dec.toDegrees
+    (band(dec - distance - BandSlack) to band(dec + distance + BandSlack)).toList.flatMap(b => bands.getOrElse((query.catalog, b), Nil))
+  }
+
   /**
     * Find the image in the cache closest to the requested query
     */
   def closestImage(query: ImageSearchQuery): Option[ImageInFile] = {
     val distances = for {
-        (_, e)   <- entries
-        if e.query.catalog === query.catalog
+        e        <- nearby(query, ImageSearchQuery.maxDistance.toDegrees)
         distance = query.coordinates.angularDistance(e.query.coordinates)
         if distance <= ImageSearchQuery.maxDistance
       } yield (distance, e)
@@ -60,8 +87,7 @@ protected case class StoredImages(entries: List[(Instant, ImageInFile)]) {
     */
   def inside(query: ImageSearchQuery): Option[ImageInFile] = {
     val distances = for {
-        (_, e) <- entries
-        if e.query.catalog === query.catalog
+        e <- nearby(query, maxHalfDec)
         if e.contains(query.coordinates)
       } yield (query.coordinates.angularDistance(e.query.coordinates), e)
 
@@ -71,7 +97,21 @@ protected case class StoredImages(entries: List[(Instant, ImageInFile)]) {
 }
 
 object StoredImages {
-  val zero = StoredImages(Nil)
+  val zero = StoredImages(Map.empty, Map.empty, 0.0)
+
+  /** Height of the declination bands of the index in degrees */
+  val BandHeight: Double = 1.0
+
+  // Added to the search distance to cover rounding differences with the angular distance
+  private val BandSlack: Double = 1e-6
+
+  private val BandCount: Int = (180.0 / BandHeight).ceil.toInt
+
+  def band(dec: Double): Int =
+    ((dec + 90.0) / BandHeight).floor.toInt.max(0).min(BandCount - 1)
+
+  def bandKey(q: ImageSearchQuery): (ImageCatalog, Int) =
+    (q.catalog, band(q.coordinates.dec.toDegrees))
 
   /** @group Typeclass Instances */
   implicit val equals: Equal[StoredImages] = Equal.equalA[StoredImages]
@@ -87,6 +127,9 @@ object StoredImagesCache {
 
   def addAt(instant: Instant, i: ImageInFile): Task[StoredImages] = cacheRef.mod(_ + (instant, i)) *> cacheRef.get
 
+  def addAll(entries: List[(Instant, ImageInFile)]): Task[StoredImages] =
+    cacheRef.mod(s => entries.foldLeft(s) { case (c, (instant, i)) => c + (instant, i) }) *> cacheRef.get
+
   def markAsUsed(i: ImageInFile): Task[StoredImages] = cacheRef.mod(_.touch(i)) *> cacheRef.get
 
   def remove(i: ImageInFile): Task[StoredImages] = cacheRef.mod(_ - i) *> cacheRef.get
@@ -8,6 +8,9 @@ sealed trait TaskRef[A] {
   /** Atomic modification. */
   def mod(f: A => A): Task[Unit]
 
+  /** Atomic modification, returning a value computed along with the new value. */
+  def modify[B](f: A => (A, B)): Task[B]
+
   /** Return the current value. */
   def get: Task[A]
 
@@ -26,6 +29,11 @@ object TaskRef {
       new TaskRef[A] { ref =>
         def get: Task[A] = Task.delay(value)
         def mod(f: A => A): Task[Unit] = Task.delay(ref.synchronized(value = f(value)))
+        def modify[B](f: A => (A, B)): Task[B] = Task.delay(ref.synchronized {
+          val (a, b) = f(value)
+          value = a
+          b
+        })
       }
     }
 
@@ -1,5 +1,6 @@
 package edu.gemini.catalog.osgi
 
+import edu.gemini.catalog.votable.VoTableDiskCache
 import jsky.catalog.skycat.SkycatConfigFile
 import org.osgi.framework.BundleActivator
 import org.osgi.framework.BundleContext
@@ -9,13 +10,20 @@ final class Activator extends BundleActivator {
 
   private val LOG = Logger.getLogger(classOf[Activator].getName)
 
+  // Size in MB of the catalog disk cache, 0 to disable it
+  private val CacheSizeProp = "edu.gemini.catalog.cache.mb"
+
   def start(ctx: BundleContext) {
     LOG.info("start edu.gemini.catalog")
     val url = ctx.getBundle.getEntry("/jsky/catalog/osgi/skycat.cfg")
     SkycatConfigFile.setConfigFile(url)
+
+    val size = Option(ctx.getProperty(CacheSizeProp)).fold(VoTableDiskCache.DefaultMaxBytes)(_.trim.toLong * 1024 * 1024)
+    Option(ctx.getDataFile("votable")).foreach(VoTableDiskCache.configure(_, size))
   }
 
   def stop(bundleContext: BundleContext) {
+    VoTableDiskCache.disable()
     LOG.info("stop edu.gemini.catalog")
   }
 }
\ No newline at end of file
@@ -42,6 +42,12 @@ case class ParsedVoResource(tables: List[ParsedTable]) {
   def containsError: Boolean = tables.exists(_.containsError)
 }
 
+/**
+ * Result of streaming a VOTable: the resource along with what's needed to
+ * validate the document.
+ */
+case class StreamedVoTable(isVoTable: Boolean, version: Option[String], info: String, resource: ParsedVoResource)
+
 /** The result of parsing a Catalog Query is a list of targets */
 case class TargetsTable(rows: List[SiderealTarget])
 
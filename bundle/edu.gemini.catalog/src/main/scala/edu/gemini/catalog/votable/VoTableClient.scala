@@ -1,5 +1,6 @@
 package edu.gemini.catalog.votable
 
+import java.io.ByteArrayInputStream
 import java.net.{URL, UnknownHostException, URLEncoder}
 import java.util.concurrent.atomic.AtomicInteger
 import java.util.logging.Logger
@@ -7,11 +8,12 @@ import java.util.logging.Logger
 import edu.gemini.catalog.api.{CatalogName, RadiusConstraint, MagnitudeConstraints, NameCatalogQuery, ConeSearchCatalogQuery, CatalogQuery}
 import edu.gemini.spModel.core.{Angle, Magnitude, MagnitudeBand, MagnitudeSystem, NiciBandsList, NoBands, RBandsList, SiderealTarget, SingleBand}
 
-import org.apache.http.HttpResponse
+import org.apache.http.{HttpResponse, HttpStatus}
 import org.apache.http.client.HttpClient
 import org.apache.http.client.config.RequestConfig
 import org.apache.http.client.methods.HttpGet
 import org.apache.http.impl.client.HttpClients
+import org.apache.http.util.EntityUtils
 
 import scala.annotation.tailrec
 import scala.concurrent.{ExecutionContext, Promise, Future}
@@ -163,8 +165,32 @@ trait RemoteCallBackend { this: CachedBackend =>
   protected [votable] def queryParams(q: CatalogQuery): Array[(String, String)]
   protected [votable] def queryUrl(e: SearchKey): String
 
+  // Whether a response is complete and may be kept in the disk cache, i.e.
+  // it wasn't truncated by the server.
+  protected [votable] def isComplete(r: CatalogQueryResult): Boolean =
+    true
+
   override protected def query(e: SearchKey): QueryResult = {
     val widerQuery = widen(e.query)
+
+    // Try first with a cone already fetched in this or a previous session.
+    // It was validated against the schema when first fetched.
+    val cached = widerQuery match {
+      case c: ConeSearchCatalogQuery =>
+        VoTableDiskCache.lookup(c).flatMap { bytes =>
+          VoTableParser.parse(e.query.catalog, new ByteArrayInputStream(bytes), VoTableParser.Validation.Lightweight).toOption
+        }
+      case _                         =>
+        None
+    }
+
+    cached.fold(remoteQuery(e, widerQuery)) { y =>
+      Log.fine(s"Catalog query answered from disk cache: $widerQuery")
+      QueryResult(widerQuery, CatalogQueryResult(y))
+    }
+  }
+
+  private def remoteQuery(e: SearchKey, widerQuery: CatalogQuery): QueryResult = {
     val qs         = queryParams(widerQuery)
                        .map { case (n, v) => s"$n=${URLEncoder.encode(v, "UTF-8")}"}
                        .mkString("&")
@@ -184,12 +210,28 @@ trait RemoteCallBackend { this: CachedBackend =>
       problemResult(GenericError(s"Catalog response has no content: ${statusLine.getStatusCode} ${statusLine.getReasonPhrase}"))
     }
 
+    // Keep the raw response of successful cone searches if there is a disk cache
+    def cacheable(response: HttpResponse): Option[ConeSearchCatalogQuery] =
+      widerQuery match {
+        case c: ConeSearchCatalogQuery if VoTableDiskCache.isEnabled && response.getStatusLine.getStatusCode == HttpStatus.SC_OK => Some(c)
+        case _                                                                                                                  => None
+      }
+
     val response = client.execute(get)
     try {
       Option(response.getEntity).fold(noEntity(response)) { ent =>
-        VoTableParser.parse(e.query.catalog, ent.getContent) match {
+        val cone  = cacheable(response)
+        val bytes = cone.map(_ => EntityUtils.toByteArray(ent))
+        VoTableParser.parse(e.query.catalog, bytes.fold(ent.getContent)(new ByteArrayInputStream(_))) match {
           case -\/(p) => problemResult(p)
-          case \/-(y) => QueryResult(widerQuery, CatalogQueryResult(y))
+          case \/-(y) =>
+            val r = CatalogQueryResult(y)
+            for {
+              c <- cone
+              b <- bytes
+              if isComplete(r)
+            } VoTableDiskCache.store(c, b)
+            QueryResult(widerQuery, r)
         }
       }
     } finally {
@@ -280,6 +322,12 @@ sealed trait GaiaBackend extends CachedBackend with RemoteCallBackend {
   protected def version: Option[String] =
     None
 
+  // Responses that hit the row limit are missing the faintest stars.  Rows
+  // that could not be parsed are reported as problems but count toward the
+  // limit all the same.
+  override protected [votable] def isComplete(r: CatalogQueryResult): Boolean =
+    r.targets.rows.length + r.problems.length < MaxResultCount
+
   override def queryUrl(e: SearchKey): String =
     e.url.toExternalForm
 }
@@ -0,0 +1,216 @@
+package edu.gemini.catalog.votable
+
+import java.io._
+import java.nio.file.{Files, StandardCopyOption}
+import java.util.logging.{Level, Logger}
+import java.util.zip.{GZIPInputStream, GZIPOutputStream}
+
+import edu.gemini.catalog.api.ConeSearchCatalogQuery
+import edu.gemini.spModel.core.{Angle, Coordinates}
+
+import scala.util.Try
+
+import scalaz._
+import Scalaz._
+
+/**
+ * Persistent cache of remote cone search responses.  The raw VOTable document
+ * returned for each (widened) cone search is kept compressed on disk so that
+ * later searches contained in an already fetched cone, even in another
+ * session, are answered without contacting the catalog server.
+ *
+ * Cached cones are indexed by declination zone, so a lookup only examines the
+ * cones whose centers are close enough to the query to possibly contain it.
+ * The total size of the cached files is kept within a budget by discarding
+ * the least recently used cones.
+ *
+ * The cache is disabled until `configure` is called with a directory.
+ */
+object VoTableDiskCache {
+  private val Log = Logger.getLogger(VoTableDiskCache.getClass.getName)
+
+  /** Height of the declination zones used to index cached cones. */
+  val ZoneHeight: Double = 0.5
+
+  /** Default budget for the files in the cache. */
+  val DefaultMaxBytes: Long = 256L * 1024 * 1024
+
+  private val Suffix = ".vot.gz"
+
+  /**
+   * Identifies the response to a cone search.  The remote queries do not
+   * depend on the magnitude constraints so only the catalog, the cone and
+   * whether the search was for LGS are relevant.
+   */
+  final case class ConeKey(catalog: String, lgs: Boolean, base: Coordinates, radius: Angle) {
+
+    /** Determines whether this cone includes the cone of the given query. */
+    def contains(q: ConeSearchCatalogQuery): Boolean =
+      (catalog === q.catalog.id) && (lgs === q.isLgs) &&
+        radius.toDegrees >= base.angularDistance(q.base).toDegrees + q.radiusConstraint.maxLimit.toDegrees
+
+    def fileName: String =
+      s"${if (lgs) "lgs" else "ngs"}_${base.ra.toAngle.toDegrees}_${base.dec.toDegrees}_${radius.toArcsecs}$Suffix"
+  }
+
+  object ConeKey {
+    def fromQuery(q: ConeSearchCatalogQuery): ConeKey =
+      ConeKey(q.catalog.id, q.isLgs, q.base, q.radiusConstraint.maxLimit)
+
+    /** Recovers the key from the catalog directory and file names. */
+    def fromFile(catalog: String, fileName: String): Option[ConeKey] =
+      if (!fileName.endsWith(Suffix)) None
+      else fileName.stripSuffix(Suffix).split('_') match {
+        case Array(mode, ra, dec, r) =>
+          for {
+            lgs <- mode match {
+                     case "lgs" => Some(true)
+                     case "ngs" => Some(false)
+                     case _     => None
+                   }
+            c   <- Try(Coordinates.fromDegrees(ra.toDouble, dec.toDouble)).toOption.flatten
+            rad <- Try(Angle.fromArcsecs(r.toDouble)).toOption
+          } yield ConeKey(catalog, lgs, c, rad)
+        case _                       =>
+          None
+      }
+  }
+
+  private final case class Entry(key: ConeKey, file: File, size: Long, lastAccess: Long)
+
+  private def zone(dec: Double): Int =
+    ((dec + 90.0) / ZoneHeight).floor.toInt
+
+  /**
+   * Cached cones in a directory, with one subdirectory per catalog.  The
+   * index is guarded by the store itself, file contents are read and written
+   * outside of the lock.
+   */
+  final class Store(val dir: File, val maxBytes: Long) {
+    private var zones     = Map.empty[Int, List[Entry]]
+    private var total     = 0L
+    private var maxRadius = 0.0
+
+    // Build the index from whatever a previous session left behind.
+    Option(dir.listFiles).foreach(_.filter(_.isDirectory).foreach { catDir =>
+      Option(catDir.listFiles).foreach(_.foreach { f =>
+        ConeKey.fromFile(catDir.getName, f.getName).foreach { k =>
+          add(Entry(k, f, f.length, f.lastModified))
+        }
+      })
+    })
+    synchronized { evict() }
+
+    private def add(e: Entry): Unit = synchronized {
+      val z         = zone(e.key.base.dec.toDegrees)
+      val (old, es) = zones.getOrElse(z, Nil).partition(_.file == e.file)
+      zones     = zones + (z -> (e :: es))
+      total    += e.size - old.map(_.size).sum
+      maxRadius = maxRadius max e.key.radius.toDegrees
+    }
+
+    private def remove(e: Entry): Unit = {
+      val z  = zone(e.key.base.dec.toDegrees)
+      val es = zones.getOrElse(z, Nil).filterNot(_.file == e.file)
+      zones  = if (es.isEmpty) zones - z else zones + (z -> es)
+      total -= e.size
+      e.file.delete()
+    }
+
+    private def evict(): Unit =
+      if (total > maxBytes) {
+        val lru = zones.values.flatten.toList.sortBy(_.lastAccess)
+        lru.takeWhile(_ => total > maxBytes).foreach(remove)
+      }
+
+    def size: Int = synchronized { zones.values.map(_.size).sum }
+
+    def totalBytes: Long = synchronized { total }
+
+    private def find(q: ConeSearchCatalogQuery): Option[Entry] = synchronized {
+      val dec = q.base.dec.toDegrees
+      val hit = (zone(dec - maxRadius) to zone(dec + maxRadius)).toStream.flatMap { z =>
+        zones.getOrElse(z, Nil).find(_.key.contains(q))
+      }.headOption
+
+      // Mark it as recently used
+      hit.map { e =>
+        val u = e.copy(lastAccess = System.currentTimeMillis)
+        val z = zone(e.key.base.dec.toDegrees)
+        zones = zones + (z -> (u :: zones(z).filterNot(_.file == e.file)))
+        u
+      }
+    }
+
+    /** Finds the response of a cached cone including that of the query. */
+    def lookup(q: ConeSearchCatalogQuery): Option[Array[Byte]] =
+      find(q).flatMap { e =>
+        e.file.setLastModified(e.lastAccess)
+        Try(read(e.file)).toOption
+      }
+
+    /** Records the response to the cone search query. */
+    def store(q: ConeSearchCatalogQuery, bytes: Array[Byte]): Unit = {
+      val key    = ConeKey.fromQuery(q)
+      val catDir = new File(dir, key.catalog)
+      catDir.mkdirs()
+      val file   = new File(catDir, key.fileName)
+      write(catDir, file, bytes)
+      synchronized {
+        add(Entry(key, file, file.length, file.lastModified))
+        evict()
+      }
+    }
+  }
+
+  private def read(f: File): Array[Byte] = {
+    val in = new GZIPInputStream(new FileInputStream(f))
+    try {
+      val out = new ByteArrayOutputStream
+      val buf = new Array[Byte](64 * 1024)
+      Iterator.continually(in.read(buf)).takeWhile(_ >= 0).foreach(out.write(buf, 0, _))
+      out.toByteArray
+    } finally {
+      in.close()
+    }
+  }
+
+  // Write to a temporary file first so that readers never see partial files.
+  private def write(catDir: File, f: File, bytes: Array[Byte]): Unit = {
+    val tmp = File.createTempFile("cone", ".tmp", catDir)
+    try {
+      val out = new GZIPOutputStream(new FileOutputStream(tmp))
+      try out.write(bytes) finally out.close()
+      Files.move(tmp.toPath, f.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    } finally {
+      tmp.delete()
+    }
+  }
+
+  @volatile private var current: Option[Store] = None
+
+  /** Enables the cache, keeping up to `maxBytes` of responses in `dir`. */
+  def configure(dir: File, maxBytes: Long = DefaultMaxBytes): Unit = {
+    dir.mkdirs()
+    current = (maxBytes > 0) option new Store(dir, maxBytes)
+    Log.info(s"Catalog disk cache ${current.fold("disabled")(s => s"at ${dir.getPath}, ${s.size} cones")}")
+  }
+
+  def disable(): Unit =
+    current = None
+
+  def isEnabled: Boolean =
+    current.isDefined
+
+  def lookup(q: ConeSearchCatalogQuery): Option[Array[Byte]] =
+    current.flatMap(_.lookup(q))
+
+  def store(q: ConeSearchCatalogQuery, bytes: Array[Byte]): Unit =
+    current.foreach { s =>
+      try {
+        s.store(q, bytes)
+      } catch {
+        case ex: IOException => Log.log(Level.WARNING, s"Could not cache catalog response in ${s.dir}", ex)
+      }
+    }
+}
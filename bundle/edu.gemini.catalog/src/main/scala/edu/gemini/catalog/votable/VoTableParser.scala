@@ -1,15 +1,17 @@
 package edu.gemini.catalog.votable
 
-import java.io.{ByteArrayInputStream, InputStream}
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, InputStream}
 import edu.gemini.catalog.api.CatalogName
 import edu.gemini.spModel.core._
 
+import java.util.concurrent.ConcurrentHashMap
 import java.util.logging.Logger
+import javax.xml.XMLConstants
+import javax.xml.stream.{XMLInputFactory, XMLStreamConstants, XMLStreamReader}
+import javax.xml.transform.stream.StreamSource
+import javax.xml.validation.{Schema, SchemaFactory}
 
 import scala.collection.immutable
-import scala.io.Source
-import scala.util.matching.Regex
-import scala.xml.XML
 import scala.xml.Node
 import scalaz._
 import Scalaz._
@@ -37,33 +39,33 @@ object VoTableParser extends VoTableParser {
   val UCD_MAG        = UcdWord("phot.mag")
   val STAT_ERR       = UcdWord("stat.error")
 
-  private val VoTableHeader: Regex =
-    """<VOTABLE([^>]*)>""".r.unanchored
-
   private val MinVersion: VersionToken = VersionToken.unsafeFromIntegers(1, 2)
   private val MaxVersion: VersionToken = VersionToken.unsafeFromIntegers(1, 4)
 
-  private val VersionRegex: Regex =
-    """version="(\d+\.\d+)"""".r.unanchored
+  /**
+   * How much validation to perform on a VOTable before accepting its contents.
+   */
+  sealed trait Validation extends Product with Serializable
 
-  private def extractHeader(catalogName: CatalogName, xmlText: String): CatalogProblem \/ String =
-    xmlText match {
-      case VoTableHeader(header) =>
-        \/-(header)
-      case _                    =>
-        LOG.warning(s"Couldn't find VOTABLE header in $catalogName catalog output.")
-        -\/(ValidationError(catalogName))
-    }
+  object Validation {
 
-  private def parseVersion(catalogName: CatalogName, header: String): CatalogProblem \/ VersionToken =
-    header match {
-      case VersionRegex(versionToken) =>
+    /** Validate against the XSD for the document's VOTable version. */
+    case object Schema      extends Validation
+
+    /** Only check that the document is a VOTable of a supported version. */
+    case object Lightweight extends Validation
+
+  }
+
+  private def parseVersion(catalogName: CatalogName, version: Option[String]): CatalogProblem \/ VersionToken =
+    version match {
+      case Some(versionToken) =>
         VersionToken.parse(versionToken).toRightDisjunction {
           LOG.warning(s"Couldn't parse version token '$versionToken' in $catalogName catalog output.")
           ValidationError(catalogName)
         }
-      case _                          =>
-        LOG.warning(s"Couldn't find version token in $catalogName catalog header '$header'.")
+      case None               =>
+        LOG.warning(s"Couldn't find version token in $catalogName catalog output.")
         -\/(ValidationError(catalogName))
     }
 
@@ -73,55 +75,90 @@ object VoTableParser extends VoTableParser {
       ValidationError(catalogName)
     }
 
-  private def versionedValidate(catalogName: CatalogName, xmlText: String, version: VersionToken): CatalogProblem \/ Unit =
-    \/.fromTryCatchNonFatal {
-      import javax.xml.transform.stream.StreamSource
-      import javax.xml.validation.SchemaFactory
+  // Compiled schemas are thread-safe and expensive to build, keep one per version.
+  private val schemas = new ConcurrentHashMap[String, Schema]()
 
-      val xsd        = s"/votable-${version.format}.xsd"
-      val schemaLang = "http://www.w3.org/2001/XMLSchema"
-      val factory    = SchemaFactory.newInstance(schemaLang)
-      val schema     = factory.newSchema(new StreamSource(getClass.getResourceAsStream(xsd)))
-      val validator  = schema.newValidator()
+  private def schema(version: VersionToken): Schema = {
+    val xsd = s"/votable-${version.format}.xsd"
+    Option(schemas.get(xsd)).getOrElse {
+      val factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+      val s       = factory.newSchema(new StreamSource(getClass.getResourceAsStream(xsd)))
+      Option(schemas.putIfAbsent(xsd, s)).getOrElse(s)
+    }
+  }
 
-      validator.validate(new StreamSource(new ByteArrayInputStream(xmlText.getBytes(java.nio.charset.Charset.forName("UTF-8")))))
+  private def versionedValidate(catalogName: CatalogName, xml: Array[Byte], version: VersionToken): CatalogProblem \/ Unit =
+    \/.fromTryCatchNonFatal {
+      schema(version).newValidator().validate(new StreamSource(new ByteArrayInputStream(xml)))
     }.leftMap(_ => ValidationError(catalogName))
 
-  private def validate(catalogName: CatalogName, xmlText: String): CatalogProblem \/ Unit =
+  private def validate(catalogName: CatalogName, streamed: StreamedVoTable, xml: Option[Array[Byte]]): CatalogProblem \/ Unit =
     for {
-      h <- extractHeader(catalogName, xmlText)
-      v <- parseVersion(catalogName, h)
+      _ <- streamed.isVoTable.option(()).toRightDisjunction {
+             LOG.warning(s"Couldn't find VOTABLE header in $catalogName catalog output.")
+             ValidationError(catalogName): CatalogProblem
+           }
+      v <- parseVersion(catalogName, streamed.version)
       _ <- validateVersion(catalogName, v)
-      _ <- versionedValidate(catalogName, xmlText, v)
+      _ <- xml.traverseU(versionedValidate(catalogName, _, v))
     } yield ()
 
+  // StAX factories are not guaranteed to be thread-safe, use one per thread.
+  private val inputFactory = new ThreadLocal[XMLInputFactory] {
+    override def initialValue: XMLInputFactory =
+      XMLInputFactory.newInstance <| { f =>
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
+        f.setProperty(XMLInputFactory.IS_COALESCING, true)
+      }
+  }
+
+  private def stream(catalog: CatalogName, adapter: CatalogAdapter, is: InputStream): CatalogProblem \/ StreamedVoTable =
+    \/.fromTryCatchNonFatal {
+      val reader = inputFactory.get.createXMLStreamReader(is)
+      try parse(adapter, reader) finally reader.close()
+    }.leftMap { t =>
+      LOG.warning(s"Couldn't read $catalog catalog output: ${t.getMessage}")
+      ValidationError(catalog)
+    }
+
+  private def readAll(is: InputStream): Array[Byte] = {
+    val out = new ByteArrayOutputStream
+    val buf = new Array[Byte](64 * 1024)
+    Iterator.continually(is.read(buf)).takeWhile(_ >= 0).foreach(out.write(buf, 0, _))
+    out.toByteArray
+  }
+
   /**
    * parse takes an input stream and attempts to read the xml content and convert it to a VoTable resource
    */
   def parse(catalog: CatalogName, is: InputStream): CatalogResult =
+    parse(catalog, is, Validation.Schema)
+
+  /**
+   * Reads the VOTable from the input stream, converting rows to targets as
+   * they are read.  With `Schema` validation the document is buffered (as
+   * bytes) so that it can be validated against the XSD after being read; with
+   * `Lightweight` validation it is only streamed.  Simbad is a special case as
+   * it is not fully votable-compliant and it's never validated.
+   */
+  def parse(catalog: CatalogName, is: InputStream, validation: Validation): CatalogResult =
     (CatalogAdapter.forCatalog(catalog) \/> UnknownCatalog).flatMap { adapter =>
-      // Load in memory (Could be a problem for large responses)
-      val xmlText = Source.fromInputStream(is, "UTF-8").getLines().mkString
-
-      // See FR-42171 and REL-4126.  Our code doesn't appear to explicitly
-      // mutate or lock anything, but unless the XML processing is synchronized
-      // we end up in a bad place. :-/
-      VoTableParser.synchronized {
-        catalog match {
-          case CatalogName.SIMBAD =>
-            // Simbad is a special case as it is not fully votable-compliant.
-            // We want to catch some errors at this level to simplify the parse method
-            // that assumes we are votable compliant
-            val xml = XML.loadString(xmlText)
-            if (CatalogAdapter.Simbad.containsExceptions(xml)) {
-              \/.left(ValidationError(catalog))
-            } else {
-              \/.right(parse(adapter, xml))
-            }
-
-          case _ =>
-            validate(catalog, xmlText).as(parse(adapter, XML.loadString(xmlText)))
-        }
+      catalog match {
+        case CatalogName.SIMBAD =>
+          // We want to catch some errors at this level to simplify the parse method
+          // that assumes we are votable compliant
+          stream(catalog, adapter, is).flatMap { v =>
+            if (CatalogAdapter.Simbad.isException(v.info)) \/.left(ValidationError(catalog))
+            else \/.right(v.resource)
+          }
+
+        case _                  =>
+          val xml = (validation == Validation.Schema) option readAll(is)
+          for {
+            v <- stream(catalog, adapter, xml.fold(is)(new ByteArrayInputStream(_)))
+            _ <- validate(catalog, v, xml)
+          } yield v.resource
       }
     }
 }
@@ -537,9 +574,13 @@ object CatalogAdapter {
     }
 
     def containsExceptions(xml: Node): Boolean =
+      isException((xml \\ "INFO" \ "@value").text)
+
+    // Takes the concatenated values of the INFO elements
+    def isException(info: String): Boolean =
       // The only case known is with java.lang.NullPointerException but let's make the check
       // more general.
-      (xml \\ "INFO" \ "@value").text.matches("java\\..*Exception")
+      info.matches("java\\..*Exception")
   }
 
   val All: List[CatalogAdapter] =
@@ -557,15 +598,16 @@ trait VoTableParser {
     case f @ <FIELD>{_*}</FIELD> =>
       def attr(n: String) = (f \ s"@$n").headOption.map(_.text)
 
-      val name = attr("name")
-      val id = attr("ID")
-      ^^(id.orElse(name), attr("ucd"), name) { (i, u, _) =>
-        adapter.postProcessFieldDescriptor(FieldId(i, Ucd(u)))
-      }
+      fieldDescriptor(adapter, attr("ID"), attr("name"), attr("ucd"))
 
     case _                       => None
   }
 
+  protected def fieldDescriptor(adapter: CatalogAdapter, id: Option[String], name: Option[String], ucd: Option[String]): Option[FieldId] =
+    ^^(id.orElse(name), ucd, name) { (i, u, _) =>
+      adapter.postProcessFieldDescriptor(FieldId(i, Ucd(u)))
+    }
+
   protected def parseFields(adapter: CatalogAdapter, xml: Node): List[FieldId] = (for {
       f <- xml \\ "FIELD"
     } yield parseFieldDescriptor(adapter, f)).flatten.toList
@@ -601,6 +643,92 @@ trait VoTableParser {
       }
     )
 
+  /**
+   * Reads the resources and targets from a VOTable with a StAX reader.  Each
+   * row is converted to a target as soon as it is read, so the document is
+   * never held in memory.  The result is the same as that of parsing the DOM.
+   */
+  protected def parse(adapter: CatalogAdapter, reader: XMLStreamReader): StreamedVoTable = {
+    var isVoTable = false
+    var version   = Option.empty[String]
+    val info      = new StringBuilder
+    val tables    = List.newBuilder[ParsedTable]
+
+    // State of the table being read
+    var inTable   = false
+    var inData    = false
+    var inCell    = false
+    var fields    = Vector.empty[FieldId]
+    val rows      = List.newBuilder[CatalogProblem \/ SiderealTarget]
+    val cells     = Vector.newBuilder[String]
+    val text      = new java.lang.StringBuilder
+
+    def attr(n: String): Option[String] =
+      Option(reader.getAttributeValue(null, n))
+
+    def row(): TableRow = {
+      val values = cells.result()
+      if (values.length == fields.length) TableRow(fields.zip(values).map { case (f, v) => TableRowItem(f, v) }.toList)
+      else TableRow(Nil)
+    }
+
+    while (reader.hasNext) {
+      reader.next() match {
+        case XMLStreamConstants.START_ELEMENT =>
+          reader.getLocalName match {
+            case "VOTABLE"            =>
+              isVoTable = true
+              version   = attr("version")
+            case "INFO"               =>
+              attr("value").foreach(info.append)
+            case "TABLE"              =>
+              inTable = true
+              fields  = Vector.empty
+              rows.clear()
+            case "FIELD" if inTable   =>
+              fields = fields ++ fieldDescriptor(adapter, attr("ID"), attr("name"), attr("ucd"))
+            case "TABLEDATA"          =>
+              inData = true
+            case "TR" if inData       =>
+              cells.clear()
+            case "TD" if inData       =>
+              inCell = true
+              text.setLength(0)
+            case _                    =>
+          }
+
+        case XMLStreamConstants.CHARACTERS | XMLStreamConstants.CDATA | XMLStreamConstants.SPACE if inCell =>
+          // Line breaks were historically dropped when reading the document
+          var i = reader.getTextStart
+          val e = i + reader.getTextLength
+          val c = reader.getTextCharacters
+          while (i < e) {
+            if (c(i) != '\n' && c(i) != '\r') text.append(c(i))
+            i += 1
+          }
+
+        case XMLStreamConstants.END_ELEMENT =>
+          reader.getLocalName match {
+            case "TD" if inCell =>
+              inCell = false
+              cells += text.toString
+            case "TR" if inData =>
+              rows += tableRow2Target(adapter, fields.toList)(row())
+            case "TABLEDATA"    =>
+              inData = false
+            case "TABLE"        =>
+              inTable = false
+              tables += ParsedTable(rows.result())
+            case _              =>
+          }
+
+        case _ =>
+      }
+    }
+
+    StreamedVoTable(isVoTable, version, info.toString, ParsedVoResource(tables.result()))
+  }
+
   /**
    * Convert a table row to a sidereal target or CatalogProblem
    */
@@ -0,0 +1,34 @@
+package edu.gemini.catalog.image
+
+import java.nio.file.Files
+import java.time.Instant
+
+import org.scalatest.{FlatSpec, Matchers}
+import org.scalatestplus.scalacheck.ScalaCheckPropertyChecks
+
+class ImageCacheIndexSpec extends FlatSpec with Matchers with ScalaCheckPropertyChecks with ImageCatalogArbitraries {
+
+  "ImageCacheIndex" should
+    "read the entries it writes" in {
+      forAll { (queries: List[ImageSearchQuery], size: Long) =>
+        val dir    = Files.createTempDirectory("imgindex")
+        val images = queries.zipWithIndex.map { case (q, i) =>
+          (Instant.ofEpochMilli(1500000000000L + i), ImageInFile(q, dir.resolve(s"img$i.fits"), size + i))
+        }
+        val stored = images.foldLeft(StoredImages.zero) { case (s, (t, e)) => s + (t, e) }
+        ImageCacheIndex.write(dir, stored).unsafePerformSync
+
+        val index = ImageCacheIndex.read(dir).unsafePerformSync
+        stored.entries.foreach { case (t, e) =>
+          index.get(e.file.getFileName.toString) shouldBe Some(ImageCacheIndex.Entry(e.fileSize, t))
+        }
+        index.size shouldBe images.length
+      }
+    }
+  it should "be empty if missing or unreadable" in {
+    val dir = Files.createTempDirectory("imgindex")
+    ImageCacheIndex.read(dir).unsafePerformSync shouldBe empty
+    Files.write(dir.resolve(ImageCacheIndex.FileName), "not\tan\tindex\nimg_x".getBytes)
+    ImageCacheIndex.read(dir).unsafePerformSync shouldBe empty
+  }
+}
@@ -0,0 +1,118 @@
+package edu.gemini.catalog.image
+
+import java.io.ByteArrayOutputStream
+import java.net.{InetSocketAddress, URL}
+import java.nio.file.{Files, Path}
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ConcurrentHashMap, CountDownLatch, Executors, TimeUnit}
+
+import com.sun.net.httpserver.{HttpExchange, HttpHandler, HttpServer}
+import edu.gemini.spModel.core.{Angle, Coordinates}
+import nom.tam.fits.Fits
+import nom.tam.util.BufferedDataOutputStream
+import org.scalatest.{BeforeAndAfterAll, FlatSpec, Matchers}
+
+import scala.collection.JavaConverters._
+import scalaz._
+import Scalaz._
+
+/**
+  * Prefetches images from a local HTTP server standing in for the image catalogs,
+  * which serves a small FITS file centered on the requested coordinates.
+  */
+class ImagePrefetchQueueSpec extends FlatSpec with Matchers with BeforeAndAfterAll {
+
+  private val server   = HttpServer.create(new InetSocketAddress("localhost", 0), 0)
+  private val requests = new ConcurrentHashMap[String, AtomicInteger]()
+  @volatile private var gate = new CountDownLatch(0)
+
+  private def fits(ra: Double, dec: Double): Array[Byte] = {
+    val hdu = Fits.makeHDU(Array.ofDim[Short](16, 16))
+    val h   = hdu.getHeader
+    h.addValue("CRVAL1", ra, "")
+    h.addValue("CRVAL2", dec, "")
+    h.addValue("CDELT1", -0.01, "")
+    h.addValue("CDELT2", 0.01, "")
+    val f   = new Fits()
+    f.addHDU(hdu)
+    val out = new ByteArrayOutputStream()
+    val dos = new BufferedDataOutputStream(out)
+    f.write(dos)
+    dos.flush()
+    out.toByteArray
+  }
+
+  // Serves /image?ra=..&dec=.. after the gate opens
+  server.createContext("/image", new HttpHandler {
+    override def handle(x: HttpExchange): Unit = {
+      val query = x.getRequestURI.getQuery
+      requests.computeIfAbsent(query, new java.util.function.Function[String, AtomicInteger] {
+        override def apply(k: String): AtomicInteger = new AtomicInteger(0)
+      }).incrementAndGet()
+      gate.await(10, TimeUnit.SECONDS)
+      val params = query.split('&').map(_.split('=')).map(a => a(0) -> a(1).toDouble).toMap
+      val body   = fits(params("ra"), params("dec"))
+      x.getResponseHeaders.add("Content-Type", "image/x-fits")
+      x.sendResponseHeaders(200, body.length)
+      x.getResponseBody.write(body)
+      x.close()
+    }
+  })
+  server.setExecutor(Executors.newCachedThreadPool())
+  server.start()
+
+  override def afterAll(): Unit = server.stop(0)
+
+  private def url(c: Coordinates): URL =
+    new URL(s"http://localhost:${server.getAddress.getPort}/image?ra=${c.ra.toAngle.toDegrees}&dec=${c.dec.toDegrees}")
+
+  private def query(i: Int): ImageSearchQuery =
+    ImageSearchQuery(DssGemini, Coordinates.zero.offset(Angle.fromDegrees(i * 2.0), Angle.fromDegrees(i / 2.0)), DssGemini.imageSize, None)
+
+  private def newQueue(dir: Path, capacity: Int): ImagePrefetchQueue =
+    new ImagePrefetchQueue(capacity, 3, Executors.newCachedThreadPool())(q =>
+      ImageCatalogClient.downloadImageToFile(dir, url(q.coordinates), q).map(_ => ()))
+
+  private def awaitEmpty(queue: ImagePrefetchQueue, queries: List[ImageSearchQuery]): Unit = {
+    val deadline = System.currentTimeMillis + 20000
+    while (queries.exists(queue.isQueued(_).unsafePerformSync) && System.currentTimeMillis < deadline) Thread.sleep(20)
+  }
+
+  "ImagePrefetchQueue" should
+    "download each queued image once" in {
+      val dir     = Files.createTempDirectory("prefetch")
+      val queue   = newQueue(dir, 100)
+      val queries = (1 to 10).toList.map(query)
+      gate = new CountDownLatch(1)
+      requests.clear()
+
+      // Offer every query several times while the downloads are held
+      val accepted = (queries ++ queries ++ queries.reverse).traverseU(queue.offer).unsafePerformSync
+      accepted.forall(identity) shouldBe true
+      gate.countDown()
+      awaitEmpty(queue, queries)
+
+      requests.size shouldBe 10
+      requests.values.asScala.map(_.get).toSet shouldBe Set(1)
+
+      // The downloaded files are named after the coordinates in their headers
+      val stored = Files.list(dir).iterator.asScala.toList.flatMap(p => ImageInFile.entryFromFile(p.toFile))
+      stored.length shouldBe 10
+      queries.foreach { q =>
+        stored.exists(_.contains(q.coordinates, Angle.zero)) shouldBe true
+      }
+    }
+  it should "drop queries when full" in {
+    val dir   = Files.createTempDirectory("prefetch")
+    val queue = newQueue(dir, 5)
+    gate = new CountDownLatch(1)
+
+    // 3 are taken by the workers right away, 5 wait
+    val accepted = (20 to 31).toList.map(query).traverseU(queue.offer).unsafePerformSync
+    accepted.count(identity) should be >= 5
+    accepted.count(identity) should be < 12
+    gate.countDown()
+    awaitEmpty(queue, (20 to 31).toList.map(query))
+    queue.size.unsafePerformSync shouldBe 0
+  }
+}
@@ -167,6 +167,33 @@ class StoredImagesCacheSpec extends FlatSpec with Matchers with ScalaCheckProper
       entry.isRight shouldBe true
       entry.getOrElse(fail("Should not happen")) shouldBe None
     }
+    it should "find the same images as a scan of all the images" in {
+      forAll { (q: ImageSearchQuery, offsets: List[(Short, Short)]) =>
+        // Images of several catalogs around the query, some of them in other declination bands
+        val images = offsets.zipWithIndex.map { case ((dRa, dDec), i) =>
+          val catalog = ImageCatalog.all(i % ImageCatalog.all.length)
+          val c       = q.coordinates.offset(Angle.fromArcsecs(dRa / 20.0), Angle.fromArcsecs(dDec / 20.0))
+          ImageInFile(ImageSearchQuery(catalog, c, catalog.imageSize, None), new File(s"img$i").toPath, 0)
+        }
+        val stored = images.foldLeft(StoredImages.zero)(_ + _)
+
+        def distance(e: ImageInFile): Angle = q.coordinates.angularDistance(e.query.coordinates)
+        val sameCatalog = images.filter(_.query.catalog === q.catalog)
+        val closest     = sameCatalog.filter(distance(_) <= ImageSearchQuery.maxDistance).map(distance).minimum
+        val inside      = sameCatalog.filter(_.contains(q.coordinates)).map(distance).minimum
+
+        stored.closestImage(q).map(distance) shouldBe closest
+        stored.inside(q).map(distance) shouldBe inside
+      }
+    }
+    it should "remove entries from the index" in {
+      forAll { (e: ImageInFile, l: List[ImageInFile]) =>
+        val stored = (e :: l).foldLeft(StoredImages.zero)(_ + _) - e
+        stored.images should not contain e
+        stored.bands.values.flatten.toList should not contain e
+        stored.bands.values.map(_.length).sum shouldBe stored.images.length
+      }
+    }
     it should "find none if the nearest is farther than max distance" in {
       val size = AngularSize(Angle.fromArcmin(8.5), Angle.fromArcmin(10))
       val a = ImageSearchQuery(DssGemini, Coordinates.zero, size, None)
@@ -0,0 +1,77 @@
+package edu.gemini.catalog.votable
+
+import java.io.File
+import java.nio.file.Files
+
+import edu.gemini.catalog.api._
+import edu.gemini.catalog.votable.VoTableDiskCache.{ConeKey, Store}
+import edu.gemini.spModel.core._
+import org.specs2.mutable.Specification
+
+import scalaz._
+
+class VoTableDiskCacheSpec extends Specification {
+  val mag10 = MagnitudeConstraints(RBandsList, FaintnessConstraint(10.0), None)
+
+  def cone(ra: Double, dec: Double, arcmin: Double, catalog: CatalogName = CatalogName.UCAC4, lgs: Boolean = false): ConeSearchCatalogQuery =
+    ConeSearchCatalogQuery(None, Coordinates.fromDegrees(ra, dec).get, RadiusConstraint.between(Angle.zero, Angle.fromArcmin(arcmin)), List(mag10), catalog, lgs)
+
+  def tempDir: File =
+    Files.createTempDirectory("votable-cache").toFile
+
+  val content = "<VOTABLE/>".getBytes("UTF-8")
+
+  "VoTableDiskCache" should {
+    "recover keys from file names" in {
+      val k = ConeKey.fromQuery(cone(10.5, -30.25, 7.0))
+      ConeKey.fromFile(k.catalog, k.fileName).map(_.radius.toArcmins) must beSome(beCloseTo(7.0, 0.000001))
+      ConeKey.fromFile(k.catalog, k.fileName).map(_.base.dec.toDegrees) must beSome(beCloseTo(-30.25, 0.000001))
+      ConeKey.fromFile(k.catalog, "foo.txt") must beNone
+    }
+    "answer queries contained in a cached cone" in {
+      val s = new Store(tempDir, VoTableDiskCache.DefaultMaxBytes)
+      s.store(cone(10.0, 20.0, 10.0), content)
+      s.lookup(cone(10.0, 20.0, 5.0)).map(_.toList) must beSome(content.toList)
+      s.lookup(cone(10.05, 20.05, 5.0)) must beSome
+    }
+    "not answer queries outside of the cached cones" in {
+      val s = new Store(tempDir, VoTableDiskCache.DefaultMaxBytes)
+      s.store(cone(10.0, 20.0, 10.0), content)
+      s.lookup(cone(10.0, 20.0, 11.0)) must beNone
+      s.lookup(cone(10.0, 20.2, 5.0)) must beNone
+      s.lookup(cone(10.0, 20.0, 5.0, CatalogName.PPMXL)) must beNone
+      s.lookup(cone(10.0, 20.0, 5.0, lgs = true)) must beNone
+    }
+    "find cones across declination zones" in {
+      val s = new Store(tempDir, VoTableDiskCache.DefaultMaxBytes)
+      s.store(cone(10.0, 0.49, 30.0), content)
+      s.lookup(cone(10.0, 0.51, 5.0)) must beSome
+      s.lookup(cone(10.0, 0.3, 5.0)) must beSome
+    }
+    "reload cached cones from disk" in {
+      val dir = tempDir
+      new Store(dir, VoTableDiskCache.DefaultMaxBytes).store(cone(10.0, 20.0, 10.0), content)
+      val s = new Store(dir, VoTableDiskCache.DefaultMaxBytes)
+      s.size must beEqualTo(1)
+      s.lookup(cone(10.0, 20.0, 5.0)) must beSome
+    }
+    "keep within the disk budget" in {
+      val s    = new Store(tempDir, 1)
+      s.store(cone(10.0, 20.0, 10.0), content)
+      s.size must beEqualTo(0)
+      s.totalBytes must beEqualTo(0L)
+    }
+    "not keep truncated Gaia responses with unparseable rows" in {
+      val b    = GaiaEsaBackend
+      val star = \/-(SiderealTarget.empty)
+      val bad  = -\/(FieldValueProblem(Ucd("phot.mag;em.opt"), "abc"))
+      def result(rows: List[CatalogProblem \/ SiderealTarget]): CatalogQueryResult =
+        CatalogQueryResult(ParsedVoResource(List(ParsedTable(rows))))
+
+      val truncated = result(bad :: List.fill(b.MaxResultCount - 1)(star))
+      truncated.targets.rows.length must beEqualTo(b.MaxResultCount - 1)
+      b.isComplete(truncated) must beFalse
+      b.isComplete(result(bad :: List.fill(b.MaxResultCount - 2)(star))) must beTrue
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package edu.gemini.catalog.votable
+
+import java.io.ByteArrayInputStream
+import java.util.concurrent.{Callable, Executors}
+
+import edu.gemini.catalog.api.CatalogName
+
+import scala.collection.JavaConverters._
+import scala.util.Random
+import scala.xml.XML
+
+/**
+ * Times the parsing of a large synthetic Gaia cone search response, comparing
+ * the DOM based parser with the streaming parser with and without schema
+ * validation, and the streaming parser on several threads at once.  Run with
+ * `test:runMain edu.gemini.catalog.votable.VoTableParserBenchmark [rows]`.
+ */
+object VoTableParserBenchmark extends VoTableParser {
+
+  private val Iterations = 5
+  private val Threads    = 4
+
+  private def gaiaResponse(rows: Int): Array[Byte] = {
+    val r  = new Random(0)
+    val sb = new StringBuilder
+    sb.append("""<?xml version="1.0" encoding="UTF-8"?>""")
+    sb.append("""<VOTABLE version="1.3" xmlns="http://www.ivoa.net/xml/VOTable/v1.3"><RESOURCE type="results"><TABLE>""")
+    CatalogAdapter.GaiaEsa.allFields.foreach { f =>
+      sb.append(s"""<FIELD ID="${f.id}" datatype="char" arraysize="*" name="${f.id}" ucd="${f.ucd.tokens.map(_.token).mkString(";")}"/>""")
+    }
+    sb.append("<DATA><TABLEDATA>")
+    (0 until rows).foreach { i =>
+      val values = List(
+        s"Gaia DR2 $i",
+        (95.0 + r.nextDouble).toString,
+        (r.nextGaussian * 10).toString,
+        (-52.0 - r.nextDouble).toString,
+        (r.nextGaussian * 10).toString,
+        "2015.5",
+        r.nextDouble.toString,
+        "",
+        (10.0 + r.nextDouble * 7.0).toString,
+        (r.nextDouble * 2.0).toString
+      )
+      sb.append(values.map(v => s"<TD>$v</TD>").mkString("<TR>", "", "</TR>"))
+    }
+    sb.append("</TABLEDATA></DATA></TABLE></RESOURCE></VOTABLE>")
+    sb.toString.getBytes("UTF-8")
+  }
+
+  private def time[A](name: String)(a: => A): A = {
+    val start = System.nanoTime
+    val res   = a
+    println(f"  $name%-28s ${(System.nanoTime - start) / 1000000.0}%9.2f ms")
+    res
+  }
+
+  private def targets(r: VoTableParser.CatalogResult): Int =
+    r.fold(_ => 0, _.tables.map(_.rows.size).sum)
+
+  def main(args: Array[String]): Unit = {
+    val rows  = args.headOption.fold(50000)(_.toInt)
+    val bytes = gaiaResponse(rows)
+    println(s"Gaia response with $rows rows, ${bytes.length / 1024} KB")
+
+    def dom(): Int =
+      parse(CatalogAdapter.GaiaEsa, XML.load(new ByteArrayInputStream(bytes))).tables.map(_.rows.size).sum
+
+    def streamed(v: VoTableParser.Validation): Int =
+      targets(VoTableParser.parse(CatalogName.GaiaEsa, new ByteArrayInputStream(bytes), v))
+
+    val pool = Executors.newFixedThreadPool(Threads)
+    def concurrent(): Int =
+      pool.invokeAll(List.fill(Threads)(new Callable[Int] {
+        def call(): Int = streamed(VoTableParser.Validation.Lightweight)
+      }).asJava).asScala.map(_.get).sum
+
+    try {
+      (1 to Iterations).foreach { i =>
+        println(s"run $i")
+        time("dom")(dom())
+        time("streaming, schema")(streamed(VoTableParser.Validation.Schema))
+        time("streaming, lightweight")(streamed(VoTableParser.Validation.Lightweight))
+        time(s"streaming, $Threads threads")(concurrent())
+      }
+    } finally {
+      pool.shutdown()
+    }
+  }
+}
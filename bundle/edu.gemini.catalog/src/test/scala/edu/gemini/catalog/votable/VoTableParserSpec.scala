@@ -929,5 +929,25 @@ class VoTableParserSpec extends Specification with VoTableParser {
       target.map(_.name) should beSome("NGC  2438")
       target.map(_.magnitudeIn(MagnitudeBand.J)) should beSome(Some(new Magnitude(17.02, MagnitudeBand.J, 0.15, MagnitudeSystem.Vega)))
     }
+    "stream the same results as parsing the DOM" in {
+      def streamed(adapter: CatalogAdapter, xml: scala.xml.Node): ParsedVoResource = {
+        val reader = javax.xml.stream.XMLInputFactory.newInstance.createXMLStreamReader(new java.io.StringReader(xml.toString))
+        parse(adapter, reader).resource
+      }
+      streamed(CatalogAdapter.PPMXL, voTable) should beEqualTo(parse(CatalogAdapter.PPMXL, voTable))
+      streamed(CatalogAdapter.PPMXL, voTableWithErrors) should beEqualTo(parse(CatalogAdapter.PPMXL, voTableWithErrors))
+      streamed(CatalogAdapter.UCAC4, voTableWithProperMotion) should beEqualTo(parse(CatalogAdapter.UCAC4, voTableWithProperMotion))
+      streamed(CatalogAdapter.GaiaEsa, voTableGaia) should beEqualTo(parse(CatalogAdapter.GaiaEsa, voTableGaia))
+    }
+    "give the same results with lightweight validation" in {
+      val xmlFile = "votable-ucac4.xml"
+      val full    = VoTableParser.parse(CatalogName.UCAC4, getClass.getResourceAsStream(s"/$xmlFile"))
+      val light   = VoTableParser.parse(CatalogName.UCAC4, getClass.getResourceAsStream(s"/$xmlFile"), VoTableParser.Validation.Lightweight)
+      light should beEqualTo(full)
+    }
+    "reject documents that aren't VOTables with lightweight validation" in {
+      val notVoTable = new java.io.ByteArrayInputStream("<TABLE/>".getBytes("UTF-8"))
+      VoTableParser.parse(CatalogName.UCAC4, notVoTable, VoTableParser.Validation.Lightweight) should beEqualTo(-\/(ValidationError(CatalogName.UCAC4)))
+    }
   }
 }
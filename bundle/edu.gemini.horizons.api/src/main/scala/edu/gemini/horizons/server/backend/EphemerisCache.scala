@@ -0,0 +1,345 @@
+package edu.gemini.horizons.server.backend
+
+import java.io.{BufferedOutputStream, DataOutputStream, File, IOException}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.{Files, Path, StandardCopyOption, StandardOpenOption}
+import java.security.MessageDigest
+import java.util.Date
+import java.util.logging.{Level, Logger}
+
+import edu.gemini.horizons.api._
+import edu.gemini.horizons.server.backend.HorizonsService2.HS2
+import edu.gemini.spModel.core.{HorizonsDesignation, Site}
+import jsky.coords.{DMS, HMS, WorldCoords}
+
+import scala.collection.JavaConverters._
+import scala.collection.immutable.TreeMap
+import scala.collection.mutable
+import scala.concurrent.duration._
+import scala.util.{Failure, Success, Try}
+
+/**
+ * Keeps the ephemerides fetched from HORIZONS in a directory, one file per target, site and step
+ * size. Each file records the time ranges that were fetched along with their entries in a compact
+ * binary form, and is memory mapped to answer lookups. A lookup only fetches the parts of the
+ * requested range that aren't covered yet, and the new ranges are merged into the file.
+ *
+ * Files are dropped `maxAge` after their oldest data was fetched, and the least recently used
+ * files are removed when the directory grows beyond `maxBytes`.
+ */
+final class EphemerisCache(val dir: Path, val maxBytes: Long, val maxAge: FiniteDuration) {
+  import EphemerisCache._
+
+  // Mapped files and the last time they were used in this session, guarded by `this`
+  private val segments = mutable.Map.empty[Key, Segment]
+  private val lastUsed = mutable.Map.empty[Path, Long]
+
+  Files.createDirectories(dir)
+
+  /**
+   * Looks up the entries between `start` and `stop`, plus the entries just before and after them
+   * if any, calling `fetch` for the parts of the range that aren't cached yet.
+   */
+  def lookup(key: Key, start: Long, stop: Long)(fetch: (Long, Long) => HS2[List[EphemerisEntry]]): HS2[List[EphemerisEntry]] = {
+    // Fetched gaps are widened by a step on each side so the cached entries bracket them
+    val step = key.stepMinutes * 60000L
+
+    def fetchAll(gaps: List[(Long, Long)]): HS2[List[Fetched]] =
+      gaps.foldLeft(HS2.delay(List.empty[Fetched])) { case (acc, (a, b)) =>
+        for {
+          fs <- acc
+          es <- fetch(a - step, b + step)
+        } yield Fetched(a - step, b + step, es) :: fs
+      }
+
+    for {
+      gaps    <- HS2.delay(missing(segment(key).fold(List.empty[(Long, Long)])(_.ranges), start, stop))
+      fetched <- fetchAll(gaps)
+      seg     <- HS2.delay(if (fetched.forall(_.entries.isEmpty)) segment(key) else Some(store(key, fetched.reverse)))
+    } yield seg.fold(List.empty[EphemerisEntry])(_.slice(start, stop))
+  }
+
+  /** Removes every cached ephemeris that can be deleted. */
+  def clear(): Unit = synchronized {
+    segments.clear()
+    lastUsed.clear()
+    files.foreach(delete)
+  }
+
+  /** Total size in bytes of the cached ephemerides. */
+  def size: Long = synchronized {
+    files.flatMap(p => Try(Files.size(p)).toOption).sum
+  }
+
+  private def path(key: Key): Path = dir.resolve(key.fileName)
+
+  private def files: List[Path] = {
+    val ps = Files.list(dir)
+    try ps.iterator.asScala.filter(_.getFileName.toString.endsWith(Suffix)).toList finally ps.close()
+  }
+
+  // Files that are still mapped can't be deleted on some platforms, leave them for later then
+  private def delete(p: Path): Boolean =
+    Try(Files.deleteIfExists(p)) match {
+      case Success(_) =>
+        true
+      case Failure(e) =>
+        LOG.log(Level.FINE, s"Cannot delete ephemeris cache file $p", e)
+        false
+    }
+
+  // The cached data for the key, unless it expired
+  private def segment(key: Key): Option[Segment] = synchronized {
+    val now = System.currentTimeMillis
+    segments.get(key).orElse(load(key)).flatMap { s =>
+      if (now - s.fetched > maxAge.toMillis) {
+        LOG.fine(s"Ephemeris cache for ${key.description} expired")
+        segments.remove(key)
+        lastUsed.remove(path(key))
+        delete(path(key))
+        None
+      } else {
+        segments.put(key, s)
+        lastUsed.put(path(key), now)
+        Some(s)
+      }
+    }
+  }
+
+  private def load(key: Key): Option[Segment] = {
+    val p = path(key)
+    if (!Files.isRegularFile(p)) None
+    else Try(map(p)).map(Segment.read(key, _)) match {
+      case Success(s) =>
+        s
+      case Failure(e) =>
+        LOG.log(Level.WARNING, s"Ignoring unreadable ephemeris cache file $p", e)
+        delete(p)
+        None
+    }
+  }
+
+  private def map(p: Path): ByteBuffer = {
+    val ch = FileChannel.open(p, StandardOpenOption.READ)
+    try ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size) finally ch.close()
+  }
+
+  // Merges the fetched ranges into the cached ones, newer entries replace older ones. Ranges that
+  // came back empty aren't recorded, HORIZONS may just have been unable to answer for them.
+  private def store(key: Key, fetched: List[Fetched]): Segment = synchronized {
+    val old     = segment(key)
+    val ranges  = merge(old.fold(List.empty[(Long, Long)])(_.ranges) ++ fetched.filter(_.entries.nonEmpty).map(f => (f.start, f.stop)))
+    val entries = TreeMap.empty[Long, EphemerisEntry] ++
+                    old.fold(List.empty[EphemerisEntry])(_.all).map(e => e.timestamp -> e) ++
+                    fetched.flatMap(_.entries).map(e => e.timestamp -> e)
+    val since   = old.fold(System.currentTimeMillis)(_.fetched)
+
+    val p = path(key)
+    try {
+      write(p, key, since, ranges, entries.values.toList)
+      val s = Segment.read(key, map(p)).getOrElse(sys.error(s"Cannot read back $p"))
+      segments.put(key, s)
+      lastUsed.put(p, System.currentTimeMillis)
+      evict(p)
+      s
+    } catch {
+      case e: Exception =>
+        // Don't fail the lookup because the cache can't be written, answer from memory instead
+        LOG.log(Level.WARNING, s"Cannot write ephemeris cache file $p", e)
+        Segment(since, ranges, entries.values.toList)
+    }
+  }
+
+  // Replace the file atomically so it is never left half written. The move fails if the old file
+  // is still mapped on some platforms, the caller then answers from memory.
+  private def write(p: Path, key: Key, since: Long, ranges: List[(Long, Long)], entries: List[EphemerisEntry]): Unit = {
+    val tmp = Files.createTempFile(dir, key.fileName, ".tmp")
+    try {
+      val out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))
+      try {
+        val desc = key.description.getBytes(UTF_8)
+        out.writeInt(Magic)
+        out.writeLong(since)
+        out.writeInt(desc.length)
+        out.write(desc)
+        out.writeInt(ranges.length)
+        ranges.foreach { case (a, b) =>
+          out.writeLong(a)
+          out.writeLong(b)
+        }
+        out.writeInt(entries.length)
+        entries.foreach { e =>
+          out.writeLong(e.timestamp)
+          out.writeDouble(e.getCoordinates.getRA.getVal)
+          out.writeDouble(e.getCoordinates.getDec.getVal)
+          out.writeDouble(e.getRATrack)
+          out.writeDouble(e.getDecTrack)
+          out.writeDouble(e.getAirmass)
+          out.writeDouble(e.getMagnitude)
+        }
+      } finally {
+        out.close()
+      }
+      Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    } finally {
+      delete(tmp)
+    }
+  }
+
+  // Removes the least recently used files, other than the one just written, until under the bound
+  private def evict(keep: Path): Unit = {
+    val sized = files.flatMap(p => Try((p, Files.size(p))).toOption)
+    var total = sized.map(_._2).sum
+    if (total > maxBytes) {
+      val byUse = sized.filterNot(_._1 == keep).sortBy { case (p, _) =>
+        lastUsed.getOrElse(p, Try(Files.getLastModifiedTime(p).toMillis).getOrElse(0L))
+      }
+      byUse.iterator.takeWhile(_ => total > maxBytes).foreach { case (p, s) =>
+        LOG.fine(s"Evicting ephemeris cache file $p")
+        if (delete(p)) {
+          lastUsed.remove(p)
+          segments.retain((k, _) => path(k) != p)
+          total -= s
+        }
+      }
+    }
+  }
+}
+
+object EphemerisCache {
+  private val LOG = Logger.getLogger(classOf[EphemerisCache].getName)
+
+  /** System property with the directory of the cache used by `HorizonsService2`, if any. */
+  val DirProperty     = "edu.gemini.horizons.ephemerisCache.dir"
+
+  /** System property with the size bound of the cache in MB. */
+  val MaxSizeProperty = "edu.gemini.horizons.ephemerisCache.maxMB"
+
+  /** System property with the number of days the cached ephemerides are kept. */
+  val MaxAgeProperty  = "edu.gemini.horizons.ephemerisCache.maxDays"
+
+  val DefaultMaxBytes: Long           = 64L * 1024 * 1024
+  val DefaultMaxAge:   FiniteDuration = 7.days
+
+  /** Creates the cache configured with the system properties, if the directory is set. */
+  def fromSystemProperties: Option[EphemerisCache] =
+    Option(System.getProperty(DirProperty)).flatMap { d =>
+      val maxBytes = Option(System.getProperty(MaxSizeProperty)).flatMap(s => Try(s.toLong * 1024 * 1024).toOption)
+      val maxAge   = Option(System.getProperty(MaxAgeProperty)).flatMap(s => Try(s.toLong.days).toOption)
+      Try(new EphemerisCache(new File(d).toPath, maxBytes.getOrElse(DefaultMaxBytes), maxAge.getOrElse(DefaultMaxAge))) match {
+        case Success(c) =>
+          Some(c)
+        case Failure(e) =>
+          LOG.log(Level.WARNING, s"Cannot use ephemeris cache directory $d", e)
+          None
+      }
+    }
+
+  /** Identifies a cached ephemeris. */
+  final case class Key(target: HorizonsDesignation, site: Site, stepMinutes: Long) {
+    def description: String =
+      s"${target.queryString}\t${site.name}\t$stepMinutes"
+
+    def fileName: String =
+      MessageDigest.getInstance("SHA-1").digest(description.getBytes(UTF_8)).map("%02x".format(_)).mkString + Suffix
+  }
+
+  private val Suffix     = ".eph"
+  private val Magic      = 0x45504831 // EPH1
+  private val RecordSize = 8 * 7
+
+  private case class Fetched(start: Long, stop: Long, entries: List[EphemerisEntry])
+
+  /**
+   * Missing parts of the range between `start` and `stop` given the cached ranges, sorted and
+   * not overlapping.
+   */
+  private[backend] def missing(ranges: List[(Long, Long)], start: Long, stop: Long): List[(Long, Long)] = {
+    val (gaps, last) = ranges.filter { case (a, b) => b >= start && a <= stop }.foldLeft((List.empty[(Long, Long)], start)) {
+      case ((gs, from), (a, b)) =>
+        (if (a > from) (from, a) :: gs else gs, from max b)
+    }
+    (if (last < stop) (last, stop) :: gaps else gaps).reverse
+  }
+
+  /** Merges the overlapping or touching ranges. */
+  private[backend] def merge(ranges: List[(Long, Long)]): List[(Long, Long)] =
+    ranges.sortBy(_._1).foldLeft(List.empty[(Long, Long)]) {
+      case ((a0, b0) :: rs, (a, b)) if a <= b0 => (a0, b0 max b) :: rs
+      case (rs, r)                             => r :: rs
+    }.reverse
+
+  /** Entries sorted by time, read from a buffer with the file layout. */
+  private final class Segment(val fetched: Long, val ranges: List[(Long, Long)], buf: ByteBuffer, offset: Int, val length: Int) {
+
+    private def time(i: Int): Long =
+      buf.getLong(offset + i * RecordSize)
+
+    private def entry(i: Int): EphemerisEntry = {
+      val p = offset + i * RecordSize
+      new EphemerisEntry(
+        new Date(buf.getLong(p)),
+        new WorldCoords(new HMS(buf.getDouble(p + 8)), new DMS(buf.getDouble(p + 16))),
+        buf.getDouble(p + 24),
+        buf.getDouble(p + 32),
+        buf.getDouble(p + 40),
+        buf.getDouble(p + 48))
+    }
+
+    // Index of the first entry at or after t, or length if none
+    private def search(t: Long): Int = {
+      var lo = 0
+      var hi = length
+      while (lo < hi) {
+        val mid = (lo + hi) >>> 1
+        if (time(mid) < t) lo = mid + 1 else hi = mid
+      }
+      lo
+    }
+
+    def all: List[EphemerisEntry] =
+      (0 until length).toList.map(entry)
+
+    /** The entries between start and stop, with the closest ones outside when present. */
+    def slice(start: Long, stop: Long): List[EphemerisEntry] = {
+      val a    = search(start)
+      val from = if (a < length && time(a) == start) a else (a - 1) max 0
+      val to   = search(stop) min (length - 1)
+      (from to to).toList.map(entry)
+    }
+  }
+
+  private object Segment {
+
+    def apply(fetched: Long, ranges: List[(Long, Long)], entries: List[EphemerisEntry]): Segment = {
+      val buf = ByteBuffer.allocate(entries.length * RecordSize)
+      entries.foreach { e =>
+        buf.putLong(e.timestamp)
+        buf.putDouble(e.getCoordinates.getRA.getVal)
+        buf.putDouble(e.getCoordinates.getDec.getVal)
+        buf.putDouble(e.getRATrack)
+        buf.putDouble(e.getDecTrack)
+        buf.putDouble(e.getAirmass)
+        buf.putDouble(e.getMagnitude)
+      }
+      new Segment(fetched, ranges, buf, 0, entries.length)
+    }
+
+    /** Reads the header, or None if the file was written for another key. */
+    def read(key: Key, buf: ByteBuffer): Option[Segment] = {
+      if (buf.getInt() != Magic) throw new IOException("Not an ephemeris cache file")
+      val fetched = buf.getLong()
+      val desc    = new Array[Byte](buf.getInt())
+      buf.get(desc)
+      if (new String(desc, UTF_8) != key.description) None
+      else {
+        val ranges = List.fill(buf.getInt())((buf.getLong(), buf.getLong()))
+        val length = buf.getInt()
+        if (buf.remaining < length * RecordSize) throw new IOException("Truncated ephemeris cache file")
+        Some(new Segment(fetched, ranges, buf, buf.position, length))
+      }
+    }
+  }
+}
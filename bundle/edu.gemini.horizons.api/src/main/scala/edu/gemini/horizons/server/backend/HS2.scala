@@ -36,6 +36,13 @@ object HorizonsService2 {
 
   private val timeout = 1.minute.toMillis.toInt
 
+  // Cache of the ephemerides looked up, configured with the EphemerisCache system properties
+  @volatile private var ephemerisCache: Option[EphemerisCache] = EphemerisCache.fromSystemProperties
+
+  /** Sets the cache used for ephemeris lookups, or disables caching with `None`. */
+  def useEphemerisCache(cache: Option[EphemerisCache]): Unit =
+    ephemerisCache = cache
+
   private object ConnectionCharset {
     val default = Charset.forName("UTF-8")
 
@@ -148,15 +155,22 @@ object HorizonsService2 {
    * total elements spread uniformly over the over the given time period. The computed ephemeris may
    * contain slightly more or fewer entries than requested due to rounding, or many fewer for very
    * short timespans (no more than one entry will be returned per minute).
+   *
+   * If an ephemeris cache is in use, only the parts of the time period that it doesn't cover yet
+   * are requested, and the entries just outside the time period are included when cached.
    */
-  def lookupEphemerisE[E](target: HorizonsDesignation, site: Site, start: Date, stop: Date, elems: Int)(ef: EphemerisEntry => Option[E]): HS2[Long ==>> E] = {
+  def lookupEphemerisE[E](target: HorizonsDesignation, site: Site, start: Date, stop: Date, elems: Int)(ef: EphemerisEntry => Option[E]): HS2[Long ==>> E] =
+    lookupEphemerisE(HORIZONS_URL, ephemerisCache, target, site, start, stop, elems)(ef)
+
+  // Looks up the ephemeris from the given HORIZONS endpoint, through the cache if any
+  private[backend] def lookupEphemerisE[E](url: String, cache: Option[EphemerisCache], target: HorizonsDesignation, site: Site, start: Date, stop: Date, elems: Int)(ef: EphemerisEntry => Option[E]): HS2[Long ==>> E] = {
 
     def formatDate(date: Date): String =
       s"'${DateFormat.format(date.toInstant)}'"
 
-    def toEphemeris(r: HorizonsReply): Long ==>> E =
+    def toEphemeris(es: List[EphemerisEntry]): Long ==>> E =
       ==>>.fromList {
-        r.getEphemeris.asScala.toList.map { e =>
+        es.map { e =>
           ef(e).strengthL(e.timestamp)
         }.collect { case Some(p) => p }
       }
@@ -165,7 +179,7 @@ object HorizonsService2 {
     // requested, or fewer for very short timespans (no more than 1/min)
     val stepSize = 1L max (stop.getTime - start.getTime) / (1000L * 60 * elems)
 
-    val queryParams: Map[String, String] =
+    def queryParams(start: Date, stop: Date): Map[String, String] =
       Map(
         FORMAT           -> "text",
         EPHEMERIS        -> YES,
@@ -188,11 +202,18 @@ object HorizonsService2 {
       case MajorBody(_)        => HorizonsReply.ReplyType.MAJOR_PLANET
     }
 
-    def buildEphemeris(m: ResponseStream): IO[Long ==>> E]  =
-      IO(CgiReplyBuilder.readEphemeris(m.in, replyType, m.charset.displayName())).map(toEphemeris)
+    def readEntries(m: ResponseStream): IO[List[EphemerisEntry]] =
+      IO(CgiReplyBuilder.readEphemeris(m.in, replyType, m.charset.displayName())).map(_.getEphemeris.asScala.toList)
+
+    def fetch(start: Long, stop: Long): HS2[List[EphemerisEntry]] =
+      horizonsRequest(url, queryParams(new Date(start), new Date(stop)))(readEntries)
+
+    val entries = cache.fold(fetch(start.getTime, stop.getTime)) { c =>
+      c.lookup(EphemerisCache.Key(target, site, stepSize), start.getTime, stop.getTime)(fetch)
+    }
 
     // And finally
-    horizonsRequest(queryParams)(buildEphemeris).ensure(EphemerisEmpty)(_.size > 0)
+    entries.map(toEphemeris).ensure(EphemerisEmpty)(_.size > 0)
   }
 
   ///
@@ -359,7 +380,7 @@ object HorizonsService2 {
 
   // Construct a program thet performs a HORIZONS request and yields the response as lines of text.
   private def horizonsRequestLines(params: Map[String, String]): HS2[List[String]] =
-    horizonsRequest(params) { method =>
+    horizonsRequest(HORIZONS_URL, params) { method =>
       IO {
         val s = Source.fromInputStream(method.in, method.charset.displayName())
         try     s.getLines.toList
@@ -383,8 +404,11 @@ object HorizonsService2 {
       val queryParams = params.map { case (k, v) => s"$k=${URLEncoder.encode(v, ConnectionCharset.default.displayName())}" }.mkString("&")
       val url: URL = new URL(s"$baseURL?$queryParams")
       LOG.info(s"Horizons request $url")
-      val conn = url.openConnection().asInstanceOf[HttpsURLConnection]
-      conn.setHostnameVerifier(hostnameVerifier)
+      val conn = url.openConnection()
+      conn match {
+        case https: HttpsURLConnection => https.setHostnameVerifier(hostnameVerifier)
+        case _                         =>
+      }
       conn.setReadTimeout(timeout)
       ConnectionCharset.set(conn)
       ResponseStream(conn.getInputStream, ConnectionCharset.get(conn))
@@ -393,9 +417,9 @@ object HorizonsService2 {
 
   // Construct a program that performs a HORIZONS request and transforms the responses with the
   // provided function.
-  private def horizonsRequest[A](params: Map[String, String])(f: ResponseStream => IO[A]): HS2[A] =
+  private def horizonsRequest[A](url: String, params: Map[String, String])(f: ResponseStream => IO[A]): HS2[A] =
     EitherT {
-      IO(unsafeReadRemote(CgiHorizonsConstants.HORIZONS_URL, params)).flatMap(f).catchSomeLeft {
+      IO(unsafeReadRemote(url, params)).flatMap(f).catchSomeLeft {
         case ex: HorizonsException => HorizonsError(ex).some
         case ex: IOException       => HorizonsError(HorizonsException.create(ex)).some
       }
@@ -0,0 +1,198 @@
+package edu.gemini.horizons.server.backend
+
+import java.net.{InetSocketAddress, URLDecoder}
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.{Files, Path}
+import java.text.SimpleDateFormat
+import java.time.Instant
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.{Date, Locale, TimeZone}
+
+import com.sun.net.httpserver.{HttpExchange, HttpHandler, HttpServer}
+import edu.gemini.horizons.api.EphemerisEntry
+import edu.gemini.horizons.server.backend.CgiHorizonsConstants._
+import edu.gemini.spModel.core.{HorizonsDesignation, Site}
+import org.specs2.mutable.Specification
+import org.specs2.specification.AfterAll
+
+import scala.collection.JavaConverters._
+import scala.concurrent.duration._
+import scalaz._
+import Scalaz._
+
+/**
+ * Looks up ephemerides through the cache from a local HTTP server standing in for the HORIZONS
+ * CGI interface, which answers with rows computed from their time so that they can be compared.
+ */
+class EphemerisCacheSpec extends Specification with AfterAll {
+  sequential
+
+  import HorizonsService2.{HS2Error, lookupEphemerisE}
+
+  private val Hour   = 60L * 60 * 1000
+  private val Day    = 24 * Hour
+  private val T0     = Instant.parse("2023-02-01T00:00:00Z").toEpochMilli
+  private val Target = HorizonsDesignation.MajorBody(606)
+  private val Absent = HorizonsDesignation.MajorBody(999) // answered without rows
+
+  private val server   = HttpServer.create(new InetSocketAddress("localhost", 0), 0)
+  private val requests = new ConcurrentLinkedQueue[(Long, Long)]()
+
+  // Times are in UTC both ways
+  private def utc(pattern: String): SimpleDateFormat = {
+    val f = new SimpleDateFormat(pattern, Locale.US)
+    f.setTimeZone(TimeZone.getTimeZone("UTC"))
+    f
+  }
+  private val requestFormat = utc("''yyyy-MMM-dd HH:mm:ss''")
+  private val replyFormat   = utc("yyyy-MMM-dd HH:mm:ss.SSS")
+
+  // A row of the observer table with quantities 1,3,8,9
+  private def row(t: Long): String = {
+    val minutes = t / 60000
+    val ra      = (minutes % 1440) / 60.0
+    val dec     = 10 + (minutes % 1000) / 100.0
+    def sexagesimal(v: Double): String = {
+      val d = v.toInt
+      val m = ((v - d) * 60).toInt
+      "%02d %02d %07.4f".formatLocal(Locale.US, d, m, ((v - d) * 60 - m) * 60)
+    }
+    s" ${replyFormat.format(new Date(t))}     ${sexagesimal(ra)} +${sexagesimal(dec)}  1.23  -4.56  1.234  0.123  14.5"
+  }
+
+  server.createContext("/horizons.api", new HttpHandler {
+    override def handle(x: HttpExchange): Unit = {
+      val params = x.getRequestURI.getRawQuery.split('&').map(_.split("=", 2)).map(a => a(0) -> URLDecoder.decode(a(1), "UTF-8")).toMap
+      val start  = requestFormat.parse(params(START_TIME)).getTime
+      val stop   = requestFormat.parse(params(STOP_TIME)).getTime
+      val step   = params(STEP_SIZE).stripSuffix("m").toLong * 60000
+      requests.add((start, stop))
+
+      val rows   = if (params(COMMAND).contains(Absent.queryString)) Iterator.empty
+                   else Iterator.iterate(start)(_ + step).takeWhile(_ <= stop).map(row)
+      val body   = (List("*******************************************************************************",
+                         " Revised: Jul 31, 2013             Titan / (Saturn)                  606",
+                         "*******************************************************************************",
+                         "$$SOE") ++ rows ++ List("$$EOE")).mkString("\n").getBytes(UTF_8)
+      x.getResponseHeaders.add("Content-Type", "text/plain; charset=UTF-8")
+      x.sendResponseHeaders(200, body.length)
+      x.getResponseBody.write(body)
+      x.close()
+    }
+  })
+  server.start()
+
+  override def afterAll(): Unit = server.stop(0)
+
+  private val url = s"http://localhost:${server.getAddress.getPort}/horizons.api"
+
+  private def newCache(dir: Path, maxBytes: Long = EphemerisCache.DefaultMaxBytes, maxAge: FiniteDuration = 1.day): EphemerisCache =
+    new EphemerisCache(dir, maxBytes, maxAge)
+
+  // 240 elements over 10 days, i.e. one per hour
+  private def lookup(cache: Option[EphemerisCache], start: Long, target: HorizonsDesignation = Target): HS2Error \/ (Long ==>> EphemerisEntry) =
+    lookupEphemerisE(url, cache, target, Site.GS, new Date(start), new Date(start + 10 * Day), 240)(_.some).run.unsafePerformIO
+
+  private def fetched(): List[(Long, Long)] = {
+    val rs = requests.asScala.toList
+    requests.clear()
+    rs
+  }
+
+  private def coords(r: HS2Error \/ (Long ==>> EphemerisEntry)): List[(Long, Double, Double)] =
+    r.toList.flatMap(_.toList.map { case (t, e) => (t, e.getCoordinates.getRaDeg, e.getCoordinates.getDecDeg) })
+
+  "EphemerisCache" should {
+
+    "compute the missing parts of a range" in {
+      EphemerisCache.missing(Nil, 0, 10) must_== List((0L, 10L))
+      EphemerisCache.missing(List((2L, 4L), (6L, 8L)), 0, 10) must_== List((0L, 2L), (4L, 6L), (8L, 10L))
+      EphemerisCache.missing(List((0L, 5L), (5L, 12L)), 1, 10) must_== Nil
+      EphemerisCache.missing(List((3L, 12L)), 1, 10) must_== List((1L, 3L))
+    }
+
+    "merge overlapping ranges" in {
+      EphemerisCache.merge(List((6L, 8L), (0L, 2L), (1L, 4L), (4L, 5L))) must_== List((0L, 5L), (6L, 8L))
+    }
+
+    "answer repeated lookups without fetching again" in {
+      val cache  = newCache(Files.createTempDirectory("ephemeris"))
+      val direct = lookup(None, T0)
+      fetched().length must_== 1
+
+      // the fetched range is widened by a step on each side
+      val first  = lookup(Some(cache), T0)
+      fetched() must_== List((T0 - Hour, T0 + 10 * Day + Hour))
+      val second = lookup(Some(cache), T0)
+      fetched() must_== Nil
+
+      coords(direct).length must_== 241
+      coords(first) must_== coords(direct)
+      coords(second) must_== coords(direct)
+    }
+
+    "only fetch the missing part of an overlapping range" in {
+      val cache = newCache(Files.createTempDirectory("ephemeris"))
+      lookup(Some(cache), T0)
+      fetched()
+
+      // the first range is cached up to a step past its end, the gap is widened by a step
+      val shifted = lookup(Some(cache), T0 + 5 * Day)
+      fetched() must_== List((T0 + 10 * Day, T0 + 15 * Day + Hour))
+      val direct  = lookup(None, T0 + 5 * Day)
+      fetched()
+      coords(shifted) must_== coords(direct)
+
+      // The whole span is covered now
+      lookup(Some(cache), T0 + 2 * Day)
+      fetched() must_== Nil
+    }
+
+    "fetch again ranges that came back empty" in {
+      val cache = newCache(Files.createTempDirectory("ephemeris"))
+      lookup(Some(cache), T0, Absent)
+      fetched().length must_== 1
+      lookup(Some(cache), T0, Absent)
+      fetched().length must_== 1
+      cache.size must_== 0L
+    }
+
+    "keep the ephemerides across sessions" in {
+      val dir = Files.createTempDirectory("ephemeris")
+      val first = lookup(Some(newCache(dir)), T0)
+      fetched()
+
+      val again = lookup(Some(newCache(dir)), T0)
+      fetched() must_== Nil
+      coords(again) must_== coords(first)
+    }
+
+    "fetch again once expired" in {
+      val cache = newCache(Files.createTempDirectory("ephemeris"), maxAge = 1.milli)
+      lookup(Some(cache), T0)
+      fetched()
+      Thread.sleep(10)
+      lookup(Some(cache), T0)
+      fetched() must_== List((T0 - Hour, T0 + 10 * Day + Hour))
+    }
+
+    "evict the least recently used ephemerides beyond the size bound" in {
+      val cache = newCache(Files.createTempDirectory("ephemeris"))
+      lookup(Some(cache), T0)
+      val one   = cache.size
+      cache.clear()
+
+      // room for a bit more than one ephemeris
+      val bounded = newCache(Files.createTempDirectory("ephemeris"), maxBytes = one + one / 2)
+      lookup(Some(bounded), T0)
+      lookup(Some(bounded), T0, HorizonsDesignation.MajorBody(607))
+      bounded.size must be_<=(one + one / 2)
+      fetched()
+
+      lookup(Some(bounded), T0, HorizonsDesignation.MajorBody(607))
+      fetched() must_== Nil
+      lookup(Some(bounded), T0)
+      fetched() must_== List((T0 - Hour, T0 + 10 * Day + Hour))
+    }
+  }
+}
@@ -3,8 +3,10 @@ package edu.gemini.model.p1.pdf
 import scala.util.Try
 import xml.{Node, XML}
 import java.io._
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{Callable, Executors, ThreadFactory}
 
-import javax.xml.transform.URIResolver
+import javax.xml.transform.{Templates, URIResolver}
 import javax.xml.transform.stream.StreamSource
 import edu.gemini.util.pdf.PDF
 
@@ -150,6 +152,58 @@ object P1PDF {
     "gsnoi"  -> GeminiDefaultNoInvestigatorsList,
     "us"     -> NOIRLabDARP)
 
+  // Shared by all transformations so that each stylesheet is compiled only once
+  private lazy val pdf = new PDF(Some(P1PdfUriResolver))
+
+  private def using[A, B](resource: => A)(cleanup: A => Unit)(code: A => B): Option[B] = {
+    try {
+      val r = resource
+      try { Some(code(r)) }
+      finally {
+          cleanup(r)
+      }
+    } catch {
+      case _: Exception => None
+    }
+  }
+
+  /** The compiled stylesheet of a template, it is compiled the first time it is used. */
+  private def stylesheet(template: Template): Option[Templates] =
+    using(getClass.getResourceAsStream(template.location))(_.close) { xslStream =>
+      pdf.templates(template.location)(new StreamSource(xslStream))
+    }
+
+  private val threadFactory = new ThreadFactory {
+    private val threadNumber = new AtomicInteger(1)
+    private val defaultThreadFactory = Executors.defaultThreadFactory()
+
+    override def newThread(r: Runnable): Thread = {
+      val t = defaultThreadFactory.newThread(r)
+      t.setDaemon(true)
+      t.setName(s"P1 PDF - ${threadNumber.getAndIncrement()}")
+      t
+    }
+  }
+
+  /**
+   * Creates the pdfs for a list of xml and pdf file pairs with the same template, rendering up to
+   * `parallelism` of them at the same time. Each pdf must be written to a different file.
+   * Returns the errors by xml file for the ones that could not be created.
+   */
+  def createFromFiles(files: List[(File, File)], template: Template, parallelism: Int): Map[File, Throwable] = {
+    val pool = Executors.newFixedThreadPool(parallelism max 1, threadFactory)
+    try {
+      val results = files.map { case (xmlFile, pdfFile) =>
+        xmlFile -> pool.submit(new Callable[Throwable \/ Unit] {
+          override def call(): Throwable \/ Unit = \/.fromTryCatchNonFatal(createFromFile(xmlFile, template, pdfFile))
+        })
+      }
+      results.flatMap { case (xmlFile, result) => result.get.swap.toOption.map(xmlFile -> _) }.toMap
+    } finally {
+      pool.shutdown()
+    }
+  }
+
   /**
    * Creates a pdf from a given xml file and template and writes the resulting pdf file to the output folder.
    * This method also merges the attached pdf file to the end of the resulting pdf.
@@ -177,28 +231,14 @@ object P1PDF {
 
 
   def createFromNode(xml: Node, attachments: List[File], template: Template, out: File, workingDir: Option[File]): Unit = {
-    val pdf = new PDF(Some(P1PdfUriResolver))
-
-    def using[A, B](resource: => A)(cleanup: A => Unit)(code: A => B): Option[B] = {
-      try {
-        val r = resource
-        try { Some(code(r)) }
-        finally {
-            cleanup(r)
-        }
-      } catch {
-        case _: Exception => None
-      }
-    }
 
-    def runTransformation(destination: File, template: Template): Option[File] = {
-      using(getClass.getResourceAsStream(template.location))(_.close) { xslStream =>
-        val xmlSource = new StreamSource(new StringReader(xml.toString()))
-        val xslSource = new StreamSource(xslStream)
-        pdf.transformXslFo(xmlSource, xslSource, destination, template.parameters)
-        destination
+    def runTransformation(destination: File, template: Template): Option[File] =
+      stylesheet(template).flatMap { xsl =>
+        using(new StringReader(xml.toString()))(_.close) { reader =>
+          pdf.transformXslFo(new StreamSource(reader), xsl, destination, template.parameters)
+          destination
+        }
       }
-    }
 
     val parentFilePath = Option(out.getParentFile).getOrElse("")
     val intermediateOutputFile = new File(parentFilePath + File.separator + "_" + out.getName)
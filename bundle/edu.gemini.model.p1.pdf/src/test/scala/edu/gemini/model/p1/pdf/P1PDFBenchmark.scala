@@ -0,0 +1,65 @@
+package edu.gemini.model.p1.pdf
+
+import java.io.File
+import java.nio.file.{Files, StandardCopyOption}
+
+/**
+ * Renders the sample proposals used by the template tests with the existing templates, first one
+ * at a time to report the latency of each document and then as a batch on all cores to report the
+ * throughput. The first document of each template includes compiling its stylesheet.
+ * Run with `test:runMain edu.gemini.model.p1.pdf.P1PDFBenchmark [rounds]`.
+ */
+object P1PDFBenchmark {
+
+  private val Templates = List(P1PDF.GeminiStandard, P1PDF.GeminiDefaultListAtTheEnd, P1PDF.NOIRLabDARP)
+
+  private val Proposals = List(
+    "proposal_no_too.xml",
+    "proposal_rapid_too.xml",
+    "proposal_fast_turnaround.xml",
+    "proposal_with_gn_and_gs.xml",
+    "proposal_with_schedule.xml",
+    "proposal_with_visitor_gn_and_gs.xml",
+    "proposal_with_itac_and_several_comments.xml",
+    "large_program.xml")
+
+  private def ms(nanos: Long): Double = nanos / 1e6
+
+  def main(args: Array[String]): Unit = {
+    val rounds = args.headOption.map(_.toInt).getOrElse(10)
+    val dir    = Files.createTempDirectory("p1pdf").toFile
+
+    // the proposals copied as files, several times to make up a corpus
+    val corpus = for {
+      r <- (1 to rounds).toList
+      p <- Proposals
+    } yield {
+      val f = new File(dir, s"$r-$p")
+      Files.copy(getClass.getResourceAsStream(p), f.toPath, StandardCopyOption.REPLACE_EXISTING)
+      f
+    }
+    def pdfFor(xml: File): File = new File(dir, xml.getName.replace(".xml", ".pdf"))
+
+    Templates.foreach { t =>
+      println(s"${t.name}, ${corpus.length} documents")
+
+      val latencies = corpus.map { xml =>
+        val t0 = System.nanoTime
+        P1PDF.createFromFile(xml, t, pdfFor(xml))
+        System.nanoTime - t0
+      }
+      val sorted = latencies.tail.sorted
+      println(f"    first ${ms(latencies.head)}%8.1f ms, then median ${ms(sorted(sorted.length / 2))}%8.1f ms, max ${ms(sorted.last)}%8.1f ms")
+      println(f"    one at a time ${corpus.length / (latencies.sum / 1e9)}%8.1f documents/s")
+
+      val threads = Runtime.getRuntime.availableProcessors
+      val t0      = System.nanoTime
+      val errors  = P1PDF.createFromFiles(corpus.map(xml => (xml, pdfFor(xml))), t, threads)
+      val s       = (System.nanoTime - t0) / 1e9
+      println(f"    $threads%2d threads     ${corpus.length / s}%8.1f documents/s, ${errors.size} errors")
+    }
+
+    dir.listFiles.foreach(_.delete)
+    dir.delete
+  }
+}
@@ -3,7 +3,8 @@ package edu.gemini.model.p1.pdf
 import org.specs2.matcher.XmlMatchers
 import org.specs2.mutable.Specification
 import javax.xml.transform.stream.{StreamResult, StreamSource}
-import java.io.StringWriter
+import java.io.{File, StringWriter}
+import java.nio.file.Files
 import javax.xml.transform.TransformerFactory
 import edu.gemini.model.p1.pdf.P1PDF.{InvestigatorsListOption, Template, P1PdfUriResolver}
 import scala.xml.XML
@@ -293,6 +294,23 @@ class P1TemplatesSpec extends Specification with XmlMatchers {
     }
   }
 
+  "P1PDF.createFromFiles" should {
+    "render several proposals concurrently with a shared stylesheet" in {
+      val dir = Files.createTempDirectory("p1pdf").toFile
+      val files = List("proposal_no_too.xml", "proposal_rapid_too.xml", "proposal_with_gn_and_gs.xml", "large_program.xml").map { p =>
+        val xml = new File(dir, p)
+        Files.copy(getClass.getResourceAsStream(p), xml.toPath)
+        (xml, new File(dir, p.replace(".xml", ".pdf")))
+      }
+      val errors = P1PDF.createFromFiles(files, P1PDF.GeminiDefaultListAtTheEnd, 4)
+
+      errors must beEmpty
+      files.map { case (_, pdf) => new String(Files.readAllBytes(pdf.toPath), "ISO-8859-1").take(5) } must_== files.map(_ => "%PDF-")
+      // The intermediate files are removed
+      dir.list.toList.filter(_.startsWith("_")) must beEmpty
+    }
+  }
+
   def transformProposal(proposal: String, template: Template = P1PDF.GeminiStandard) = {
     val xslStream = getClass.getResourceAsStream(template.location)
 
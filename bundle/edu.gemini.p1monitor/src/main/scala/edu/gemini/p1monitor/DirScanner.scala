@@ -1,55 +1,212 @@
 package edu.gemini.p1monitor
 
-import java.util.{TimerTask, Timer}
-
 import config.MonitoredDirectory
-import java.io.File
+import java.io.{File, IOException}
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file._
+import java.nio.file.StandardWatchEventKinds._
+import java.util.concurrent.TimeUnit
 import collection.mutable
-import java.util.logging.Logger
+import java.util.logging.{Level, Logger}
+import scala.collection.JavaConverters._
 import scala.sys.process._
 import scala.util.Try
 
-class DirScanner(dir: MonitoredDirectory) {
+/**
+ * Watches a directory and informs the listener of the files created, modified and deleted in batches.
+ * Changes are detected with a WatchService, a batch is sent once no more changes have been seen for
+ * `quietPeriod` ms (or after `maxDelay` ms if files keep changing) so that a proposal and its attachments,
+ * which are written one after the other, normally arrive in the same batch. If the file system doesn't
+ * support watching, the directory is listed every `pollPeriod` ms instead.
+ *
+ * The files seen are kept in an index in the directory, it is written after the listener has processed
+ * each batch. At start the directory is compared against the index so that files that arrived while
+ * the monitor was down are processed, without processing again the ones it already knew about.
+ * Without an index, the files already present at start are recorded but not processed.
+ */
+class DirScanner(dir: MonitoredDirectory, pollPeriod: Long = 10000, quietPeriod: Long = 2000, maxDelay: Long = 10000) {
   val LOG = Logger.getLogger(classOf[DirScanner].getName)
 
+  // Only accessed by the scanner thread
   val files: mutable.Map[String, FileRecord] = new mutable.HashMap[String, FileRecord]()
 
-  case class Stop(listener: DirListener)
+  @volatile private var running = false
+  @volatile private var watcher: Option[WatchService] = None
+  private var thread: Option[Thread] = None
 
-  val timer = new Timer
+  private def indexFile: Path = dir.dir.toPath.resolve(DirScanner.IndexName)
 
-  def startMonitoring(listener: DirListener): Unit = {
-    fullScan(listener)
-    timer.schedule(new TimerTask {
-      override def run(): Unit = {
-        update(listener)
-      }
-    }, 5000, 10000)
+  def startMonitoring(listener: DirListener): Unit = synchronized {
+    if (!running) {
+      running = true
+      val t = new Thread(new Runnable {
+        override def run(): Unit = scan(listener)
+      }, s"P1 Monitor Scanner - ${dir.name}")
+      t.setDaemon(true)
+      t.start()
+      thread = Some(t)
+    }
+  }
+
+  def stopMonitoring(): Unit = synchronized {
+    running = false
+    watcher.foreach(w => Try(w.close()))
+    thread.foreach(_.interrupt())
+    thread = None
   }
 
-  def stopMonitoring(): Unit = {
-    timer.cancel()
+  private def scan(listener: DirListener): Unit =
+    try {
+      start()
+      while (running) {
+        watch() match {
+          case Some(w) =>
+            // Catch up with the changes made before the directory was watched
+            update(listener)
+            watchLoop(w, listener)
+          case None    =>
+            pollLoop(listener)
+        }
+      }
+    } catch {
+      case _: InterruptedException | _: ClosedWatchServiceException if !running => // stopped
+      case e: Exception => LOG.log(Level.SEVERE, s"Stopped monitoring directory ${dir.dir}", e)
+    } finally {
+      closeWatcher()
+    }
+
+  private def closeWatcher(): Unit = {
+    watcher.foreach(w => Try(w.close()))
+    watcher = None
   }
 
-  private def fullScan(listener: DirListener): Unit = {
+  private def start(): Unit = {
     createDirIfNeeded()
-    LOG.info(s"Run a full scan on directory ${dir.dir}")
-    files.clear()
+    readIndex() match {
+      case Some(index) =>
+        LOG.info(s"Read the index of directory ${dir.dir} with ${index.size} files")
+        files.clear()
+        files ++= index
+      case None        =>
+        fullScan()
+        writeIndex()
+    }
+  }
+
+  private def watch(): Option[WatchService] =
+    try {
+      val w = dir.dir.toPath.getFileSystem.newWatchService()
+      try {
+        dir.dir.toPath.register(w, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE)
+      } catch {
+        case e: Exception =>
+          w.close()
+          throw e
+      }
+      watcher = Some(w)
+      Some(w)
+    } catch {
+      case e @ (_: IOException | _: UnsupportedOperationException) =>
+        LOG.log(Level.WARNING, s"Cannot watch directory ${dir.dir}, it will be polled", e)
+        None
+    }
+
+  private def pollLoop(listener: DirListener): Unit =
+    while (running) {
+      update(listener)
+      Thread.sleep(pollPeriod)
+    }
+
+  /**
+   * Processes the changes in batches until the directory can't be watched anymore, e.g. if it is removed.
+   */
+  private def watchLoop(w: WatchService, listener: DirListener): Unit = {
+    var valid = true
+    while (running && valid) {
+      // Wait for the first change, but check the directory once in a while in case it was removed
+      Option(w.poll(pollPeriod, TimeUnit.MILLISECONDS)) match {
+        case None      =>
+          valid = dir.dir.isDirectory
+        case Some(key) =>
+          val changed  = mutable.LinkedHashSet.empty[String]
+          val deadline = System.currentTimeMillis + maxDelay
+          var overflow = false
+
+          // Collect the changes until the directory is quiet
+          def drain(k: WatchKey): Unit = {
+            k.pollEvents().asScala.foreach { e =>
+              if (e.kind == OVERFLOW) overflow = true
+              else changed += e.context.asInstanceOf[Path].getFileName.toString
+            }
+            valid = k.reset() && valid
+          }
+
+          drain(key)
+          var next = Option(w.poll(quietPeriod, TimeUnit.MILLISECONDS))
+          while (next.isDefined) {
+            next.foreach(drain)
+            val left = deadline - System.currentTimeMillis
+            next = if (left > 0) Option(w.poll(left min quietPeriod, TimeUnit.MILLISECONDS)) else None
+          }
+
+          if (overflow || !valid) update(listener)
+          else update(listener, changed.filterNot(isIndexFile))
+      }
+    }
+    if (running) {
+      LOG.warning(s"Directory ${dir.dir} cannot be watched anymore, watching it again")
+      closeWatcher()
+      createDirIfNeeded()
+    }
+  }
+
+  private def isIndexFile(name: String): Boolean = name.startsWith(DirScanner.IndexName)
+
+  private def listDir(): Array[File] =
     Option(dir.dir.listFiles()) match {
       case Some(list) =>
-        list.foreach {
-          file => {
-            files += ((file.getName, new FileRecord(file, file.lastModified())))
-          }
-        }
-      case None =>
+        list.filterNot(f => isIndexFile(f.getName))
+      case None       =>
         // This may happen if e.g. the permissions of the monitored dirs aren't correct
         // we'll consider this a fatal error
         LOG.severe(s"Cannot read directory ${dir.dir}")
         sys.exit(1)
     }
+
+  private def fullScan(): Unit = {
+    LOG.info(s"Run a full scan on directory ${dir.dir}")
+    files.clear()
+    listDir().foreach {
+      file => {
+        files += ((file.getName, new FileRecord(file, file.lastModified())))
+      }
+    }
   }
 
+  private def readIndex(): Option[Map[String, FileRecord]] =
+    Try {
+      Files.readAllLines(indexFile, UTF_8).asScala.toList.flatMap { line =>
+        line.split('\t') match {
+          case Array(name, time) => Try(name -> FileRecord(new File(dir.dir, name), time.toLong)).toOption
+          case _                 => None
+        }
+      }.toMap
+    }.toOption
+
+  // Replace the index atomically so it is never left half written
+  private def writeIndex(): Unit =
+    try {
+      val tmp = Files.createTempFile(dir.dir.toPath, DirScanner.IndexName, ".tmp")
+      try {
+        Files.write(tmp, files.map { case (name, r) => s"$name\t${r.lastUpdated}" }.asJava, UTF_8)
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+      } finally {
+        Files.deleteIfExists(tmp)
+      }
+    } catch {
+      case e: IOException => LOG.log(Level.WARNING, s"Cannot write the index of directory ${dir.dir}", e)
+    }
+
   private def executeAction(cmd: Seq[String], errorMsg: => String): Unit = {
     Some(cmd.mkString(" ").!).filter(_ != 0).foreach(_ => LOG.warning(errorMsg))
   }
@@ -68,51 +225,53 @@ class DirScanner(dir: MonitoredDirectory) {
     }
   }
 
+  /**
+   * Compares the whole directory against the files seen.
+   */
   private def update(listener: DirListener): Unit = {
+    createDirIfNeeded()
+    val present = listDir().map(_.getName).toSet
+    update(listener, present ++ files.keySet)
+  }
+
+  /**
+   * Compares the given files against the files seen and sends the differences to the listener.
+   */
+  private def update(listener: DirListener, names: Iterable[String]): Unit = {
     var updatedFiles: List[File] = Nil
     var deletedFiles: List[File] = Nil
     var newFiles: List[File] = Nil
 
-    createDirIfNeeded()
-    Option(dir.dir.listFiles()) match {
-      case Some(list) =>
-        list.foreach {
-          file => {
-            files.get(file.getName).foreach {
-              //if file is updated more recently than info we had, add to updatedFiles
-              case f: FileRecord if f.lastUpdated < file.lastModified() =>
-                files += ((file.getName, new FileRecord(file, file.lastModified()))) //update our copy
-                updatedFiles = updatedFiles :+ file
-              case _ =>
-            }
-            //if file wasn't stored, add it to newFiled
-            if (files.get(file.getName).isEmpty) {
-              files += ((file.getName, new FileRecord(file, file.lastModified()))) //update our copy
-              newFiles = newFiles :+ file
-            }
-          }
-        }
-      case None       =>
-        // This may happen if e.g. the permissions of the monitored dirs aren't correct
-        // we'll consider this a fatal error
-        LOG.severe(s"Cannot read directory ${dir.dir}")
-        sys.exit(1)
-    }
-    val removed = files.keySet -- (dir.dir.listFiles() map {
-      f => f.getName
-    })
-    //if file is stored, but not on new list, add it to deletedFiles
-    if (removed.nonEmpty) {
-      deletedFiles = removed.map {
-        fileName => files.remove(fileName).get.file //remove file and add to deleted
-      }.toList
+    names.toList.sorted.foreach { name =>
+      val file = new File(dir.dir, name)
+      val lastModified = file.lastModified()
+      (files.get(name), file.exists()) match {
+        //if file wasn't stored, add it to newFiles
+        case (None, true)                                     =>
+          files += ((name, new FileRecord(file, lastModified))) //update our copy
+          newFiles = newFiles :+ file
+        //if file is updated more recently than info we had, add to updatedFiles
+        case (Some(f), true) if f.lastUpdated < lastModified =>
+          files += ((name, new FileRecord(file, lastModified))) //update our copy
+          updatedFiles = updatedFiles :+ file
+        //if file is stored, but not present anymore, add it to deletedFiles
+        case (Some(f), false)                                 =>
+          files.remove(name)
+          deletedFiles = deletedFiles :+ f.file
+        case _                                                =>
+      }
     }
     if (newFiles.nonEmpty || updatedFiles.nonEmpty || deletedFiles.nonEmpty) {
       listener.dirChanged(new DirEvent(dir, newFiles, deletedFiles, updatedFiles))
+      writeIndex()
     }
     LOG.fine(s"Dir scan produced: newFiles: $newFiles, updatedFiles: $updatedFiles, deletedFiles: $deletedFiles")
   }
 }
 
+object DirScanner {
+  /** Name of the index of the files seen, kept in the monitored directory */
+  val IndexName = ".p1monitor.index"
+}
 
 case class FileRecord(file: File, lastUpdated: Long)
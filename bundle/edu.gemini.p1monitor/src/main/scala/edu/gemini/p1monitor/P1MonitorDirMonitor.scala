@@ -2,6 +2,8 @@ package edu.gemini.p1monitor
 
 import config.P1MonitorConfig
 import java.io.{File, FileInputStream, FileOutputStream}
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent._
 import java.util.logging.{Level, Logger}
 
 import edu.gemini.model.p1.pdf.P1PDF
@@ -17,6 +19,20 @@ class P1MonitorDirMonitor(cfg: P1MonitorConfig) extends DirListener {
     monDir => new DirScanner(monDir)
   }
 
+  // Proposals are processed in parallel, when the queue is full the directory scanner processes them itself
+  private val workers: ExecutorService = new ThreadPoolExecutor(
+    P1MonitorDirMonitor.Workers, P1MonitorDirMonitor.Workers, 0L, TimeUnit.MILLISECONDS,
+    new ArrayBlockingQueue[Runnable](P1MonitorDirMonitor.QueueCapacity),
+    new ThreadFactory {
+      private val threadNumber = new AtomicInteger(1)
+      override def newThread(r: Runnable): Thread = {
+        val t = new Thread(r, s"P1 Monitor Worker - ${threadNumber.getAndIncrement()}")
+        t.setDaemon(true)
+        t
+      }
+    },
+    new ThreadPoolExecutor.CallerRunsPolicy)
+
   def startMonitoring(): Unit = {
     dirScanner.foreach {
       _.startMonitoring(this)
@@ -111,10 +127,22 @@ class P1MonitorDirMonitor(cfg: P1MonitorConfig) extends DirListener {
       }
 
     //For every XML file, try to get the matching PDF and create the PDF summary, if something fails, just continue
-    //with just the XML
-    val fileGroups: Traversable[ProposalFileGroup] = evt.newFiles.collect {
-      case xml if xml.getName.endsWith(".xml") => copyAndProcessFile(xml)
-    }.flatten
+    //with just the XML. The files are processed in parallel
+    val processing = evt.newFiles.collect {
+      case xml if xml.getName.endsWith(".xml") =>
+        xml -> workers.submit(new Callable[Iterable[ProposalFileGroup]] {
+          override def call(): Iterable[ProposalFileGroup] = copyAndProcessFile(xml)
+        })
+    }
+    val fileGroups: Traversable[ProposalFileGroup] = processing.flatMap { case (xml, result) =>
+      try {
+        result.get
+      } catch {
+        case ex: ExecutionException =>
+          LOG.log(Level.SEVERE, "Problem processing file " + xml.getName, ex.getCause)
+          Nil
+      }
+    }
 
     //notify of all the new proposals
     fileGroups.foreach {
@@ -143,4 +171,12 @@ class P1MonitorDirMonitor(cfg: P1MonitorConfig) extends DirListener {
 
 }
 
+object P1MonitorDirMonitor {
+  /** Number of proposals processed at the same time */
+  val Workers: Int = Runtime.getRuntime.availableProcessors max 2
+
+  /** Number of proposals waiting to be processed */
+  val QueueCapacity: Int = 100
+}
+
 case class ProposalFileGroup(xml: Option[File], pdf1: Option[File], pdf2: Option[File], summary: Option[File])
@@ -0,0 +1,79 @@
+package edu.gemini.p1monitor
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.{LinkedBlockingQueue, TimeUnit}
+
+import edu.gemini.model.p1.pdf.P1PDF
+import edu.gemini.p1monitor.config.MonitoredDirectory
+import org.scalatest.{FlatSpec, Matchers}
+
+class DirScannerSpec extends FlatSpec with Matchers {
+
+  private class Events extends DirListener {
+    val queue = new LinkedBlockingQueue[DirEvent]()
+    override def dirChanged(evt: DirEvent): Unit = queue.put(evt)
+    def next: Option[DirEvent] = Option(queue.poll(10, TimeUnit.SECONDS))
+    def none: Boolean = Option(queue.poll(1, TimeUnit.SECONDS)).isEmpty
+  }
+
+  private def monitored(dir: File): MonitoredDirectory =
+    MonitoredDirectory("test", dir, None, None, Nil, Nil, Nil, P1PDF.GeminiStandard)
+
+  private def scanner(dir: File): DirScanner =
+    new DirScanner(monitored(dir), pollPeriod = 500, quietPeriod = 300, maxDelay = 3000)
+
+  private def touch(dir: File, name: String): File = {
+    val f = new File(dir, name)
+    Files.write(f.toPath, name.getBytes("UTF-8"))
+    f
+  }
+
+  "DirScanner" should "send the files written together in one batch" in {
+    val dir    = Files.createTempDirectory("p1monitor").toFile
+    touch(dir, "present.xml")
+    val events = new Events
+    val s      = scanner(dir)
+    s.startMonitoring(events)
+    try {
+      // the files present at start without an index are not new
+      events.none shouldBe true
+
+      touch(dir, "p1.xml")
+      touch(dir, "p1.pdf")
+      val evt = events.next
+      evt.map(_.newFiles.map(_.getName).toSet) shouldBe Some(Set("p1.xml", "p1.pdf"))
+
+      new File(dir, "p1.pdf").delete()
+      events.next.map(_.deletedFiles.map(_.getName).toList) shouldBe Some(List("p1.pdf"))
+    } finally {
+      s.stopMonitoring()
+    }
+  }
+
+  it should "only send the files that arrived while stopped on restart" in {
+    val dir    = Files.createTempDirectory("p1monitor").toFile
+    val first  = new Events
+    val s1     = scanner(dir)
+    s1.startMonitoring(first)
+    first.none shouldBe true
+    touch(dir, "p1.xml")
+    first.next.map(_.newFiles.map(_.getName).toList) shouldBe Some(List("p1.xml"))
+    // the index is written once the listener returns
+    val index    = new File(dir, DirScanner.IndexName)
+    val deadline = System.currentTimeMillis + 10000
+    while (!(index.exists && new String(Files.readAllBytes(index.toPath), "UTF-8").contains("p1.xml")) && System.currentTimeMillis < deadline) Thread.sleep(50)
+    s1.stopMonitoring()
+
+    touch(dir, "p2.xml")
+    val second = new Events
+    val s2     = scanner(dir)
+    s2.startMonitoring(second)
+    try {
+      second.next.map(_.newFiles.map(_.getName).toList) shouldBe Some(List("p2.xml"))
+      second.none shouldBe true
+    } finally {
+      s2.stopMonitoring()
+    }
+  }
+}
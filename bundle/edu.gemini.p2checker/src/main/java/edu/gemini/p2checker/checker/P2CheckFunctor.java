@@ -0,0 +1,126 @@
+package edu.gemini.p2checker.checker;
+
+import edu.gemini.ags.api.AgsMagnitude;
+import edu.gemini.ags.conf.ProbeLimitsTable;
+import edu.gemini.p2checker.api.IP2Problems;
+import edu.gemini.p2checker.api.Problem;
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.ISPProgramNode;
+import edu.gemini.pot.sp.SPObservationID;
+import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.IDBQueryRunner;
+import edu.gemini.shared.util.immutable.Option;
+import edu.gemini.spModel.core.SPProgramID;
+
+import java.io.Serializable;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the phase 2 checks on every program in the database, for consistency
+ * reports.  The problems found are reported by program ID, since the nodes
+ * they refer to stay in the database.
+ *
+ * <p>All runs in the same database share one {@link P2Checker}, so a run
+ * only checks the observations that changed since the previous one.  The
+ * guide star magnitude limits are loaded where the functor executes rather
+ * than sent along with it.
+ */
+public final class P2CheckFunctor extends DBAbstractQueryFunctor {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = Logger.getLogger(P2CheckFunctor.class.getName());
+
+    /** Enough for the observations of the whole database. */
+    public static final int MAX_CACHED = 200000;
+
+    private static final P2Checker CHECKER = new P2Checker(MAX_CACHED);
+
+    // Loaded on first use, in the database.
+    private static final class Limits {
+        static final AgsMagnitude.MagnitudeTable TABLE = ProbeLimitsTable.loadOrThrow();
+    }
+
+    /**
+     * A problem found in a program, referring to the observation (if any)
+     * whose node produced it.
+     */
+    public static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final Problem.Type type;
+        public final String id;
+        public final String description;
+        public final SPObservationID observationId; // may be null
+
+        Entry(Problem p) {
+            type          = p.getType();
+            id            = p.getId();
+            description   = p.getDescription();
+            observationId = observationId(p.getAffectedNode());
+        }
+
+        private static SPObservationID observationId(ISPProgramNode node) {
+            if (node == null) return null;
+            final Option<SPObservationID> id = node.getContextObservationId();
+            return id.isEmpty() ? null : id.getValue();
+        }
+
+        @Override public String toString() {
+            return type.getDisplayValue() + ": " + description + ((observationId == null) ? "" : " in " + observationId);
+        }
+    }
+
+    private final Map<SPProgramID, List<Entry>> problems = new TreeMap<>();
+    private final List<SPProgramID> failures = new ArrayList<>();
+
+    /**
+     * Checks all programs in the database, returning the completed functor
+     * with the problems and failures found.
+     */
+    public static P2CheckFunctor checkAll(IDBQueryRunner runner) {
+        return runner.queryPrograms(new P2CheckFunctor());
+    }
+
+    @Override public Priority getPriority() {
+        return Priority.low;
+    }
+
+    @Override public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+        final ISPProgram prog = (ISPProgram) node;
+        final SPProgramID pid = prog.getProgramID();
+        if (pid == null) return;
+
+        try {
+            final IP2Problems probs = CHECKER.check(prog, Limits.TABLE);
+            if ((probs == null) || probs.getProblems().isEmpty()) return;
+
+            final List<Entry> entries = new ArrayList<>();
+            for (Problem p : probs.getProblems()) entries.add(new Entry(p));
+            problems.put(pid, entries);
+        } catch (RuntimeException ex) {
+            // One broken program shouldn't spoil the report.
+            LOG.log(Level.WARNING, "Could not check program " + pid, ex);
+            failures.add(pid);
+        }
+    }
+
+    /** Problems by program, for programs with at least one problem. */
+    public Map<SPProgramID, List<Entry>> getProblems() {
+        return Collections.unmodifiableMap(problems);
+    }
+
+    /** Programs which could not be checked. */
+    public List<SPProgramID> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+}
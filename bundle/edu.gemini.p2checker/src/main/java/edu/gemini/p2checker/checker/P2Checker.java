@@ -46,18 +46,54 @@ import edu.gemini.spModel.gemini.trecs.InstTReCS;
 import edu.gemini.spModel.gemini.flamingos2.Flamingos2;
 import edu.gemini.spModel.gemini.visitor.VisitorInstrument;
 import edu.gemini.spModel.obscomp.SPInstObsComp;
-import edu.gemini.spModel.util.NodeValueCache;
-import edu.gemini.spModel.util.NodeValueCache$;
+import edu.gemini.spModel.util.SharedNodeValueCache;
 
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The main class used to apply rules on a particular program to get potential problems on it.
+ *
+ * <p>Observations are checked individually and the problems found are cached
+ * along with a checksum of the versions of the observation's nodes, so only
+ * observations that changed since the last check are checked again.  When a
+ * program, group or template folder is checked, its observations are checked
+ * in parallel on a pool of worker threads.
  */
 public final class P2Checker {
-    private SPNodeKey cacheKey = null;
-    private NodeValueCache<IP2Problems> cache = NodeValueCache$.MODULE$.empty();
+    public static final int DEFAULT_MAX_CACHED = 10000;
+
+    // Workers shared by all checkers, leave one processor for the caller.
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+        r -> {
+            final Thread t = new Thread(r, "P2Checker");
+            t.setDaemon(true);
+            return t;
+        });
+
+    // Cached problems, which are only valid for the magnitude table used to
+    // find them.
+    private static final class Cache {
+        final AgsMagnitude.MagnitudeTable mt;
+        final SharedNodeValueCache<IP2Problems> problems;
+
+        Cache(AgsMagnitude.MagnitudeTable mt, int maxCached) {
+            this(mt, new SharedNodeValueCache<>(maxCached));
+        }
+
+        Cache(AgsMagnitude.MagnitudeTable mt, SharedNodeValueCache<IP2Problems> problems) {
+            this.mt       = mt;
+            this.problems = problems;
+        }
+    }
+
+    private final int maxCached;
+    private volatile Cache cache = null;
 
     private final Map<SPComponentType, IRule> _ruleMap;
 
@@ -96,6 +132,15 @@ public final class P2Checker {
     }
 
     public P2Checker() {
+        this(DEFAULT_MAX_CACHED);
+    }
+
+    /**
+     * @param maxCached the maximum number of observations whose problems are
+     * remembered
+     */
+    public P2Checker(int maxCached) {
+        this.maxCached = maxCached;
         _ruleMap = new HashMap<>();
         final IRule gmosRule = new GmosRule();
         //add the GMOS Rule to all the instruments that supports it
@@ -138,69 +183,107 @@ public final class P2Checker {
 
             //observations can be checked immediately
         } else if (node instanceof ISPObservation) {
-            final SPNodeKey progKey = node.getProgram().getNodeKey();
-            final NodeValueCache<IP2Problems> nvc = (progKey == cacheKey) ? cache : NodeValueCache$.MODULE$.empty();
-
-            final scala.Tuple2<IP2Problems, NodeValueCache<IP2Problems>> tup;
-            tup = nvc.get(node, new scala.runtime.AbstractFunction1<ISPNode, IP2Problems>() {
-                @Override public IP2Problems apply(ISPNode v1) {
-                    return _checkObservation((ISPObservation) v1, mt);
-                }
-            });
+            return _checkCached((ISPObservation) node, mt);
+        }
 
-            cache    = tup._2();
-            cacheKey = progKey;
+        //containers have observations, check them individually
+        final List<ISPObservation> obsList = new ArrayList<>();
+        if (!_addObservations(node, obsList)) return null;
 
-            return tup._1();
+        final IP2Problems problems = new P2Problems();
+        if (obsList.size() == 1) {
+            problems.append(_checkCached(obsList.get(0), mt));
+            return problems;
+        }
 
-            //groups contain observations, check them individually
-        } else if (node instanceof ISPGroup) {
-            final ISPGroup group = (ISPGroup) node;
-            final IP2Problems problems = new P2Problems();
-            for (final ISPObservation obs : group.getObservations()) {
-                problems.append(check(obs, mt));
+        final List<Future<IP2Problems>> results = new ArrayList<>(obsList.size());
+        for (final ISPObservation obs : obsList) {
+            results.add(POOL.submit(() -> _checkCached(obs, mt)));
+        }
+        try {
+            for (final Future<IP2Problems> f : results) {
+                problems.append(_get(f));
             }
-            return problems;
+        } finally {
+            for (final Future<IP2Problems> f : results) f.cancel(false);
+        }
+        return problems;
+    }
+
+    // Adds the observations of the given container in the order in which
+    // their problems should be reported.  Returns false if the node isn't a
+    // container that can be checked.
+    private static boolean _addObservations(ISPNode node, List<ISPObservation> obsList) {
+        if (node instanceof ISPGroup) {
+            obsList.addAll(((ISPGroup) node).getObservations());
 
             //a program has groups and observations. Check them all.
         } else if (node instanceof ISPProgram) {
             final ISPProgram program = (ISPProgram) node;
-            final IP2Problems problems = new P2Problems();
-
-            for (final ISPObservation obs : program.getObservations()) {
-                problems.append(check(obs, mt));
-            }
+            obsList.addAll(program.getObservations());
 
-            for (final Object o : program.getGroups()) {
-                final ISPGroup group = (ISPGroup) o;
-                problems.append(check(group, mt));
+            for (final ISPGroup group : program.getGroups()) {
+                _addObservations(group, obsList);
             }
 
             // Also a template folder
-            problems.append(check(program.getTemplateFolder(), mt));
-
-            return problems;
+            final ISPTemplateFolder tf = program.getTemplateFolder();
+            if (tf != null) _addObservations(tf, obsList);
 
         } else if (node instanceof ISPTemplateFolder) {
 
             // Template folder has groups in it
-            final IP2Problems problems = new P2Problems();
-            final ISPTemplateFolder tf = (ISPTemplateFolder) node;
-            for (final ISPTemplateGroup tg : tf.getTemplateGroups())
-                problems.append(check(tg, mt));
-            return problems;
+            for (final ISPTemplateGroup tg : ((ISPTemplateFolder) node).getTemplateGroups()) {
+                _addObservations(tg, obsList);
+            }
 
         } else if (node instanceof ISPTemplateGroup) {
 
             // Template group has obs in it
-            final IP2Problems problems = new P2Problems();
-            final ISPTemplateGroup tg = (ISPTemplateGroup) node;
-            for (final ISPObservation o : tg.getAllObservations())
-                problems.append(check(o, mt));
-            return problems;
+            obsList.addAll(((ISPTemplateGroup) node).getAllObservations());
+
+        } else {
+            return false;
         }
+        return true;
+    }
 
-        return null;
+    private static IP2Problems _get(Future<IP2Problems> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while checking observations", ex);
+        } catch (ExecutionException ex) {
+            final Throwable t = ex.getCause();
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            if (t instanceof Error) throw (Error) t;
+            throw new RuntimeException(t);
+        }
+    }
+
+    // Checks the observation unless it is unchanged since the last check with
+    // the same magnitude table.
+    private IP2Problems _checkCached(ISPObservation obs, AgsMagnitude.MagnitudeTable mt) {
+        if (obs == null) return null;
+
+        Cache c = cache;
+        if (c == null) {
+            c     = new Cache(mt, maxCached);
+            cache = c;
+        } else if (c.mt != mt) {
+            // Tables are usually loaded afresh rather than changed, so keep
+            // the problems when the new one holds the same limits.  Remember
+            // the new instance to skip the comparison next time.
+            c     = Objects.equals(c.mt, mt) ? new Cache(mt, c.problems) : new Cache(mt, maxCached);
+            cache = c;
+        }
+
+        return c.problems.get(obs, new scala.runtime.AbstractFunction1<ISPNode, IP2Problems>() {
+            @Override public IP2Problems apply(ISPNode v1) {
+                return _checkObservation((ISPObservation) v1, mt);
+            }
+        });
     }
 
     //Perform the checking of an observation, the small
@@ -187,6 +187,12 @@ public final class GmosRule implements IRule {
             // The error or warning message
             String getMessage();
 
+            // The message for the given step. Checkers are shared by
+            // concurrent checks so they can't remember it in check.
+            default String getMessage(Config config, ObservationElements elems) {
+                return getMessage();
+            }
+
             // A unique id used to allow the user to ignore selected messages
             String getId();
         }
@@ -207,7 +213,7 @@ public final class GmosRule implements IRule {
 
         public Problem check(Config config, int step, ObservationElements elems, Object state) {
             if (_checker.check(config, elems)) {
-                return new Problem(_type, _checker.getId(), _checker.getMessage(),
+                return new Problem(_type, _checker.getId(), _checker.getMessage(config, elems),
                         SequenceRule.getInstrumentOrSequenceNode(step, elems));
             }
             return null;
@@ -931,20 +937,17 @@ public final class GmosRule implements IRule {
                 private static final String MESSAGE_NORTH = "For Nod and Shuffle, either a Nod and Shuffle slit " +
                         "or a Custom mask must be selected";
 
-                private String _message = MESSAGE_NORTH;
-
                 public boolean check(Config config, ObservationElements elems) {
-                    if (elems.getInstrument() instanceof InstGmosSouth) {
-                        _message = MESSAGE_SOUTH;
-                    } else {
-                        _message = MESSAGE_NORTH;
-                    }
                     final FPUnit fpu = getFPU(config, elems);
                     return !(fpu.isNS() || fpu == FPUnitNorth.CUSTOM_MASK || fpu == FPUnitSouth.CUSTOM_MASK);
                 }
 
                 public String getMessage() {
-                    return _message;
+                    return MESSAGE_NORTH;
+                }
+
+                public String getMessage(Config config, ObservationElements elems) {
+                    return (elems.getInstrument() instanceof InstGmosSouth) ? MESSAGE_SOUTH : MESSAGE_NORTH;
                 }
 
                 public String getId() {
@@ -160,12 +160,18 @@ public class MichelleRule implements IRule {
          * An IChecker performs a check on a given step (similar as
          * the IConfigRule, but returns true if the given configuration
          * has a problem. The ObsModeRule will issue an Problem.Type with the message gotten from
-         * getMessage()
+         * getMessage(config). Checkers are shared by concurrent checks, so
+         * a message that depends on the step must be computed from it rather
+         * than remembered by check.
          */
         interface IChecker {
             boolean check(Config config, int steps, ObservationElements elems);
 
             String getMessage();
+
+            default String getMessage(Config config) {
+                return getMessage();
+            }
         }
 
         public ObsModeRule(IChecker rule, IConfigMatcher validator) {
@@ -181,7 +187,7 @@ public class MichelleRule implements IRule {
 
         public Problem check(Config config, int step, ObservationElements elems, Object state) {
             if (_delegate.check(config, step, elems)) {
-                return new Problem(_type, PREFIX+"ObsModeRule", _delegate.getMessage(),
+                return new Problem(_type, PREFIX+"ObsModeRule", _delegate.getMessage(config),
                         SequenceRule.getInstrumentOrSequenceNode(step, elems));
             }
             return null;
@@ -292,8 +298,6 @@ public class MichelleRule implements IRule {
         private static final String MESSAGE_N = "MICHELLE lowN spectroscopy central wavelength must be 9.5 microns";
         private static final String MESSAGE_Q = "MICHELLE lowQ spectroscopy central wavelength must be 19.8 microns";
 
-        private String _message = MESSAGE_N;
-
         private static DisperserImagingChecker _instance = new DisperserImagingChecker();
 
         public static DisperserImagingChecker getInstance() {
@@ -301,7 +305,13 @@ public class MichelleRule implements IRule {
         }
 
         public String getMessage() {
-            return _message;
+            return MESSAGE_N;
+        }
+
+        public String getMessage(Config config) {
+            MichelleParams.Disperser disperser =
+                    (MichelleParams.Disperser) SequenceRule.getInstrumentItem(config, InstMichelle.DISPERSER_PROP);
+            return (disperser == MichelleParams.Disperser.LOW_RES_20) ? MESSAGE_Q : MESSAGE_N;
         }
 
         public boolean check(Config config, int steps, ObservationElements elems) {
@@ -311,10 +321,7 @@ public class MichelleRule implements IRule {
 
             switch (disperser) {
                 case LOW_RES_10:
-                    _message = MESSAGE_N;
-                    break;
                 case LOW_RES_20:
-                    _message = MESSAGE_Q;
                     break;
                 default:
                     return false; //not a problem, disperser is set to something else
@@ -463,10 +470,14 @@ public class MichelleRule implements IRule {
             return _instance;
         }
 
-        public String _message = MESSAGE;
-
         public String getMessage() {
-            return _message;
+            return MESSAGE;
+        }
+
+        public String getMessage(Config config) {
+            MichelleParams.Filter filter =
+                    (MichelleParams.Filter) SequenceRule.getInstrumentItem(config, InstMichelle.FILTER_PROP);
+            return (filter == MichelleParams.Filter.NONE) ? NO_FILTER_MESSAGE : MESSAGE;
         }
 
         public boolean check(Config config, int steps, ObservationElements elems) {
@@ -491,12 +502,7 @@ public class MichelleRule implements IRule {
 
             if (filter == null) return false;
 
-            if (filter == MichelleParams.Filter.NONE) {
-                _message = NO_FILTER_MESSAGE;
-                return true;
-            }
-
-            _message = MESSAGE;
+            if (filter == MichelleParams.Filter.NONE) return true;
 
             Limits limits = WAVELENGTH_LIMITS_TABLE.get(filter);
 
@@ -0,0 +1,80 @@
+package edu.gemini.p2checker.checker;
+
+import edu.gemini.p2checker.api.IP2Problems;
+import edu.gemini.p2checker.api.Problem;
+import edu.gemini.p2checker.rules.AbstractRuleTest;
+import edu.gemini.pot.sp.*;
+import edu.gemini.spModel.gemini.obscomp.SPSiteQuality;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the caching and parallel checking of observations.  Observations
+ * without an instrument only get the structure checks, which don't need a
+ * magnitude table.
+ */
+public final class P2CheckerTest extends AbstractRuleTest {
+
+    private List<ISPObservation> addObservations(int count) throws Exception {
+        final List<ISPObservation> all = new ArrayList<>(prog.getObservations());
+        for (int i = 0; i < count; ++i) {
+            final ISPObservation o = fact.createObservation(prog, Instrument.none, null);
+            o.setSeqComponent(fact.createSeqComponent(prog, SPComponentType.ITERATOR_BASE, null));
+            all.add(o);
+        }
+        prog.setObservations(all);
+        return all;
+    }
+
+    @Test
+    public void testProgramMatchesObservations() throws Exception {
+        final List<ISPObservation> all = addObservations(20);
+
+        final IP2Problems progProblems = new P2Checker().check(prog, null);
+        assertTrue(progProblems.getProblemCount() > 0);
+
+        final P2Checker checker = new P2Checker();
+        final HashSet<Problem> expected = new HashSet<>();
+        for (ISPObservation o : all) expected.addAll(checker.check(o, null).getProblems());
+
+        assertEquals(expected, new HashSet<>(progProblems.getProblems()));
+    }
+
+    @Test
+    public void testUnchangedObservationIsCached() throws Exception {
+        final P2Checker checker = new P2Checker();
+        final IP2Problems p0 = checker.check(obs, null);
+        assertSame(p0, checker.check(obs, null));
+
+        // Checking the program reuses the observation's problems.
+        addObservations(3);
+        checker.check(prog, null);
+        assertSame(p0, checker.check(obs, null));
+    }
+
+    @Test
+    public void testChangedObservationIsRechecked() throws Exception {
+        final P2Checker checker = new P2Checker();
+        final IP2Problems p0 = checker.check(obs, null);
+
+        addSiteQuality(SPSiteQuality.ImageQuality.PERCENT_20);
+        final IP2Problems p1 = checker.check(obs, null);
+        assertNotSame(p0, p1);
+        assertNotEquals(new HashSet<>(p0.getProblems()), new HashSet<>(p1.getProblems()));
+    }
+
+    @Test
+    public void testCacheLimit() throws Exception {
+        final List<ISPObservation> all = addObservations(2);
+        final P2Checker checker = new P2Checker(1);
+
+        final IP2Problems p0 = checker.check(all.get(0), null);
+        checker.check(all.get(1), null);
+        assertNotSame(p0, checker.check(all.get(0), null));
+    }
+}
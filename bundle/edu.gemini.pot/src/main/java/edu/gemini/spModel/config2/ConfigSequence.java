@@ -30,6 +30,11 @@ import java.io.IOException;
  * successive steps is available via the {@link #getCompactView()} and
  * {@link #compactIterator()} methods.
  *
+ * <p>Only the compact representation is stored.  Complete configurations are
+ * made on demand, one step at a time, and single items are looked up in an
+ * index of the steps at which each item changes, so that long sequences don't
+ * require a complete copy of the configuration for every step.
+ *
  * <p><b>Note that this class is not mt-safe</b> If multiple threads access a
  * ConfigSequence concurrently, and at least one of the threads modifies the
  * sequence structurally, it <em>must</em> be synchronized externally.
@@ -43,7 +48,7 @@ public class ConfigSequence implements Serializable {
     private List<Config> _configs = new ArrayList<>();
     private boolean _isCompact = true;
 
-    private transient List<Config> _completeConfigs;
+    private transient StepIndex _index;
 
     // Iterator class used to make copies of the Config object it generates.
     private class CopyIterator implements Iterator<Config> {
@@ -127,20 +132,58 @@ public class ConfigSequence implements Serializable {
     }
 
     //
-    // Fills in the transient _completeConfigs list with Config instances in
-    // which every successive Config contains all items that are in effect at
-    // that step.
+    // Builds the transient _index of the steps at which each item changes.
+    // The changes are worked out on the side when the sequence isn't compact:
+    // reading must not compact _configs, since inserting or replacing a step
+    // in the middle of a sequence of complete configs doesn't change the items
+    // inherited by the following steps.
     //
-    private void _complete() {
-        if (_completeConfigs != null) return;
+    private StepIndex _index() {
+        if (_index == null) {
+            StepIndex index = new StepIndex();
+            if (_isCompact) {
+                for (Config config : _configs) index.append(config);
+            } else {
+                Config curConfig = new DefaultConfig();
+                for (Config next : _configs) {
+                    Config delta = new DefaultConfig(next);
+                    delta.removeAll(curConfig);
+                    index.append(delta);
+                    curConfig.putAll(next);
+                }
+            }
+            _index = index;
+        }
+        return _index;
+    }
 
-        _completeConfigs = new ArrayList<>();
-        if (_configs.size() == 0) return;
+    private void _checkStep(int step) {
+        if ((step < 0) || (step >= _configs.size())) {
+            throw new IndexOutOfBoundsException("step: " + step + ", size: " + _configs.size());
+        }
+    }
 
-        Config curConfig = new DefaultConfig();
-        for (Config config : _configs) {
-            curConfig.putAll(config);
-            _completeConfigs.add(new DefaultConfig(curConfig));
+    //
+    // Iterates over the complete Config at each step, building each from the
+    // previous one and the changes at the step.  The iterator returns the same
+    // (mutable) Config instance each time.
+    //
+    private class CompleteIterator implements Iterator<Config> {
+        private final Config _cur = new DefaultConfig();
+        private int _step;
+
+        public boolean hasNext() {
+            return _step < _configs.size();
+        }
+
+        public Config next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            _cur.putAll(_configs.get(_step++));
+            return _cur;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
         }
     }
 
@@ -155,11 +198,10 @@ public class ConfigSequence implements Serializable {
      * @return all the {@link Config} objects in this sequence
      */
     public Config[] getAllSteps() {
-        _complete();
-
-        Config[] res = _completeConfigs.toArray(DefaultConfig.EMPTY_ARRAY);
-        for (int i=0; i<res.length; ++i) {
-            res[i] = new DefaultConfig(res[i]);
+        Config[] res = new Config[_configs.size()];
+        int i = 0;
+        for (Iterator<Config> it = new CompleteIterator(); it.hasNext(); ) {
+            res[i++] = new DefaultConfig(it.next());
         }
         return res;
     }
@@ -174,9 +216,9 @@ public class ConfigSequence implements Serializable {
      * predicate
      */
     public ConfigSequence filter(Predicate p) {
-        _complete();
-        List<Config> res = new ArrayList<>(_completeConfigs.size());
-        for (Config c : _completeConfigs) {
+        List<Config> res = new ArrayList<>();
+        for (Iterator<Config> it = new CompleteIterator(); it.hasNext(); ) {
+            Config c = new DefaultConfig(it.next());
             if (p.matches(c)) res.add(c);
         }
         return new ConfigSequence(res.toArray(new Config[res.size()]));
@@ -210,8 +252,8 @@ public class ConfigSequence implements Serializable {
      * @return Config at the given <code>step</code>
      */
     public Config getStep(int step) {
-        _complete();
-        return new DefaultConfig(_completeConfigs.get(step));
+        _checkStep(step);
+        return _index().config(step);
     }
 
     /**
@@ -225,8 +267,8 @@ public class ConfigSequence implements Serializable {
      * <code
      */
     public Object getItemValue(int step, ItemKey key) {
-        Config conf = getStep(step);
-        return conf.getItemValue(key);
+        _checkStep(step);
+        return _index().valueAt(step, key);
     }
 
     /**
@@ -241,13 +283,7 @@ public class ConfigSequence implements Serializable {
      * associated with <code>key</code>
      */
     public Object[] getItemValueAtEachStep(ItemKey key) {
-        _complete();
-        Object[] res = new Object[_completeConfigs.size()];
-        int i = 0;
-        for (Config completeConfig : _completeConfigs) {
-            res[i++] = completeConfig.getItemValue(key);
-        }
-        return res;
+        return _index().valuesAtEachStep(key);
     }
 
     /**
@@ -262,11 +298,7 @@ public class ConfigSequence implements Serializable {
      * <code>key</code> obtains over the lifetime of the ConfigSequence
      */
     public Object[] getDistinctItemValues(ItemKey key) {
-        _complete();
-        Set<Object> s = new HashSet<>();
-        for (Config completeConfig : _completeConfigs) {
-            s.add(completeConfig.getItemValue(key));
-        }
+        Set<Object> s = _index().distinctValues(key);
         return s.toArray(new Object[s.size()]);
     }
 
@@ -353,11 +385,9 @@ public class ConfigSequence implements Serializable {
      * any; -1 otherwise
      */
     private int indexMatching(Config template) {
-       _complete();
-        int i=0;
-        for (Config conf : _completeConfigs) {
-            if (conf.matches(template)) return i;
-            ++i;
+        StepIndex index = _index();
+        for (int i=0; i<index.size(); ++i) {
+            if (index.matches(i, template)) return i;
         }
         return -1;
     }
@@ -380,17 +410,21 @@ public class ConfigSequence implements Serializable {
     public void addStep(Config conf) {
         Config nextConfig = new DefaultConfig(conf);
 
-        if (_isCompact && (_completeConfigs != null)) {
-            Config lastConfig = _completeConfigs.get(_completeConfigs.size() - 1);
-            nextConfig.removeAll(lastConfig);
+        if (_isCompact && (_index != null)) {
+            int last = _configs.size() - 1;
+            if (last >= 0) {
+                for (ItemEntry ie : conf.itemEntries()) {
+                    Object val = ie.getItemValue();
+                    if ((val != null) && val.equals(_index.valueAt(last, ie.getKey()))) {
+                        nextConfig.remove(ie.getKey());
+                    }
+                }
+            }
             _configs.add(nextConfig);
-
-            lastConfig = new DefaultConfig(lastConfig);
-            lastConfig.putAll(nextConfig);
-            _completeConfigs.add(lastConfig);
+            _index.append(nextConfig);
         } else {
             _isCompact = false;
-            _completeConfigs = null;
+            _index = null;
             _configs.add(nextConfig);
         }
     }
@@ -413,7 +447,7 @@ public class ConfigSequence implements Serializable {
             addStep(conf);
         } else {
             _isCompact = false;
-            _completeConfigs = null;
+            _index = null;
             _configs.add(step, new DefaultConfig(conf));
         }
     }
@@ -423,7 +457,7 @@ public class ConfigSequence implements Serializable {
      */
     public void clear() {
         _configs.clear();
-        if (_completeConfigs != null) _completeConfigs.clear();
+        _index = null;
         _isCompact = true;
     }
 
@@ -432,8 +466,7 @@ public class ConfigSequence implements Serializable {
      * {@link #compactIterator()}.
      */
     public Iterator<Config> iterator() {
-        _complete();
-        return new CopyIterator(_completeConfigs.iterator());
+        return new CopyIterator(new CompleteIterator());
     }
 
     /**
@@ -468,8 +501,8 @@ public class ConfigSequence implements Serializable {
     public void removeStep(int step) {
         if (step != (_configs.size() - 1)) {
             _isCompact = false;
-            _completeConfigs = null;
         }
+        _index = null;
         _configs.remove(step);
     }
 
@@ -492,7 +525,7 @@ public class ConfigSequence implements Serializable {
      */
     public void setStep(int step, Config conf) {
         _isCompact = false;
-        _completeConfigs = null;
+        _index = null;
         _configs.set(step, new DefaultConfig(conf));
     }
 
@@ -520,12 +553,20 @@ public class ConfigSequence implements Serializable {
      * <code>to</code> index.
      */
     public ConfigSequence subSequence(int from, int to) {
-        _complete();
-        Config[] subconfigs = new Config[to - from];
-        for (int i=from; i<to; ++i) {
-            subconfigs[i-from] = _completeConfigs.get(i);
+        if (from > to) throw new IndexOutOfBoundsException("from: " + from + " > to: " + to);
+        ConfigSequence res = new ConfigSequence();
+        if (from == to) return res;
+        res._isCompact = _isCompact;
+
+        // The first step is complete, the others are the compact changes
+        // from their predecessors just as in this sequence.
+        _checkStep(from);
+        _checkStep(to - 1);
+        res._configs.add(getStep(from));
+        for (int i=from+1; i<to; ++i) {
+            res._configs.add(new DefaultConfig(_configs.get(i)));
         }
-        return new ConfigSequence(subconfigs);
+        return res;
     }
 
     //
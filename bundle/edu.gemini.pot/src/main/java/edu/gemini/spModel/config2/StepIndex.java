@@ -0,0 +1,151 @@
+package edu.gemini.spModel.config2;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An index over the compact steps of a {@link ConfigSequence}.  For each
+ * distinct item key it records the steps at which the item changes along with
+ * the new values, so the value of an item at any step is found with a binary
+ * search rather than by building the complete {@link Config} for each step.
+ * Item keys are interned, so configs made from the index share key instances.
+ *
+ * <p>Steps are appended in order, each with only the items that changed since
+ * the previous step.  Not MT-safe.
+ */
+final class StepIndex {
+
+    // The steps at which one item changes, and its value from then on.
+    private static final class Column {
+        int[] steps     = new int[2];
+        Object[] values = new Object[2];
+        int size;
+
+        void add(int step, Object value) {
+            if (size == steps.length) {
+                steps  = Arrays.copyOf(steps,  2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            steps[size]  = step;
+            values[size] = value;
+            ++size;
+        }
+
+        // Index of the last change at or before the given step, -1 if none.
+        int indexAt(int step) {
+            final int i = Arrays.binarySearch(steps, 0, size, step);
+            return (i >= 0) ? i : -i - 2;
+        }
+
+        Object valueAt(int step) {
+            final int i = indexAt(step);
+            return (i < 0) ? null : values[i];
+        }
+    }
+
+    private ItemKey[] keys    = ItemKey.EMPTY_ARRAY; // sorted
+    private Column[]  columns = new Column[0];
+    private int keyCount;
+    private int stepCount;
+
+    int size() {
+        return stepCount;
+    }
+
+    /**
+     * Adds a step with the given changes from the previous step.
+     */
+    void append(Config delta) {
+        final int step = stepCount++;
+        for (ItemEntry ie : delta.itemEntries()) {
+            column(ie.getKey()).add(step, ie.getItemValue());
+        }
+    }
+
+    private Column column(ItemKey key) {
+        int i = Arrays.binarySearch(keys, 0, keyCount, key);
+        if (i >= 0) return columns[i];
+
+        i = -i - 1;
+        if (keyCount == keys.length) {
+            final int len = Math.max(8, 2 * keyCount);
+            keys    = Arrays.copyOf(keys, len);
+            columns = Arrays.copyOf(columns, len);
+        }
+        System.arraycopy(keys,    i, keys,    i + 1, keyCount - i);
+        System.arraycopy(columns, i, columns, i + 1, keyCount - i);
+        keys[i]    = key;
+        columns[i] = new Column();
+        ++keyCount;
+        return columns[i];
+    }
+
+    private Column find(ItemKey key) {
+        final int i = Arrays.binarySearch(keys, 0, keyCount, key);
+        return (i < 0) ? null : columns[i];
+    }
+
+    /**
+     * Gets the value of the item at the given step, <code>null</code> if the
+     * item isn't defined at that step.
+     */
+    Object valueAt(int step, ItemKey key) {
+        final Column c = find(key);
+        return (c == null) ? null : c.valueAt(step);
+    }
+
+    /**
+     * Gets the value of the item at each step, with <code>null</code> for the
+     * steps before the item is introduced.
+     */
+    Object[] valuesAtEachStep(ItemKey key) {
+        final Object[] res = new Object[stepCount];
+        final Column c = find(key);
+        if (c != null) {
+            for (int i = 0; i < c.size; ++i) {
+                final int end = (i + 1 < c.size) ? c.steps[i + 1] : stepCount;
+                Arrays.fill(res, c.steps[i], end, c.values[i]);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Gets the distinct values of the item over all steps, including
+     * <code>null</code> if the item is missing from the first step.
+     */
+    Set<Object> distinctValues(ItemKey key) {
+        final Set<Object> res = new HashSet<>();
+        if (stepCount == 0) return res;
+
+        final Column c = find(key);
+        if ((c == null) || (c.steps[0] > 0)) res.add(null);
+        if (c != null) res.addAll(Arrays.asList(c.values).subList(0, c.size));
+        return res;
+    }
+
+    /**
+     * Makes a new Config with all the items in effect at the given step.
+     */
+    Config config(int step) {
+        final DefaultConfig res = new DefaultConfig();
+        for (int i = 0; i < keyCount; ++i) {
+            final Object val = columns[i].valueAt(step);
+            if (val != null) res.putItem(keys[i], val);
+        }
+        return res;
+    }
+
+    /**
+     * Determines whether each item in the <code>template</code> has an equal
+     * value at the given step.
+     */
+    boolean matches(int step, Config template) {
+        for (ItemEntry ie : template.itemEntries()) {
+            final Object val = valueAt(step, ie.getKey());
+            if ((val == null) || !val.equals(ie.getItemValue())) return false;
+        }
+        return true;
+    }
+}
@@ -44,6 +44,13 @@ public interface CalibrationMap extends Serializable {
 
     Version getVersion();
 
+    /**
+     * Prepares the map for lookups once all calibrations have been put, no calibrations must be added after
+     * this. Maps that don't need any preparation don't have to implement this.
+     */
+    default void compile() {
+    }
+
     /**
      * Export the calibration map to a list of String suitable for writing to a
      * configuration file.
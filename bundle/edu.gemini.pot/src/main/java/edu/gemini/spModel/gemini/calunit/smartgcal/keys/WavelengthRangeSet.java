@@ -20,12 +20,22 @@ import java.util.*;
  * Wavelength range sets store a set of non-overlapping ranges and a list of calibrations for each of these
  * ranges. Before adding a range it is verified that it does not overlap with any of the already existing
  * ranges in order to avoid ambiguities.
+ * Since the ranges don't overlap they are ordered by their lower boundary, which is used to check only the
+ * neighbours of a new range for overlaps while adding and to look up wavelengths with a binary search. Once the
+ * set is filled it can be compiled into sorted arrays (see {@link #compile()}), this happens lazily on the first
+ * lookup otherwise.
  */
 public final class WavelengthRangeSet implements Serializable {
 
     // set of range/calibration pairs
     private final Map<WavelengthRange, ImList<Calibration>> rangeMap = new HashMap<>();
 
+    // the ranges by their lower boundary
+    private final TreeMap<Double, WavelengthRange> rangesByMin = new TreeMap<>();
+
+    // sorted lookup arrays, discarded whenever a range or calibration is added
+    private transient volatile Index index;
+
     /**
      * Constructs a new empty wavelength range set.
      */
@@ -42,14 +52,35 @@ public final class WavelengthRangeSet implements Serializable {
      */
     public void add(WavelengthRange range, Calibration c) {
         if (!rangeMap.containsKey(range)) {
-            rangeMap.keySet().forEach(r -> {
-                if (range.overlaps(r)) {
-                    throw new IllegalArgumentException("range " + range + " overlaps with " + r);
-                }
+            findOverlapping(range).foreach(r -> {
+                throw new IllegalArgumentException("range " + range + " overlaps with " + r);
             });
+            rangesByMin.put(range.getMin(), range);
         }
 
         rangeMap.compute(range, (r, l) -> (l == null) ? ImCollections.singletonList(c) : l.append(c));
+        index = null;
+    }
+
+    /**
+     * Finds an existing range that overlaps with the given one.
+     * The existing ranges are disjoint, so the only candidates are the range with the closest lower boundary
+     * below the new range's lower boundary and the next one after it.
+     */
+    private Option<WavelengthRange> findOverlapping(WavelengthRange range) {
+        final Map.Entry<Double, WavelengthRange> below = rangesByMin.floorEntry(range.getMin());
+        if (below != null && range.overlaps(below.getValue())) return ImOption.apply(below.getValue());
+        final Map.Entry<Double, WavelengthRange> above = rangesByMin.higherEntry(range.getMin());
+        if (above != null && range.overlaps(above.getValue())) return ImOption.apply(above.getValue());
+        return ImOption.empty();
+    }
+
+    /**
+     * Builds the sorted arrays used for lookups. Calling this once all ranges have been added avoids building
+     * them on the first lookup.
+     */
+    public void compile() {
+        index();
     }
 
      /**
@@ -58,7 +89,9 @@ public final class WavelengthRangeSet implements Serializable {
      * @return
      */
     public Option<WavelengthRange> findRange(double value) {
-        return lookup(value).map(t -> t.getKey());
+        final Index idx = index();
+        final int i = idx.find(value);
+        return (i < 0) ? ImOption.empty() : ImOption.apply(idx.ranges[i]);
     }
 
     /**
@@ -67,23 +100,55 @@ public final class WavelengthRangeSet implements Serializable {
      * @return
      */
     public List<Calibration> findCalibrations(double value) {
-        return lookup(value).map(t -> t.getValue().toList()).getOrElse(Collections.<Calibration>emptyList());
+        final Index idx = index();
+        final int i = idx.find(value);
+        return (i < 0) ? Collections.<Calibration>emptyList() : idx.calibrations[i];
+    }
+
+    public Map<WavelengthRange, ImList<Calibration>> getRangeMap() {
+        return Collections.unmodifiableMap(rangeMap);
+    }
+
+    private Index index() {
+        Index idx = index;
+        if (idx == null) {
+            idx = new Index(rangesByMin.values(), rangeMap);
+            index = idx;
+        }
+        return idx;
     }
 
     /**
-     * Finds a range calibration pair for a wavelength.
-     * @param value
-     * @return
+     * Immutable lookup arrays with the ranges sorted by their lower boundary and their calibrations.
      */
-    private Option<Map.Entry<WavelengthRange, ImList<Calibration>>> lookup(double value) {
-        // There seems to be no find method so ...
-        for (Map.Entry<WavelengthRange, ImList<Calibration>> me : rangeMap.entrySet()) {
-            if (me.getKey().contains(value)) return ImOption.apply(me);
+    private static final class Index {
+        private final double[] mins;
+        private final double[] maxs;
+        private final WavelengthRange[] ranges;
+        private final List<Calibration>[] calibrations;
+
+        @SuppressWarnings("unchecked")
+        Index(Collection<WavelengthRange> sorted, Map<WavelengthRange, ImList<Calibration>> rangeMap) {
+            final int n  = sorted.size();
+            mins         = new double[n];
+            maxs         = new double[n];
+            ranges       = new WavelengthRange[n];
+            calibrations = new List[n];
+            int i = 0;
+            for (WavelengthRange r : sorted) {
+                mins[i]         = r.getMin();
+                maxs[i]         = r.getMax();
+                ranges[i]       = r;
+                calibrations[i] = Collections.unmodifiableList(rangeMap.get(r).toList());
+                ++i;
+            }
         }
-        return ImOption.apply(null);
-    }
 
-    public Map<WavelengthRange, ImList<Calibration>> getRangeMap() {
-        return Collections.unmodifiableMap(rangeMap);
+        // index of the range containing the value or -1
+        int find(double value) {
+            int i = Arrays.binarySearch(mins, value);
+            if (i < 0) i = -i - 2; // last range starting below the value
+            return (i >= 0 && value < maxs[i]) ? i : -1;
+        }
     }
 }
@@ -85,6 +85,14 @@ public abstract class CentralWavelengthMap extends BaseCalibrationMap {
         return rangeSet.findCalibrations(wavelength);
     }
 
+    /**
+     * Builds the sorted lookup arrays of all the range sets.
+     */
+    @Override
+    public void compile() {
+        rangesMap.values().forEach(WavelengthRangeSet::compile);
+    }
+
     private String exportWavelength(double wl) {
         // Wavelength stored as a double is problematic.  In some instruments
         // these are um and in others nm. We will ask each type of
@@ -1,7 +1,9 @@
 package edu.gemini.spModel.obs.plannedtime;
 
+import edu.gemini.pot.sp.ISPNode;
 import edu.gemini.pot.sp.ISPObsComponent;
 import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPSeqComponent;
 import edu.gemini.shared.util.immutable.ImOption;
 import edu.gemini.shared.util.immutable.None;
 import edu.gemini.shared.util.immutable.Option;
@@ -10,8 +12,12 @@ import edu.gemini.spModel.config.ConfigBridge;
 import edu.gemini.spModel.config.map.ConfigValMapInstances;
 import edu.gemini.spModel.config2.Config;
 import edu.gemini.spModel.config2.ConfigSequence;
+import edu.gemini.spModel.config2.DefaultConfig;
 import edu.gemini.spModel.config2.ItemKey;
 import edu.gemini.spModel.dataset.DatasetLabel;
+import edu.gemini.spModel.gemini.calunit.smartgcal.CalibrationProvider;
+import edu.gemini.spModel.gemini.calunit.smartgcal.CalibrationProviderHolder;
+import edu.gemini.spModel.gemini.calunit.smartgcal.VersionInfo;
 import edu.gemini.spModel.obs.ObsClassService;
 import edu.gemini.spModel.obs.SPObservation;
 import edu.gemini.spModel.obs.plannedtime.PlannedTime.*;
@@ -22,15 +28,24 @@ import edu.gemini.spModel.obsrecord.ObsExecRecord;
 import edu.gemini.spModel.time.ChargeClass;
 import edu.gemini.spModel.util.SPTreeUtil;
 
+import java.lang.ref.SoftReference;
 import java.time.Duration;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Calculates detailed planned time accounting information.
+ *
+ * <p>Results are remembered in the transient client data of the observation
+ * along with the versions of the nodes that define the sequence (the
+ * observation itself, its components, its sequence components and its logs)
+ * and of the smart calibration tables.  As long as none of these change, the
+ * remembered result is returned instead of expanding and walking the sequence
+ * again.
  */
 public enum PlannedTimeCalculator {
     instance;
@@ -44,7 +59,84 @@ public enum PlannedTimeCalculator {
     public static final SetupTime DEFAULT_SETUP =
         SetupTime.unsafeFromDuration(Duration.ofMinutes(15), Duration.ZERO, SetupTime.Type.FULL);
 
+    private static final String MEMO_KEY = "PlannedTimeCalculator";
+
+    // The planned time calculated for an observation and the node versions it
+    // was calculated from.  The result is only softly held since it includes
+    // the expanded sequence.
+    private static final class Memo {
+        final List<Object> key;
+        final SoftReference<PlannedTime> time;
+
+        Memo(List<Object> key, PlannedTime time) {
+            this.key  = key;
+            this.time = new SoftReference<>(time);
+        }
+    }
+
     public PlannedTime calc(ISPObservation obs)  {
+        final Option<List<Object>> key = memoKey(obs, CalibrationProviderHolder.getProvider());
+
+        PlannedTime pt = key.flatMap(k -> {
+            final Memo m = (Memo) obs.getTransientClientData(MEMO_KEY);
+            return ((m == null) || !m.key.equals(k)) ? None.<PlannedTime>instance() : ImOption.apply(m.time.get());
+        }).getOrNull();
+
+        if (pt == null) {
+            pt = calcUncached(obs);
+            final PlannedTime res = pt;
+            key.foreach(k -> obs.putTransientClientData(MEMO_KEY, new Memo(k, res)));
+        }
+
+        // Callers get their own copy of the sequence, which isn't mt-safe.
+        return PlannedTime.apply(pt.setup, pt.steps, new ConfigSequence(pt.sequence));
+    }
+
+    // Collects the versions of the nodes and smart calibration tables that the
+    // planned time depends upon.  Nodes that aren't in a program don't keep
+    // track of their versions, so there is no key for them.
+    static Option<List<Object>> memoKey(ISPObservation obs, CalibrationProvider cp) {
+        if (obs.getParent() == null) return None.instance();
+
+        final List<Object> key = new ArrayList<>();
+        key.add(obs.getObservationID());
+        addVersion(key, obs);
+        for (ISPObsComponent oc : obs.getObsComponents()) addVersion(key, oc);
+        addSeqVersions(key, obs.getSeqComponent());
+        addVersion(key, obs.getObsExecLog());
+        addVersion(key, obs.getObsQaLog());
+        addCalibrationVersions(key, cp);
+        return new Some<>(key);
+    }
+
+    // Smart calibration steps are expanded from the calibration tables, which
+    // are updated independently of the program.
+    private static void addCalibrationVersions(List<Object> key, CalibrationProvider cp) {
+        final List<VersionInfo> infos = cp.getVersionInfo();
+        if (infos == null) return;
+        for (VersionInfo vi : infos) {
+            key.add(vi.getInstrument());
+            key.add(vi.getType());
+            key.add(vi.getVersion());
+        }
+    }
+
+    private static void addSeqVersions(List<Object> key, ISPSeqComponent sc) {
+        if (sc == null) return;
+        addVersion(key, sc);
+        for (ISPSeqComponent child : sc.getSeqComponents()) addSeqVersions(key, child);
+    }
+
+    private static void addVersion(List<Object> key, ISPNode node) {
+        if (node == null) {
+            key.add(null);
+        } else {
+            key.add(node.getNodeKey());
+            key.add(node.getVersion());
+        }
+    }
+
+    private PlannedTime calcUncached(ISPObservation obs)  {
         ObsExecRecord obsExecRecord = SPTreeUtil.getObsRecord(obs);
         ChargeClass obsChargeClass = chargeClass(obs);
 
@@ -65,23 +157,54 @@ public enum PlannedTimeCalculator {
         }
         final Setup setup = Setup.apply(setupTime, obsChargeClass);
 
-        // Calculate the overhead time
-        Option<Config> prev = None.instance();
-        List<PlannedTime.Step> steps = new ArrayList<>();
-        ConfigSequence cs = ConfigBridge.extractSequence(obs, null, ConfigValMapInstances.IDENTITY_MAP, false);
-        for (Config c : cs.getAllSteps()) {
-            ChargeClass stepChargeClass = stepChargeClass(obsChargeClass, c);
-            boolean executed            = isExecuted(obsExecRecord, c);
-            String obsType              = getObsType(c);
-            CategorizedTimeGroup gtc    = calculator(instNode).calc(c, prev);
-            prev = new Some<>(c);
+        // Calculate the overhead time.  Walk the compact form of the sequence,
+        // building up the complete config of each step from the changes.  A
+        // step that only differs from the previous one in its data label,
+        // following a step that did the same, costs the same as that step so
+        // the step calculator isn't consulted and no new config is made.
+        final StepCalculator calculator = calculator(instNode);
+        final List<PlannedTime.Step> steps = new ArrayList<>();
+        final ConfigSequence cs = ConfigBridge.extractSequence(obs, null, ConfigValMapInstances.IDENTITY_MAP, false);
+
+        Config cur = null;
+        boolean prevRelabel = false;
+        for (Iterator<Config> it = cs.compactIterator(); it.hasNext(); ) {
+            final Config delta = it.next(); // a copy
+            final boolean relabel = (cur != null) && isRelabel(delta);
 
+            final CategorizedTimeGroup gtc;
+            if (relabel && prevRelabel) {
+                cur.putAll(delta);
+                gtc = steps.get(steps.size() - 1).times;
+            } else {
+                final Config next;
+                if (cur == null) {
+                    next = delta;
+                } else {
+                    next = new DefaultConfig(cur);
+                    next.putAll(delta);
+                }
+                gtc = calculator.calc(next, ImOption.apply(cur));
+                cur = next;
+            }
+            prevRelabel = relabel;
+
+            ChargeClass stepChargeClass = stepChargeClass(obsChargeClass, cur);
+            boolean executed            = isExecuted(obsExecRecord, cur);
+            String obsType              = getObsType(cur);
             steps.add(Step.apply(gtc, stepChargeClass, executed, obsType));
         }
 
         return PlannedTime.apply(setup, steps, cs);
     }
 
+    // Whether the changes from one step to the next are limited to the data
+    // label, which doesn't figure into the overhead.
+    private static boolean isRelabel(Config delta) {
+        final int size = delta.size();
+        return (size == 0) || ((size == 1) && delta.containsItem(DATALABEL_KEY));
+    }
+
     private StepCalculator calculator(ISPObsComponent inst)  {
         if (inst == null) return DefaultStepCalculator.instance;
         SPInstObsComp dobj = (SPInstObsComp) inst.getDataObject();
@@ -2,7 +2,7 @@ package edu.gemini.spModel.guide
 
 import edu.gemini.pot.ModelConverters._
 import edu.gemini.spModel.core.{Declination, Angle, RightAscension, Coordinates}
-import edu.gemini.spModel.inst.{ProbeArmGeometry, ScienceAreaGeometry}
+import edu.gemini.spModel.inst.{PolygonRegion, ProbeArmGeometry, ScienceAreaGeometry}
 import edu.gemini.spModel.inst.FeatureGeometry.approximateArea
 import edu.gemini.spModel.obs.context.ObsContext
 
@@ -77,7 +77,40 @@ sealed trait VignettingCalculator {
 
 object VignettingCalculator {
 
+  /** Calculator that clips primitive polygon representations of the probe arm
+    * and science area.  The science area polygons at each offset and the
+    * triangle decomposition of the probe arm are computed up front so that
+    * each candidate only requires transforming a handful of vertices. */
   def apply(ctx: ObsContext, probeArm: ProbeArmGeometry, scienceArea: ScienceAreaGeometry): VignettingCalculator =
+    new VignettingCalculator {
+      // area of detector or slit for this context
+      val whole = scienceArea.unadjustedGeometry(ctx).map(approximateArea)
+
+      // list of science (offset) positions paired with detector polygons at
+      // that position
+      val offs  = ctx.getSciencePositions.asScala.toList.flatMap { skycalcOff =>
+        val offset = skycalcOff.toNewModel
+        scienceArea.geometry(ctx, offset).map { shape => (offset, PolygonRegion.fromShape(shape)) }
+      }
+
+      // probe arm, not yet adjusted for the guide star and offset
+      val probe = probeArm.unadjustedGeometry(ctx).map(PolygonRegion.fromShape(_).triangles)
+
+      override def calc(guideStar: Coordinates): Double =
+        offs match {
+          case Nil => 0.0
+          case os  => os.map { case (off, sciRegion) =>
+            val vigArea = (probe |@| probeArm.armTransform(ctx, guideStar, off)) { (fan, trans) =>
+              sciRegion.intersectionArea(fan.transform(trans))
+            } | 0.0
+            whole.map { area => vigArea / area } | 0.0
+          }.max
+        }
+    }
+
+  /** Calculator based on `java.awt.geom.Area` intersections.  This is slower
+    * than the default calculator but serves as a reference for it. */
+  def reference(ctx: ObsContext, probeArm: ProbeArmGeometry, scienceArea: ScienceAreaGeometry): VignettingCalculator =
     new VignettingCalculator {
       // area of detector or slit for this context
       val whole = scienceArea.unadjustedGeometry(ctx).map(approximateArea)
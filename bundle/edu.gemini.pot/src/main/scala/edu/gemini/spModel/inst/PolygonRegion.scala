@@ -0,0 +1,212 @@
+package edu.gemini.spModel.inst
+
+import java.awt.Shape
+import java.awt.geom.{AffineTransform, Area, FlatteningPathIterator}
+import java.awt.geom.PathIterator.{SEG_CLOSE, SEG_LINETO, SEG_MOVETO}
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * A region of the plane represented as a list of flattened polygons, each
+ * stored as a primitive array of interleaved `x0, y0, x1, y1, ...`
+ * coordinates.  This is a lightweight alternative to `java.awt.geom.Area`
+ * for the one operation that vignetting calculations need over and over: the
+ * area of the intersection of two shapes.
+ *
+ * Polygons are taken from the path of an `Area` so they never overlap and
+ * holes wind in the opposite direction of the outer boundaries.  This means
+ * that the signed areas of the polygons simply add up.
+ */
+final class PolygonRegion private (val polygons: Array[Array[Double]]) {
+
+  import PolygonRegion._
+
+  /** Applies the transform to every vertex, producing a new region. */
+  def transform(at: AffineTransform): PolygonRegion =
+    new PolygonRegion(polygons.map { p =>
+      val q = new Array[Double](p.length)
+      at.transform(p, 0, q, 0, p.length / 2)
+      q
+    })
+
+  /** Area of the region, not counting holes. */
+  def area: Double =
+    math.abs(polygons.foldLeft(0.0)(_ + signedArea(_)))
+
+  /** Decomposes the region into a fan of triangles per polygon.  Each
+    * triangle is stored counter-clockwise along with a weight of +1 or -1
+    * according to its original orientation, so that the weighted sum of the
+    * triangles covers exactly the region (with the orientation of its outer
+    * boundaries). */
+  def triangles: TriangleFan = {
+    val ts = ArrayBuffer.empty[Double]
+    val ws = ArrayBuffer.empty[Double]
+    polygons.foreach { p =>
+      val n = p.length / 2
+      var i = 1
+      while (i < n - 1) {
+        val (x0, y0) = (p(0),         p(1))
+        val (x1, y1) = (p(2 * i),     p(2 * i + 1))
+        val (x2, y2) = (p(2 * i + 2), p(2 * i + 3))
+        val cross    = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0)
+        if (cross > 0) {
+          ts ++= Array(x0, y0, x1, y1, x2, y2)
+          ws += 1.0
+        } else if (cross < 0) {
+          ts ++= Array(x0, y0, x2, y2, x1, y1)
+          ws += -1.0
+        }
+        i += 1
+      }
+    }
+    new TriangleFan(ts.toArray, ws.toArray)
+  }
+
+  /** Area of the intersection of this region with the given one. */
+  def intersectionArea(that: PolygonRegion): Double =
+    intersectionArea(that.triangles)
+
+  /** Area of the intersection of this region with the region decomposed into
+    * the given triangle fan. */
+  def intersectionArea(fan: TriangleFan): Double = {
+    var sum = 0.0
+    var t   = 0
+    while (t < fan.weights.length) {
+      var p = 0
+      while (p < polygons.length) {
+        sum += fan.weights(t) * signedArea(clip(polygons(p), fan.vertices, t * 6))
+        p += 1
+      }
+      t += 1
+    }
+    math.abs(sum)
+  }
+}
+
+object PolygonRegion {
+
+  val Empty: PolygonRegion = new PolygonRegion(Array.empty)
+
+  /**
+   * A region decomposed into counter-clockwise triangles, six coordinates per
+   * triangle, with a weight of +1 or -1 each.
+   */
+  final class TriangleFan(val vertices: Array[Double], val weights: Array[Double]) {
+
+    /** Applies the transform to every vertex.  The transform must preserve
+      * orientation (e.g., rotation and translation only). */
+    def transform(at: AffineTransform): TriangleFan = {
+      val vs = new Array[Double](vertices.length)
+      at.transform(vertices, 0, vs, 0, vertices.length / 2)
+      new TriangleFan(vs, weights)
+    }
+  }
+
+  /** Flattens the shape using the same parameters as
+    * `FeatureGeometry.approximateArea`. */
+  def fromShape(s: Shape): PolygonRegion =
+    fromShape(s, 0.5, 6)
+
+  def fromShape(s: Shape, flatness: Double, depth: Int): PolygonRegion = {
+    val fpi      = new FlatteningPathIterator(new Area(s).getPathIterator(null), flatness, depth)
+    val coords   = new Array[Double](6)
+    val polygons = ArrayBuffer.empty[Array[Double]]
+    val cur      = ArrayBuffer.empty[Double]
+
+    def close(): Unit = {
+      if (cur.length >= 6) polygons += cur.toArray
+      cur.clear()
+    }
+
+    while (!fpi.isDone) {
+      fpi.currentSegment(coords) match {
+        case SEG_MOVETO =>
+          close()
+          cur += coords(0) += coords(1)
+        case SEG_LINETO =>
+          cur += coords(0) += coords(1)
+        case SEG_CLOSE  =>
+          close()
+        case _          =>
+          // impossible with a flattening path iterator
+      }
+      fpi.next()
+    }
+    close()
+
+    new PolygonRegion(polygons.toArray)
+  }
+
+  /** Signed area of a polygon, positive if counter-clockwise. */
+  def signedArea(p: Array[Double]): Double = {
+    val n = p.length / 2
+    if (n < 3) 0.0
+    else {
+      var sum = 0.0
+      var j   = n - 1
+      var i   = 0
+      while (i < n) {
+        sum += p(2 * j) * p(2 * i + 1) - p(2 * i) * p(2 * j + 1)
+        j = i
+        i += 1
+      }
+      sum / 2.0
+    }
+  }
+
+  /**
+   * Sutherland-Hodgman clipping of an arbitrary (possibly concave) polygon
+   * against the counter-clockwise triangle that starts at offset `t` of `tri`.
+   * For a concave subject the result may contain degenerate, zero-width edges
+   * but its signed area is exactly that of the intersection.
+   */
+  def clip(subject: Array[Double], tri: Array[Double], t: Int): Array[Double] = {
+    var in    = subject
+    var inLen = subject.length
+    var edge  = 0
+    while ((edge < 3) && (inLen > 0)) {
+      val ax = tri(t + 2 * edge)
+      val ay = tri(t + 2 * edge + 1)
+      val bx = tri(t + (2 * edge + 2) % 6)
+      val by = tri(t + (2 * edge + 3) % 6)
+      val dx = bx - ax
+      val dy = by - ay
+
+      // Each input vertex produces at most two output vertices.
+      val out    = new Array[Double](2 * inLen)
+      var outLen = 0
+      val n      = inLen / 2
+
+      var px = in(inLen - 2)
+      var py = in(inLen - 1)
+      var ps = dx * (py - ay) - dy * (px - ax)
+      var i  = 0
+      while (i < n) {
+        val cx = in(2 * i)
+        val cy = in(2 * i + 1)
+        val cs = dx * (cy - ay) - dy * (cx - ax)
+        if ((cs >= 0) != (ps >= 0)) {
+          val r = ps / (ps - cs)
+          out(outLen)     = px + r * (cx - px)
+          out(outLen + 1) = py + r * (cy - py)
+          outLen += 2
+        }
+        if (cs >= 0) {
+          out(outLen)     = cx
+          out(outLen + 1) = cy
+          outLen += 2
+        }
+        px = cx
+        py = cy
+        ps = cs
+        i += 1
+      }
+
+      in    = out
+      inLen = outLen
+      edge += 1
+    }
+
+    if (inLen == in.length) in else java.util.Arrays.copyOf(in, inLen)
+  }
+}
@@ -23,13 +23,18 @@ trait ProbeArmGeometry {
   /** Adjusted guide probe shapes in context, ready to be used in further
    * calculations or transformed to a screen plot. */
   def geometry(ctx: ObsContext, guideStar: Coordinates, offset: Offset): Option[Shape] =
-    armAdjustment(ctx, guideStar, offset).flatMap { adj =>
+    armTransform(ctx, guideStar, offset).flatMap { trans =>
+      unadjustedGeometry(ctx).map { trans.createTransformedShape }
+    }
+
+  /** Transform that maps the unadjusted geometry to its position in context
+    * when tracking the given guide star at the given offset. */
+  def armTransform(ctx: ObsContext, guideStar: Coordinates, offset: Offset): Option[AffineTransform] =
+    armAdjustment(ctx, guideStar, offset).map { adj =>
       val angle = adj.angle
       val gs    = adj.guideStar.toPoint
-      val trans = AffineTransform.getRotateInstance(angle.toRadians, gs.getX, gs.getY) <|
-                    (_.translate(gs.getX, gs.getY))
-
-      unadjustedGeometry(ctx).map { trans.createTransformedShape }
+      AffineTransform.getRotateInstance(angle.toRadians, gs.getX, gs.getY) <|
+        (_.translate(gs.getX, gs.getY))
     }
 
   /** Create a list of Shape representing the probe arm and all its components
@@ -34,4 +34,30 @@ object NodeValueCache {
       }
     }
   }
-}
\ No newline at end of file
+}
+
+/** A mutable version of `NodeValueCache` that may be shared by threads,
+  * holding the values of at most `maxSize` nodes and dropping the least
+  * recently used first.  Values are calculated outside of the lock, so two
+  * threads asking for the same modified node at once may both calculate its
+  * value. */
+final class SharedNodeValueCache[A](maxSize: Int) {
+  private val m = new java.util.LinkedHashMap[SPNodeKey, (Long, A)](16, 0.75f, true) {
+    override def removeEldestEntry(e: java.util.Map.Entry[SPNodeKey, (Long, A)]): Boolean =
+      this.size > maxSize
+  }
+
+  def get(n: ISPNode)(a: ISPNode => A): A = {
+    val k  = n.getNodeKey
+    val cs = nodeChecksum(n)
+
+    m.synchronized(Option(m.get(k))).collect { case (check, aVal) if check == cs => aVal }.getOrElse {
+      val aVal = a(n)
+      m.synchronized(m.put(k, (cs, aVal)))
+      aVal
+    }
+  }
+
+  def clear(): Unit =
+    m.synchronized(m.clear())
+}
@@ -620,4 +620,81 @@ public class ConfigSequenceTest extends TestCase {
         seq = _seq.subSequence(0, _seq.size());
         assertEquals(3, seq.size());
     }
+
+    public void testLongSequence() {
+        // A dither pattern with an offset that changes at every step and a
+        // filter that changes every 10 steps.
+        ItemKey pKey      = new ItemKey("telescope:p");
+        ItemKey filterKey = new ItemKey("instrument:filter");
+
+        ConfigSequence seq = new ConfigSequence();
+        Config prev = new DefaultConfig();
+        Config[] expected = new Config[200];
+        for (int i=0; i<expected.length; ++i) {
+            Config conf = new DefaultConfig(prev);
+            conf.putItem(_nochangeKey, "nochange");
+            conf.putItem(pKey, String.valueOf(i % 4));
+            conf.putItem(filterKey, "filter" + (i / 10));
+            seq.addStep(conf);
+            expected[i] = prev = conf;
+        }
+
+        Config[] all = seq.getAllSteps();
+        assertEquals(expected.length, all.length);
+
+        Iterator<Config> it = seq.iterator();
+        for (int i=0; i<expected.length; ++i) {
+            assertEquals(expected[i], all[i]);
+            assertEquals(expected[i], seq.getStep(i));
+            assertEquals(expected[i], it.next());
+            assertEquals("filter" + (i / 10), seq.getItemValue(i, filterKey));
+        }
+        assertFalse(it.hasNext());
+
+        // Only the changes are kept.
+        Config[] compact = seq.getCompactView();
+        assertEquals(3, compact[0].size());
+        assertEquals(1, compact[1].size());
+        assertEquals(2, compact[10].size());
+
+        assertEquals(20, seq.getDistinctItemValues(filterKey).length);
+        assertEquals(1,  seq.getDistinctItemValues(_nochangeKey).length);
+        assertEquals(expected[150], seq.subSequence(150, 160).getStep(0));
+        assertEquals(expected[159], seq.subSequence(150, 160).getStep(9));
+        assertEquals(expected[11], seq.match(expected[15]));
+    }
+
+    public void testEditAfterRead() {
+        // Reading a step must not change how later edits apply to the
+        // following steps, which keep the items given to them.
+        ItemKey filterKey = new ItemKey("instrument:filter");
+        ItemKey expKey    = new ItemKey("observe:exposureTime");
+
+        Config j = new DefaultConfig();
+        j.putItem(filterKey, "J");
+        Config h = new DefaultConfig();
+        h.putItem(filterKey, "H");
+        Config exp = new DefaultConfig();
+        exp.putItem(expKey, "10");
+
+        ConfigSequence seq = new ConfigSequence(new Config[] { j, j, j });
+        assertEquals("J", seq.getItemValue(0, filterKey));
+        seq.setStep(0, h);
+        assertEquals("H", seq.getItemValue(0, filterKey));
+        assertEquals("J", seq.getItemValue(1, filterKey));
+
+        assertEquals("J", seq.getStep(2).getItemValue(filterKey));
+        seq.addStep(1, exp);
+        assertEquals(4, seq.size());
+        assertEquals("H",  seq.getItemValue(1, filterKey));
+        assertEquals("10", seq.getItemValue(1, expKey));
+        assertEquals("J",  seq.getItemValue(2, filterKey));
+        assertEquals("10", seq.getItemValue(3, expKey));
+
+        assertNotNull(seq.match(j));
+        seq.removeStep(0);
+        assertNull(seq.getItemValue(0, filterKey));
+        assertEquals("J", seq.getItemValue(1, filterKey));
+        assertEquals(3, seq.getItemValueAtEachStep(filterKey).length);
+    }
 }
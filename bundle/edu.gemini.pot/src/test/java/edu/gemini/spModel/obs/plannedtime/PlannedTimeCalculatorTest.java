@@ -0,0 +1,143 @@
+package edu.gemini.spModel.obs.plannedtime;
+
+import edu.gemini.pot.sp.ISPObsComponent;
+import edu.gemini.pot.sp.ISPSeqComponent;
+import edu.gemini.shared.util.immutable.ImList;
+import edu.gemini.shared.util.immutable.None;
+import edu.gemini.shared.util.immutable.Option;
+import edu.gemini.shared.util.immutable.Some;
+import edu.gemini.spModel.config2.Config;
+import edu.gemini.spModel.gemini.calunit.smartgcal.Calibration;
+import edu.gemini.spModel.gemini.calunit.smartgcal.CalibrationKey;
+import edu.gemini.spModel.gemini.calunit.smartgcal.CalibrationProvider;
+import edu.gemini.spModel.gemini.calunit.smartgcal.Version;
+import edu.gemini.spModel.gemini.calunit.smartgcal.VersionInfo;
+import edu.gemini.spModel.gemini.flamingos2.Flamingos2;
+import edu.gemini.spModel.gemini.seqcomp.SeqRepeatFlatObs;
+import edu.gemini.spModel.seqcomp.SeqRepeat;
+import edu.gemini.spModel.seqcomp.SeqRepeatObserve;
+import edu.gemini.spModel.test.SpModelTestBase;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests the remembered planned time and the step by step calculation.
+ */
+public class PlannedTimeCalculatorTest extends SpModelTestBase {
+
+    private ISPObsComponent instComp;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        instComp = addObsComponent(Flamingos2.SP_TYPE);
+    }
+
+    private ISPSeqComponent addObsCount(ISPSeqComponent parent, int obsCount) throws Exception {
+        ISPSeqComponent comp = addSeqComponent(parent, SeqRepeatObserve.SP_TYPE);
+        setObsCount(comp, obsCount);
+        return comp;
+    }
+
+    private void setObsCount(ISPSeqComponent comp, int obsCount) throws Exception {
+        SeqRepeatObserve rep = (SeqRepeatObserve) comp.getDataObject();
+        rep.setStepCount(obsCount);
+        comp.setDataObject(rep);
+    }
+
+    private void setExposureTime(double secs) throws Exception {
+        Flamingos2 f2 = (Flamingos2) instComp.getDataObject();
+        f2.setExposureTime(secs);
+        instComp.setDataObject(f2);
+    }
+
+    // A provider without calibrations whose flat table has the given revision.
+    private static CalibrationProvider provider(final int revision) {
+        final Version version = new Version(revision, new Date(0));
+        return new CalibrationProvider() {
+            @Override public List<Calibration> getCalibrations(CalibrationKey key) {
+                return Collections.emptyList();
+            }
+
+            @Override public Version getVersion(Calibration.Type type, String instrument) {
+                return version;
+            }
+
+            @Override public Stream<ImList<String>> export(Calibration.Type type, String instrument) {
+                return Stream.empty();
+            }
+
+            @Override public List<VersionInfo> getVersionInfo() {
+                return Collections.singletonList(new VersionInfo(Flamingos2.SP_TYPE.readableStr, Calibration.Type.FLAT, version));
+            }
+        };
+    }
+
+    private PlannedTime calc() {
+        return PlannedTimeCalculator.instance.calc(getObs());
+    }
+
+    @Test public void testStepsMatchFullSequence() throws Exception {
+        ISPSeqComponent root = getObs().getSeqComponent();
+        addObsCount(root, 4);
+        addSeqComponent(root, SeqRepeatFlatObs.SP_TYPE);
+        addObsCount(root, 3);
+
+        PlannedTime pt = calc();
+        Config[] all = pt.sequence.getAllSteps();
+        assertEquals(8, all.length);
+        assertEquals(all.length, pt.steps.size());
+
+        Flamingos2 f2 = (Flamingos2) instComp.getDataObject();
+        Option<Config> prev = None.instance();
+        for (int i = 0; i < all.length; ++i) {
+            assertEquals("step " + i, f2.calc(all[i], prev), pt.steps.get(i).times);
+            prev = new Some<>(all[i]);
+        }
+    }
+
+    @Test public void testRepeatedCalc() throws Exception {
+        addObsCount(getObs().getSeqComponent(), 5);
+
+        PlannedTime pt0 = calc();
+        PlannedTime pt1 = calc();
+        assertEquals(pt0.steps, pt1.steps);
+        assertEquals(pt0.totalTime(), pt1.totalTime());
+        assertNotSame(pt0.sequence, pt1.sequence);
+        assertEquals(pt0.sequence.size(), pt1.sequence.size());
+    }
+
+    @Test public void testInstrumentChange() throws Exception {
+        addObsCount(getObs().getSeqComponent(), 2);
+        setExposureTime(30);
+        long t0 = calc().totalTime();
+
+        setExposureTime(60);
+        long t1 = calc().totalTime();
+        assertTrue(t1 > t0);
+    }
+
+    @Test public void testNestedSequenceChange() throws Exception {
+        ISPSeqComponent outer = addSeqComponent(getObs().getSeqComponent(), SeqRepeat.SP_TYPE);
+        SeqRepeat rep = (SeqRepeat) outer.getDataObject();
+        rep.setStepCount(2);
+        outer.setDataObject(rep);
+        ISPSeqComponent inner = addObsCount(outer, 2);
+        assertEquals(4, calc().steps.size());
+
+        setObsCount(inner, 3);
+        assertEquals(6, calc().steps.size());
+    }
+
+    @Test public void testCalibrationVersionChange() throws Exception {
+        addObsCount(getObs().getSeqComponent(), 2);
+
+        assertEquals(PlannedTimeCalculator.memoKey(getObs(), provider(1)),
+                     PlannedTimeCalculator.memoKey(getObs(), provider(1)));
+        assertFalse(PlannedTimeCalculator.memoKey(getObs(), provider(1)).equals(
+                    PlannedTimeCalculator.memoKey(getObs(), provider(2))));
+    }
+}
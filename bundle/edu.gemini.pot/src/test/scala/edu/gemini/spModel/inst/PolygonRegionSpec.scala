@@ -0,0 +1,78 @@
+package edu.gemini.spModel.inst
+
+import edu.gemini.shared.util.immutable.ImPolygon
+import edu.gemini.spModel.inst.FeatureGeometry.approximateArea
+import org.specs2.mutable.Specification
+import java.awt.Shape
+import java.awt.geom._
+
+import scalaz._
+import Scalaz._
+
+object PolygonRegionSpec extends Specification {
+  val delta = 0.000001
+
+  val rotate27 = AffineTransform.getRotateInstance(Math.toRadians(27))
+
+  val square   = new Rectangle2D.Double(0.0, 0.0, 10.0, 10.0)
+  val circle   = new Ellipse2D.Double(0, 0, 10, 10)
+
+  // concave shapes
+  val ell      = ImPolygon(List((0.0, 0.0), (4.0, 0.0), (4.0, 1.0), (1.0, 1.0), (1.0, 4.0), (0.0, 4.0)))
+  val hook     = ImPolygon(List((0.5, 0.5), (3.0, 0.5), (3.0, 3.0), (2.0, 3.0), (2.0, 1.5), (0.5, 1.5)))
+
+  val squareWithHole = new Area(square) <| (_.subtract(new Area(new Rectangle2D.Double(2.0, 2.0, 4.0, 4.0))))
+
+  def referenceIntersection(s0: Shape, s1: Shape): Double =
+    approximateArea(new Area(s0) <| (_.intersect(new Area(s1))))
+
+  def fastIntersection(s0: Shape, s1: Shape): Double =
+    PolygonRegion.fromShape(s0).intersectionArea(PolygonRegion.fromShape(s1))
+
+  "PolygonRegion" should {
+    "compute the area of polygons" in {
+      PolygonRegion.fromShape(square).area must beCloseTo(100.0, delta)
+    }
+
+    "not count holes" in {
+      PolygonRegion.fromShape(squareWithHole).area must beCloseTo(84.0, delta)
+    }
+
+    "match the approximate area of curved shapes" in {
+      PolygonRegion.fromShape(circle).area must beCloseTo(approximateArea(circle), delta)
+    }
+
+    "intersect overlapping squares" in {
+      val shifted = new Rectangle2D.Double(5.0, 5.0, 10.0, 10.0)
+      fastIntersection(square, shifted) must beCloseTo(25.0, delta)
+    }
+
+    "intersect disjoint shapes" in {
+      val farAway = new Rectangle2D.Double(100.0, 100.0, 10.0, 10.0)
+      fastIntersection(square, farAway) must beCloseTo(0.0, delta)
+    }
+
+    "intersect concave shapes" in {
+      fastIntersection(ell, hook) must beCloseTo(referenceIntersection(ell, hook), delta)
+      fastIntersection(hook, ell) must beCloseTo(referenceIntersection(ell, hook), delta)
+    }
+
+    "intersect shapes with holes" in {
+      val bar = new Rectangle2D.Double(-1.0, 3.0, 12.0, 2.0)
+      fastIntersection(squareWithHole, bar) must beCloseTo(12.0, delta)
+      fastIntersection(bar, squareWithHole) must beCloseTo(12.0, delta)
+    }
+
+    "intersect rotated shapes" in {
+      val rotated = rotate27.createTransformedShape(square)
+      fastIntersection(rotated, square) must beCloseTo(referenceIntersection(rotated, square), delta)
+    }
+
+    "intersect a transformed triangle fan" in {
+      val at   = AffineTransform.getRotateInstance(0.5, 3.0, 3.0)
+      val fan  = PolygonRegion.fromShape(hook).triangles.transform(at)
+      val fast = PolygonRegion.fromShape(squareWithHole).intersectionArea(fan)
+      fast must beCloseTo(referenceIntersection(squareWithHole, at.createTransformedShape(hook)), delta)
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package edu.gemini.spModel.inst
+
+import edu.gemini.shared.util.immutable.ImOption
+import edu.gemini.spModel.ags.AgsStrategyKey.GmosNorthOiwfsKey
+import edu.gemini.spModel.core.Coordinates
+import edu.gemini.spModel.gemini.gmos._
+import edu.gemini.spModel.guide.VignettingCalculator
+import edu.gemini.spModel.obs.context.ObsContext
+
+import org.scalacheck._
+import org.scalacheck.Arbitrary._
+
+/**
+ * Compares the time taken by the polygon clipping and `Area` based vignetting
+ * calculators over randomly generated GMOS contexts and candidates.  Run with
+ * `test:runMain edu.gemini.spModel.inst.VignettingCalcBenchmark`.
+ */
+object VignettingCalcBenchmark extends VignettingArbitraries {
+
+  private val Contexts   = 200
+  private val Iterations = 5
+
+  private val genEnv: Gen[(ObsContext, List[Coordinates])] =
+    for {
+      ctx  <- arbitrary[ObsContext]
+      gmos <- arbitrary[InstGmosNorth]
+      gmosCtx = ctx.withInstrument(gmos).withAgsStrategyOverride(ImOption.apply(GmosNorthOiwfsKey))
+      can  <- genCandidates(gmosCtx)
+    } yield (gmosCtx, can)
+
+  private def run(envs: List[(ObsContext, List[Coordinates])])(mk: ObsContext => VignettingCalculator): (Double, Long) = {
+    val start = System.nanoTime
+    val sum   = envs.map { case (ctx, cs) =>
+      val vc = mk(ctx)
+      cs.map(vc.calc).sum
+    }.sum
+    (sum, System.nanoTime - start)
+  }
+
+  def main(args: Array[String]): Unit = {
+    val envs  = Stream.continually(genEnv.sample).flatten.take(Contexts).toList
+    val calcs = envs.map(_._2.size).sum
+
+    def fast(ctx: ObsContext) = VignettingCalculator(ctx, GmosOiwfsProbeArm, GmosScienceAreaGeometry)
+    def ref(ctx: ObsContext)  = VignettingCalculator.reference(ctx, GmosOiwfsProbeArm, GmosScienceAreaGeometry)
+
+    // warm up
+    run(envs)(fast)
+    run(envs)(ref)
+
+    (1 to Iterations).foreach { i =>
+      val (fastSum, fastNs) = run(envs)(fast)
+      val (refSum,  refNs)  = run(envs)(ref)
+      println(f"run $i: $calcs calculations, polygon ${fastNs / 1000000.0}%8.2f ms, area ${refNs / 1000000.0}%8.2f ms, speedup ${refNs.toDouble / fastNs}%5.1fx (sum diff ${math.abs(fastSum - refSum)}%.2e)")
+    }
+  }
+}
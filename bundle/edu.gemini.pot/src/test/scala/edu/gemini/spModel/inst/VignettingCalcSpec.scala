@@ -90,6 +90,14 @@ object VignettingCalcSpec extends Specification with ScalaCheck with VignettingA
         // using the IFU.
       }
 
+    "agree with the Area-based reference calculator" !
+      forAll { (env: TestEnv) =>
+        val ref = VignettingCalculator.reference(env.ctx, GmosOiwfsProbeArm, GmosScienceAreaGeometry)
+        env.candidates.forall { gs =>
+          (env.vc.calc(gs) - ref.calc(gs)).abs < 1e-6
+        }
+      }
+
     /*  Struggling to figure out a property that applies in all cases.
 
     "(for GMOS) calculate higher vignetting for candidates that fall in the half of the usable area closest to the base position + offset" !
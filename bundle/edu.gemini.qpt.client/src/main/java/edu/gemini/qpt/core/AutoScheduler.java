@@ -0,0 +1,313 @@
+package edu.gemini.qpt.core;
+
+import edu.gemini.qpt.core.Variant.Flag;
+import edu.gemini.qpt.core.util.Interval;
+import edu.gemini.qpt.core.util.Union;
+import edu.gemini.qpt.core.util.Variants.EditException;
+import edu.gemini.qpt.shared.sp.Obs;
+import edu.gemini.spModel.core.Site;
+import edu.gemini.spModel.obs.plannedtime.PlannedStepSummary;
+import edu.gemini.spModel.obs.plannedtime.SetupTime;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fills variants with visits automatically. Observations are taken in order of their
+ * score in the variant and each is placed at the earliest time where setup and at least
+ * one step fit into the free time of the schedule's blocks, with the science inside the
+ * times allowed by the elevation, sky background and timing window constraints. Steps
+ * that do not fit are split off into successor visits later in the night, which start
+ * with reacquisition if the observation has a reacquisition time.
+ * <p>
+ * Planning is done for all variants in parallel on worker threads; the constraint
+ * windows of an observation are shared by all variants and taken from the schedule's
+ * caches when available. The planned visits are then added on the Swing thread through
+ * {@link Variant#addAlloc}, so the usual collision and ordering rules apply; visits that
+ * are rejected, e.g. because the variant was edited in the meantime, are skipped.
+ */
+public final class AutoScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(AutoScheduler.class.getName());
+
+    // Observations with these flags are left alone, in addition to those with a zero score.
+    private static final EnumSet<Flag> EXCLUDED = EnumSet.of(
+        Flag.SCHEDULED,
+        Flag.INACTIVE,
+        Flag.OVER_ALLOCATED
+    );
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+        r -> {
+            final Thread t = new Thread(r, "AutoScheduler");
+            t.setDaemon(true);
+            return t;
+        });
+
+    private static final Executor EDT = SwingUtilities::invokeLater;
+
+    private AutoScheduler() {
+    }
+
+    /**
+     * Plans and adds visits to the given variants of the schedule. Must be called on the
+     * Swing thread; the returned future completes on the Swing thread with the allocs that
+     * were added to each variant.
+     */
+    public static CompletableFuture<Map<Variant, List<Alloc>>> fill(final Schedule schedule, final Collection<Variant> variants) {
+
+        final Site site = schedule.getSite();
+        final long start = schedule.getStart();
+        final long end = schedule.getEnd();
+        final Union<Interval> blocks = new Union<>(schedule.getBlockIntervals());
+
+        // Constraint windows are the same for all variants, start with those the
+        // variants already calculated.
+        final Map<Obs, Union<Interval>> windows = new ConcurrentHashMap<>();
+        final Map<Obs, Union<Interval>> constrained = schedule.getCache(Variant.CONSTRAINED_UNION_CACHE, Schedule.PROP_BLOCKS);
+        synchronized (constrained) {
+            windows.putAll(constrained);
+        }
+
+        final Map<Variant, CompletableFuture<List<Visit>>> plans = new LinkedHashMap<>();
+        for (Variant v: variants) {
+
+            // Collect what we need from the variant here, on the Swing thread.
+            final Union<Interval> free = new Union<>(blocks);
+            free.remove(v.getAllocIntervals());
+            final Map<Obs, Double> scores = new LinkedHashMap<>();
+            for (Obs obs: schedule.getMiniModel().getAllObservations()) {
+                if (containsAny(v.getFlags(obs), EXCLUDED)) continue;
+                if (obs.getFirstUnexecutedStep() >= obs.getSteps().size()) continue;
+                final double score = v.getScore(obs);
+                if (score > 0) scores.put(obs, score);
+            }
+
+            plans.put(v, CompletableFuture.supplyAsync(() -> {
+                final List<Candidate> cs = new ArrayList<>();
+                for (Map.Entry<Obs, Double> e: scores.entrySet()) {
+                    final Obs obs = e.getKey();
+                    final Union<Interval> w = windows.computeIfAbsent(obs, o -> constrainedUnion(site, o, start, end, blocks));
+                    if (!w.isEmpty()) cs.add(new ObsCandidate(obs, e.getValue(), w));
+                }
+                return plan(free, cs);
+            }, POOL));
+
+        }
+
+        return CompletableFuture.allOf(plans.values().toArray(new CompletableFuture<?>[plans.size()])).thenApplyAsync(ignore -> {
+            final Map<Variant, List<Alloc>> ret = new LinkedHashMap<>();
+            for (Map.Entry<Variant, CompletableFuture<List<Visit>>> e: plans.entrySet())
+                ret.put(e.getKey(), apply(e.getKey(), e.getValue().join()));
+            return ret;
+        }, EDT);
+
+    }
+
+    /** Times at which the science of the observation may be done, see Variant.updateObsFlags. */
+    private static Union<Interval> constrainedUnion(Site site, Obs obs, long start, long end, Union<Interval> blocks) {
+        final Union<Interval> u = blocks.clone();
+        u.intersect(Variant.visibleUnion(site, obs, start, end));
+        u.intersect(Variant.darkUnion(site, obs, start, end));
+        u.intersect(Variant.timingUnion(obs, start, end));
+        return u;
+    }
+
+    // Adds the visits, skipping those that are rejected together with their successors.
+    private static List<Alloc> apply(Variant v, List<Visit> visits) {
+        final List<Alloc> added = new ArrayList<>();
+        final Set<Obs> failed = new HashSet<>();
+        v.setFlagUpdatesEnabled(false);
+        try {
+            for (Visit visit: visits) {
+                final Obs obs = ((ObsCandidate) visit.candidate).obs;
+                if (failed.contains(obs)) continue;
+                try {
+                    added.add(v.addAlloc(obs, visit.start, visit.firstStep, visit.lastStep, visit.setupType, null));
+                } catch (EditException ex) {
+                    LOGGER.log(Level.INFO, "Could not add planned visit of " + obs + " to " + v, ex);
+                    failed.add(obs);
+                }
+            }
+        } finally {
+            v.setFlagUpdatesEnabled(true);
+        }
+        return added;
+    }
+
+    private static boolean containsAny(Set<Flag> flags, Set<Flag> any) {
+        for (Flag f: flags)
+            if (any.contains(f))
+                return true;
+        return false;
+    }
+
+    ///
+    /// PLANNING
+    ///
+
+    /**
+     * Greedily packs the candidates into the free time, highest score first and among
+     * equal scores the one with the least room first. Returns the visits in the order
+     * they were planned, so each visit comes after its predecessor.
+     */
+    static List<Visit> plan(Union<Interval> free, List<? extends Candidate> candidates) {
+        final Union<Interval> room = free.clone();
+        final List<Candidate> sorted = new ArrayList<>(candidates);
+        sorted.sort(Comparator.comparingDouble((Candidate c) -> -c.score).thenComparingLong(c -> c.room));
+        final List<Visit> visits = new ArrayList<>();
+        for (Candidate c: sorted) {
+            int step = c.firstStep;
+            Alloc.SetupType setup = c.setupType;
+            long earliest = Long.MIN_VALUE;
+            while (step < c.stepTimes.length) {
+                final Visit v = fit(c, room, step, setup, earliest);
+                if (v == null) break;
+                visits.add(v);
+                room.remove(new Interval(v.start, v.end));
+                earliest = v.end;
+                step = v.lastStep + 1;
+                setup = c.continuationSetupType();
+            }
+        }
+        return visits;
+    }
+
+    // Finds the earliest place for a visit starting with the given step, with as many
+    // steps as fit. Setup may start before a window opens but the steps must be inside.
+    private static Visit fit(Candidate c, Union<Interval> room, int step, Alloc.SetupType setup, long earliest) {
+        final long setupTime = c.setupTime(setup);
+        for (Interval w: c.windows) {
+            if (w.getEnd() <= earliest) continue;
+            final Union<Interval> slots = room.clone();
+            slots.intersect(new Union<>(new Interval(w.getStart() - setupTime, w.getEnd())));
+            for (Interval slot: slots) {
+                final long start = Math.max(slot.getStart(), earliest);
+                long end = start + setupTime;
+                int last = step - 1;
+                while (last + 1 < c.stepTimes.length && end + c.stepTimes[last + 1] <= slot.getEnd())
+                    end += c.stepTimes[++last];
+
+                // The actual end may be later, e.g. because of laser shutter closures.
+                while (last >= step && (end = c.end(start, step, last, setup)) > slot.getEnd())
+                    --last;
+
+                if (last >= step)
+                    return new Visit(c, start, end, step, last, setup);
+            }
+        }
+        return null;
+    }
+
+    /** A visit planned for a candidate. */
+    static final class Visit {
+        final Candidate candidate;
+        final long start, end;
+        final int firstStep, lastStep;
+        final Alloc.SetupType setupType;
+
+        Visit(Candidate candidate, long start, long end, int firstStep, int lastStep, Alloc.SetupType setupType) {
+            this.candidate = candidate;
+            this.start = start;
+            this.end = end;
+            this.firstStep = firstStep;
+            this.lastStep = lastStep;
+            this.setupType = setupType;
+        }
+    }
+
+    /** Something to be scheduled: setup and a sequence of steps, with the times allowed for the steps. */
+    static class Candidate {
+        final double score;
+        final Union<Interval> windows;
+        final long[] stepTimes; // zero for executed steps
+        final int firstStep;
+        final long fullSetupTime, reacquisitionTime;
+        final Alloc.SetupType setupType; // of the first visit
+        final long room;
+
+        Candidate(double score, Union<Interval> windows, long[] stepTimes, int firstStep, long fullSetupTime, long reacquisitionTime, Alloc.SetupType setupType) {
+            this.score = score;
+            this.windows = windows;
+            this.stepTimes = stepTimes;
+            this.firstStep = firstStep;
+            this.fullSetupTime = fullSetupTime;
+            this.reacquisitionTime = reacquisitionTime;
+            this.setupType = setupType;
+            long r = 0;
+            for (Interval i: windows) r += i.getLength();
+            this.room = r;
+        }
+
+        long setupTime(Alloc.SetupType t) {
+            switch (t) {
+                case NONE:          return 0;
+                case FULL:          return fullSetupTime;
+                case REACQUISITION: return reacquisitionTime;
+                default: throw new IllegalArgumentException();
+            }
+        }
+
+        Alloc.SetupType continuationSetupType() {
+            if (setupType == Alloc.SetupType.NONE) return Alloc.SetupType.NONE;
+            return reacquisitionTime > 0 ? Alloc.SetupType.REACQUISITION : Alloc.SetupType.FULL;
+        }
+
+        long end(long start, int first, int last, Alloc.SetupType t) {
+            long end = start + setupTime(t);
+            for (int i = first; i <= last; i++) end += stepTimes[i];
+            return end;
+        }
+    }
+
+    private static final class ObsCandidate extends Candidate {
+        final Obs obs;
+
+        ObsCandidate(Obs obs, double score, Union<Interval> windows) {
+            super(score, windows, stepTimes(obs.getSteps()), obs.getFirstUnexecutedStep(),
+                obs.getSteps().getSetupTime().fullSetupTime.toMillis(),
+                obs.getSteps().getSetupTime().reacquisitionOnlyTime.toMillis(),
+                setupType(obs.getSteps().getSetupTime()));
+            this.obs = obs;
+        }
+
+        // Let the alloc work out its length, which includes laser shutter closures.
+        @Override
+        long end(long start, int first, int last, Alloc.SetupType t) {
+            return new Alloc(null, obs, start, first, last, t, null).getEnd();
+        }
+
+        private static long[] stepTimes(PlannedStepSummary steps) {
+            final long[] ret = new long[steps.size()];
+            for (int i = 0; i < ret.length; i++)
+                ret[i] = steps.isStepExecuted(i) ? 0 : steps.getStepTime(i);
+            return ret;
+        }
+
+        private static Alloc.SetupType setupType(SetupTime time) {
+            switch (time.acquisitionType) {
+                case FULL:          return Alloc.SetupType.FULL;
+                case REACQUISITION: return Alloc.SetupType.REACQUISITION;
+                case NONE:          return Alloc.SetupType.NONE;
+                default: throw new IllegalArgumentException();
+            }
+        }
+    }
+
+}
@@ -8,6 +8,7 @@ import edu.gemini.qpt.core.util.Variants.EditException;
 import edu.gemini.qpt.shared.sp.Conds;
 import edu.gemini.qpt.shared.sp.Inst;
 import edu.gemini.qpt.shared.sp.MiniModel;
+import edu.gemini.qpt.shared.sp.Obs;
 import edu.gemini.qpt.shared.util.EnumPio;
 import edu.gemini.qpt.shared.util.Ictd;
 import edu.gemini.qpt.shared.util.PioSerializable;
@@ -85,6 +86,7 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
     private Map<WorldCoordinates, Union<Interval>> intervalCache = new HashMap<>();
     private MiniModel miniModel;
     private Option<IctdSummary> ictdSummary;
+    private final ScheduleEvaluator evaluator = new ScheduleEvaluator(this);
 
     /**
      * Constructs an empty Schedule.
@@ -346,6 +348,7 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
         invalidateAllCaches();
 
         this.miniModel = miniModel;
+        evaluator.restart();
         for (Variant v: variants)
             v.miniModelChanged(miniModel);
 
@@ -353,6 +356,32 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
 
     }
 
+    ///
+    /// BACKGROUND EVALUATION
+    ///
+
+    /**
+     * Enables or disables the calculation of the observation constraints of all
+     * schedules on background threads, see {@link ScheduleEvaluator}. This is meant
+     * for the UI, where results can be published on the Swing thread.
+     */
+    public static void setBackgroundEvaluation(boolean enabled) {
+        ScheduleEvaluator.setEnabled(enabled);
+    }
+
+    /** Stops the background evaluation, e.g. when the schedule is closed. */
+    public void cancelEvaluation() {
+        evaluator.cancel();
+    }
+
+    void startEvaluation() {
+        evaluator.start();
+    }
+
+    boolean isEvaluationPending(Obs obs) {
+        return evaluator.isPending(obs);
+    }
+
     public Option<IctdSummary> getIctdSummary() {
         return ictdSummary;
     }
@@ -392,6 +421,7 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
 
         } finally {
             invalidateAllCaches();
+            evaluator.restart();
             for (Variant v : getVariants()) {
                 v.invalidateAllCaches();
                 v.setFlagUpdatesEnabled(true);
@@ -624,6 +654,7 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
         synchronized (intervalCache) {
             intervalCache.clear();
         }
+        evaluator.restart();
         firePropertyChange(PROP_BLOCKS, prev, getBlocks());
         setDirty(true);
     }
@@ -634,6 +665,7 @@ public final class Schedule extends BaseMutableBean implements PioSerializable,
         synchronized (intervalCache) {
             intervalCache.clear();
         }
+        evaluator.restart();
         firePropertyChange(PROP_BLOCKS, prev, getBlocks());
         setDirty(true);
     }
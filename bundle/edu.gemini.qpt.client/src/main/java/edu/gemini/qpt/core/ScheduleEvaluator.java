@@ -0,0 +1,181 @@
+package edu.gemini.qpt.core;
+
+import edu.gemini.qpt.core.util.Interval;
+import edu.gemini.qpt.core.util.Union;
+import edu.gemini.qpt.shared.sp.Obs;
+import edu.gemini.spModel.core.Site;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Calculates the dark, visible and timing window unions of all observations of a
+ * schedule on a pool of worker threads, instead of one observation at a time on the
+ * Swing thread when the variants update their flags. These unions are by far the
+ * most expensive part of the flag calculation and are shared by all variants.
+ * <p>
+ * Results are published on the Swing thread in batches: they are put into the
+ * schedule's union caches and the variants update their flags, so the candidate and
+ * visualizer views fill in incrementally. While an observation is pending its
+ * variants leave out the flags that depend on these unions. Edits that invalidate the
+ * unions (blocks, mini model) restart the evaluation; results of the abandoned
+ * evaluation are discarded.
+ * <p>
+ * Background evaluation is only done if enabled, otherwise the variants calculate
+ * everything synchronously as before.
+ */
+final class ScheduleEvaluator {
+
+    private static final Logger LOGGER = Logger.getLogger(ScheduleEvaluator.class.getName());
+
+    private static final int BATCH_SIZE = 16;
+
+    private static volatile boolean enabled = false;
+
+    // Workers shared by all schedules, leave one processor for the UI.
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+        r -> {
+            final Thread t = new Thread(r, "ScheduleEvaluator");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+
+    private final Schedule owner;
+    private Job job; // guarded by this
+
+    ScheduleEvaluator(Schedule owner) {
+        this.owner = owner;
+    }
+
+    static void setEnabled(boolean b) {
+        enabled = b;
+    }
+
+    /** Starts the evaluation unless it is disabled, already done or in progress. */
+    synchronized void start() {
+        if (!enabled || job != null || owner.isEmpty()) return;
+        job = new Job(owner.getSite(), owner.getStart(), owner.getEnd());
+        job.submit(owner.getMiniModel().getAllObservations());
+    }
+
+    /** Abandons the current evaluation and starts over. */
+    synchronized void restart() {
+        cancel();
+        start();
+    }
+
+    synchronized void cancel() {
+        if (job != null) {
+            job.cancel();
+            job = null;
+        }
+    }
+
+    /** True if the unions for the given observation are still being calculated. */
+    synchronized boolean isPending(Obs obs) {
+        return job != null && job.pending.contains(obs);
+    }
+
+    private synchronized boolean isCurrent(Job j) {
+        return job == j;
+    }
+
+    private static final class Result {
+        final Obs obs;
+        final Union<Interval> dark, visible, timing;
+
+        Result(Obs obs, Union<Interval> dark, Union<Interval> visible, Union<Interval> timing) {
+            this.obs = obs;
+            this.dark = dark;
+            this.visible = visible;
+            this.timing = timing;
+        }
+    }
+
+    private final class Job {
+        final Site site;
+        final long start, end;
+
+        final Set<Obs> pending = ConcurrentHashMap.newKeySet();
+        final Queue<Result> results = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean publishScheduled = new AtomicBoolean(false);
+        final List<Future<?>> futures = new ArrayList<>();
+        volatile boolean cancelled = false;
+
+        Job(Site site, long start, long end) {
+            this.site = site;
+            this.start = start;
+            this.end = end;
+        }
+
+        void submit(Set<Obs> obs) {
+            final List<Obs> all = new ArrayList<>(obs);
+            pending.addAll(all);
+            for (int i = 0; i < all.size(); i += BATCH_SIZE) {
+                final List<Obs> batch = all.subList(i, Math.min(all.size(), i + BATCH_SIZE));
+                futures.add(POOL.submit(() -> run(batch)));
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            for (Future<?> f: futures) f.cancel(false);
+        }
+
+        void run(List<Obs> batch) {
+            for (Obs obs: batch) {
+                if (cancelled) return;
+                try {
+                    results.add(new Result(obs,
+                        Variant.darkUnion(site, obs, start, end),
+                        Variant.visibleUnion(site, obs, start, end),
+                        Variant.timingUnion(obs, start, end)));
+                } catch (RuntimeException ex) {
+                    // Leave it to the variants, which will calculate it synchronously.
+                    LOGGER.log(Level.WARNING, "Could not evaluate " + obs, ex);
+                    results.add(new Result(obs, null, null, null));
+                }
+            }
+            if (!cancelled && publishScheduled.compareAndSet(false, true))
+                SwingUtilities.invokeLater(this::publish);
+        }
+
+        // Called on the Swing thread, which is also where the caches are invalidated.
+        void publish() {
+            publishScheduled.set(false);
+            if (!isCurrent(this)) return;
+
+            final Map<Obs, Union<Interval>> darkCache    = owner.getCache(Variant.DARK_UNION_CACHE, Schedule.PROP_BLOCKS);
+            final Map<Obs, Union<Interval>> visibleCache = owner.getCache(Variant.VISIBLE_UNION_CACHE, Schedule.PROP_BLOCKS);
+            final Map<Obs, Union<Interval>> timingCache  = owner.getCache(Variant.TIMING_UNION_CACHE);
+
+            Result r;
+            while ((r = results.poll()) != null) {
+                if (r.dark != null) {
+                    synchronized (darkCache)    { darkCache.put(r.obs, r.dark); }
+                    synchronized (visibleCache) { visibleCache.put(r.obs, r.visible); }
+                    synchronized (timingCache)  { timingCache.put(r.obs, r.timing); }
+                }
+                pending.remove(r.obs);
+            }
+
+            for (Variant v: owner.getVariants())
+                v.evaluationProgressed();
+        }
+    }
+
+}
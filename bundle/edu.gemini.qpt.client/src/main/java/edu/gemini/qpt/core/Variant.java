@@ -593,6 +593,9 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
         // new schedules.
         if (owner.isEmpty()) return;
 
+        // Calculate the expensive unions in the background if enabled.
+        owner.startEvaluation();
+
         // Before we get started with flags, let's accumulate a list of all groups
         // referenced in the plan. We will use this later to color-code the group
         // associations for allocs such that all allocs in the same group get the
@@ -739,6 +742,10 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
             }
             flags.addAll(condsFlags);
 
+            // The unions for this observation are still being calculated in the background,
+            // the remaining flags are added when they are published.
+            if (owner.isEvaluationPending(obs)) continue;
+
 
             // We dont want to do the blocking calculation if the obs can't be
             // scheduled even if the variant is totally empty. So keep track
@@ -752,10 +759,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
             // can not be scheduled at all tonight.
             Union<Interval> darkUnion = darkUnionCache.get(obs);
             if (darkUnion == null) {
-                Function<Long, WorldCoords> coords = obs::getCoords;
-                final double brightest = obs.getConditions().getBrightestMagnitude();
-                SkyBackgroundSolver sbs = new SkyBackgroundSolver(site, coords, brightest);
-                darkUnion = sbs.solve(owner.getStart(), owner.getEnd());
+                darkUnion = darkUnion(site, obs, owner.getStart(), owner.getEnd());
                 darkUnionCache.put(obs, darkUnion);
             }
             if (darkUnion.isEmpty()) {
@@ -770,8 +774,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
             // this just means <= airmass 2.
             Union<Interval> visibleUnion = visibleUnionCache.get(obs);
             if (visibleUnion == null) {
-                ElevationConstraintSolver as = ElevationConstraintSolver.forObs(site, obs);
-                visibleUnion = as.solve(owner.getStart(), owner.getEnd());
+                visibleUnion = visibleUnion(site, obs, owner.getStart(), owner.getEnd());
                 visibleUnionCache.put(obs, visibleUnion);
             }
             if (visibleUnion.isEmpty()) {
@@ -786,8 +789,7 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
             // Timing windows
             Union<Interval> timingUnion = timingUnionCache.get(obs);
             if (timingUnion == null) {
-                TimingWindowSolver as = new TimingWindowSolver(obs);
-                timingUnion = as.solve(owner.getStart(), owner.getEnd());
+                timingUnion = timingUnion(obs, owner.getStart(), owner.getEnd());
                 timingUnionCache.put(obs, timingUnion);
             }
             if (timingUnion.isEmpty()) {
@@ -933,6 +935,31 @@ public final class Variant extends BaseMutableBean implements PioSerializable, C
 
     }
 
+    /** Times when the sky background at the target is dark enough for the observation. */
+    static Union<Interval> darkUnion(Site site, Obs obs, long start, long end) {
+        Function<Long, WorldCoords> coords = obs::getCoords;
+        final double brightest = obs.getConditions().getBrightestMagnitude();
+        SkyBackgroundSolver sbs = new SkyBackgroundSolver(site, coords, brightest);
+        return sbs.solve(start, end);
+    }
+
+    /** Times when the target meets its elevation constraints. */
+    static Union<Interval> visibleUnion(Site site, Obs obs, long start, long end) {
+        ElevationConstraintSolver as = ElevationConstraintSolver.forObs(site, obs);
+        return as.solve(start, end);
+    }
+
+    /** Times covered by the timing windows of the observation. */
+    static Union<Interval> timingUnion(Obs obs, long start, long end) {
+        TimingWindowSolver as = new TimingWindowSolver(obs);
+        return as.solve(start, end);
+    }
+
+    /** Called when the background evaluation of the schedule published new results. */
+    void evaluationProgressed() {
+        updateObsFlags();
+    }
+
     static final SimpleDateFormat df = new SimpleDateFormat("HH:mm");
 
     @SuppressWarnings("unused")
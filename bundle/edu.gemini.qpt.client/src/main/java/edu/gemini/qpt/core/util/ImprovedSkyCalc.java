@@ -2,7 +2,11 @@ package edu.gemini.qpt.core.util;
 
 import static java.lang.Math.cos;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.gemini.spModel.core.Site;
 import jsky.coords.WorldCoords;
@@ -15,7 +19,14 @@ import jsky.coords.WorldCoords;
 @SuppressWarnings("serial")
 public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
 
+    // Sun and moon positions shared by all calculators for a site, keyed by time. Observations are mostly
+    // evaluated on the same time grids (solver steps, night samples), so the positions are calculated once
+    // per time and site instead of once per time and target.
+    private static final int SUN_MOON_CACHE_SIZE = 50000;
+    private static final Map<Site, Map<Long, SunMoon>> SUN_MOON_CACHE = new ConcurrentHashMap<>();
+
     // Site parameters
+    private final Site site;
     private final double hoursLongitude;
     private final double degreesLatitude;
     private final double siteAltitude;
@@ -40,12 +51,27 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
     private boolean cachedCalculateMoon;
 
     public ImprovedSkyCalc(final Site site) {
+        this.site = site;
         hoursLongitude = -site.longitude/15.;
         degreesLatitude = site.latitude;
         siteAltitude = site.altitude;
     }
 
     public void calculate(final WorldCoords obj, final Date date, final boolean calculateMoon) {
+        calculate(obj, date, calculateMoon, null);
+    }
+
+    /**
+     * Calculates the circumstances of the target using the positions of the sun and the moon in the given
+     * ephemeris, which must have been calculated for the same site and date. This avoids recalculating the
+     * sun and the moon when many targets are evaluated at the same times.
+     */
+    public void calculate(final WorldCoords obj, final Date date, final SunMoon sunMoon) {
+        calculate(obj, date, true, sunMoon);
+    }
+
+    // If the sun and moon positions are needed but not given they are calculated here.
+    private void calculate(final WorldCoords obj, final Date date, final boolean calculateMoon, final SunMoon sunMoon) {
 
         // Early exit if the parameters haven't changed.
         if (obj.equals(cachedCoordinates) &&
@@ -68,11 +94,16 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
         final double objdec = obj.getDecDeg();
         final double objepoch = 2000.;
 
-        getCircumstances(objra, objdec, objepoch, curepoch.d, sid.d, degreesLatitude, jdut, calculateMoon);
+        getCircumstances(objra, objdec, objepoch, curepoch.d, sid.d, degreesLatitude);
+
+        if (calculateMoon) {
+            final SunMoon sm = (sunMoon != null) ? sunMoon : sharedSunMoon(date, jdut.d, sid.d);
+            getMoonCircumstances(objra, objdec, sm);
+        }
     }
 
     private void getCircumstances(double objra, double objdec, double objepoch,
-                                  double curep, double sid, double lat, DoubleRef jdut, boolean calculateMoon) {
+                                  double curep, double sid, double lat) {
 
         final double ha, alt;
         final DoubleRef az = new DoubleRef();
@@ -90,46 +121,126 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
         azimuth = az.d;
         parallacticAngle = par.d;
         hourAngle = ha;
+    }
 
-        if (calculateMoon) {
-
-            final DoubleRef ramoon = new DoubleRef();
-            final DoubleRef decmoon= new DoubleRef();
-            final DoubleRef distmoon = new DoubleRef();
-            final DoubleRef georamoon = new DoubleRef();
-            final DoubleRef geodecmoon = new DoubleRef();
-            final DoubleRef geodistmoon = new DoubleRef();
-            final DoubleRef rasun = new DoubleRef();
-            final DoubleRef decsun = new DoubleRef();
-            final DoubleRef distsun = new DoubleRef();
-            final DoubleRef x = new DoubleRef();
-            final DoubleRef y = new DoubleRef();
-            final DoubleRef z = new DoubleRef();
-            final DoubleRef toporasun = new DoubleRef();
-            final DoubleRef topodecsun = new DoubleRef();
-            final double elevsea = siteAltitude;
-
-            accusun(jdut.d,sid,degreesLatitude,rasun,decsun,distsun, toporasun,topodecsun,x,y,z);
-            sunAltitude=altit(topodecsun.d,(sid-toporasun.d),degreesLatitude,az, new DoubleRef() /* [out] parang, ignored */);
-
-            accumoon(jdut.d,degreesLatitude,sid,elevsea,georamoon,geodecmoon,geodistmoon, ramoon,decmoon,distmoon);
-            lunarElevation=altit(decmoon.d,(sid-ramoon.d),degreesLatitude,az, new DoubleRef()  /* [out] parang, ignored */);
-
-            // Sky brightness
-            lunarSkyBrightness = null;
-            lunarDistance = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,objra,objdec);
-            lunarPhaseAngle = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,toporasun.d,topodecsun.d);
-            if(lunarElevation > -2.) {
-                if((lunarElevation > 0.) && (altitude > 0.5) && (sunAltitude < -9.)) {
-                  lunarSkyBrightness =
-                     lunskybright(lunarPhaseAngle,lunarDistance,KZEN,lunarElevation,
-                        altitude,distmoon.d);
-                }
+    // The target dependent part of the lunar calculations.
+    private void getMoonCircumstances(double objra, double objdec, SunMoon sm) {
+        sunAltitude = sm.sunAltitude;
+        lunarElevation = sm.lunarElevation;
+        lunarPhaseAngle = sm.lunarPhaseAngle;
+        lunarIlluminatedFraction = sm.lunarIlluminatedFraction;
+
+        // Sky brightness
+        lunarSkyBrightness = null;
+        lunarDistance = DEG_IN_RADIAN * subtend(sm.ramoon,sm.decmoon,objra,objdec);
+        if(lunarElevation > -2.) {
+            if((lunarElevation > 0.) && (altitude > 0.5) && (sunAltitude < -9.)) {
+              lunarSkyBrightness =
+                 lunskybright(lunarPhaseAngle,lunarDistance,KZEN,lunarElevation,
+                    altitude,sm.distmoon);
             }
-            totalSkyBrightness = sb(180. - lunarPhaseAngle, lunarDistance, 90 - lunarElevation, 90 - altitude, 90 - sunAltitude, distmoon.d);
-            lunarIlluminatedFraction=(float) (0.5*(1.-cos(subtend(ramoon.d,decmoon.d,rasun.d,decsun.d))));
+        }
+        totalSkyBrightness = sb(180. - lunarPhaseAngle, lunarDistance, 90 - lunarElevation, 90 - altitude, 90 - sunAltitude, sm.distmoon);
+    }
+
+    /**
+     * Positions of the sun and the moon as seen from a site at a given time. These do not depend on the
+     * target and are by far the most expensive part of the lunar calculations.
+     */
+    public static final class SunMoon {
+        private final double ramoon;
+        private final double decmoon;
+        private final double distmoon;
+        private final double sunAltitude;
+        private final double lunarElevation;
+        private final double lunarPhaseAngle;
+        private final float  lunarIlluminatedFraction;
+
+        private SunMoon(double ramoon, double decmoon, double distmoon, double sunAltitude,
+                        double lunarElevation, double lunarPhaseAngle, float lunarIlluminatedFraction) {
+            this.ramoon = ramoon;
+            this.decmoon = decmoon;
+            this.distmoon = distmoon;
+            this.sunAltitude = sunAltitude;
+            this.lunarElevation = lunarElevation;
+            this.lunarPhaseAngle = lunarPhaseAngle;
+            this.lunarIlluminatedFraction = lunarIlluminatedFraction;
+        }
+
+        public double getSunAltitude() {
+            return sunAltitude;
+        }
+
+        public double getLunarElevation() {
+            return lunarElevation;
+        }
 
+        public double getLunarPhaseAngle() {
+            return lunarPhaseAngle;
         }
+
+        public float getLunarIlluminatedFraction() {
+            return lunarIlluminatedFraction;
+        }
+    }
+
+    /**
+     * Calculates the positions of the sun and the moon at the given date for this site.
+     */
+    public SunMoon sunMoon(final Date date) {
+        final DateTime dateTime = new DateTime(date);
+        final DoubleRef jdut = new DoubleRef();
+        final DoubleRef sid = new DoubleRef();
+        final DoubleRef curepoch = new DoubleRef();
+
+        setup_time_place(dateTime, hoursLongitude, jdut, sid, curepoch);
+
+        return sunMoon(jdut.d, sid.d);
+    }
+
+    private SunMoon sharedSunMoon(final Date date, double jdut, double sid) {
+        final Map<Long, SunMoon> cache = SUN_MOON_CACHE.computeIfAbsent(site, s ->
+            Collections.synchronizedMap(new LinkedHashMap<Long, SunMoon>(1024, 0.75f, true) {
+                @Override protected boolean removeEldestEntry(final Map.Entry<Long, SunMoon> eldest) {
+                    return size() > SUN_MOON_CACHE_SIZE;
+                }
+            }));
+        SunMoon sm = cache.get(date.getTime());
+        if (sm == null) {
+            sm = sunMoon(jdut, sid);
+            cache.put(date.getTime(), sm);
+        }
+        return sm;
+    }
+
+    private SunMoon sunMoon(double jdut, double sid) {
+        final DoubleRef ramoon = new DoubleRef();
+        final DoubleRef decmoon= new DoubleRef();
+        final DoubleRef distmoon = new DoubleRef();
+        final DoubleRef georamoon = new DoubleRef();
+        final DoubleRef geodecmoon = new DoubleRef();
+        final DoubleRef geodistmoon = new DoubleRef();
+        final DoubleRef rasun = new DoubleRef();
+        final DoubleRef decsun = new DoubleRef();
+        final DoubleRef distsun = new DoubleRef();
+        final DoubleRef x = new DoubleRef();
+        final DoubleRef y = new DoubleRef();
+        final DoubleRef z = new DoubleRef();
+        final DoubleRef toporasun = new DoubleRef();
+        final DoubleRef topodecsun = new DoubleRef();
+        final DoubleRef az = new DoubleRef();
+        final double elevsea = siteAltitude;
+
+        accusun(jdut,sid,degreesLatitude,rasun,decsun,distsun, toporasun,topodecsun,x,y,z);
+        final double sunAlt=altit(topodecsun.d,(sid-toporasun.d),degreesLatitude,az, new DoubleRef() /* [out] parang, ignored */);
+
+        accumoon(jdut,degreesLatitude,sid,elevsea,georamoon,geodecmoon,geodistmoon, ramoon,decmoon,distmoon);
+        final double moonElevation=altit(decmoon.d,(sid-ramoon.d),degreesLatitude,az, new DoubleRef()  /* [out] parang, ignored */);
+
+        final double phaseAngle = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,toporasun.d,topodecsun.d);
+        final float illuminatedFraction=(float) (0.5*(1.-cos(subtend(ramoon.d,decmoon.d,rasun.d,decsun.d))));
+
+        return new SunMoon(ramoon.d, decmoon.d, distmoon.d, sunAlt, moonElevation, phaseAngle, illuminatedFraction);
     }
 
     /**
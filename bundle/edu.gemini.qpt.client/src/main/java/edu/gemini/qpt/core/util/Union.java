@@ -1,12 +1,17 @@
 package edu.gemini.qpt.core.util;
 
 import edu.gemini.qpt.core.util.Interval.Overlap;
+import edu.gemini.skycalc.IntervalSet;
 
 import java.util.*;
 
 /**
  * Represents a collection of Intervals which are automatically merged and split such that
- * they never overlap or abut.
+ * they never overlap or abut. The intervals are held as an {@link IntervalSet} of sorted
+ * endpoints, so adding, removing and intersecting are linear merges and containment is a
+ * binary search. Intervals that are added and survive unchanged are kept as they are, new
+ * ones resulting from merges and clips are created on demand from a member interval.
+ * Empty intervals are ignored.
  * @see Interval#overlaps(Interval, Overlap)
  * @see Interval#abuts(Interval)
  * @author rnorris
@@ -14,8 +19,13 @@ import java.util.*;
  */
 public class Union<T extends IntervalType<T>> implements Iterable<T> {
 
-    private final SortedSet<T> intervals = new TreeSet<>();
-    
+    private static final Object[] NO_ITEMS = new Object[0];
+
+    private IntervalSet set = IntervalSet.EMPTY;
+    private Object[] items = NO_ITEMS; // T for each interval of the set, null until needed
+    private T prototype;               // creates the T for merged and clipped intervals
+    private SortedSet<T> view;         // cached result of getIntervals()
+
     public Union() {
     }
 
@@ -34,11 +44,12 @@ public class Union<T extends IntervalType<T>> implements Iterable<T> {
     }
 
     public Iterator<T> iterator() {
-        return intervals.iterator();
+        return getIntervals().iterator();
     }
 
     public void add(final Union<? extends T> other) {
-        for (T t: other) add(t);
+        if (other.isEmpty()) return;
+        update(set.union(other.set), other, other.prototype);
     }
     
     public void add(final Collection<? extends T> other) {
@@ -50,7 +61,7 @@ public class Union<T extends IntervalType<T>> implements Iterable<T> {
     }
     
     public final void remove(final Union<? extends T> other) {
-        for (T t: other) remove(t);
+        update(set.difference(other.set), null, null);
     }
     
     public final void remove(final Collection<? extends T> other) {
@@ -67,67 +78,50 @@ public class Union<T extends IntervalType<T>> implements Iterable<T> {
      * Adds the specified interval, which will be merged into the internal collection.
      * @param ni
      */
-    @SuppressWarnings("unchecked")
     public void add(T ni) {
-        for (Iterator<T> it = intervals.iterator(); it.hasNext(); ) {            
-            T oi = it.next();
-            if (oi.overlaps(ni, Overlap.EITHER) || oi.abuts(ni)) {
-                it.remove();
-                ni = ni.plus(oi);
-            }
-        }
-        intervals.add(ni);
+        update(set.union(IntervalSet.of(ni.getStart(), ni.getEnd())), null, ni);
+
+        // Keep the interval itself if it was not merged with others.
+        final int i = set.indexOf(ni.getStart());
+        if (i >= 0 && items[i] == null && set.start(i) == ni.getStart() && set.end(i) == ni.getEnd())
+            items[i] = ni;
     }
     
     /**
      * Removes the specified interval, which will be clipped out of the internal collection.
      * @param del
      */
-    @SuppressWarnings("unchecked")
     public final void remove(final IntervalType<?> del) {
-        final List<T> toAdd = new ArrayList<>();
-        for (final Iterator<T> it = intervals.iterator(); it.hasNext(); ) {            
-            final T oi = it.next();
-            if (del.overlaps(oi, Overlap.TOTAL)) {
-                it.remove();
-                continue;
-            } else if (del.overlaps(oi, Overlap.PARTIAL)) {
-                it.remove();
-                toAdd.add(oi.minus(del));
-            } else if (oi.overlaps(del, Overlap.TOTAL)) {
-                it.remove();
-                toAdd.add(oi.create(oi.getStart(), del.getStart()));
-                toAdd.add(oi.create(del.getEnd(), oi.getEnd()));
-            }
-        }
-        intervals.addAll(toAdd);
+        update(set.difference(IntervalSet.of(del.getStart(), del.getEnd())), null, null);
     }
     
     
     
-    @SuppressWarnings("unchecked")
     public void intersect(final Union<? extends IntervalType<?>> that) {
+        update(set.intersection(that.set), null, null);
+    }
 
-        // Get the intervals
-        final SortedSet<? extends IntervalType<T>> thisI = this.getIntervals();
-        final SortedSet<? extends IntervalType<?>> thatI = that.getIntervals();
-        
-        // Collect the interval endpoints.
-        int i = 0;
-        final long[] points = new long[(thisI.size() + thatI.size()) * 2];
-        for (IntervalType<T> iv: thisI) { points[i++] = iv.getStart(); points[i++] = iv.getEnd(); }
-        for (IntervalType<?> iv: thatI) { points[i++] = iv.getStart(); points[i++] = iv.getEnd(); }
-        Arrays.sort(points);
-
-        // Ok, we know there is an even number of points. Look at each 
-        // consecutive pair.
-        for (i = 0; i < points.length - 1; i++) {
-            long a = points[i], b = points[i+1];
-            if (this.contains(a) && that.contains(a)) continue;
-
-            remove(new Interval(a, b));
+    // Replaces the interval set, keeping the items of intervals which are unchanged
+    // here or which come unchanged from the other union.
+    private void update(final IntervalSet next, final Union<? extends T> other, final T proto) {
+        if (next != set) {
+            final Object[] kept = next.carry(set, items);
+            if (other != null) {
+                final Object[] adopted = next.carry(other.set, other.items);
+                for (int i = 0; i < kept.length; i++)
+                    if (kept[i] == null) kept[i] = adopted[i];
+            }
+            set = next;
+            items = kept;
+            view = null;
         }
-        
+        if (prototype == null) prototype = proto;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(final int i) {
+        if (items[i] == null) items[i] = prototype.create(set.start(i), set.end(i));
+        return (T) items[i];
     }
     
     public static void main(final String[] args) {
@@ -152,10 +146,7 @@ public class Union<T extends IntervalType<T>> implements Iterable<T> {
     
 
     public boolean contains(final long t) {
-        for (IntervalType<?> i: this)
-            if (i.contains(t))
-                return true;
-        return false;
+        return set.contains(t);
     }
 
     /**
@@ -163,26 +154,34 @@ public class Union<T extends IntervalType<T>> implements Iterable<T> {
      * iterate.
      * @return this Union's internal Intervals in natural order
      */
-    public SortedSet<T> getIntervals() {
-        return Collections.unmodifiableSortedSet(intervals);
+    public synchronized SortedSet<T> getIntervals() {
+        // Synchronized because the intervals are created lazily and unions which are no
+        // longer modified may be read from several threads.
+        if (view == null) {
+            final SortedSet<T> s = new TreeSet<>();
+            for (int i = 0; i < set.size(); i++) s.add(item(i));
+            view = Collections.unmodifiableSortedSet(s);
+        }
+        return view;
     }
     
     @Override
     public String toString() {
-        return intervals.toString();
+        return getIntervals().toString();
     }
     
     public boolean isEmpty() {
-        return intervals.isEmpty();
+        return set.isEmpty();
     }
     
     /**
      * Returns a copy of this Union.
      */
-    public Union<T> clone() {
+    public synchronized Union<T> clone() {
         final Union<T> u = new Union<>();
-        for (T i: intervals)
-            u.add(i);
+        u.set = set;
+        u.items = items.clone();
+        u.prototype = prototype;
         return u;
     }
 
@@ -153,6 +153,9 @@ public class ShellAdvisor implements IShellAdvisor, PropertyChangeListener {
         context.setTitle(title);
         final IShell shell = context.getShell();
         shell.addPropertyChangeListener(this);
+
+        // Calculate observation constraints in the background to keep the UI responsive.
+        Schedule.setBackgroundEvaluation(true);
         IActionManager mgr = context.getActionManager();
 
         // If we're on the Mac, hook the system Quit menu:
@@ -207,7 +210,9 @@ public class ShellAdvisor implements IShellAdvisor, PropertyChangeListener {
                 new RefreshAction(shell, authClient, magTable),
                 new MergeAction(shell, authClient, magTable),
                 null,
-                new IctdAction(shell, authClient)
+                new IctdAction(shell, authClient),
+                null,
+                new AutoScheduleAction(shell)
 
         );
 
@@ -368,6 +373,11 @@ public class ShellAdvisor implements IShellAdvisor, PropertyChangeListener {
             Schedule sched = (Schedule) context.getShell().getModel();
             context.setTitle(sched == null ? title : (sched.getName() + " - " + title));
 
+            // Don't keep evaluating a schedule that was closed or replaced.
+            final Object prev = evt.getOldValue();
+            if (prev instanceof Schedule && prev != sched)
+                ((Schedule) prev).cancelEvaluation();
+
         }
     }
 
@@ -0,0 +1,63 @@
+package edu.gemini.qpt.ui.action;
+
+import java.awt.Cursor;
+import java.awt.event.ActionEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.AbstractAction;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import edu.gemini.qpt.core.AutoScheduler;
+import edu.gemini.qpt.core.Schedule;
+import edu.gemini.ui.workspace.IShell;
+
+/**
+ * Fills all variants of the current plan with the best observations that fit.
+ * @see AutoScheduler
+ */
+@SuppressWarnings("serial")
+public class AutoScheduleAction extends AbstractAction implements PropertyChangeListener {
+
+    private static final Logger LOGGER = Logger.getLogger(AutoScheduleAction.class.getName());
+
+    private final IShell shell;
+    private boolean running;
+
+    public AutoScheduleAction(IShell shell) {
+        super("Fill Variants Automatically");
+        this.shell = shell;
+        shell.addPropertyChangeListener(this);
+        setEnabled(false);
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        final Schedule sched = (Schedule) shell.getModel();
+        running = true;
+        updateEnabled();
+        shell.getPeer().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        AutoScheduler.fill(sched, sched.getVariants()).whenCompleteAsync((added, ex) -> {
+            running = false;
+            updateEnabled();
+            shell.getPeer().setCursor(Cursor.getDefaultCursor());
+            if (ex != null) {
+                LOGGER.log(Level.SEVERE, "Could not fill variants.", ex);
+                JOptionPane.showMessageDialog(shell.getPeer(), "The variants could not be filled due to a " + ex.getClass().getSimpleName() + ".",
+                        "Fill Variants", JOptionPane.ERROR_MESSAGE, null);
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    public void propertyChange(PropertyChangeEvent evt) {
+        if (IShell.PROP_MODEL.equals(evt.getPropertyName()))
+            updateEnabled();
+    }
+
+    private void updateEnabled() {
+        setEnabled(!running && shell.getModel() != null);
+    }
+
+}
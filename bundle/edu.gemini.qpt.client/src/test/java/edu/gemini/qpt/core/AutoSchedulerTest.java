@@ -0,0 +1,82 @@
+package edu.gemini.qpt.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.gemini.qpt.core.AutoScheduler.Candidate;
+import edu.gemini.qpt.core.AutoScheduler.Visit;
+import edu.gemini.qpt.core.util.Interval;
+import edu.gemini.qpt.core.util.Union;
+
+public class AutoSchedulerTest {
+
+    private static Candidate candidate(double score, Union<Interval> windows, long... steps) {
+        return new Candidate(score, windows, steps, 0, 10, 5, Alloc.SetupType.FULL);
+    }
+
+    private static Union<Interval> union(long start, long end) {
+        return new Union<>(new Interval(start, end));
+    }
+
+    @Test
+    public void testHighestScoreFirst() {
+        final Candidate low = candidate(0.1, union(0, 100), 50);
+        final Candidate high = candidate(0.9, union(0, 100), 50);
+        final List<Visit> visits = AutoScheduler.plan(union(0, 100), Arrays.asList(low, high));
+        assertEquals(1, visits.size());
+        assertEquals(high, visits.get(0).candidate);
+        assertEquals(0, visits.get(0).start);
+        assertEquals(60, visits.get(0).end);
+    }
+
+    @Test
+    public void testSetupBeforeWindow() {
+        // Setup may be done before the window opens, the step must be inside.
+        final Candidate c = candidate(1, union(50, 100), 20);
+        final Visit v = AutoScheduler.plan(union(0, 100), Arrays.asList(c)).get(0);
+        assertEquals(40, v.start);
+        assertEquals(70, v.end);
+    }
+
+    @Test
+    public void testSplitSteps() {
+        // Two free slots, the steps that don't fit in the first go into a
+        // successor visit with reacquisition.
+        final Union<Interval> free = union(0, 40);
+        free.add(new Interval(60, 100));
+        final Candidate c = candidate(1, union(0, 100), 10, 10, 10, 10);
+        final List<Visit> visits = AutoScheduler.plan(free, Arrays.asList(c));
+        assertEquals(2, visits.size());
+        assertEquals(0, visits.get(0).firstStep);
+        assertEquals(2, visits.get(0).lastStep);
+        assertEquals(Alloc.SetupType.FULL, visits.get(0).setupType);
+        assertEquals(3, visits.get(1).firstStep);
+        assertEquals(3, visits.get(1).lastStep);
+        assertEquals(Alloc.SetupType.REACQUISITION, visits.get(1).setupType);
+        assertEquals(60, visits.get(1).start);
+        assertEquals(75, visits.get(1).end);
+    }
+
+    @Test
+    public void testNoOverlaps() {
+        final Candidate a = candidate(0.5, union(0, 100), 30);
+        final Candidate b = candidate(0.5, union(0, 100), 30);
+        final Candidate c = candidate(0.5, union(0, 100), 30);
+        final List<Visit> visits = AutoScheduler.plan(union(0, 100), Arrays.asList(a, b, c));
+        assertEquals(2, visits.size());
+        assertTrue(visits.get(0).end <= visits.get(1).start);
+    }
+
+    @Test
+    public void testUnschedulable() {
+        // The window is too short for the step.
+        final Candidate c = candidate(1, union(0, 15), 20);
+        assertTrue(AutoScheduler.plan(union(0, 100), Arrays.asList(c)).isEmpty());
+    }
+
+}
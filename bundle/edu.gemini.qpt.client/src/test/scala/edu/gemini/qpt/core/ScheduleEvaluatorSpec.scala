@@ -0,0 +1,85 @@
+package edu.gemini.qpt.core
+
+import java.util.{Calendar, TimeZone}
+import javax.swing.SwingUtilities
+
+import edu.gemini.qpt.shared.sp.MiniModel
+import edu.gemini.qpt.shared.util.ProgramDatabase
+import edu.gemini.shared.util.immutable.None
+import edu.gemini.skycalc.TwilightBoundedNight
+import edu.gemini.skycalc.TwilightBoundType.NAUTICAL
+import edu.gemini.spModel.core.Site
+
+import org.specs2.mutable._
+
+import scala.collection.JavaConverters._
+
+/**
+ * Checks that variants evaluated with the background ScheduleEvaluator end up
+ * with the same flags and scores as variants that compute everything themselves.
+ */
+final class ScheduleEvaluatorSpec extends Specification {
+  sequential
+
+  private val site: Site = Site.GS
+
+  private val night: TwilightBoundedNight = {
+    val c = Calendar.getInstance(TimeZone.getTimeZone("UTC"))
+    c.set(2014, Calendar.SEPTEMBER, 15, 12, 0, 0)
+    TwilightBoundedNight.forTime(NAUTICAL, c.getTimeInMillis, site)
+  }
+
+  private def onSwing[A](a: => A): A = {
+    var result: Option[A] = scala.None
+    SwingUtilities.invokeAndWait(new Runnable {
+      def run(): Unit = result = Some(a)
+    })
+    result.get
+  }
+
+  // Flags and score of each observation for each variant of a new schedule, and
+  // whether any of them were left to the background evaluation at first
+  private def evaluate(model: MiniModel, background: Boolean): (List[(String, String, Set[Variant.Flag], Double)], Boolean) = {
+    Schedule.setBackgroundEvaluation(background)
+    try {
+      val obs = model.getAllObservations.asScala.toList
+      val (s, deferred) = onSwing {
+        val s = new Schedule(model, None.instance())
+        s.addBlock(night.getStartTime, night.getEndTime)
+        s.addVariant("Photometric, Good Seeing, Dry", 50.toByte, 70.toByte, 50.toByte, null, false)
+        s.addVariant("Cloudy, Poor Seeing, Wet", 80.toByte, 100.toByte, 100.toByte, null, false)
+        (s, obs.exists(s.isEvaluationPending))
+      }
+
+      val deadline = System.currentTimeMillis + 60000
+      while (onSwing(obs.exists(s.isEvaluationPending)) && System.currentTimeMillis < deadline)
+        Thread.sleep(50)
+
+      val scores = onSwing {
+        s.cancelEvaluation()
+        for {
+          v <- s.getVariants.asScala.toList
+          o <- obs
+        } yield (v.getName, o.getObsId, v.getFlags(o).asScala.toSet, v.getScore(o))
+      }
+      (scores, deferred)
+    } finally {
+      Schedule.setBackgroundEvaluation(false)
+    }
+  }
+
+  "ScheduleEvaluator" should {
+
+    "give the same flags and scores as the synchronous evaluation" in {
+      ProgramDatabase.withProgram(20) { (odb, _) =>
+        val model                  = ProgramDatabase.miniModel(odb)
+        val (synchronous, _)       = evaluate(model, background = false)
+        val (background, deferred) = evaluate(model, background = true)
+
+        (synchronous.length must_== 40) and (deferred must beTrue) and (background must_== synchronous)
+      }
+    }
+
+  }
+
+}
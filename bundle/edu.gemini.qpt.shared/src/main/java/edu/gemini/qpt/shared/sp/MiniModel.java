@@ -49,6 +49,8 @@ public class MiniModel {
     private final long timestamp = System.currentTimeMillis();
     private final Map<SPProgramID, ProgramExclusion> programExclusions;
     private final Map<SPObservationID, ObsExclusion> obsExclusions;
+    private final Map<SPProgramID, Long> programVersions;
+    private final List<Object> queryKey;
 
     private MiniModel(Site site,
                       SortedSet<Prog> programs,
@@ -56,7 +58,20 @@ public class MiniModel {
                       SortedSet<String> allSemesters,
                       Map<SPProgramID, ProgramExclusion> programExclusions,
                       Map<SPObservationID, ObsExclusion> obsExclusions) {
+        this(site, programs, misconfiguredObservations, allSemesters, programExclusions, obsExclusions, Collections.emptyMap(), null);
+    }
+
+    private MiniModel(Site site,
+                      SortedSet<Prog> programs,
+                      SortedSet<String> misconfiguredObservations,
+                      SortedSet<String> allSemesters,
+                      Map<SPProgramID, ProgramExclusion> programExclusions,
+                      Map<SPObservationID, ObsExclusion> obsExclusions,
+                      Map<SPProgramID, Long> programVersions,
+                      List<Object> queryKey) {
         this.site = site;
+        this.programVersions = Collections.unmodifiableMap(new TreeMap<>(programVersions));
+        this.queryKey = queryKey;
         this.programs = Collections.unmodifiableSortedSet(new TreeSet<>(programs));
         this.misconfiguredObservations = Collections.unmodifiableSortedSet(new TreeSet<>(misconfiguredObservations));
         this.allSemesters = Collections.unmodifiableSortedSet(new TreeSet<>(allSemesters));
@@ -143,6 +158,10 @@ public class MiniModel {
             Set<String> extraSemesters,
             AgsMagnitude.MagnitudeTable magTable) throws IOException, TimeoutException {
 
+        return newInstance(kc, peer, new Date(date), parseSemesters(extraSemesters), ProgramType$.MODULE$.AllAsJava(), RELEVANT_OBS_CLASSES, RELEVANT_OBS_STATUSES, magTable);
+    }
+
+    private static Set<Semester> parseSemesters(Set<String> extraSemesters) {
         Set<Semester> semesters = new HashSet<Semester>();
         for (String s : extraSemesters) {
             try {
@@ -151,7 +170,32 @@ public class MiniModel {
                 throw new RuntimeException("can not parse semester: " + s);
             }
         }
-        return newInstance(kc, peer, new Date(date), semesters, ProgramType$.MODULE$.AllAsJava(), RELEVANT_OBS_CLASSES, RELEVANT_OBS_STATUSES, magTable);
+        return semesters;
+    }
+
+    /**
+     * Refreshes a mini model for the given peer, date and some additional
+     * semesters.  Only the programs that changed since the previous model was
+     * created are queried from the database, the rest are kept.
+     * This is a convenience method used by QPT.
+     * @param peer
+     * @param date the date on which the night ends / sunrise
+     * @param extraSemesters
+     * @param previous the model to be refreshed, may be null
+     * @return
+     * @throws IOException
+     * @throws TimeoutException
+     */
+    public static MiniModel refresh(
+            KeyChain kc,
+            Peer peer,
+            long date,
+            Set<String> extraSemesters,
+            AgsMagnitude.MagnitudeTable magTable,
+            MiniModel previous) throws IOException, TimeoutException {
+
+        final ObsQueryFunctor func = new ObsQueryFunctor(peer.site, new Date(date), parseSemesters(extraSemesters), ProgramType$.MODULE$.AllAsJava(), RELEVANT_OBS_CLASSES, RELEVANT_OBS_STATUSES, magTable);
+        return newInstance(kc, peer, func, previous);
     }
 
     /**
@@ -191,16 +235,85 @@ public class MiniModel {
      * @return
      */
     public static MiniModel newInstanceFromExecuted(Peer peer, ObsQueryFunctor result) {
+        return newInstanceFromExecuted(peer, result, null);
+    }
+
+    /**
+     * Creates a mini model from an already executed functor that was told
+     * the program versions of a previous model with
+     * {@link ObsQueryFunctor#withKnownVersions}.  Programs that didn't change
+     * are taken from the previous model, programs that are no longer found by
+     * the query are dropped.
+     * @param peer
+     * @param result
+     * @param previous the model whose versions were given to the functor, may be null
+     * @return
+     */
+    public static MiniModel newInstanceFromExecuted(Peer peer, ObsQueryFunctor result, MiniModel previous) {
+        final SortedSet<Prog> programs = new TreeSet<>(result.getProgramSet());
+        final SortedSet<String> misconfigured = new TreeSet<>(result.getMisconfiguredObservations());
+        final Map<SPProgramID, ProgramExclusion> programExclusions = new TreeMap<>(result.getProgramExclusions());
+        final Map<SPObservationID, ObsExclusion> obsExclusions = new TreeMap<>(result.getObsExclusions());
+
+        final Set<SPProgramID> unchanged = result.getUnchangedPrograms();
+        if (previous != null && !unchanged.isEmpty()) {
+            for (Prog p : previous.programs) {
+                if (unchanged.contains(p.getProgramId())) programs.add(p);
+            }
+            for (String o : previous.misconfiguredObservations) {
+                if (unchanged.contains(programId(o))) misconfigured.add(o);
+            }
+            for (Map.Entry<SPProgramID, ProgramExclusion> e : previous.programExclusions.entrySet()) {
+                if (unchanged.contains(e.getKey())) programExclusions.put(e.getKey(), e.getValue());
+            }
+            for (Map.Entry<SPObservationID, ObsExclusion> e : previous.obsExclusions.entrySet()) {
+                if (unchanged.contains(e.getKey().getProgramID())) obsExclusions.put(e.getKey(), e.getValue());
+            }
+        }
+
         return new MiniModel(
                 peer.site,
-                result.getProgramSet(),
-                result.getMisconfiguredObservations(),
+                programs,
+                misconfigured,
                 result.getAllSemesters(),
-                result.getProgramExclusions(),
-                result.getObsExclusions());
+                programExclusions,
+                obsExclusions,
+                result.getProgramVersions(),
+                result.queryKey());
+    }
+
+    private static SPProgramID programId(String obsId) {
+        try {
+            return new SPObservationID(obsId).getProgramID();
+        } catch (SPBadIDException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Program version fingerprints of the programs in this model, to be
+     * passed to {@link ObsQueryFunctor#withKnownVersions} to refresh it.
+     */
+    public Map<SPProgramID, Long> getProgramVersions() {
+        return programVersions;
+    }
+
+    /**
+     * Prepares the functor for an incremental update of the previous model,
+     * if it was created by an equivalent query.
+     */
+    public static ObsQueryFunctor incremental(ObsQueryFunctor functor, MiniModel previous) {
+        if (previous != null && functor.queryKey().equals(previous.queryKey)) {
+            functor.withKnownVersions(previous.programVersions);
+        }
+        return functor;
     }
 
     private static MiniModel newInstance(KeyChain kc, Peer peer, ObsQueryFunctor functor) throws IOException, TimeoutException {
+        return newInstance(kc, peer, functor, null);
+    }
+
+    private static MiniModel newInstance(KeyChain kc, Peer peer, ObsQueryFunctor functor, MiniModel previous) throws IOException, TimeoutException {
 
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         try {
@@ -215,8 +328,8 @@ public class MiniModel {
             }
 
             final IDBQueryRunner qr = TrpcClient$.MODULE$.apply(peer.host, peer.port).withKeyChain(kc).proxy(IDBQueryRunner.class);
-            final ObsQueryFunctor result = qr.queryPrograms(functor);
-            return newInstanceFromExecuted(peer, result);
+            final ObsQueryFunctor result = qr.queryPrograms(incremental(functor, previous));
+            return newInstanceFromExecuted(peer, result, previous);
 
         } catch (UndeclaredThrowableException ute) {
             try {
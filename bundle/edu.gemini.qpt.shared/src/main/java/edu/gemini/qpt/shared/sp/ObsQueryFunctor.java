@@ -2,9 +2,11 @@ package edu.gemini.qpt.shared.sp;
 
 import edu.gemini.ags.api.*;
 import edu.gemini.pot.sp.*;
+import edu.gemini.pot.sp.version.LifespanId;
 import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
 import edu.gemini.pot.spdb.IDBDatabaseService;
 import edu.gemini.shared.util.TimeValue;
+import edu.gemini.shared.util.VersionVector;
 import edu.gemini.shared.util.immutable.ApplyOp;
 import edu.gemini.shared.util.immutable.DefaultImList;
 import edu.gemini.shared.util.immutable.ImOption;
@@ -81,6 +83,14 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
     private final Map<SPProgramID, ProgramExclusion> programExclusions = new TreeMap<>();
     private final Map<SPObservationID, ObsExclusion> obsExclusions = new TreeMap<>();
 
+    // Version fingerprints of the programs the client already has, and those
+    // of all relevant programs found by this query.  Programs whose
+    // fingerprint didn't change are not recomputed; they are listed in
+    // unchangedPrograms instead so that the client can keep its copy.
+    private Map<SPProgramID, Long> knownVersions = Collections.emptyMap();
+    private final Map<SPProgramID, Long> programVersions = new TreeMap<>();
+    private final SortedSet<SPProgramID> unchangedPrograms = new TreeSet<>();
+
     private final Site site;
     private final Calendar date;
     private final List<ProgramType> progTypes;
@@ -163,6 +173,63 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         this.magTable = magTable;
     }
 
+    /**
+     * Sets the version fingerprints (as returned by a previous execution of an
+     * equivalent query) of the programs the client already has.  Relevant
+     * programs that still have the same fingerprint will be reported as
+     * unchanged rather than recomputed.
+     */
+    public ObsQueryFunctor withKnownVersions(Map<SPProgramID, Long> versions) {
+        this.knownVersions = new HashMap<>(versions);
+        return this;
+    }
+
+    /**
+     * Identifies the parameters of this query. Results of queries with equal
+     * keys can be merged incrementally.
+     */
+    List<Object> queryKey() {
+        return Arrays.asList(
+                site,
+                date == null ? null : date.getTimeInMillis(),
+                new HashSet<>(progTypes),
+                relevantObsClasses,
+                relevantObsStatuses,
+                relevantSemesters,
+                rolloverSemesters,
+                skipCompletedPrograms,
+                skipInactivePrograms,
+                skipInvalidObservations,
+                skipNoStepsObservations);
+    }
+
+    /**
+     * Computes a fingerprint of the versions of all nodes in the program.
+     * Any edit to the program increments the version of at least one of its
+     * nodes and so changes the fingerprint.
+     */
+    static long versionFingerprint(ISPProgram programShell) {
+        long fingerprint = 0;
+        for (Map.Entry<SPNodeKey, VersionVector<LifespanId, Integer>> e : JavaConversions.mapAsJavaMap(programShell.getVersions()).entrySet()) {
+            long h = e.getKey().hashCode();
+            for (Map.Entry<LifespanId, Integer> c : JavaConversions.mapAsJavaMap(e.getValue().clocks()).entrySet()) {
+                h = h * 1000003L + mix(c.getKey().hashCode() * 31L + c.getValue());
+            }
+            // order independent combination of the nodes
+            fingerprint += mix(h);
+        }
+        return fingerprint;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
     @SuppressWarnings("unchecked")
     public void execute(IDBDatabaseService db, ISPNode progNode, Set<Principal> principals) {
         try {
@@ -228,6 +295,15 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 }
             }
 
+            // -- skip the expensive part if the client already has this version of the program
+            final long fingerprint = versionFingerprint(programShell);
+            programVersions.put(id, fingerprint);
+            final Long known = knownVersions.get(id);
+            if (known != null && known == fingerprint) {
+                unchangedPrograms.add(id);
+                return;
+            }
+
             // -- Get the science band and times
             final int band;
             long plannedTime = 0;
@@ -935,6 +1011,14 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         return obsExclusions;
     }
 
+    Map<SPProgramID, Long> getProgramVersions() {
+        return programVersions;
+    }
+
+    SortedSet<SPProgramID> getUnchangedPrograms() {
+        return unchangedPrograms;
+    }
+
 }
 
 
@@ -0,0 +1,90 @@
+package edu.gemini.qpt.shared.sp
+
+import edu.gemini.pot.sp.ISPProgram
+import edu.gemini.pot.spdb.IDBDatabaseService
+import edu.gemini.qpt.shared.util.ProgramDatabase._
+import edu.gemini.spModel.obs.SPObservation
+import org.specs2.mutable.Specification
+
+import scala.collection.JavaConverters._
+
+/**
+ * Checks that refreshing a mini model only queries the programs that changed.
+ */
+object MiniModelSpec extends Specification {
+
+  // Queries incrementally if there is a previous model
+  private def refresh(odb: IDBDatabaseService, previous: MiniModel): (ObsQueryFunctor, MiniModel) = {
+    val result = query(odb, MiniModel.incremental(functor(), previous))
+    (result, MiniModel.newInstanceFromExecuted(Odb, result, previous))
+  }
+
+  private def setTitle(p: ISPProgram, index: Int, title: String): Unit = {
+    val o  = p.getAllObservations.get(index)
+    val so = o.getDataObject.asInstanceOf[SPObservation]
+    so.setTitle(title)
+    o.setDataObject(so)
+  }
+
+  private def titles(m: MiniModel): List[String] =
+    m.getAllObservations.asScala.toList.map(_.getTitle)
+
+  private def numbers(m: MiniModel): List[Int] =
+    m.getAllObservations.asScala.toList.map(_.getObsNumber)
+
+  "ObsQueryFunctor.versionFingerprint" should {
+    "change when the program is edited" in {
+      withProgram(2) { (_, p) =>
+        val before = ObsQueryFunctor.versionFingerprint(p)
+        val again  = ObsQueryFunctor.versionFingerprint(p)
+        setTitle(p, 0, "Edited")
+        (again must_== before) and (ObsQueryFunctor.versionFingerprint(p) must_!= before)
+      }
+    }
+  }
+
+  "MiniModel refresh" should {
+    "skip unchanged programs and keep them" in {
+      withProgram(2) { (odb, _) =>
+        val (_, m0)  = refresh(odb, null)
+        val (r1, m1) = refresh(odb, m0)
+        (m0.getAllObservations.size must_== 2) and
+          (r1.getUnchangedPrograms.asScala must_== Set(Pid)) and
+          (r1.getProgramSet.isEmpty must beTrue) and
+          (m1.getPrograms.first must be(m0.getPrograms.first)) and
+          (m1.getProgramVersions must_== m0.getProgramVersions)
+      }
+    }
+
+    "fetch again and merge a changed observation" in {
+      withProgram(2) { (odb, p) =>
+        val (_, m0)  = refresh(odb, null)
+        setTitle(p, 1, "Edited")
+        val (r1, m1) = refresh(odb, m0)
+        (r1.getUnchangedPrograms.isEmpty must beTrue) and
+          (titles(m0) must not contain "Edited") and
+          (titles(m1) must contain("Edited")) and
+          (m1.getAllObservations.size must_== 2) and
+          (m1.getProgramVersions must_!= m0.getProgramVersions)
+      }
+    }
+
+    "drop deleted observations" in {
+      withProgram(2) { (odb, p) =>
+        val (_, m0) = refresh(odb, null)
+        p.removeObservation(p.getAllObservations.get(1))
+        val (_, m1) = refresh(odb, m0)
+        (numbers(m0) must_== List(1, 2)) and (numbers(m1) must_== List(1))
+      }
+    }
+
+    "drop deleted programs" in {
+      withProgram(2) { (odb, p) =>
+        val (_, m0) = refresh(odb, null)
+        odb.remove(p)
+        val (_, m1) = refresh(odb, m0)
+        (m0.getPrograms.size must_== 1) and (m1.getPrograms.isEmpty must beTrue)
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package edu.gemini.qpt.shared.util
+
+import java.security.Principal
+import java.util.Collections
+
+import edu.gemini.ags.conf.ProbeLimitsTable
+import edu.gemini.pot.sp.{ISPProgram, Instrument, SPNodeKey}
+import edu.gemini.pot.spdb.{DBLocalDatabase, IDBDatabaseService}
+import edu.gemini.qpt.shared.sp.{MiniModel, ObsQueryFunctor}
+import edu.gemini.spModel.core.{Peer, ProgramType, SPProgramID, Semester, Site}
+import edu.gemini.spModel.gemini.obscomp.SPProgram
+import edu.gemini.spModel.obs.ObservationStatus
+import edu.gemini.spModel.obsclass.ObsClass
+import edu.gemini.util.security.principal.StaffPrincipal
+
+import scala.collection.JavaConverters._
+import scalaz.syntax.std.option._
+
+/**
+ * A transient database holding a single queue program with GMOS-S observations, for tests
+ * that need mini models built by a real query.
+ */
+object ProgramDatabase {
+
+  val Pid: SPProgramID = SPProgramID.toProgramID("GS-2014B-Q-1")
+  val Odb: Peer        = new Peer("localhost", 8443, Site.GS)
+
+  private val User  = Collections.singleton[Principal](StaffPrincipal.Gemini)
+  private val Table = ProbeLimitsTable.loadOrThrow()
+
+  def withProgram[A](observations: Int)(f: (IDBDatabaseService, ISPProgram) => A): A = {
+    val odb = DBLocalDatabase.createTransient()
+    try {
+      val p  = odb.getFactory.createProgram(new SPNodeKey, Pid)
+      val dp = p.getDataObject.asInstanceOf[SPProgram]
+      dp.setQueueBand("1")
+      p.setDataObject(dp)
+      (1 to observations).foreach { _ =>
+        p.addObservation(odb.getFactory.createObservation(p, Instrument.GmosSouth.some, null))
+      }
+      odb.put(p)
+      f(odb, p)
+    } finally {
+      odb.getDBAdmin.shutdown()
+    }
+  }
+
+  /** A QV style query for all observations of the program's semester. */
+  def functor(): ObsQueryFunctor =
+    new ObsQueryFunctor(
+      Site.GS,
+      Set(new Semester(2014, Semester.Half.B)).asJava,
+      ProgramType.AllAsJava,
+      ObsClass.values.toSet.asJava,
+      ObservationStatus.values.toSet.asJava,
+      false,
+      false,
+      Table)
+
+  def query(odb: IDBDatabaseService, f: ObsQueryFunctor): ObsQueryFunctor =
+    odb.getQueryRunner(User).queryPrograms(f)
+
+  def miniModel(odb: IDBDatabaseService): MiniModel =
+    MiniModel.newInstanceFromExecuted(Odb, query(odb, functor()))
+
+}
@@ -31,6 +31,9 @@ class OdbDataSource(val peer: Peer, mt: MagnitudeTable) extends DataSource {
 
   def site = peer.site
 
+  // The last model loaded, refreshes only query the programs that changed since.
+  @volatile private var lastModel: Option[MiniModel] = None
+
   /**
    * Initiates refresh of data and update in the background.
    *
@@ -70,9 +73,11 @@ class OdbDataSource(val peer: Peer, mt: MagnitudeTable) extends DataSource {
 
     val obsSet = client.future[Set[Obs]] { r =>
 
-      val result = r[IDBQueryRunner].queryPrograms(functor)
-      val model  = MiniModel.newInstanceFromExecuted(peer, result)
-      val obs    = model.getAllObservations
+      val previous = lastModel.orNull
+      val result   = r[IDBQueryRunner].queryPrograms(MiniModel.incremental(functor, previous))
+      val model    = MiniModel.newInstanceFromExecuted(peer, result, previous)
+      lastModel    = Some(model)
+      val obs      = model.getAllObservations
       scala.collection.JavaConversions.asScalaSet[Obs](obs).toSet
 
     }.recover {
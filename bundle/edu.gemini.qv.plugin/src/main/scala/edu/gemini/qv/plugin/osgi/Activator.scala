@@ -3,6 +3,7 @@ package edu.gemini.qv.plugin.osgi
 import java.io.File
 
 import edu.gemini.qv.plugin.{QvTool, ShowQvToolAction}
+import edu.gemini.qv.plugin.util.ConstraintsStore
 import edu.gemini.shared.util.FileUtil
 import edu.gemini.spModel.core.Version
 import edu.gemini.util.osgi.ExternalStorage
@@ -22,6 +23,9 @@ class Activator extends BundleActivator {
 
     QvTool.defaultsFile = Option(ExternalStorage.getPermanentDataFile(ctx, Version.current.isTest, "userFilters.v1.xml", migrationSteps))
 
+    // constraint solutions calculated in previous sessions
+    Option(ctx.getDataFile("constraints")).foreach(ConstraintsStore.configure)
+
     reg = Option(ctx.registerService(classOf[OtActionPlugin], new ShowQvToolAction, new java.util.Hashtable[String, Object]()))
 
     tracker = track[OtViewerService,KeyChain,Unit](ctx) { (vs, authClient) =>
@@ -35,6 +39,7 @@ class Activator extends BundleActivator {
   }
 
   def stop(ctx: BundleContext): Unit = {
+    ConstraintsStore.disable()
     reg.foreach(_.unregister())
     reg = None
     tracker.close()
@@ -147,6 +147,9 @@ class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
 
     })
 
+    // keep the new results for the next session
+    ConstraintsStore.flush()
+
     onEDT(constraints.foreach(c => {
       publish(ConstraintCalculationEnd(c, 0))
     }))
@@ -181,29 +184,55 @@ class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
 
   private def calculatePosNight(night: Night, target: Long => Coordinates, o: Obs): (Solution, Solution, Solution, Double, Double) = {
 
-    import edu.gemini.spModel.gemini.obscomp.SPSiteQuality.ElevationConstraintType._
-
     // restrict all calculations to time between nautical twilights (science time)
     val bounds = night.scienceTime
+
+    // results from a previous session can be reused if the target positions and the constraints are the same
+    val key = {
+      val positions = (bounds.start to bounds.end by TimeUtils.minutes(10)).map { t =>
+        val c = target(t)
+        (c.ra.toAngle.toDegrees, c.dec.toDegrees)
+      }
+      val params = ConstraintsStore.Params(
+        Conds.getBrightestMagnitude(o.getConditions.getSB),
+        o.getElevationConstraintType.ordinal,
+        o.getElevationConstraintMin,
+        o.getElevationConstraintMax,
+        minElevationFor(night, o))
+      ConstraintsStore.Key(ConstraintsStore.fingerprint(positions), params)
+    }
+
+    val e = ConstraintsStore.lookup(night, key).getOrElse {
+      val calculated = calculatePosNight(night, bounds, target, key.params)
+      ConstraintsStore.store(night, key, calculated)
+      calculated
+    }
+
+    (e.aboveHorizon, e.skyBrightness, e.elevation, e.minElevation, e.maxElevation)
+  }
+
+  private def calculatePosNight(night: Night, bounds: Interval, target: Long => Coordinates, p: ConstraintsStore.Params): ConstraintsStore.Entry = {
+
+    import edu.gemini.spModel.gemini.obscomp.SPSiteQuality.ElevationConstraintType
+
     val tc = TargetCalculator(night.site, target, bounds, TimeUtils.minutes(10))
 
-    // return a tuple with all values of interest
-    (
+    // return all values of interest
+    ConstraintsStore.Entry(
       // calculate and return the three constraints for AboveHorizon, SkyBrightness and Elevation
       {
         ElevationConstraint(0, Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)
       },
       {
-        val minSb = Conds.getBrightestMagnitude(o.getConditions.getSB)
-        SkyBrightnessConstraint(minSb, Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)
+        SkyBrightnessConstraint(p.minSkyBrightness, Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)
       },
       {
-        val min = o.getElevationConstraintMin
-        val max = o.getElevationConstraintMax
-        o.getElevationConstraintType match {
-          case NONE       => ElevationConstraint(minElevationFor(night, o), Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)
-          case HOUR_ANGLE => HourAngleConstraint(min, max, TimeUtils.minutes(3)).solve(bounds, tc)
-          case AIRMASS    => AirmassConstraint(min, max, TimeUtils.minutes(3)).solve(bounds, tc)
+        val min = p.elevationMin
+        val max = p.elevationMax
+        ElevationConstraintType.values()(p.elevationType) match {
+          case ElevationConstraintType.NONE       => ElevationConstraint(p.minElevation, Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)
+          case ElevationConstraintType.HOUR_ANGLE => HourAngleConstraint(min, max, TimeUtils.minutes(3)).solve(bounds, tc)
+          case ElevationConstraintType.AIRMASS    => AirmassConstraint(min, max, TimeUtils.minutes(3)).solve(bounds, tc)
         }
       },
 
@@ -0,0 +1,211 @@
+package edu.gemini.qv.plugin.util
+
+import java.io._
+import java.nio.file.{Files, StandardCopyOption}
+import java.util.concurrent.TimeUnit
+import java.util.logging.{Level, Logger}
+import java.util.zip.{GZIPInputStream, GZIPOutputStream}
+
+import edu.gemini.spModel.core.Site
+import edu.gemini.util.skycalc.Night
+import edu.gemini.util.skycalc.calc.{Interval, Solution}
+
+import scala.collection.concurrent
+import scala.util.Try
+
+/**
+ * Disk backed store for the per night results of the constraints cache.
+ *
+ * Calculating the constraint solutions for all observations and all nights of the year covered by QV is
+ * what makes opening QV slow, but for a given night the results only depend on the target positions during
+ * the night and on the observation's constraints. The results are therefore kept on disk keyed by a
+ * fingerprint of the target positions and by the constraint parameters; a changed target or changed
+ * constraints simply result in a different key and the old entry expires when it has not been used for a
+ * while.
+ *
+ * There is one file per site and night, it is read the first time the night is used and written when
+ * `flush` is called after new results were added. Files for nights that are over are deleted.
+ *
+ * The store is disabled until `configure` is called with a directory.
+ */
+object ConstraintsStore {
+  private val Log = Logger.getLogger(ConstraintsStore.getClass.getName)
+
+  /** Version of the file format and of the calculations, files with another version are ignored. */
+  val FormatVersion: Int = 1
+
+  /** Entries which have not been used for this number of days are dropped. */
+  val MaxUnusedDays: Int = 30
+
+  private val Suffix = ".qvc"
+
+  /** The constraint parameters the results of a night depend on. */
+  final case class Params(minSkyBrightness: Double, elevationType: Int, elevationMin: Double, elevationMax: Double, minElevation: Double)
+
+  final case class Key(target: Long, params: Params)
+
+  /** The results for a target and night. */
+  final case class Entry(aboveHorizon: Solution, skyBrightness: Solution, elevation: Solution, minElevation: Double, maxElevation: Double)
+
+  /** Fingerprint of the target positions at the given times, equal positions give equal fingerprints. */
+  def fingerprint(positions: Seq[(Double, Double)]): Long =
+    positions.foldLeft(1125899906842597L) { case (h, (ra, dec)) =>
+      mix(mix(h, java.lang.Double.doubleToLongBits(ra)), java.lang.Double.doubleToLongBits(dec))
+    }
+
+  private def mix(h: Long, v: Long): Long = {
+    val x = (h ^ v) * 0x9E3779B97F4A7C15L
+    x ^ (x >>> 31)
+  }
+
+  private def today: Int =
+    TimeUnit.MILLISECONDS.toDays(System.currentTimeMillis).toInt
+
+  // Results stored for a night together with the day on which they were last used.
+  private final class NightData(val file: File, val interval: Interval) {
+    val entries = concurrent.TrieMap.empty[Key, (Entry, Int)]
+    @volatile var dirty = false
+  }
+
+  /** The files for all nights in a directory. */
+  final class Store(val dir: File) {
+    private val nights = concurrent.TrieMap.empty[(Site, Long), NightData]
+
+    // Remove the files of nights which are over.
+    Option(dir.listFiles).foreach(_.filter(_.getName.endsWith(Suffix)).foreach { f =>
+      val start = Try(f.getName.stripSuffix(Suffix).split('_')(1).toLong).getOrElse(0L)
+      if (start < System.currentTimeMillis - TimeUnit.DAYS.toMillis(2)) f.delete()
+    })
+
+    private def night(n: Night): NightData = {
+      val interval = n.scienceTime
+      nights.getOrElse((n.site, interval.start), synchronized {
+        nights.getOrElseUpdate((n.site, interval.start), {
+          val data = new NightData(new File(dir, s"${n.site.name}_${interval.start}$Suffix"), interval)
+          if (data.file.exists) {
+            try {
+              read(data)
+            } catch {
+              case ex: IOException => Log.log(Level.WARNING, s"Could not read constraints from ${data.file}", ex)
+            }
+          }
+          data
+        })
+      })
+    }
+
+    def lookup(n: Night, key: Key): Option[Entry] = {
+      val data = night(n)
+      data.entries.get(key).map { case (e, used) =>
+        if (used != today) {
+          data.entries.put(key, (e, today))
+          data.dirty = true
+        }
+        e
+      }
+    }
+
+    def store(n: Night, key: Key, entry: Entry): Unit = {
+      val data = night(n)
+      data.entries.put(key, (entry, today))
+      data.dirty = true
+    }
+
+    /** Writes all nights with new or used entries to disk. */
+    def flush(): Unit =
+      nights.values.filter(_.dirty).foreach { data =>
+        data.dirty = false
+        write(data)
+      }
+
+    def size: Int =
+      nights.values.map(_.entries.size).sum
+
+    private def read(data: NightData): Unit = {
+      val in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(data.file))))
+      try {
+        if (in.readInt() == FormatVersion && in.readLong() == data.interval.start && in.readLong() == data.interval.end) {
+          val oldest = today - MaxUnusedDays
+          (0 until in.readInt()).foreach { _ =>
+            val key   = Key(in.readLong(), Params(in.readDouble(), in.readInt(), in.readDouble(), in.readDouble(), in.readDouble()))
+            val entry = Entry(readSolution(in), readSolution(in), readSolution(in), in.readDouble(), in.readDouble())
+            val used  = in.readInt()
+            if (used >= oldest) data.entries.put(key, (entry, used))
+          }
+        }
+      } finally {
+        in.close()
+      }
+    }
+
+    // Write to a temporary file first so that a failed write never leaves a partial file behind.
+    private def write(data: NightData): Unit = {
+      val tmp = File.createTempFile("night", ".tmp", dir)
+      try {
+        val out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))
+        try {
+          val entries = data.entries.toList
+          out.writeInt(FormatVersion)
+          out.writeLong(data.interval.start)
+          out.writeLong(data.interval.end)
+          out.writeInt(entries.size)
+          entries.foreach { case (Key(target, p), (e, used)) =>
+            out.writeLong(target)
+            out.writeDouble(p.minSkyBrightness)
+            out.writeInt(p.elevationType)
+            out.writeDouble(p.elevationMin)
+            out.writeDouble(p.elevationMax)
+            out.writeDouble(p.minElevation)
+            writeSolution(out, e.aboveHorizon)
+            writeSolution(out, e.skyBrightness)
+            writeSolution(out, e.elevation)
+            out.writeDouble(e.minElevation)
+            out.writeDouble(e.maxElevation)
+            out.writeInt(used)
+          }
+        } finally {
+          out.close()
+        }
+        Files.move(tmp.toPath, data.file.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+      } catch {
+        case ex: IOException => Log.log(Level.WARNING, s"Could not write constraints to ${data.file}", ex)
+      } finally {
+        tmp.delete()
+      }
+    }
+  }
+
+  private def readSolution(in: DataInputStream): Solution =
+    Solution((0 until in.readInt()).map(_ => Interval(in.readLong(), in.readLong())))
+
+  private def writeSolution(out: DataOutputStream, s: Solution): Unit = {
+    out.writeInt(s.intervals.size)
+    s.intervals.foreach { i =>
+      out.writeLong(i.start)
+      out.writeLong(i.end)
+    }
+  }
+
+  @volatile private var current: Option[Store] = None
+
+  /** Enables the store, keeping the results in `dir`. */
+  def configure(dir: File): Unit = {
+    dir.mkdirs()
+    current = Some(new Store(dir))
+    Log.info(s"Constraints store at ${dir.getPath}")
+  }
+
+  def disable(): Unit = {
+    flush()
+    current = None
+  }
+
+  def lookup(n: Night, key: Key): Option[Entry] =
+    current.flatMap(_.lookup(n, key))
+
+  def store(n: Night, key: Key, entry: Entry): Unit =
+    current.foreach(_.store(n, key, entry))
+
+  def flush(): Unit =
+    current.foreach(_.flush())
+}
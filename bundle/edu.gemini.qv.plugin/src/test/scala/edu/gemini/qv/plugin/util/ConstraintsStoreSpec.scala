@@ -0,0 +1,44 @@
+package edu.gemini.qv.plugin.util
+
+import java.nio.file.Files
+
+import edu.gemini.qv.plugin.util.ConstraintsStore.{Entry, Key, Params, Store}
+import edu.gemini.skycalc.TimeUtils
+import edu.gemini.spModel.core.Site
+import edu.gemini.util.skycalc.Night
+import edu.gemini.util.skycalc.calc.{Interval, Solution}
+import org.specs2.mutable.Specification
+
+class ConstraintsStoreSpec extends Specification {
+
+  val night  = Night(Site.GS, System.currentTimeMillis + TimeUtils.days(1))
+  val params = Params(20.0, 0, 0.0, 0.0, 30.0)
+  val key    = Key(ConstraintsStore.fingerprint(Seq((10.0, -20.0))), params)
+  val entry  = {
+    val t = night.scienceTime
+    Entry(Solution(t), Solution(Seq(Interval(t.start, t.start + 1000), Interval(t.end - 1000, t.end))), Solution(), 12.5, 67.25)
+  }
+
+  def tempDir = Files.createTempDirectory("qv-constraints").toFile
+
+  "ConstraintsStore" should {
+    "distinguish targets by their positions" in {
+      ConstraintsStore.fingerprint(Seq((10.0, -20.0), (10.0, -20.0))) must beEqualTo(ConstraintsStore.fingerprint(Seq((10.0, -20.0), (10.0, -20.0))))
+      ConstraintsStore.fingerprint(Seq((10.0, -20.0), (10.0, -20.0))) must_!= ConstraintsStore.fingerprint(Seq((10.0, -20.0), (10.1, -20.0)))
+      ConstraintsStore.fingerprint(Seq((10.0, -20.0))) must_!= ConstraintsStore.fingerprint(Seq((-20.0, 10.0)))
+    }
+    "keep results between sessions" in {
+      val dir = tempDir
+      val s0  = new Store(dir)
+      s0.store(night, key, entry)
+      s0.flush()
+      new Store(dir).lookup(night, key) must beSome(entry)
+    }
+    "not return results for other constraints" in {
+      val s = new Store(tempDir)
+      s.store(night, key, entry)
+      s.lookup(night, key.copy(params = params.copy(minSkyBrightness = 19.0))) must beNone
+      s.lookup(night, key.copy(target = key.target + 1)) must beNone
+    }
+  }
+}
@@ -36,6 +36,7 @@ public class CalibrationMapFactory {
             LOG.log(Level.INFO, "could not read calibration data " + reader.getErrors());
             throw new RuntimeException("could not read calibration data");
         }
+        map.compile();
         return map;
     }
 
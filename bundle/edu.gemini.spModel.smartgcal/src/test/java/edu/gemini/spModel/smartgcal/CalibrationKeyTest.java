@@ -5,6 +5,11 @@ import edu.gemini.spModel.gemini.calunit.smartgcal.keys.WavelengthRangeSet;
 import org.junit.Test;
 import org.junit.Assert;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 /**
  */
 public class CalibrationKeyTest {
@@ -94,4 +99,42 @@ public class CalibrationKeyTest {
         }
     }
 
+    @Test
+    public void findsRangesLikeLinearSearch() {
+        // disjoint ranges, some of them adjacent, added in random order
+        final Random random = new Random(47);
+        final List<WavelengthRange> ranges = new ArrayList<>();
+        double min = 0.0d;
+        for (int i = 0; i < 200; ++i) {
+            min += random.nextInt(3) * 5.0d;
+            final double max = min + 1.0d + random.nextInt(10);
+            ranges.add(new WavelengthRange(min, max));
+            min = max;
+        }
+        Collections.shuffle(ranges, random);
+
+        final WavelengthRangeSet rangeSet = new WavelengthRangeSet();
+        for (WavelengthRange range : ranges) {
+            try {
+                rangeSet.add(range, null);
+            } catch (IllegalArgumentException e) {
+                // adjacent ranges are refused if the upper one was added first, as before
+                Assert.assertTrue(ranges.stream().anyMatch(r -> r.getMin() == range.getMax()));
+            }
+        }
+        rangeSet.compile();
+
+        for (double value = -5.0d; value < min + 5.0d; value += 0.25d) {
+            final double v = value;
+            final WavelengthRange expected = rangeSet.getRangeMap().keySet().stream()
+                    .filter(r -> r.contains(v)).findFirst().orElse(null);
+            Assert.assertEquals(expected, rangeSet.findRange(value).getOrNull());
+        }
+
+        // adding invalidates the compiled lookup
+        final WavelengthRange last = new WavelengthRange(min + 1.0d, min + 2.0d);
+        rangeSet.add(last, null);
+        Assert.assertEquals(last, rangeSet.findRange(min + 1.5d).getValue());
+    }
+
 }
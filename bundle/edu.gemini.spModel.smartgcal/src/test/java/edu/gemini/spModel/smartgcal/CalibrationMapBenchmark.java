@@ -0,0 +1,117 @@
+package edu.gemini.spModel.smartgcal;
+
+import edu.gemini.spModel.gemini.calunit.smartgcal.Calibration;
+import edu.gemini.spModel.gemini.calunit.smartgcal.CalibrationFile;
+import edu.gemini.spModel.gemini.calunit.smartgcal.CalibrationMap;
+import edu.gemini.spModel.gemini.calunit.smartgcal.ConfigurationKey;
+import edu.gemini.spModel.gemini.calunit.smartgcal.SmartGcalService;
+import edu.gemini.spModel.gemini.calunit.smartgcal.keys.WavelengthRange;
+import edu.gemini.spModel.gemini.calunit.smartgcal.maps.CentralWavelengthMap;
+import edu.gemini.spModel.smartgcal.repository.CalibrationResourceRepository;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Measures loading the calibration tables bundled as resources and looking up calibrations in them.
+ * The lookups use the keys of the tables, with wavelengths picked at random from their ranges.
+ * Run the main method with the test classpath.
+ */
+public final class CalibrationMapBenchmark {
+
+    private static final int LOOKUPS    = 1000000;
+    private static final int ITERATIONS = 10;
+
+    // a key and a wavelength found in a table
+    private static final class Lookup {
+        final ConfigurationKey key;
+        final double wavelength;
+
+        Lookup(ConfigurationKey key, double wavelength) {
+            this.key        = key;
+            this.wavelength = wavelength;
+        }
+    }
+
+    // reads the table, recording a lookup for every key and range put into the map
+    private static CalibrationMap read(String instrument, CalibrationFile file, Random random, List<Lookup> lookups) {
+        final CalibrationMap map = CalibrationMapFactory.createEmpty(instrument, file.getVersion());
+        final CalibrationMap recording = (CalibrationMap) Proxy.newProxyInstance(
+                CalibrationMap.class.getClassLoader(),
+                new Class<?>[] { CalibrationMap.class },
+                (proxy, method, args) -> {
+                    if (lookups != null && method.getName().equals("put")) {
+                        final ConfigurationKey key = (ConfigurationKey) args[0];
+                        final String range = ((Properties) args[1]).getProperty(CentralWavelengthMap.WAVELENGTH_RANGE_NAME);
+                        double wavelength = Double.NaN;
+                        if (range != null) {
+                            final WavelengthRange r = WavelengthRange.parse(range);
+                            final double max = Math.min(r.getMax(), r.getMin() + 10000.0);
+                            wavelength = r.getMin() + random.nextDouble() * (max - r.getMin());
+                        }
+                        lookups.add(new Lookup(key, wavelength));
+                    }
+                    try {
+                        return method.invoke(map, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        final CalibrationMapReader reader = new CalibrationMapReader(recording);
+        reader.read(file.getData().getBytes());
+        if (reader.hasErrors()) throw new RuntimeException("could not read calibration data " + reader.getErrors());
+        map.compile();
+        return map;
+    }
+
+    private static int lookup(CalibrationMap map, Lookup[] lookups) {
+        int found = 0;
+        for (int i = 0; i < LOOKUPS; ++i) {
+            final Lookup l = lookups[i % lookups.length];
+            final List<Calibration> cals = Double.isNaN(l.wavelength) ? map.get(l.key) : map.get(l.key, l.wavelength);
+            found += cals.size();
+        }
+        return found;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final CalibrationResourceRepository repository = new CalibrationResourceRepository();
+        final Random random = new Random(47);
+
+        for (String instrument : SmartGcalService.getInstrumentNames()) {
+            for (Calibration.Type type : SmartGcalService.getAvailableTypes(instrument)) {
+                final CalibrationFile file = repository.getCalibrationFile(type, instrument);
+
+                final List<Lookup> recorded = new ArrayList<>();
+                final CalibrationMap map = read(instrument, file, random, recorded);
+                if (recorded.isEmpty()) continue;
+                final List<Lookup> shuffled = new ArrayList<>(recorded);
+                Collections.shuffle(shuffled, random);
+                final Lookup[] lookups = shuffled.toArray(new Lookup[shuffled.size()]);
+
+                // warm up
+                for (int i = 0; i < 3; ++i) {
+                    read(instrument, file, random, null);
+                    lookup(map, lookups);
+                }
+
+                long t0 = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; ++i) read(instrument, file, random, null);
+                final double loadMs = (System.nanoTime() - t0) / 1e6 / ITERATIONS;
+
+                int found = 0;
+                t0 = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; ++i) found += lookup(map, lookups);
+                final double lookupNs = (System.nanoTime() - t0) / (double) ITERATIONS / LOOKUPS;
+
+                System.out.printf("%-12s %-5s %7d keys  load %8.2f ms  lookup %7.1f ns  (%d)%n",
+                        instrument, type, recorded.size(), loadMs, lookupNs, found);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.gemini.spdb.shell.osgi;
 
+import edu.gemini.p2checker.checker.P2CheckFunctor;
 import edu.gemini.pot.sp.ISPNode;
 import edu.gemini.pot.sp.ISPProgram;
 import edu.gemini.pot.sp.SPComponentType;
@@ -36,6 +37,7 @@ import static java.nio.file.StandardOpenOption.*;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Stream;
 
@@ -212,6 +214,23 @@ class Commands {
         return exportXml(path, new String[0]);
     }
 
+    // run the phase 2 checks on every program, listing the problems found
+    public String p2check() {
+        final P2CheckFunctor f = P2CheckFunctor.checkAll(db().getQueryRunner(user));
+
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<SPProgramID, List<P2CheckFunctor.Entry>> e : f.getProblems().entrySet()) {
+            sb.append(e.getKey()).append('\n');
+            for (final P2CheckFunctor.Entry p : e.getValue()) {
+                sb.append("    ").append(p).append('\n');
+            }
+        }
+        for (final SPProgramID pid : f.getFailures()) {
+            sb.append(String.format("%s: could not be checked\n", pid));
+        }
+        return sb.toString();
+    }
+
     public String du() {
         return String.format("Total SPDB storage %,d bytes.", db().getDBAdmin().getTotalStorage());
     }
@@ -5,6 +5,7 @@ import org.apache.commons.cli.*;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 
+import scala.Tuple2;
 import scala.collection.JavaConversions;
 
 import java.io.File;
@@ -134,11 +135,19 @@ public class P1PdfMaker {
             CommandLine line = parser.parse(Opt.options(), args);
             P1PDF.Template template = template(line);
             File outputFolder = outputFolder(line);
+            List<Tuple2<File, File>> files = new ArrayList<>();
             for (File xmlFile : filesToProcess(line)) {
-                // create pdf file name from xml file name and do transformation
+                // create pdf file name from xml file name
                 // REL-663 Output pdf filename should have the _summary token appended
                 File pdfFile = new File(outputFolder, xmlFile.getName().replace(".xml", "_summary.pdf"));
-                P1PDF.createFromFile(xmlFile, template, pdfFile);
+                files.add(new Tuple2<>(xmlFile, pdfFile));
+            }
+
+            // do the transformations, several at a time
+            Map<File, Throwable> errors = JavaConversions.mapAsJavaMap(
+                    P1PDF.createFromFiles(JavaConversions.asScalaBuffer(files).toList(), template, Runtime.getRuntime().availableProcessors()));
+            for (Map.Entry<File, Throwable> e : errors.entrySet()) {
+                System.err.println("could not create pdf for " + e.getKey() + ": " + e.getValue());
             }
 
         }
@@ -3,37 +3,72 @@ package edu.gemini.util.pdf
 import org.apache.fop.apps.{FopFactory}
 import org.apache.xmlgraphics.util.MimeConstants
 import javax.xml.transform.sax.SAXResult
-import javax.xml.transform.{URIResolver, Source, TransformerFactory}
+import javax.xml.transform.{URIResolver, Source, Templates, TransformerFactory}
 import java.io._
-import com.itextpdf.text.pdf.{PdfReader, PdfWriter}
+import java.util.concurrent.ConcurrentHashMap
+import com.itextpdf.text.pdf.{PdfReader, PdfWriter, RandomAccessFileOrArray}
 import com.itextpdf.text.{Document, PageSize => ItextPageSize}
 
 object PDF {
   sealed trait PageSize
   case object A4 extends PageSize
   case object Letter extends PageSize
+
+  /**
+   * The FOP factory is expensive to create and can be shared by concurrent transformations
+   * once configured, so all of them use this one.
+   */
+  lazy val fopFactory: FopFactory = FopFactory.newInstance
 }
 
-/** Utility functions for handling PDF files. */
+/**
+ * Utility functions for handling PDF files.
+ * Stylesheets compiled with `templates` are kept for the lifetime of this object, it can be used
+ * for concurrent transformations.
+ */
 class PDF(uriResolver: Option[URIResolver] = None) {
 
+  private val transformerFactory = {
+    val factory = TransformerFactory.newInstance()
+    uriResolver.foreach(factory.setURIResolver)
+    factory
+  }
+
+  private val compiled = new ConcurrentHashMap[String, Templates]()
+
+  /**
+   * Gets the compiled stylesheet with the given key, compiling the source the first time it is requested.
+   */
+  def templates(key: String)(xslFoSource: => Source): Templates =
+    Option(compiled.get(key)).getOrElse {
+      val t = compile(xslFoSource)
+      Option(compiled.putIfAbsent(key, t)).getOrElse(t)
+    }
+
+  // The transformer factory is not thread safe
+  private def compile(xslFoSource: Source): Templates =
+    transformerFactory.synchronized(transformerFactory.newTemplates(xslFoSource))
+
   /**
    * Transforms an xml to a pdf file using xsl-fo templates.
    */
   def transformXslFo(xmlSource: Source, xslFoSource: Source,  pdfFile: File, parameters: Map[String, AnyRef] = Map()) {
-    val fopFactory = FopFactory.newInstance
-    val foUserAgent = fopFactory.newFOUserAgent
+    transformXslFo(xmlSource, compile(xslFoSource), pdfFile, parameters)
+  }
+
+  /**
+   * Transforms an xml to a pdf file using a compiled xsl-fo stylesheet.
+   */
+  def transformXslFo(xmlSource: Source, templates: Templates, pdfFile: File, parameters: Map[String, AnyRef]) {
+    val foUserAgent = PDF.fopFactory.newFOUserAgent
 
     val out = new BufferedOutputStream(new FileOutputStream(pdfFile))
     try {
       // Construct fop with desired output format
-      val fop = fopFactory.newFop(MimeConstants.MIME_PDF, foUserAgent, out)
+      val fop = PDF.fopFactory.newFop(MimeConstants.MIME_PDF, foUserAgent, out)
 
       // Setup XSLT
-      val factory = TransformerFactory.newInstance()
-      if (uriResolver.isDefined) factory.setURIResolver(uriResolver.get)
-
-      val transformer = factory.newTransformer(xslFoSource)
+      val transformer = templates.newTransformer()
       if (uriResolver.isDefined) transformer.setURIResolver(uriResolver.get)
       parameters.foreach (p => transformer.setParameter(p._1, p._2))
 
@@ -50,6 +85,8 @@ class PDF(uriResolver: Option[URIResolver] = None) {
 
   /**
    * Merges using itext. Lean and mean merging machine.
+   * The source files are read one at a time and only as far as needed to copy their pages, each one is
+   * released once its pages are written.
    */
   def merge(srcFiles: List[File], target: File, pageSize: PDF.PageSize) {
     val document = new Document(if (pageSize == PDF.Letter) ItextPageSize.LETTER else ItextPageSize.A4)
@@ -59,17 +96,17 @@ class PDF(uriResolver: Option[URIResolver] = None) {
       document.open
       val cb = writer.getDirectContent
       srcFiles.foreach (file => {
-        val in = new FileInputStream(file)
+        val reader = new PdfReader(new RandomAccessFileOrArray(file.getPath, false, true), null)
         try {
-          val reader = new PdfReader(in)
           for (i <- 1 to reader.getNumberOfPages) {
             document.newPage
             val page = writer.getImportedPage(reader, i)
             cb.addTemplate(page, 0, 0)
           }
+          writer.freeReader(reader)
         }
         finally {
-          in.close
+          reader.close()
         }
       })
     }
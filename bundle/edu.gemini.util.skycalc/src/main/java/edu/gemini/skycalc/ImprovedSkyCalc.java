@@ -48,17 +48,35 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
       calculate(new WorldCoords(coords.ra().toDegrees(), coords.dec().toDegrees()), date, calculateMoon);
     }
 
+    public void calculate(final edu.gemini.spModel.core.Coordinates coords, final Date date, final SunMoon sunMoon) {
+      calculate(new WorldCoords(coords.ra().toDegrees(), coords.dec().toDegrees()), date, sunMoon);
+    }
+
     public void calculate(final WorldCoords obj, final Date date, final boolean calculateMoon) {
+        calculate(obj, date, calculateMoon, null);
+    }
+
+    /**
+     * Calculates the circumstances of the target using the positions of the sun and the moon in the given
+     * ephemeris, which must have been calculated for the same site and date. This avoids recalculating the
+     * sun and the moon when many targets are evaluated at the same times.
+     */
+    public void calculate(final WorldCoords obj, final Date date, final SunMoon sunMoon) {
+        calculate(obj, date, true, sunMoon);
+    }
+
+    // If the sun and moon positions are needed but not given they are calculated here.
+    private void calculate(final WorldCoords obj, final Date date, final boolean calculateMoon, final SunMoon sunMoon) {
 
-    	// Early exit if the parameters haven't changed.
-    	if (obj.equals(cachedCoordinates) &&
-    		date.equals(cachedDate) &&
-    		calculateMoon == cachedCalculateMoon)
-    		return;
+        // Early exit if the parameters haven't changed.
+        if (obj.equals(cachedCoordinates) &&
+            date.equals(cachedDate) &&
+            calculateMoon == cachedCalculateMoon)
+            return;
 
-    	cachedCoordinates = obj;
-    	cachedDate = date;
-    	cachedCalculateMoon = calculateMoon;
+        cachedCoordinates = obj;
+        cachedDate = date;
+        cachedCalculateMoon = calculateMoon;
 
         final DateTime dateTime = new DateTime(date);
         final DoubleRef jdut = new DoubleRef();
@@ -71,11 +89,16 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
         final double objdec = obj.getDecDeg();
         final double objepoch = 2000.;
 
-        getCircumstances(objra, objdec, objepoch, curepoch.d, sid.d, degreesLatitude, jdut, calculateMoon);
+        getCircumstances(objra, objdec, objepoch, curepoch.d, sid.d, degreesLatitude);
+
+        if (calculateMoon) {
+            final SunMoon sm = (sunMoon != null) ? sunMoon : sunMoon(jdut.d, sid.d);
+            getMoonCircumstances(objra, objdec, sm);
+        }
     }
 
     private void getCircumstances(double objra, double objdec, double objepoch,
-                                  double curep, double sid, double lat, DoubleRef jdut, boolean calculateMoon) {
+                                  double curep, double sid, double lat) {
 
         final double ha, alt;
         final DoubleRef az = new DoubleRef();
@@ -93,46 +116,111 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
         azimuth = az.d;
         parallacticAngle = par.d;
         hourAngle = ha;
+    }
+
+    // The target dependent part of the lunar calculations.
+    private void getMoonCircumstances(double objra, double objdec, SunMoon sm) {
+        sunAltitude = sm.sunAltitude;
+        lunarElevation = sm.lunarElevation;
+        lunarPhaseAngle = sm.lunarPhaseAngle;
+        lunarIlluminatedFraction = sm.lunarIlluminatedFraction;
+
+        // Sky brightness
+        lunarSkyBrightness = null;
+        lunarDistance = DEG_IN_RADIAN * subtend(sm.ramoon,sm.decmoon,objra,objdec);
+        if(lunarElevation > -2.) {
+            if((lunarElevation > 0.) && (altitude > 0.5) && (sunAltitude < -9.)) {
+              lunarSkyBrightness =
+                 lunskybright(lunarPhaseAngle,lunarDistance,KZEN,lunarElevation,
+                    altitude,sm.distmoon);
+            }
+        }
+        totalSkyBrightness = sb(180. - lunarPhaseAngle, lunarDistance, 90 - lunarElevation, 90 - altitude, 90 - sunAltitude);
+    }
+
+    /**
+     * Positions of the sun and the moon as seen from a site at a given time. These do not depend on the
+     * target and are by far the most expensive part of the lunar calculations.
+     */
+    public static final class SunMoon {
+        private final double ramoon;
+        private final double decmoon;
+        private final double distmoon;
+        private final double sunAltitude;
+        private final double lunarElevation;
+        private final double lunarPhaseAngle;
+        private final float  lunarIlluminatedFraction;
+
+        private SunMoon(double ramoon, double decmoon, double distmoon, double sunAltitude,
+                        double lunarElevation, double lunarPhaseAngle, float lunarIlluminatedFraction) {
+            this.ramoon = ramoon;
+            this.decmoon = decmoon;
+            this.distmoon = distmoon;
+            this.sunAltitude = sunAltitude;
+            this.lunarElevation = lunarElevation;
+            this.lunarPhaseAngle = lunarPhaseAngle;
+            this.lunarIlluminatedFraction = lunarIlluminatedFraction;
+        }
+
+        public double getSunAltitude() {
+            return sunAltitude;
+        }
+
+        public double getLunarElevation() {
+            return lunarElevation;
+        }
+
+        public double getLunarPhaseAngle() {
+            return lunarPhaseAngle;
+        }
+
+        public float getLunarIlluminatedFraction() {
+            return lunarIlluminatedFraction;
+        }
+    }
+
+    /**
+     * Calculates the positions of the sun and the moon at the given date for this site.
+     */
+    public SunMoon sunMoon(final Date date) {
+        final DateTime dateTime = new DateTime(date);
+        final DoubleRef jdut = new DoubleRef();
+        final DoubleRef sid = new DoubleRef();
+        final DoubleRef curepoch = new DoubleRef();
+
+        setup_time_place(dateTime, hoursLongitude, jdut, sid, curepoch);
+
+        return sunMoon(jdut.d, sid.d);
+    }
+
+    private SunMoon sunMoon(double jdut, double sid) {
+        final DoubleRef ramoon = new DoubleRef();
+        final DoubleRef decmoon= new DoubleRef();
+        final DoubleRef distmoon = new DoubleRef();
+        final DoubleRef georamoon = new DoubleRef();
+        final DoubleRef geodecmoon = new DoubleRef();
+        final DoubleRef geodistmoon = new DoubleRef();
+        final DoubleRef rasun = new DoubleRef();
+        final DoubleRef decsun = new DoubleRef();
+        final DoubleRef distsun = new DoubleRef();
+        final DoubleRef x = new DoubleRef();
+        final DoubleRef y = new DoubleRef();
+        final DoubleRef z = new DoubleRef();
+        final DoubleRef toporasun = new DoubleRef();
+        final DoubleRef topodecsun = new DoubleRef();
+        final DoubleRef az = new DoubleRef();
+        final double elevsea = siteAltitude;
+
+        accusun(jdut,sid,degreesLatitude,rasun,decsun,distsun, toporasun,topodecsun,x,y,z);
+        final double sunAlt=altit(topodecsun.d,(sid-toporasun.d),degreesLatitude,az, new DoubleRef() /* [out] parang, ignored */);
+
+        accumoon(jdut,degreesLatitude,sid,elevsea,georamoon,geodecmoon,geodistmoon, ramoon,decmoon,distmoon);
+        final double moonElevation=altit(decmoon.d,(sid-ramoon.d),degreesLatitude,az, new DoubleRef()  /* [out] parang, ignored */);
+
+        final double phaseAngle = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,toporasun.d,topodecsun.d);
+        final float illuminatedFraction=(float) (0.5*(1.-cos(subtend(ramoon.d,decmoon.d,rasun.d,decsun.d))));
 
-		if (calculateMoon) {
-
-			final DoubleRef ramoon = new DoubleRef();
-			final DoubleRef decmoon= new DoubleRef();
-			final DoubleRef distmoon = new DoubleRef();
-			final DoubleRef georamoon = new DoubleRef();
-			final DoubleRef geodecmoon = new DoubleRef();
-			final DoubleRef geodistmoon = new DoubleRef();
-			final DoubleRef rasun = new DoubleRef();
-			final DoubleRef decsun = new DoubleRef();
-			final DoubleRef distsun = new DoubleRef();
-			final DoubleRef x = new DoubleRef();
-			final DoubleRef y = new DoubleRef();
-			final DoubleRef z = new DoubleRef();
-			final DoubleRef toporasun = new DoubleRef();
-			final DoubleRef topodecsun = new DoubleRef();
-			final double elevsea = siteAltitude;
-
-			accusun(jdut.d,sid,degreesLatitude,rasun,decsun,distsun, toporasun,topodecsun,x,y,z);
-			sunAltitude=altit(topodecsun.d,(sid-toporasun.d),degreesLatitude,az, new DoubleRef() /* [out] parang, ignored */);
-
-			accumoon(jdut.d,degreesLatitude,sid,elevsea,georamoon,geodecmoon,geodistmoon, ramoon,decmoon,distmoon);
-			lunarElevation=altit(decmoon.d,(sid-ramoon.d),degreesLatitude,az, new DoubleRef()  /* [out] parang, ignored */);
-
-			// Sky brightness
-			lunarSkyBrightness = null;
-			lunarDistance = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,objra,objdec);
-			lunarPhaseAngle = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,toporasun.d,topodecsun.d);
-			if(lunarElevation > -2.) {
-				if((lunarElevation > 0.) && (altitude > 0.5) && (sunAltitude < -9.)) {
-				  lunarSkyBrightness =
-				     lunskybright(lunarPhaseAngle,lunarDistance,KZEN,lunarElevation,
-						altitude,distmoon.d);
-				}
-			}
-			totalSkyBrightness = sb(180. - lunarPhaseAngle, lunarDistance, 90 - lunarElevation, 90 - altitude, 90 - sunAltitude);
-			lunarIlluminatedFraction=(float) (0.5*(1.-cos(subtend(ramoon.d,decmoon.d,rasun.d,decsun.d))));
-
-		}
+        return new SunMoon(ramoon.d, decmoon.d, distmoon.d, sunAlt, moonElevation, phaseAngle, illuminatedFraction);
     }
 
     /**
@@ -0,0 +1,144 @@
+package edu.gemini.skycalc;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Immutable set of disjoint intervals <code>[start, end)</code> held as a sorted array
+ * of endpoints <code>start0, end0, start1, end1, ...</code>. Intervals never overlap,
+ * abut or are empty, so the endpoints are strictly increasing. Union, intersection and
+ * difference are linear merges of the endpoint arrays and containment is a binary search.
+ * This is the representation behind {@link Union} and the QPT's own union of intervals.
+ */
+public final class IntervalSet implements Serializable {
+
+	public static final IntervalSet EMPTY = new IntervalSet(new long[0], 0);
+
+	private static final int UNION = 0, INTERSECTION = 1, DIFFERENCE = 2;
+
+	private final long[] bounds;
+	private final int size;
+
+	private IntervalSet(final long[] bounds, final int size) {
+		this.bounds = bounds;
+		this.size = size;
+	}
+
+	/** Returns the set containing just the given interval, which is empty if start == end. */
+	public static IntervalSet of(final long start, final long end) {
+		if (start > end) throw new IllegalArgumentException(start + " > " + end);
+		return start == end ? EMPTY : new IntervalSet(new long[] { start, end }, 1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public long start(final int i) {
+		return bounds[2 * i];
+	}
+
+	public long end(final int i) {
+		return bounds[2 * i + 1];
+	}
+
+	/** Sums the lengths of all intervals. */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < 2 * size; i += 2) sum += bounds[i + 1] - bounds[i];
+		return sum;
+	}
+
+	/** Returns the index of the interval containing t, or -1 if there is none. */
+	public int indexOf(final long t) {
+		final int p = Arrays.binarySearch(bounds, 0, 2 * size, t);
+		if (p >= 0) return (p & 1) == 0 ? p / 2 : -1; // starts are included, ends are not
+		final int ins = -p - 1;
+		return (ins & 1) == 1 ? ins / 2 : -1;
+	}
+
+	public boolean contains(final long t) {
+		return indexOf(t) >= 0;
+	}
+
+	public IntervalSet union(final IntervalSet that) {
+		if (that.isEmpty()) return this;
+		if (isEmpty()) return that;
+		return merge(this, that, UNION);
+	}
+
+	public IntervalSet intersection(final IntervalSet that) {
+		if (isEmpty() || that.isEmpty()) return EMPTY;
+		return merge(this, that, INTERSECTION);
+	}
+
+	public IntervalSet difference(final IntervalSet that) {
+		if (isEmpty() || that.isEmpty()) return this;
+		return merge(this, that, DIFFERENCE);
+	}
+
+	/**
+	 * Returns the items of the intervals of this set, given the items of the intervals
+	 * of <code>previous</code>. Intervals which are also in the previous set keep their
+	 * item, all others get null.
+	 */
+	public Object[] carry(final IntervalSet previous, final Object[] items) {
+		final Object[] ret = new Object[size];
+		for (int i = 0, j = 0; i < size && j < previous.size; ) {
+			final long s = start(i), ps = previous.start(j);
+			if (s < ps) {
+				i++;
+			} else if (s > ps) {
+				j++;
+			} else {
+				if (end(i) == previous.end(j)) ret[i] = items[j];
+				i++;
+				j++;
+			}
+		}
+		return ret;
+	}
+
+	// Sweeps the endpoints of both sets in order, tracking whether the current point is
+	// in a and in b and emitting an endpoint whenever membership in the result changes.
+	// Endpoints shared by both sets are handled together, so abutting pieces of the
+	// result are joined.
+	private static IntervalSet merge(final IntervalSet a, final IntervalSet b, final int op) {
+		final long[] ab = a.bounds, bb = b.bounds;
+		final int an = 2 * a.size, bn = 2 * b.size;
+		final long[] out = new long[an + bn];
+		int i = 0, j = 0, k = 0;
+		boolean inA = false, inB = false, in = false;
+		while (i < an || j < bn) {
+			final long x = (j == bn || (i < an && ab[i] < bb[j])) ? ab[i] : bb[j];
+			if (i < an && ab[i] == x) { inA = !inA; i++; }
+			if (j < bn && bb[j] == x) { inB = !inB; j++; }
+			final boolean now;
+			switch (op) {
+				case UNION:        now = inA || inB; break;
+				case INTERSECTION: now = inA && inB; break;
+				default:           now = inA && !inB; break;
+			}
+			if (now != in) {
+				out[k++] = x;
+				in = now;
+			}
+		}
+		return k == 0 ? EMPTY : new IntervalSet(out, k / 2);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append('[').append(start(i)).append("..").append(end(i)).append(')');
+		}
+		return sb.append(']').toString();
+	}
+
+}
@@ -7,7 +7,11 @@ import java.io.Serializable;
 
 /**
  * Represents a collection of Intervals which are automatically merged and split such that
- * they never overlap or abut.
+ * they never overlap or abut. The intervals are held as an {@link IntervalSet} of sorted
+ * endpoints, so adding, removing and intersecting are linear merges and containment is a
+ * binary search. Intervals that are added and survive unchanged are kept as they are, new
+ * ones resulting from merges and clips are created on demand from a member interval.
+ * Empty intervals are ignored.
  * @see Interval#overlaps(Interval, Overlap)
  * @see Interval#abuts(Interval)
  * @author rnorris
@@ -15,7 +19,12 @@ import java.io.Serializable;
  */
 public class Union<T extends Interval> implements Iterable<T>, Serializable {
 
-	private final SortedSet<T> intervals = new TreeSet<T>();
+	private static final Object[] NO_ITEMS = new Object[0];
+
+	private IntervalSet set = IntervalSet.EMPTY;
+	private Object[] items = NO_ITEMS;     // T for each interval of the set, null until needed
+	private T prototype;                   // creates the T for merged and clipped intervals
+	private transient SortedSet<T> view;   // cached result of getIntervals()
 
 	public Union() {
 	}
@@ -35,11 +44,12 @@ public class Union<T extends Interval> implements Iterable<T>, Serializable {
 	}
 
 	public Iterator<T> iterator() {
-		return intervals.iterator();
+		return getIntervals().iterator();
 	}
 
 	public void add(Union<? extends T> other) {
-		for (T t: other) add(t);
+		if (other.isEmpty()) return;
+		update(set.union(other.set), other, other.prototype);
 	}
 
 	public void add(Collection<? extends T> other) {
@@ -51,7 +61,7 @@ public class Union<T extends Interval> implements Iterable<T>, Serializable {
 	}
 
 	public final void remove(Union<? extends T> other) {
-		for (T t: other) remove(t);
+		update(set.difference(other.set), null, null);
 	}
 
 	public final void remove(Collection<? extends T> other) {
@@ -68,73 +78,50 @@ public class Union<T extends Interval> implements Iterable<T>, Serializable {
 	 * Adds the specified interval, which will be merged into the internal collection.
 	 * @param ni
 	 */
-	@SuppressWarnings("unchecked")
 	public void add(T ni) {
-		for (Iterator<T> it = intervals.iterator(); it.hasNext(); ) {
-			T oi = it.next();
-			if (oi.overlaps(ni, Overlap.EITHER) || oi.abuts(ni)) {
-				it.remove();
-				ni = (T) ni.plus(oi);
-			}
-		}
-		intervals.add(ni);
+		update(set.union(IntervalSet.of(ni.getStart(), ni.getEnd())), null, ni);
+
+		// Keep the interval itself if it was not merged with others.
+		final int i = set.indexOf(ni.getStart());
+		if (i >= 0 && items[i] == null && set.start(i) == ni.getStart() && set.end(i) == ni.getEnd())
+			items[i] = ni;
 	}
 
 	/**
 	 * Removes the specified interval, which will be clipped out of the internal collection.
 	 * @param del
 	 */
-	@SuppressWarnings("unchecked")
 	public final void remove(final T del) {
-		final List<T> toAdd = new ArrayList<T>();
-		for (final Iterator<T> it = intervals.iterator(); it.hasNext(); ) {
-			final T oi = it.next();
-			if (del.overlaps(oi, Overlap.TOTAL)) {
-				it.remove();
-				continue;
-			}
-
-            if (del.overlaps(oi, Overlap.PARTIAL)) {
-				it.remove();
-				toAdd.add((T) oi.minus(del));
-			} else if (oi.overlaps(del, Overlap.TOTAL)) {
-				it.remove();
-				toAdd.add((T) oi.create(oi.getStart(), del.getStart()));
-				toAdd.add((T) oi.create(del.getEnd(), oi.getEnd()));
-			}
-		}
-		intervals.addAll(toAdd);
+		update(set.difference(IntervalSet.of(del.getStart(), del.getEnd())), null, null);
 	}
 
 
 
-	@SuppressWarnings("unchecked")
 	public void intersect(Union<? extends T> that) {
-
-		// Get the intervals
-		final SortedSet<? extends Interval> thisI = this.getIntervals();
-		final SortedSet<? extends Interval> thatI = that.getIntervals();
-
-		// Collect the interval endpoints.
-		int i = 0;
-		final long[] points = new long[(thisI.size() + thatI.size()) * 2];
-		for (Interval iv: thisI) { points[i++] = iv.getStart(); points[i++] = iv.getEnd(); }
-		for (Interval iv: thatI) { points[i++] = iv.getStart(); points[i++] = iv.getEnd(); }
-		Arrays.sort(points);
-//		System.out.println("Points == " + Arrays.toString(points));
-
-		// Ok, we know there is an even number of points. Look at each
-		// consecutive pair.
-		for (i = 0; i < points.length - 1; i++) {
-			long a = points[i], b = points[i+1];
-//			System.out.println("Examining " + a + " - " + b);
-			if (this.contains(a) && that.contains(a)) continue;
-
-//			System.out.println("Removing " + a + " - " + b);
-
-			remove((T) new Interval(a, b));
+		update(set.intersection(that.set), null, null);
+	}
+
+	// Replaces the interval set, keeping the items of intervals which are unchanged
+	// here or which come unchanged from the other union.
+	private void update(IntervalSet next, Union<? extends T> other, T proto) {
+		if (next != set) {
+			final Object[] kept = next.carry(set, items);
+			if (other != null) {
+				final Object[] adopted = next.carry(other.set, other.items);
+				for (int i = 0; i < kept.length; i++)
+					if (kept[i] == null) kept[i] = adopted[i];
+			}
+			set = next;
+			items = kept;
+			view = null;
 		}
+		if (prototype == null) prototype = proto;
+	}
 
+	@SuppressWarnings("unchecked")
+	private T item(int i) {
+		if (items[i] == null) items[i] = prototype.create(set.start(i), set.end(i));
+		return (T) items[i];
 	}
 
 	public static void main(String[] args) {
@@ -161,10 +148,7 @@ public class Union<T extends Interval> implements Iterable<T>, Serializable {
 
 
 	public boolean contains(long t) {
-		for (Interval i: this)
-			if (i.contains(t))
-				return true;
-		return false;
+		return set.contains(t);
 	}
 
 
@@ -177,7 +161,7 @@ public class Union<T extends Interval> implements Iterable<T>, Serializable {
 	 */
 	public List<T> getOverlaps(T interval, Overlap olap) {
 		List<T> ret = new ArrayList<T>();
-		for (T i : intervals) {
+		for (T i : getIntervals()) {
 			if (i.overlaps(interval, olap))
 				ret.add(i);
 		}
@@ -189,36 +173,42 @@ public class Union<T extends Interval> implements Iterable<T>, Serializable {
 	 * iterate.
 	 * @return this Union's internal Intervals in natural order
 	 */
-	public SortedSet<T> getIntervals() {
-		return Collections.unmodifiableSortedSet(intervals);
+	public synchronized SortedSet<T> getIntervals() {
+		// Synchronized because the intervals are created lazily and unions which are no
+		// longer modified may be read from several threads.
+		if (view == null) {
+			final SortedSet<T> s = new TreeSet<T>();
+			for (int i = 0; i < set.size(); i++) s.add(item(i));
+			view = Collections.unmodifiableSortedSet(s);
+		}
+		return view;
 	}
 
 	/**
 	 * Sums the lengths of all contained intervals.
 	 */
 	public long sum() {
-		long sum = 0;
-		for (T i: intervals) sum += i.getLength();
-		return sum;
+		return set.sum();
 	}
 
 	@Override
 	public String toString() {
-		return intervals.toString();
+		return getIntervals().toString();
 	}
 
 	public boolean isEmpty() {
-		return intervals.isEmpty();
+		return set.isEmpty();
 	}
 
 	/**
 	 * Returns a copy of this Union.
 	 */
 	@SuppressWarnings({"CloneDoesntCallSuperClone"})
-    public Union<T> clone() {
+    public synchronized Union<T> clone() {
 		Union<T> u = new Union<T>();
-		for (T i: intervals)
-			u.add(i);
+		u.set = set;
+		u.items = items.clone();
+		u.prototype = prototype;
 		return u;
 	}
 
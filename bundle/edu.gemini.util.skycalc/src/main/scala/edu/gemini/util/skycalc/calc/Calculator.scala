@@ -3,13 +3,31 @@ package edu.gemini.util.skycalc.calc
 /**
  * Base trait for all calculators.
  * A calculator basically holds a matrix of values which are sampled at defined points in time over a given interval.
- * For each sampling point in time a vector with an arbitrary number of values can be stored.
+ * For each sampling point in time a vector with an arbitrary number of values can be stored. The values are kept
+ * as one primitive array per field.
  */
 trait Calculator {
 
   val times: Vector[Long]
   def toIndex(t: Long): Int
-  val values: Vector[Vector[Double]]
+
+  /** Number of fields sampled for each point in time. */
+  def fields: Int
+
+  /**
+   * Gets the sampled values of a field, one for each sampling time. Implementations are free to calculate
+   * the columns lazily; the arrays returned must not be modified.
+   */
+  protected def column(field: Int): Array[Double]
+
+  /** Sampling times as primitives for index lookups. */
+  protected lazy val timeArray: Array[Long] = times.toArray
+
+  /**
+   * All values as a matrix of boxed doubles. This forces the calculation of all fields, prefer the
+   * accessors below which work on the primitive columns.
+   */
+  lazy val values: Vector[Vector[Double]] = Vector.tabulate(fields)(f => column(f).toVector)
 
   lazy val start = times.head
   lazy val end = times.last
@@ -17,13 +35,42 @@ trait Calculator {
 
   /** True if the values for the given time are covered by this target. */
   def isDefinedAt(t: Long) = t >= start && t <= end
-  def value(field: Int, ix: Int) = values(field)(ix)
-  def valueAt(field: Int, t: Long) = values(field)(toIndex(t))
-  def timedValues(field: Int) = times.zip(values(field))
+  def value(field: Int, ix: Int) = column(field)(ix)
+  def valueAt(field: Int, t: Long) = column(field)(toIndex(t))
+  def timedValues(field: Int): Vector[(Long, Double)] = times.zip(column(field))
+
+  def min(field: Int): Double = {
+    val vs = column(field)
+    var m  = vs(0)
+    var ix = 1
+    while (ix < vs.length) {
+      if (vs(ix) < m) m = vs(ix)
+      ix += 1
+    }
+    m
+  }
+
+  def max(field: Int): Double = {
+    val vs = column(field)
+    var m  = vs(0)
+    var ix = 1
+    while (ix < vs.length) {
+      if (vs(ix) > m) m = vs(ix)
+      ix += 1
+    }
+    m
+  }
 
-  def min(field: Int): Double = values(field).min
-  def max(field: Int): Double = values(field).max
-  def mean(field: Int): Double = values(field).sum / samples
+  def mean(field: Int): Double = {
+    val vs  = column(field)
+    var sum = 0.0
+    var ix  = 0
+    while (ix < vs.length) {
+      sum += vs(ix)
+      ix += 1
+    }
+    sum / samples
+  }
 
 }
 
@@ -69,8 +116,8 @@ trait FixedRateCalculator extends Calculator {
     require(t >= start)
     require(t <= end)
     val ix = Math.floor((t - start) / preciseRate).toInt   // always round down; the sample at this index gives a value <= t
-    require(times(ix) <= t)
-    require(ix == samples-1 || times(ix+1) > t)
+    require(timeArray(ix) <= t)
+    require(ix == samples-1 || timeArray(ix+1) > t)
     ix
   }
 
@@ -90,7 +137,15 @@ trait IrregularIntervalCalculator extends Calculator {
   def toIndex(t: Long) = {
     require(t >= start)
     require(t <= end)
-    val ix = times.zipWithIndex.reverse.dropWhile(_._1 > t).head._2
+    // binary search for the last sample at or before t
+    val ts = timeArray
+    var lo = 0
+    var hi = ts.length - 1
+    while (lo < hi) {
+      val mid = (lo + hi + 1) >>> 1
+      if (ts(mid) <= t) lo = mid else hi = mid - 1
+    }
+    val ix = lo
     // postconditions: useful for debugging / documentation
     // require(ix >= 0 && ix < samples)
     // require(times(ix) <= t && (ix == samples-1 || times(ix+1) > t))
@@ -110,13 +165,14 @@ trait LinearInterpolatingCalculator extends Calculator {
    */
   override def valueAt(field: Int, t: Long): Double = {
     val ix = toIndex(t)
-    val t0 = times(ix)
-    val v0 = values(field)(ix)
+    val vs = column(field)
+    val t0 = timeArray(ix)
+    val v0 = vs(ix)
     if (t0 == t || ix == samples-1) v0
     else {
-      val t1 = times(ix+1)
+      val t1 = timeArray(ix+1)
       // require(t0 <= t && t < t1)
-      val v1 = values(field)(ix+1)
+      val v1 = vs(ix+1)
       val v = v0 + (t - t0).toDouble/(t1 - t0) * (v1 - v0)
       // require((v0 >= v1 && v0 >= v && v >= v1) || (v0 < v1 && v0 <= v && v <= v1))
       v
@@ -17,10 +17,15 @@ trait MoonCalculator extends Calculator {
 
   val site: Site
 
-  val values: Vector[Vector[Double]] = calculate()
-
   import Fields._
 
+  def fields = Fields.maxId
+
+  // All fields depend on the position of the moon, so they are calculated together on first use.
+  private lazy val columns: Array[Array[Double]] = calculate()
+
+  protected def column(field: Int): Array[Double] = columns(field)
+
   lazy val elevation: Double = valueAt(Elevation.id, start)
   lazy val phaseAngle: Double = valueAt(PhaseAngle.id, start)
   lazy val illuminatedFraction: Double = valueAt(IlluminatedFraction.id, start)
@@ -45,38 +50,27 @@ trait MoonCalculator extends Calculator {
   lazy val fullMoons: Seq[Long] = MoonCalculator.calculatePhases(site, Interval(start, end), MoonCalc.Phase.FULL)
   lazy val lastQuarterMoons: Seq[Long] = MoonCalculator.calculatePhases(site, Interval(start, end), MoonCalc.Phase.LAST_QUARTER)
 
-  protected def calculate() = {
+  protected def calculate(): Array[Array[Double]] = {
     val skycalc = new ImprovedSkyCalc(site)
     val dummy = new WorldCoords(0, 0)
 
-    // prepare temporary data structure
-    val values = Array (
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples)
-    )
-    // fill temporary data structure with calculated values
-    for (ix <- 0 to samples-1) {
-      val t = times(ix)
-      skycalc.calculate(dummy, new Date(t), true)
+    // IMPORTANT: Make sure the order reflects the id values of the field enums!
+    val values = Array.ofDim[Double](Fields.maxId, samples)
+
+    val sunMoon = SunMoonTable(site, timeArray)
+
+    var ix = 0
+    while (ix < samples) {
+      val t = timeArray(ix)
+      skycalc.calculate(dummy, new Date(t), sunMoon(ix))
       values(Elevation.id)(ix) = skycalc.getLunarElevation
       values(PhaseAngle.id)(ix) = skycalc.getLunarPhaseAngle
       values(IlluminatedFraction.id)(ix) = skycalc.getLunarIlluminatedFraction
       values(SkyBrightness.id)(ix) = if (skycalc.getLunarSkyBrightness == null) 0.0 else skycalc.getLunarSkyBrightness.toDouble
+      ix += 1
     }
 
-    // turn into immutable data structure
-    Vector(
-      // IMPORTANT: Make sure the order reflects the id values of the field enums!
-      Vector(values(Elevation.id):_*),
-      Vector(values(PhaseAngle.id):_*),
-      Vector(values(IlluminatedFraction.id):_*),
-      Vector(values(SkyBrightness.id):_*)
-    )
+    values
   }
 }
 
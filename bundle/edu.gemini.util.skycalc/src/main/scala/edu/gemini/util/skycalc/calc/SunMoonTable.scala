@@ -0,0 +1,68 @@
+package edu.gemini.util.skycalc.calc
+
+import edu.gemini.skycalc.ImprovedSkyCalc
+import edu.gemini.skycalc.ImprovedSkyCalc.SunMoon
+import edu.gemini.spModel.core.Site
+import java.util.Date
+
+/**
+ * Positions of the sun and the moon for a site, sampled at a given set of times. They do not depend on the
+ * target, so all calculators that sample the same times (e.g. all observations for a night in QV) share a
+ * table and only the target dependent values are calculated for each of them.
+ */
+final class SunMoonTable private (val site: Site, times: Array[Long]) {
+
+  private val sunMoon: Array[SunMoon] = {
+    val skycalc = new ImprovedSkyCalc(site)
+    times.map(t => skycalc.sunMoon(new Date(t))).toArray
+  }
+
+  def samples: Int = sunMoon.length
+
+  def apply(ix: Int): SunMoon = sunMoon(ix)
+
+}
+
+object SunMoonTable {
+
+  /**
+   * Maximal number of samples kept in shared tables, each one takes roughly 80 bytes. This is enough for two
+   * semesters sampled every 30 seconds.
+   */
+  val MaxCachedSamples: Int = 1 << 20
+
+  // The hash of the times is calculated once, and they are only compared element by element when the hashes match.
+  private final class Key(val site: Site, val times: Array[Long]) {
+    override val hashCode: Int = 31 * site.hashCode + java.util.Arrays.hashCode(times)
+
+    override def equals(o: Any): Boolean = o match {
+      case k: Key => (k eq this) || (k.hashCode == hashCode && k.site == site && java.util.Arrays.equals(k.times, times))
+      case _      => false
+    }
+  }
+
+  // Least recently used tables are dropped when the budget is exceeded; guarded by itself.
+  private val cache         = new java.util.LinkedHashMap[Key, SunMoonTable](16, 0.75f, true)
+  private var cachedSamples = 0
+
+  /** Gets the table for the given site and times, calculating it if it is not shared yet. */
+  def apply(site: Site, times: Array[Long]): SunMoonTable = {
+    val key = new Key(site, times)
+    Option(cache.synchronized(cache.get(key))).getOrElse {
+      val table = new SunMoonTable(site, times)
+      if (table.samples <= MaxCachedSamples) cache.synchronized {
+        if (!cache.containsKey(key)) {
+          cache.put(key, table)
+          cachedSamples += table.samples
+          val it = cache.values.iterator
+          while (cachedSamples > MaxCachedSamples && it.hasNext) {
+            cachedSamples -= it.next().samples
+            it.remove()
+          }
+        }
+      }
+      table
+    }
+  }
+
+}
@@ -4,7 +4,7 @@ import edu.gemini.spModel.core.{Coordinates, Site}
 import edu.gemini.skycalc.{ImprovedSkyCalc, TimeUtils}
 import java.util.Date
 
-import edu.gemini.util.skycalc.calc.TargetCalculator.Fields
+import edu.gemini.util.skycalc.calc.TargetCalculator.{Fields, MoonFields}
 
 /**
  * Target calculator that allows to calculate different attributes of a target for a given interval at a given sampling
@@ -23,10 +23,24 @@ trait TargetCalculator extends Calculator {
   val site: Site
   val targetLocation: Long => Coordinates
 
-  val values: Vector[Vector[Double]] = calculate()
-
   import Fields._
 
+  def fields = Fields.maxId
+
+  // Columns are calculated on first use. The lunar distance and the sky brightness need the positions of the
+  // sun and the moon, which are much more expensive to calculate than the target position, so they are only
+  // calculated if one of them is actually requested.
+  private val columns = new Array[Array[Double]](Fields.maxId)
+
+  protected def column(field: Int): Array[Double] = synchronized {
+    if (columns(field) == null) {
+      val withMoon = MoonFields.contains(field)
+      val vs       = calculate(withMoon)
+      for (f <- 0 until fields if columns(f) == null && (withMoon || !MoonFields.contains(f))) columns(f) = vs(f)
+    }
+    columns(field)
+  }
+
   // ==  Gets the first of all calculated values for a given field, use this if only one value was calculated. ==
   lazy val elevation: Double = valueAt(Elevation.id, start)
   lazy val azimuth: Double = valueAt(Azimuth.id, start)
@@ -69,30 +83,37 @@ trait TargetCalculator extends Calculator {
   // If the target is visible during the scheduled time, return the weighted mean parallactic angle as Some(angle in degrees).
   // Otherwise, the target is not visible, so return None.
   lazy val weightedMeanParallacticAngle: Option[Double] = {
-    val (weightedAngles, weights) = values(ParallacticAngle.id).zip(times).zip(values(Airmass.id)).map {
-      case ((angle, t), airmass) =>
-        // Wrap negative angles as per Andy's comment in OCSADV-16.
-        val normalizedAngle = {
-          if (angle < 0) {
-            val normalizingFactor = {
-              val dec = targetLocation(t).dec.toDegrees
-              if (dec - site.latitude < -10) 0
-              else if (dec - site.latitude < 10) 180
-              else 360
-            }
-            angle + normalizingFactor
+    val angles  = column(ParallacticAngle.id)
+    val airmass = column(Airmass.id)
+
+    var angleSum    = 0.0
+    var weightedSum = 0.0
+    var ix          = 0
+    while (ix < samples) {
+      val angle = angles(ix)
+      // Wrap negative angles as per Andy's comment in OCSADV-16.
+      val normalizedAngle = {
+        if (angle < 0) {
+          val normalizingFactor = {
+            val dec = targetLocation(timeArray(ix)).dec.toDegrees
+            if (dec - site.latitude < -10) 0
+            else if (dec - site.latitude < 10) 180
+            else 360
           }
-          else angle
+          angle + normalizingFactor
         }
+        else angle
+      }
+
+      //val weight = if (airmass <= 1.0) 0.0 else 1.6 * math.pow(airmass - 1.0, 0.6)
+      val weight = if (airmass(ix) <= 1.0) 0.0 else math.pow(airmass(ix) - 1.0, 1.3)
+      angleSum    += normalizedAngle * weight
+      weightedSum += weight
+      ix += 1
+    }
 
-        //val weight = if (airmass <= 1.0) 0.0 else 1.6 * math.pow(airmass - 1.0, 0.6)
-        val weight = if (airmass <= 1.0) 0.0 else math.pow(airmass - 1.0, 1.3)
-        (normalizedAngle * weight, weight)
-    }.unzip
-
-    val weightedSum = weights.sum
     if (weightedSum == 0) None
-    else Some(weightedAngles.sum / weightedSum)
+    else Some(angleSum / weightedSum)
   }
 
   def hourAngleAt(t: Long): Double = valueAt(HourAngle.id, t)
@@ -106,47 +127,37 @@ trait TargetCalculator extends Calculator {
   lazy val meanSkyBrightness: Double = mean(SkyBrightness.id)
 
   /**
-   * Calculates all values for the given times.
+   * Calculates the values for the given times.
+   * @param withMoon if false the moon dependent fields are not calculated and left empty
    * @return
    */
-  protected def calculate(): Vector[Vector[Double]] = {
+  protected def calculate(withMoon: Boolean): Array[Array[Double]] = {
     val skycalc = new ImprovedSkyCalc(site)
 
-    // prepare temporary data structure
-    val values = Array (
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples)
-    )
-    // fill temporary data structure with calculated values
-    for (ix <- 0 until samples) {
-      val t = times(ix)
-      skycalc.calculate(targetLocation(t), new Date(t), true)
+    // IMPORTANT: Make sure the order reflects the id values of the field enums!
+    val values = Array.ofDim[Double](Fields.maxId, samples)
+
+    // the sun and the moon are the same for all targets, share them with all calculators for the same times
+    val sunMoon = if (withMoon) SunMoonTable(site, timeArray) else null
+
+    var ix = 0
+    while (ix < samples) {
+      val t = timeArray(ix)
+      if (withMoon) skycalc.calculate(targetLocation(t), new Date(t), sunMoon(ix))
+      else skycalc.calculate(targetLocation(t), new Date(t), false)
       values(Elevation.id)(ix) = skycalc.getAltitude
       values(Azimuth.id)(ix) = skycalc.getAzimuth
       values(Airmass.id)(ix) = skycalc.getAirmass
-      values(LunarDistance.id)(ix) = skycalc.getLunarDistance
       values(ParallacticAngle.id)(ix) = skycalc.getParallacticAngle
       values(HourAngle.id)(ix) = skycalc.getHourAngle
-      values(SkyBrightness.id)(ix) = skycalc.getTotalSkyBrightness.doubleValue
+      if (withMoon) {
+        values(LunarDistance.id)(ix) = skycalc.getLunarDistance
+        values(SkyBrightness.id)(ix) = skycalc.getTotalSkyBrightness.doubleValue
+      }
+      ix += 1
     }
 
-    // turn into immutable data structure
-    Vector(
-      // IMPORTANT: Make sure the order reflects the id values of the field enums!
-      Vector(values(Elevation.id):_*),
-      Vector(values(Azimuth.id):_*),
-      Vector(values(Airmass.id):_*),
-      Vector(values(LunarDistance.id):_*),
-      Vector(values(ParallacticAngle.id):_*),
-      Vector(values(HourAngle.id):_*),
-      Vector(values(SkyBrightness.id):_*)
-    )
-
+    values
   }
 }
 
@@ -164,6 +175,9 @@ object TargetCalculator {
     val Elevation, Azimuth, Airmass, LunarDistance, ParallacticAngle, HourAngle, SkyBrightness = Value
   }
 
+  /** Ids of the fields that depend on the position of the sun and the moon. */
+  private val MoonFields: Set[Int] = Set(Fields.LunarDistance.id, Fields.SkyBrightness.id)
+
   def apply(site: Site, targetLocation: Long => Coordinates, defined: Interval, rate: Long = TimeUtils.seconds(30)): TargetCalculator =
     IntervalTargetCalculator(site, targetLocation, defined, rate)
 
@@ -0,0 +1,47 @@
+package edu.gemini.skycalc
+
+import scala.collection.JavaConverters._
+
+/**
+ * Measures the union operations on unions the size of those the QPT and QV build for a semester of
+ * nights sampled in minutes, i.e. darkness, visibility and timing windows of a single observation.
+ * Run with `test:runMain edu.gemini.skycalc.UnionBenchmark`.
+ */
+object UnionBenchmark {
+
+  private val Nights     = 180
+  private val Pieces     = 40
+  private val Iterations = 5
+  private val Day        = 24L * 60 * 60 * 1000
+
+  // A number of pieces per night, shifted so that the unions partially overlap.
+  private def union(shift: Long, length: Long): Union[Interval] = {
+    val is = for {
+      n <- 0 until Nights
+      p <- 0 until Pieces
+    } yield {
+      val s = n * Day + p * (Day / 2 / Pieces) + shift
+      new Interval(s, s + length)
+    }
+    new Union[Interval](is.asJava)
+  }
+
+  private def time[A](name: String)(a: => A): A = {
+    val t0 = System.nanoTime
+    val r  = a
+    println(f"  $name%-12s ${(System.nanoTime - t0) / 1000000.0}%8.2f ms")
+    r
+  }
+
+  def main(args: Array[String]): Unit =
+    (1 to Iterations).foreach { i =>
+      println(s"Iteration $i")
+      val a = time("build")(union(0, 10 * 60 * 1000))
+      val b = union(5 * 60 * 1000, 7 * 60 * 1000)
+
+      time("add") { val u = a.clone(); u.add(b); u.getIntervals.size }
+      time("remove") { val u = a.clone(); u.remove(b); u.getIntervals.size }
+      time("intersect") { val u = a.clone(); u.intersect(b); u.getIntervals.size }
+      time("contains") { (0L until Nights * Day by 60000L).count(a.contains) }
+    }
+}
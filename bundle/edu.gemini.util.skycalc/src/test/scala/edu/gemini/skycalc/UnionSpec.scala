@@ -0,0 +1,109 @@
+package edu.gemini.skycalc
+
+import org.scalacheck.{Arbitrary, Gen}
+import org.scalacheck.Prop._
+import org.specs2.ScalaCheck
+import org.specs2.mutable.Specification
+
+import scala.collection.JavaConverters._
+
+/**
+ * Checks the unions against a model in which a union is simply the set of points it contains.
+ */
+class UnionSpec extends Specification with ScalaCheck {
+
+  private val Span = 0L until 60L
+
+  private val genInterval: Gen[Interval] =
+    for {
+      s <- Gen.choose(Span.start, Span.end - 1)
+      l <- Gen.choose(0L, 15L)
+    } yield new Interval(s, (s + l) min Span.end)
+
+  private implicit val arbInterval: Arbitrary[Interval] =
+    Arbitrary(genInterval)
+
+  private implicit val arbUnion: Arbitrary[Union[Interval]] =
+    Arbitrary(Gen.listOf(genInterval).map(is => new Union[Interval](is.asJava)))
+
+  private def points(u: Union[Interval]): Set[Long] =
+    u.getIntervals.asScala.flatMap(i => i.getStart until i.getEnd).toSet
+
+  private def normalized(u: Union[Interval]): Boolean = {
+    val is = u.getIntervals.asScala.toList
+    is.forall(i => i.getStart < i.getEnd) &&
+      is.zip(is.drop(1)).forall { case (a, b) => a.getEnd < b.getStart }
+  }
+
+  private def copy(u: Union[Interval]): Union[Interval] =
+    u.clone()
+
+  "Union" should {
+    "add intervals" in {
+      forAll { (u: Union[Interval], is: List[Interval]) =>
+        val v = copy(u)
+        is.foreach(v.add)
+        normalized(v) && points(v) == points(u) ++ is.flatMap(i => i.getStart until i.getEnd)
+      }
+    }
+    "add unions" in {
+      forAll { (u: Union[Interval], w: Union[Interval]) =>
+        val v = copy(u)
+        v.add(w)
+        normalized(v) && points(v) == (points(u) ++ points(w))
+      }
+    }
+    "remove intervals" in {
+      forAll { (u: Union[Interval], i: Interval) =>
+        val v = copy(u)
+        v.remove(i)
+        normalized(v) && points(v) == points(u) -- (i.getStart until i.getEnd)
+      }
+    }
+    "remove unions" in {
+      forAll { (u: Union[Interval], w: Union[Interval]) =>
+        val v = copy(u)
+        v.remove(w)
+        normalized(v) && points(v) == (points(u) -- points(w))
+      }
+    }
+    "intersect unions" in {
+      forAll { (u: Union[Interval], w: Union[Interval]) =>
+        val v = copy(u)
+        v.intersect(w)
+        normalized(v) && points(v) == (points(u) & points(w))
+      }
+    }
+    "find contained points" in {
+      forAll { (u: Union[Interval]) =>
+        val ps = points(u)
+        (Span.start - 1 to Span.end).forall(t => u.contains(t) == ps.contains(t))
+      }
+    }
+    "sum the lengths" in {
+      forAll { (u: Union[Interval]) =>
+        u.sum() == points(u).size.toLong
+      }
+    }
+    "leave copies alone" in {
+      forAll { (u: Union[Interval], w: Union[Interval]) =>
+        val before = points(u)
+        copy(u).add(w)
+        copy(u).remove(w)
+        points(u) == before
+      }
+    }
+    "keep the intervals that were added unchanged" in {
+      val a = new Interval(0, 10)
+      val b = new Interval(20, 30)
+      val u = new Union[Interval](a, b)
+      u.add(new Interval(10, 15))
+      u.getIntervals.last must beTheSameAs(b)
+      u.getIntervals.first must_== new Interval(0, 15)
+    }
+    "ignore empty intervals" in {
+      val u = new Union[Interval](new Interval(5, 5))
+      u.isEmpty must beTrue
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package edu.gemini.util.skycalc.calc
+
+import edu.gemini.skycalc.TimeUtils
+import edu.gemini.spModel.core.{Coordinates, Site}
+
+/**
+ * Measures the time taken to sample targets over a whole semester at the default 30 second rate and to
+ * query their elevation and airmass ranges, as the QV constraints cache does. Run with
+ * `test:runMain edu.gemini.util.skycalc.calc.SkyCalcBenchmark`.
+ */
+object SkyCalcBenchmark {
+
+  private val Targets    = 10
+  private val Iterations = 3
+
+  def main(args: Array[String]): Unit = {
+    val start    = TimeUtils.time(2014, 2, 1, 12, 0, Site.GS.timezone)
+    val end      = TimeUtils.time(2014, 8, 1, 12, 0, Site.GS.timezone)
+    val semester = Interval(start, end)
+    val targets  = (0 until Targets).map { i =>
+      val c = Coordinates.fromDegrees(i * 360.0 / Targets, -60.0 + i * 10.0).get
+      (_: Long) => c
+    }
+
+    def run(withMoon: Boolean): (Double, Long) = {
+      val t0  = System.nanoTime
+      val sum = targets.map { loc =>
+        val tc = TargetCalculator(Site.GS, loc, semester)
+        val s  = tc.minElevation + tc.maxElevation + tc.meanAirmass + tc.elevationAt(start + TimeUtils.days(42))
+        if (withMoon) s + tc.meanSkyBrightness else s
+      }.sum
+      (sum, System.nanoTime - t0)
+    }
+
+    // warm up
+    run(withMoon = true)
+
+    (1 to Iterations).foreach { i =>
+      val (_, targetNs) = run(withMoon = false)
+      val (_, allNs)    = run(withMoon = true)
+      val samples = TargetCalculator(Site.GS, targets.head, semester).samples
+      println(f"run $i: $Targets targets x $samples samples, target fields ${targetNs / 1000000.0}%9.2f ms, all fields ${allNs / 1000000.0}%9.2f ms")
+    }
+  }
+}
@@ -3,7 +3,9 @@ package edu.gemini.util.skycalc.calc
 import edu.gemini.spModel.core.{Coordinates, Site}
 import org.junit.{Ignore, Test}
 import org.junit.Assert._
-import edu.gemini.skycalc.TimeUtils
+import edu.gemini.skycalc.{ImprovedSkyCalc, TimeUtils}
+import edu.gemini.util.skycalc.calc.TargetCalculator.Fields
+import java.util.Date
 
 /**
  * Compare some random values with results from http://catserver.ing.iac.es/staralt/index.php
@@ -46,6 +48,51 @@ class TargetCalculatorTest {
     assertEquals(37, target.minElevation, 1)
   }
 
+  @Test def calculatesMoonFieldsOnDemand(): Unit = {
+    val t = TimeUtils.time(2014, 3, 1, 20, 0, Site.GN.timezone)
+    val c = (_: Long) => Coordinates.fromDegrees(150, 20).get
+    val interval = Interval(t, t + TimeUtils.hours(4))
+    val lazyTarget = TargetCalculator(Site.GN, c, interval)
+    val fullTarget = TargetCalculator(Site.GN, c, interval)
+
+    // force all fields at once in one of them, field by field in the other one
+    val all = fullTarget.values
+    assertEquals(TargetCalculator.Fields.maxId, all.size)
+    assertEquals(fullTarget.maxElevation, lazyTarget.maxElevation, 0)
+    assertEquals(fullTarget.meanSkyBrightness, lazyTarget.meanSkyBrightness, 0)
+    for (f <- TargetCalculator.Fields.values.toList; ix <- 0 until lazyTarget.samples) {
+      assertEquals(all(f.id)(ix), lazyTarget.value(f.id, ix), 0)
+    }
+  }
+
+  @Test def sharesSunAndMoon(): Unit = {
+    val t = TimeUtils.time(2014, 3, 1, 20, 0, Site.GN.timezone)
+    val interval = Interval(t, t + TimeUtils.hours(8))
+    val skycalc = new ImprovedSkyCalc(Site.GN)
+
+    for (ra <- Seq(0.0, 150.0, 300.0)) {
+      val c = Coordinates.fromDegrees(ra, 20).get
+      val target = TargetCalculator(Site.GN, (_: Long) => c, interval, TimeUtils.minutes(10))
+      for (ix <- 0 until target.samples) {
+        skycalc.calculate(c, new Date(target.times(ix)), true)
+        assertEquals(skycalc.getLunarDistance, target.value(Fields.LunarDistance.id, ix), 0)
+        assertEquals(skycalc.getTotalSkyBrightness, target.value(Fields.SkyBrightness.id, ix), 0)
+      }
+    }
+  }
+
+  @Test def findsSampleIndex(): Unit = {
+    val t = TimeUtils.time(2014, 3, 1, 20, 0, Site.GN.timezone)
+    val c = (_: Long) => Coordinates.fromDegrees(150, 20).get
+    val times = Vector(0L, 10L, 15L, 40L, 41L, 100L).map(_ * TimeUtils.minutes(1) + t)
+    val target = SampleTargetCalculator(Site.GN, c, times)
+
+    for (s <- t to times.last by TimeUtils.seconds(30)) {
+      assertEquals(times.lastIndexWhere(_ <= s), target.toIndex(s))
+    }
+    assertEquals(times.size - 1, target.toIndex(times.last))
+  }
+
   // === this is for performance trimming purposes, not an actual test case
 
   @Ignore
@@ -44,7 +44,7 @@ import java.util.concurrent.CancellationException;
 public class GemsGuideStarWorker extends SwingWorker implements MascotProgress {
 
     private TpeImageWidget tpe;
-    private boolean interrupted;
+    private volatile boolean interrupted;
 
     // Displays messages during background tasks
     private StatusLogger statusLogger;
@@ -403,6 +403,11 @@ public class GemsGuideStarWorker extends SwingWorker implements MascotProgress {
         return !interrupted;
     }
 
+    @Override
+    public boolean isCancelled() {
+        return interrupted;
+    }
+
     @Override
     public void setProgressTitle(String s) {
         if (statusLogger instanceof ProgressPanel) {
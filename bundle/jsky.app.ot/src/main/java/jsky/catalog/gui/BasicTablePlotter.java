@@ -24,10 +24,12 @@ import javax.swing.event.EventListenerList;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.*;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -38,6 +40,11 @@ import java.util.stream.Collectors;
  * Note: This class was previously implemented using Diva figures for catalog symbols,
  * however this turned out to be slow for large numbers of figures, so this version
  * handles the drawing and selection of catalog symbols directly.
+ * <p>
+ * The symbol shapes are kept in the screen coordinates they were plotted in, together
+ * with the transformation to the current screen coordinates, so that zooming, panning
+ * and rotating the image doesn't touch every symbol. Only the symbols that are painted
+ * or hit by the mouse are transformed, and found with a grid index of the shapes.
  *
  * @version $Revision: 38445 $
  * @author Allan Brighton
@@ -349,7 +356,7 @@ public class BasicTablePlotter
         final Shape shape = makeShape(symbol, pos.x, pos.y, Math.max(size.x, size.y), ratio, angle);
 
         // Add an item for this symbol to the figure list, and store it as client data also
-        final FigureListItem item = new FigureListItem(shape, label, row);
+        final FigureListItem item = new FigureListItem(shape, label, row, _figureList.size());
         _figureList.add(item);
     }
 
@@ -592,10 +599,11 @@ public class BasicTablePlotter
         // Find the plot symbol for the given row in the given table
         _tableList.stream().filter(tli -> tli.table.equals(table)).forEach(tli -> {
             for (SymbolListItem sli : tli.symbolAr) {
-                sli.figureList.stream().filter(fli -> fli.row == tableRow).filter(fli -> fli.selected != selected).forEach(fli -> {
-                    fli.selected = selected;
-                    repaint(fli.shape);
-                });
+                final FigureListItem fli = sli.getFigure(tableRow);
+                if (fli != null && fli.selected != selected) {
+                    sli.setSelected(fli, selected);
+                    repaint(sli.getShape(fli));
+                }
             }
         });
         fireTableSelectionEvent(table, tableRow, selected);
@@ -612,10 +620,10 @@ public class BasicTablePlotter
     public void deselectAll(final TableQueryResult table) {
         _tableList.stream().filter(tli -> tli.table.equals(table)).forEach(tli -> {
             for (SymbolListItem sli : tli.symbolAr) {
-                sli.figureList.stream().filter(fli -> fli.selected).forEach(fli -> {
-                    fli.selected = false;
-                    repaint(fli.shape);
-                });
+                for (FigureListItem fli : new ArrayList<>(sli.selected)) {
+                    sli.setSelected(fli, false);
+                    repaint(sli.getShape(fli));
+                }
             }
         });
         // TODO Should it fire table selection events?
@@ -724,6 +732,9 @@ public class BasicTablePlotter
         if (!_visible)
             return;
 
+        // only the symbols in the region (or the clip area) are looked at
+        final Rectangle2D area = (region != null) ? region : g2d.getClipBounds();
+
         // plot each table
         g2d.setPaintMode();
         for (TableListItem tli: _tableList) {
@@ -735,19 +746,22 @@ public class BasicTablePlotter
                 // plot each figure
                 // draw selected symbols with a thicker stroke
                 // If there is a label for the symbol, draw it too
-                sli.figureList.stream().filter(fli -> region == null || fli.shape.intersects(region)).forEach(fli -> {
+                sli.query(area, fli -> {
+                    final Shape shape = sli.getShape(fli);
+                    if (region != null && !shape.intersects(region))
+                        return;
                     if (fli.selected) {
                         // draw selected symbols with a thicker stroke
                         final Stroke stroke = g2d.getStroke();
                         g2d.setStroke(_selectedStroke);
-                        g2d.draw(fli.shape);
+                        g2d.draw(shape);
                         g2d.setStroke(stroke);
                     } else {
-                        g2d.draw(fli.shape);
+                        g2d.draw(shape);
                     }
                     // If there is a label for the symbol, draw it too
                     if (fli.label != null) {
-                        final Rectangle2D r = fli.shape.getBounds();
+                        final Rectangle2D r = shape.getBounds();
                         g2d.drawString(fli.label, (float) r.getCenterX(), (float) r.getCenterY());
                     }
                 });
@@ -764,9 +778,7 @@ public class BasicTablePlotter
     public void transformGraphics(AffineTransform trans) {
         for (TableListItem tli: _tableList) {
             for (SymbolListItem sli: tli.symbolAr) {
-                for (FigureListItem fli: sli.figureList) {
-                    fli.shape = ShapeUtilities.transformModify(fli.shape, trans);
-                }
+                sli.transform(trans);
             }
         }
         _layer.repaint();
@@ -912,23 +924,31 @@ public class BasicTablePlotter
             if (!tli.inRange)
                 continue;
             for (SymbolListItem sli: tli.symbolAr) {
-                for (FigureListItem fli: sli.figureList) {
-                    if (sli.symbol.getBoundingShape(fli.shape).contains(x, y)) {
+                // the symbols that may be under the mouse pointer and, unless toggling,
+                // the selected ones, which may need to be deselected (in plot order)
+                final Set<FigureListItem> figures = new TreeSet<>(Comparator.comparingInt(fli -> fli.index));
+                sli.query(new Rectangle2D.Double(x, y, 0., 0.), figures::add);
+                if (!toggleSel)
+                    figures.addAll(sli.selected);
+
+                for (FigureListItem fli: figures) {
+                    final Shape shape = sli.getShape(fli);
+                    if (sli.symbol.getBoundingShape(shape).contains(x, y)) {
                         if (toggleSel) {
-                            fli.selected = !fli.selected;
-                            repaint(fli.shape);
+                            sli.setSelected(fli, !fli.selected);
+                            repaint(shape);
                             fireSymbolSelectionEvent(tli.table, fli.row, fli.selected);
                         } else {
                             if (!fli.selected) {
-                                fli.selected = true;
-                                repaint(fli.shape);
+                                sli.setSelected(fli, true);
+                                repaint(shape);
                                 fireSymbolSelectionEvent(tli.table, fli.row, fli.selected);
                             }
                         }
                     } else if (!toggleSel) {
                         if (fli.selected) {
-                            fli.selected = false;
-                            repaint(fli.shape);
+                            sli.setSelected(fli, false);
+                            repaint(shape);
                             fireSymbolSelectionEvent(tli.table, fli.row, fli.selected);
                         }
                     }
@@ -949,9 +969,11 @@ public class BasicTablePlotter
             if (!tli.inRange)
                 continue;
             for (SymbolListItem sli: tli.symbolAr) {
-                for (FigureListItem fli: sli.figureList) {
-                    // assume symbol has already been selected
-                    if (fli.selected && sli.symbol.getBoundingShape(fli.shape).contains(p)) {
+                // assume symbol has already been selected
+                final List<FigureListItem> selected = new ArrayList<>(sli.selected);
+                selected.sort(Comparator.comparingInt(fli -> fli.index));
+                for (FigureListItem fli: selected) {
+                    if (sli.symbol.getBoundingShape(sli.getShape(fli)).contains(p)) {
                         Option<SiderealTarget> skyObject = tli.table.getSiderealTarget(fli.row);
                         skyObject.forEach(s -> {
                             // This is a bit strange, we convert the incoming parameter to the position of the
@@ -993,11 +1015,81 @@ public class BasicTablePlotter
     private class SymbolListItem {
 
         public final TablePlotSymbol symbol;                  // plot symbol description
-        public final LinkedList<FigureListItem> figureList = new LinkedList<>();   // list of figures to draw using the above symbol
+        public final List<FigureListItem> figureList = new ArrayList<>();   // list of figures to draw using the above symbol
+        public final Set<FigureListItem> selected = new HashSet<>();  // the selected figures
+
+        // transformation from the screen coordinates the figures were plotted in to the current ones
+        private final AffineTransform transform = new AffineTransform();
+        private AffineTransform inverse = new AffineTransform();
+
+        // incremented whenever the transformation changes, to update the figure shapes
+        private int version = 0;
+
+        // index of the figures by position (in plot coordinates) and by row, created when needed
+        private SymbolGrid<FigureListItem> grid;
+        private Map<Integer, FigureListItem> rowMap;
 
         public SymbolListItem(TablePlotSymbol s) {
             symbol = s;
         }
+
+        /** Apply the given transformation to all figures. */
+        public void transform(final AffineTransform trans) {
+            transform.preConcatenate(trans);
+            try {
+                inverse = transform.createInverse();
+            } catch (NoninvertibleTransformException e) {
+                inverse = null;
+            }
+            version++;
+        }
+
+        /** Return the shape of the given figure in the current screen coordinates. */
+        public Shape getShape(final FigureListItem fli) {
+            if (fli.version != version) {
+                fli.shape = transform.isIdentity() ? fli.plotShape
+                        : ShapeUtilities.transformModify(ShapeUtilities.cloneShape(fli.plotShape), transform);
+                fli.version = version;
+            }
+            return fli.shape;
+        }
+
+        /**
+         * Pass the figures whose bounding boxes may overlap the given region (in screen
+         * coordinates) to the given consumer, or all figures if the region is null.
+         */
+        public void query(final Rectangle2D region, final Consumer<FigureListItem> f) {
+            if (region == null || inverse == null) {
+                figureList.forEach(f);
+                return;
+            }
+            if (grid == null) {
+                final List<Rectangle2D> bounds = new ArrayList<>(figureList.size());
+                for (FigureListItem fli : figureList)
+                    bounds.add(symbol.getBoundingShape(fli.plotShape).getBounds2D());
+                grid = new SymbolGrid<>(figureList, bounds);
+            }
+            grid.query(inverse.createTransformedShape(region).getBounds2D(), f);
+        }
+
+        /** Return the figure for the given table row, or null if there is none. */
+        public FigureListItem getFigure(final int row) {
+            if (rowMap == null) {
+                rowMap = new HashMap<>();
+                for (FigureListItem fli : figureList)
+                    rowMap.put(fli.row, fli);
+            }
+            return rowMap.get(row);
+        }
+
+        /** Set the selection state of the given figure. */
+        public void setSelected(final FigureListItem fli, final boolean isSelected) {
+            fli.selected = isSelected;
+            if (isSelected)
+                selected.add(fli);
+            else
+                selected.remove(fli);
+        }
     }
 
     /**
@@ -1005,15 +1097,20 @@ public class BasicTablePlotter
      */
     private class FigureListItem {
 
-        public Shape shape;     // shape of the symbol
+        public final Shape plotShape; // shape of the symbol, in the screen coordinates when plotted
+        public Shape shape;     // shape of the symbol, in current screen coordinates (see SymbolListItem.getShape)
+        public int version = 0; // version of the SymbolListItem transformation used for shape
         public final String label;    // optional label
         public final int row;         // row index in table
+        public final int index;       // index in the figure list
         public boolean selected = false;  // true if selected
 
-        public FigureListItem(final Shape s, final String lab, final int r) {
+        public FigureListItem(final Shape s, final String lab, final int r, final int i) {
+            plotShape = s;
             shape = s;
             label = lab;
             row = r;
+            index = i;
         }
     }
 }
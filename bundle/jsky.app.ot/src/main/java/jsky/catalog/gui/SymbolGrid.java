@@ -0,0 +1,149 @@
+package jsky.catalog.gui;
+
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A uniform grid over the bounding boxes of a fixed set of items (catalog symbols),
+ * used to find the items in a region or at a point without looking at all of them.
+ * The grid is sized so that each cell holds a few items on average, and an item is
+ * entered in every cell that its bounding box overlaps.
+ *
+ * @see BasicTablePlotter
+ */
+final class SymbolGrid<T> {
+
+    /** The average number of items per cell that the grid is sized for */
+    private static final int ITEMS_PER_CELL = 4;
+
+    /** The maximum number of cells in each direction */
+    private static final int MAX_CELLS = 1024;
+
+    // the items and their bounding boxes (x0, y0, x1, y1 for each item)
+    private final Object[] _items;
+    private final double[] _bounds;
+
+    // the area covered by the grid and the size of its cells
+    private final double _x0, _y0, _cellWidth, _cellHeight;
+    private final int _nx, _ny;
+
+    // the items in cell i are _cellItems[_cellStart[i]] .. _cellItems[_cellStart[i + 1] - 1]
+    private final int[] _cellStart;
+    private final int[] _cellItems;
+
+
+    /**
+     * Index the given items.
+     *
+     * @param items the items
+     * @param bounds the bounding boxes of the items, in the same order
+     */
+    SymbolGrid(List<T> items, List<Rectangle2D> bounds) {
+        int n = items.size();
+        _items = items.toArray();
+        _bounds = new double[n * 4];
+
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            Rectangle2D r = bounds.get(i);
+            _bounds[i * 4] = r.getMinX();
+            _bounds[i * 4 + 1] = r.getMinY();
+            _bounds[i * 4 + 2] = r.getMaxX();
+            _bounds[i * 4 + 3] = r.getMaxY();
+            if (r.isEmpty() && !(r.getWidth() == 0. && r.getHeight() == 0.))
+                continue; // NaN coordinates, not counted for the extent of the grid
+            x0 = Math.min(x0, r.getMinX());
+            y0 = Math.min(y0, r.getMinY());
+            x1 = Math.max(x1, r.getMaxX());
+            y1 = Math.max(y1, r.getMaxY());
+        }
+        if (n == 0) {
+            x0 = y0 = x1 = y1 = 0.;
+        }
+
+        // square cells, with about ITEMS_PER_CELL items each if they were evenly spread
+        double w = Math.max(x1 - x0, 1.), h = Math.max(y1 - y0, 1.);
+        double cell = Math.sqrt(w * h * ITEMS_PER_CELL / Math.max(n, 1));
+        _nx = (int) Math.max(1, Math.min(MAX_CELLS, Math.ceil(w / cell)));
+        _ny = (int) Math.max(1, Math.min(MAX_CELLS, Math.ceil(h / cell)));
+        _x0 = x0;
+        _y0 = y0;
+        _cellWidth = w / _nx;
+        _cellHeight = h / _ny;
+
+        // count the entries per cell, then fill them in
+        _cellStart = new int[_nx * _ny + 1];
+        for (int i = 0; i < n; i++) {
+            int cx0 = _cellX(_bounds[i * 4]), cy0 = _cellY(_bounds[i * 4 + 1]);
+            int cx1 = _cellX(_bounds[i * 4 + 2]), cy1 = _cellY(_bounds[i * 4 + 3]);
+            for (int cy = cy0; cy <= cy1; cy++)
+                for (int cx = cx0; cx <= cx1; cx++)
+                    _cellStart[cy * _nx + cx + 1]++;
+        }
+        for (int c = 0; c < _nx * _ny; c++)
+            _cellStart[c + 1] += _cellStart[c];
+
+        _cellItems = new int[_cellStart[_nx * _ny]];
+        int[] fill = new int[_nx * _ny];
+        for (int i = 0; i < n; i++) {
+            int cx0 = _cellX(_bounds[i * 4]), cy0 = _cellY(_bounds[i * 4 + 1]);
+            int cx1 = _cellX(_bounds[i * 4 + 2]), cy1 = _cellY(_bounds[i * 4 + 3]);
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    int c = cy * _nx + cx;
+                    _cellItems[_cellStart[c] + fill[c]++] = i;
+                }
+            }
+        }
+    }
+
+    /** Return the number of items in the grid. */
+    int size() {
+        return _items.length;
+    }
+
+    /**
+     * Pass each item whose bounding box overlaps the given rectangle (including its
+     * edges) to the given consumer, once.
+     */
+    @SuppressWarnings("unchecked")
+    void query(Rectangle2D r, Consumer<T> f) {
+        double rx0 = r.getMinX(), ry0 = r.getMinY(), rx1 = r.getMaxX(), ry1 = r.getMaxY();
+        if (_items.length == 0 || rx1 < _x0 || ry1 < _y0
+                || rx0 > _x0 + _nx * _cellWidth || ry0 > _y0 + _ny * _cellHeight)
+            return;
+
+        int qx0 = _cellX(rx0), qy0 = _cellY(ry0), qx1 = _cellX(rx1), qy1 = _cellY(ry1);
+        for (int cy = qy0; cy <= qy1; cy++) {
+            for (int cx = qx0; cx <= qx1; cx++) {
+                int c = cy * _nx + cx;
+                for (int k = _cellStart[c]; k < _cellStart[c + 1]; k++) {
+                    int i = _cellItems[k];
+                    double bx0 = _bounds[i * 4], by0 = _bounds[i * 4 + 1];
+                    double bx1 = _bounds[i * 4 + 2], by1 = _bounds[i * 4 + 3];
+                    if (bx1 < rx0 || bx0 > rx1 || by1 < ry0 || by0 > ry1)
+                        continue;
+                    // an item in several cells is only reported in the first one visited
+                    if (cx != Math.max(qx0, _cellX(bx0)) || cy != Math.max(qy0, _cellY(by0)))
+                        continue;
+                    f.accept((T) _items[i]);
+                }
+            }
+        }
+    }
+
+    /** Pass each item whose bounding box contains the given point to the given consumer. */
+    void query(double x, double y, Consumer<T> f) {
+        query(new Rectangle2D.Double(x, y, 0., 0.), f);
+    }
+
+    private int _cellX(double x) {
+        return Math.max(0, Math.min(_nx - 1, (int) Math.floor((x - _x0) / _cellWidth)));
+    }
+
+    private int _cellY(double y) {
+        return Math.max(0, Math.min(_ny - 1, (int) Math.floor((y - _y0) / _cellHeight)));
+    }
+}
@@ -12,10 +12,13 @@ package jsky.image;
 
 import com.sun.media.jai.codec.ImageCodec;
 
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.DataBuffer;
 import java.awt.image.SampleModel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 import javax.media.jai.Histogram;
 import javax.media.jai.Interpolation;
@@ -52,6 +55,9 @@ public class ImageProcessor {
     /** The default number of Y pixels to skip for histograms and statistics */
     static final int DEFAULT_Y_PERIOD = 4;
 
+    /** The memory, in bytes, that the image statistics kept for regions of interest may take up */
+    private static final long MAX_STATISTICS_BYTES = 32L << 20;
+
     // The original source image
     private PlanarImage _sourceImage;
 
@@ -75,6 +81,12 @@ public class ImageProcessor {
     // Used to get a histogram of the image data in the visible area.
     private ImageHistogram _imageHistogram = new ImageHistogram();
 
+    // Statistics of the rescaled source image, by region of interest, most recently used last
+    private final LinkedHashMap<Rectangle, ImageStatistics> _statistics = new LinkedHashMap<>(16, 0.75F, true);
+
+    // Statistics of the current region of interest
+    private ImageStatistics _imageStatistics;
+
     // The number of bands in the source image
     private int _numBands;
 
@@ -455,54 +467,93 @@ public class ImageProcessor {
      * As a result, the minValue, maxValue, lowCut, and highCut  member
      * variables are set.
      * This method should be called before calling getMinValue(), getMaxValue(),
-     * getLowCut() or getHighCut(). If the same region is specified as in the
-     * previous call, nothing is done.
+     * getLowCut() or getHighCut(). If the same region is specified as in one of the
+     * previous calls, the statistics gathered then are used again.
      *
      * @param region the region of interest in the image
      */
     private void calculateImageStatistics(Rectangle2D.Double region) {
         // clip to image boundary to form the region of interest
         setRegionOfInterest(region);
+        ImageStatistics stats = getImageStatistics();
 
         // Get the min and max pixel values in the region (or for the image, if known)
         if (_dataMin != _dataMax) {
             // Use property values, if set
             _minValue = _dataMin;
             _maxValue = _dataMax;
-        } else if (Float.isNaN(_blank) && _bitpix != -32) {
-            // No blank pixel was defined, use extrema operation, which should be faster, since
-            // it is implemented in native code. The JAI extrema operation doesn't handle NaNs though...
-            try {
-                // the extrema op seems to have problems with very small images? (like dummy, blank images?)
-                double[][] extrema = ImageOps.extrema(_rescaledSourceImage, _roi, _xPeriod, _yPeriod);
-                _minValue = extrema[0][0];
-                _maxValue = extrema[1][0];
-            } catch (Exception e) {
-                _minValue = _maxValue = 0.;
-            }
         } else {
-            // A blank pixel was defined, use our MinMax operator
-            double[] minMax = ImageOps.minMax(_rescaledSourceImage, _roi, _xPeriod, _yPeriod, _blank);
-            _minValue = minMax[0];
-            _maxValue = minMax[1];
-             // the mean is also calculated for float images, to avoid NaN issues
-             _dataMean = minMax[2];
+            _minValue = stats.getMin();
+            _maxValue = stats.getMax();
         }
 
         if (_minValue > _maxValue) {
             throw new IllegalArgumentException("min value > max value.");
         }
 
-        // Try to guess the best cut levels for the image
-        if (Double.isNaN(_dataMean)) {
-            _dataMean = ImageOps.mean(_rescaledSourceImage, _roi, _xPeriod, _yPeriod)[0];
+        // the mean is also calculated for images with blank pixels and float images, to avoid NaN issues
+        if (Double.isNaN(_dataMean) || !Float.isNaN(_blank) || _bitpix == -32) {
+            _dataMean = stats.getMean();
         }
-        double[] cutLevels = ImageOps.cutLevel(_rescaledSourceImage, _roi, _blank, _dataMean);
+
+        // Try to guess the best cut levels for the image
+        double[] cutLevels = stats.getMedianFilterCutLevels(_dataMean);
         _lowCut = cutLevels[0];
         _highCut = cutLevels[1];
     }
 
 
+    /**
+     * Return the statistics of the rescaled source image in the current region of
+     * interest. The statistics are gathered in one pass over the image data and kept
+     * for the most recently used regions, so that the cut levels can be changed
+     * without scanning the image again.
+     */
+    public ImageStatistics getImageStatistics() {
+        if (_rescaledSourceImage == null || _region == null)
+            return null;
+
+        Rectangle r = _region.getBounds();
+        if (_imageStatistics != null && _isCurrent(_imageStatistics) && _imageStatistics.getRegion().equals(r))
+            return _imageStatistics;
+
+        ImageStatistics stats = _statistics.get(r);
+        if (stats == null || !_isCurrent(stats)) {
+            // statistics of other images are not needed anymore
+            Iterator<ImageStatistics> it = _statistics.values().iterator();
+            while (it.hasNext()) {
+                if (!_isCurrent(it.next()))
+                    it.remove();
+            }
+
+            stats = ImageStatistics.compute(_rescaledSourceImage, r, _blank, _xPeriod, _yPeriod);
+            _statistics.put(r, stats);
+            _trimStatistics();
+        }
+        _imageStatistics = stats;
+        return stats;
+    }
+
+    // Drop the least recently used statistics until the rest fit in the memory budget,
+    // always keeping the most recent ones
+    private void _trimStatistics() {
+        long bytes = 0;
+        for (ImageStatistics s : _statistics.values())
+            bytes += s.getSizeInBytes();
+        Iterator<ImageStatistics> it = _statistics.values().iterator();
+        while (bytes > MAX_STATISTICS_BYTES && _statistics.size() > 1) {
+            bytes -= it.next().getSizeInBytes();
+            it.remove();
+        }
+    }
+
+    // Return true if the given statistics are for the current image and blank value
+    private boolean _isCurrent(ImageStatistics stats) {
+        return stats.getImage() == _rescaledSourceImage
+                && Double.compare(stats.getBlank(), (double) _blank) == 0;
+    }
+
+
     /**
      * Copy the settings from the given ImageProcessor to this one.
      */
@@ -641,75 +692,29 @@ public class ImageProcessor {
      */
     public void autoSetCutLevels(double percent, Rectangle2D.Double region) {
         _userSetCutLevels = false;
-        double lowCut = _minValue, highCut = _maxValue;
 
         calculateImageStatistics(region);
-
-        // get a histogram of the image data
-        int dataType = _rescaledSourceImage.getSampleModel().getDataType();
-        int numBins = 2048;
-        double n = highCut - lowCut;
-        if (n <= 0)
+        if (_maxValue <= _minValue)
             return;
 
-        if (n < numBins && dataType != DataBuffer.TYPE_FLOAT && dataType != DataBuffer.TYPE_DOUBLE)
-            numBins = (int) n;
-
-        if (numBins <= 0) {
-            return;
-        }
-
-        Histogram histogram = _imageHistogram.getHistogram(_rescaledSourceImage, numBins, _minValue, _maxValue, _roi, _xPeriod, _yPeriod);
-
-        // find out how many pixel we actually counted (may be significant numbers of blanks)
-        int npixels = 0;
-        int[] bins = histogram.getBins(0);
-        double binWidth = (_maxValue - _minValue) / numBins;
-        for (int i = 0; i < numBins; i++) {
-            npixels += bins[i];
-        }
+        // use the sorted pixel values gathered with the statistics
+        double[] cutLevels = _imageStatistics.getPercentCutLevels(percent, _minValue, _maxValue);
+        setCutLevels(cutLevels[0], cutLevels[1], false);
+    }
 
-        if (npixels > 0) {
-            // change to  percent to cut off and split between lowCut and highCut
-            int cutoff = (int) ((npixels * (100.0 - percent) / 100.0) / 2.0);
-
-            // set low cut value
-            npixels = 0;
-            int nprev = 0;
-            for (int i = 0; i < numBins; i++) {
-                nprev = npixels;
-                npixels += bins[i];
-                if (npixels >= cutoff) {
-                    lowCut = _minValue + i * binWidth;
-                    if (i != 0) {
-                        // Interpolate between the relevant bins.
-                        double interp = (double) (cutoff - nprev) / (npixels - nprev);
-                        double d = _minValue + (i - 1) * binWidth;
-                        lowCut = d + (lowCut - d) * interp;
-                    }
-                    break;
-                }
-            }
 
-            // set high cut value
-            npixels = 0;
-            for (int i = numBins - 1; i > 0; i--) {
-                nprev = npixels;
-                npixels += bins[i];
-                if (npixels >= cutoff) {
-                    highCut = _minValue + i * binWidth;
-                    if (i != numBins - 1) {
-                        // Interpolate between the relevant bins.
-                        double interp = (double) (cutoff - nprev) / (npixels - nprev);
-                        double d = _minValue + (i + 1) * binWidth;
-                        highCut = d + (d - highCut) * interp;
-                    }
-                    break;
-                }
-            }
-        }
+    /**
+     * Set the cut levels automatically using the zscale algorithm (as in IRAF and DS9)
+     * on the given area of the image.
+     *
+     * @param region the region of interest in the image
+     */
+    public void autoSetZScaleCutLevels(Rectangle2D.Double region) {
+        _userSetCutLevels = false;
 
-        setCutLevels(lowCut, highCut, false);
+        calculateImageStatistics(region);
+        double[] cutLevels = _imageStatistics.getZScaleCutLevels(0.25);
+        setCutLevels(cutLevels[0], cutLevels[1], false);
     }
 
     /** Return true if the user has set the cut levels and they were not automatically set. */
@@ -911,6 +916,20 @@ public class ImageProcessor {
     }
 
 
+    /**
+     * Return a histogram of the pixel values between the low and high cut levels in
+     * the given region, with the given number of bins. The histogram is derived from
+     * the sample of pixel values kept with the image statistics for the region.
+     */
+    public int[] getHistogramBins(int size, Rectangle2D.Double region) {
+        setRegionOfInterest(region);
+        ImageStatistics stats = getImageStatistics();
+        if (stats == null)
+            return new int[size];
+        return stats.getHistogram(size, _lowCut, _highCut);
+    }
+
+
     /** Set the name to use for this object (for testing and debugging). */
     public void setName(String name) {
         this._name = name;
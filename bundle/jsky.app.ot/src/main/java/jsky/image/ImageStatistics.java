@@ -0,0 +1,500 @@
+package jsky.image;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.media.jai.PlanarImage;
+
+/**
+ * Pixel statistics for a region of a single banded image, gathered in one pass over
+ * the tiles of the image, which are scanned in parallel.
+ * <p>
+ * The pass computes the min, max and mean of the pixels in the region, the number of
+ * blank pixels (those with the BLANK value or NaN), the median filter cut levels and
+ * a sorted sample of the pixel values (every xPeriod'th pixel of every yPeriod'th row).
+ * Percentile cut levels, the median, zscale cut levels and histograms are derived
+ * from the sorted sample without looking at the image again, so that an instance can
+ * be kept and asked for different cut levels cheaply.
+ *
+ * @see ImageProcessor#getImageStatistics()
+ */
+public class ImageStatistics {
+
+    /** The maximum number of pixel values kept in the sample */
+    static final int MAX_SAMPLES = 1 << 20;
+
+    // length of the median filter and the pixels skipped between medians,
+    // the same as in the CutLevel operation
+    private static final int NMED = 7;
+    private static final int XSKIP = NMED * 3;
+    private static final int YSKIP = 3;
+
+    // zscale defaults, as in IRAF
+    private static final int ZSCALE_SAMPLES = 1000;
+    private static final double ZSCALE_REJECT = 2.5;
+    private static final int ZSCALE_ITERATIONS = 5;
+
+    // Shared by all images, one thread is left for the Swing thread.
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            r -> {
+                Thread t = new Thread(r, "ImageStatistics");
+                t.setDaemon(true);
+                return t;
+            });
+
+    // The image and region the statistics are for
+    private final PlanarImage _image;
+    private final Rectangle _region;
+
+    // Value for bad pixels
+    private final double _blank;
+
+    // min, max and mean of the non-blank pixels
+    private final double _min;
+    private final double _max;
+    private final double _mean;
+
+    // number of non-blank and blank pixels
+    private final long _count;
+    private final long _blankCount;
+
+    // min and max of the median filtered values
+    private final double _medianLow;
+    private final double _medianHigh;
+
+    // sorted sample of the non-blank pixel values
+    private final double[] _samples;
+
+
+    /**
+     * Scan the given region of the image and return its statistics.
+     *
+     * @param im a single banded image
+     * @param region the region of interest, clipped to the image bounds
+     * @param blank value of blank pixels, or NaN (NaN pixels are always ignored)
+     * @param xPeriod the horizontal sampling rate for the sample of pixel values
+     * @param yPeriod the vertical sampling rate for the sample of pixel values
+     */
+    public static ImageStatistics compute(PlanarImage im, Rectangle region, double blank, int xPeriod, int yPeriod) {
+        Rectangle r = region.intersection(im.getBounds());
+
+        // sample more sparsely if the sample would get too large
+        long n = (long) _ceilDiv(r.width, xPeriod) * _ceilDiv(r.height, yPeriod);
+        if (n > MAX_SAMPLES) {
+            int f = (int) Math.ceil(Math.sqrt((double) n / MAX_SAMPLES));
+            xPeriod *= f;
+            yPeriod *= f;
+        }
+
+        List<CompletableFuture<Partial>> futures = new ArrayList<>();
+        if (!r.isEmpty()) {
+            int x0 = im.XToTileX(r.x), x1 = im.XToTileX(r.x + r.width - 1);
+            int y0 = im.YToTileY(r.y), y1 = im.YToTileY(r.y + r.height - 1);
+            int xp = xPeriod, yp = yPeriod;
+            for (int ty = y0; ty <= y1; ty++) {
+                for (int tx = x0; tx <= x1; tx++) {
+                    int tileX = tx, tileY = ty;
+                    futures.add(CompletableFuture.supplyAsync(
+                            () -> _scan(im, im.getTile(tileX, tileY), r, blank, xp, yp), POOL));
+                }
+            }
+        }
+
+        Partial total = new Partial(0);
+        List<Partial> parts = new ArrayList<>(futures.size());
+        int numSamples = 0;
+        for (CompletableFuture<Partial> f : futures) {
+            Partial p = f.join();
+            parts.add(p);
+            total.add(p);
+            numSamples += p.numSamples;
+        }
+
+        double[] samples = new double[numSamples];
+        int i = 0;
+        for (Partial p : parts) {
+            System.arraycopy(p.samples, 0, samples, i, p.numSamples);
+            i += p.numSamples;
+        }
+        Arrays.parallelSort(samples);
+
+        return new ImageStatistics(im, r, blank, total, samples);
+    }
+
+    private ImageStatistics(PlanarImage im, Rectangle region, double blank, Partial p, double[] samples) {
+        _image = im;
+        _region = region;
+        _blank = blank;
+        _count = p.count;
+        _blankCount = p.blanks;
+        if (p.count == 0) {
+            _min = _max = _mean = 0.;
+        } else {
+            _min = p.min;
+            _max = p.max;
+            _mean = p.sum / p.count;
+        }
+        _medianLow = p.medianLow;
+        _medianHigh = p.medianHigh;
+        _samples = samples;
+    }
+
+
+    /** Return the image the statistics are for. */
+    public PlanarImage getImage() {
+        return _image;
+    }
+
+    /** Return the region of the image the statistics are for. */
+    public Rectangle getRegion() {
+        return new Rectangle(_region);
+    }
+
+    /** Return the value of blank pixels, or NaN if not defined. */
+    public double getBlank() {
+        return _blank;
+    }
+
+    /** Return the smallest non-blank pixel value in the region, or 0 if there are none. */
+    public double getMin() {
+        return _min;
+    }
+
+    /** Return the largest non-blank pixel value in the region, or 0 if there are none. */
+    public double getMax() {
+        return _max;
+    }
+
+    /** Return the mean of the non-blank pixel values in the region, or 0 if there are none. */
+    public double getMean() {
+        return _mean;
+    }
+
+    /** Return the number of non-blank pixels in the region. */
+    public long getCount() {
+        return _count;
+    }
+
+    /** Return the number of blank (or NaN) pixels in the region. */
+    public long getBlankCount() {
+        return _blankCount;
+    }
+
+    /** Return the number of pixel values in the sample. */
+    public int getSampleCount() {
+        return _samples.length;
+    }
+
+    /** Return the approximate memory taken up by these statistics in bytes, mostly by the sample. */
+    public long getSizeInBytes() {
+        return 8L * _samples.length + 128;
+    }
+
+    /** Return the median of the sampled pixel values. */
+    public double getMedian() {
+        return getPercentile(50.);
+    }
+
+    /**
+     * Return the value below which the given percent of the sampled pixel values lie,
+     * interpolating between neighbouring values.
+     */
+    public double getPercentile(double percent) {
+        if (_samples.length == 0)
+            return _mean;
+        return _valueAt(0, _samples.length, percent / 100. * (_samples.length - 1));
+    }
+
+    /**
+     * Return low and high cut levels, so that the given percent of the sampled pixel
+     * values between minValue and maxValue lie within the cut levels, and the rest is
+     * split evenly below and above them.
+     *
+     * @param percent value between 0. and 100.
+     * @param minValue the smallest pixel value to consider
+     * @param maxValue the largest pixel value to consider
+     * @return an array holding the low and high cut levels
+     */
+    public double[] getPercentCutLevels(double percent, double minValue, double maxValue) {
+        int from = _lowerBound(minValue);
+        int to = _upperBound(maxValue);
+        int n = to - from;
+        if (n <= 0 || percent >= 100.)
+            return new double[]{minValue, maxValue};
+
+        double cutoff = n * (100. - percent) / 200.;
+        double lowCut = _valueAt(from, to, cutoff);
+        double highCut = _valueAt(from, to, n - 1 - cutoff);
+        if (lowCut > highCut)
+            lowCut = highCut = _valueAt(from, to, (n - 1) / 2.);
+        return new double[]{lowCut, highCut};
+    }
+
+    /**
+     * Return the cut levels found by the median filter algorithm of the CutLevel
+     * operation: the lowest and highest medians of short runs of pixels along every
+     * third row of the region, extended to include the given value (normally the mean).
+     *
+     * @return an array holding the low and high cut levels
+     */
+    public double[] getMedianFilterCutLevels(double mean) {
+        if (Double.isNaN(_medianLow))
+            return new double[]{mean, mean};
+        return new double[]{Math.min(mean, _medianLow), Math.max(mean, _medianHigh)};
+    }
+
+    /**
+     * Return cut levels computed with the zscale algorithm of IRAF: a straight line is
+     * fitted to the central part of the sorted pixel values, rejecting outliers, and the
+     * cut levels are taken where the line, with its slope divided by the contrast,
+     * reaches the ends of the sample.
+     *
+     * @param contrast the contrast, normally 0.25
+     * @return an array holding the low and high cut levels
+     */
+    public double[] getZScaleCutLevels(double contrast) {
+        int n = Math.min(_samples.length, ZSCALE_SAMPLES);
+        if (n < 2)
+            return new double[]{_min, _max};
+
+        // an evenly spaced subset of the sorted sample
+        double[] z = new double[n];
+        for (int i = 0; i < n; i++)
+            z[i] = _samples[(int) ((long) i * (_samples.length - 1) / (n - 1))];
+        double zmin = z[0], zmax = z[n - 1];
+        int center = (n - 1) / 2;
+        double median = (n % 2 == 1) ? z[center] : (z[center] + z[center + 1]) / 2.;
+
+        // fit a line to the values, iteratively rejecting outliers
+        int minPix = Math.max(5, n / 2);
+        boolean[] rejected = new boolean[n];
+        int good = n;
+        double slope = 0., intercept = median;
+        for (int iter = 0; iter < ZSCALE_ITERATIONS; iter++) {
+            double sx = 0., sy = 0., sxx = 0., sxy = 0.;
+            for (int i = 0; i < n; i++) {
+                if (rejected[i])
+                    continue;
+                sx += i;
+                sy += z[i];
+                sxx += (double) i * i;
+                sxy += i * z[i];
+            }
+            double d = good * sxx - sx * sx;
+            if (d == 0.)
+                break;
+            slope = (good * sxy - sx * sy) / d;
+            intercept = (sy - slope * sx) / good;
+
+            double ss = 0.;
+            for (int i = 0; i < n; i++) {
+                if (!rejected[i]) {
+                    double r = z[i] - (intercept + slope * i);
+                    ss += r * r;
+                }
+            }
+            double threshold = ZSCALE_REJECT * Math.sqrt(ss / good);
+            int rejectedNow = 0;
+            for (int i = 0; i < n; i++) {
+                if (!rejected[i] && Math.abs(z[i] - (intercept + slope * i)) > threshold) {
+                    rejected[i] = true;
+                    rejectedNow++;
+                }
+            }
+            good -= rejectedNow;
+            if (rejectedNow == 0 || good < minPix)
+                break;
+        }
+
+        if (good < minPix)
+            return new double[]{zmin, zmax};
+        if (contrast > 0.)
+            slope /= contrast;
+        return new double[]{
+                Math.max(zmin, median - center * slope),
+                Math.min(zmax, median + (n - 1 - center) * slope)};
+    }
+
+    /**
+     * Return a histogram of the sampled pixel values between low (inclusive) and high
+     * (exclusive), like the one computed by the JAI histogram operation.
+     *
+     * @param numBins the number of bins
+     * @param low the lowest pixel value counted
+     * @param high the upper limit of the pixel values counted
+     * @return the number of sampled pixel values in each bin
+     */
+    public int[] getHistogram(int numBins, double low, double high) {
+        int[] bins = new int[Math.max(numBins, 0)];
+        if (numBins <= 0 || high <= low)
+            return bins;
+        double binWidth = (high - low) / numBins;
+        int prev = _lowerBound(low);
+        for (int i = 0; i < numBins; i++) {
+            int next = (i == numBins - 1) ? _lowerBound(high) : _lowerBound(low + (i + 1) * binWidth);
+            bins[i] = next - prev;
+            prev = next;
+        }
+        return bins;
+    }
+
+
+    // Return the sample value at the given fractional index, counted from the
+    // start of the given range of the sorted sample
+    private double _valueAt(int from, int to, double pos) {
+        pos = Math.max(0., Math.min(pos, to - from - 1));
+        int i = from + (int) pos;
+        double frac = pos - (int) pos;
+        if (frac == 0. || i + 1 >= to)
+            return _samples[i];
+        return _samples[i] + (_samples[i + 1] - _samples[i]) * frac;
+    }
+
+    // Index of the first sample value >= value
+    private int _lowerBound(double value) {
+        int lo = 0, hi = _samples.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_samples[mid] < value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // Index of the first sample value > value
+    private int _upperBound(double value) {
+        int lo = 0, hi = _samples.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_samples[mid] <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private static int _ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+
+    // The statistics of one tile, or of all tiles after adding them up
+    private static final class Partial {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, sum;
+        long count, blanks;
+        double medianLow = Double.NaN, medianHigh = Double.NaN;
+        final double[] samples;
+        int numSamples;
+
+        Partial(int maxSamples) {
+            samples = new double[maxSamples];
+        }
+
+        void addMedian(double m) {
+            if (Double.isNaN(medianLow) || m < medianLow)
+                medianLow = m;
+            if (Double.isNaN(medianHigh) || m > medianHigh)
+                medianHigh = m;
+        }
+
+        void add(Partial p) {
+            min = Math.min(min, p.min);
+            max = Math.max(max, p.max);
+            sum += p.sum;
+            count += p.count;
+            blanks += p.blanks;
+            if (!Double.isNaN(p.medianLow)) {
+                addMedian(p.medianLow);
+                addMedian(p.medianHigh);
+            }
+        }
+    }
+
+    // Gather the statistics of the part of the given tile inside the region. The
+    // sampled pixels are those whose offsets from the region origin are multiples of
+    // the periods, and the median filter rows and runs are counted from the region
+    // origin as well, so that the statistics don't depend on the tiling.
+    private static Partial _scan(PlanarImage im, Raster tile, Rectangle region, double blank, int xPeriod, int yPeriod) {
+        Rectangle r = tile.getBounds().intersection(region);
+        if (r.isEmpty())
+            return new Partial(0);
+
+        int sx0 = region.x + _ceilDiv(r.x - region.x, xPeriod) * xPeriod;
+        int sy0 = region.y + _ceilDiv(r.y - region.y, yPeriod) * yPeriod;
+        int sampledColumns = sx0 < r.x + r.width ? _ceilDiv(r.x + r.width - sx0, xPeriod) : 0;
+        int sampledRows = sy0 < r.y + r.height ? _ceilDiv(r.y + r.height - sy0, yPeriod) : 0;
+        Partial p = new Partial(sampledColumns * sampledRows);
+
+        boolean hasBlank = !Double.isNaN(blank);
+        double[] row = new double[r.width];
+        double[] run = new double[NMED];
+        double[] med = new double[NMED];
+        int mx0 = region.x + _ceilDiv(r.x - region.x, XSKIP) * XSKIP;
+        for (int y = r.y; y < r.y + r.height; y++) {
+            tile.getSamples(r.x, y, r.width, 1, 0, row);
+
+            for (int i = 0; i < r.width; i++) {
+                double v = row[i];
+                if (Double.isNaN(v) || (hasBlank && v == blank)) {
+                    p.blanks++;
+                    continue;
+                }
+                p.count++;
+                p.sum += v;
+                if (v < p.min)
+                    p.min = v;
+                if (v > p.max)
+                    p.max = v;
+            }
+
+            if (y >= sy0 && (y - sy0) % yPeriod == 0) {
+                for (int x = sx0; x < r.x + r.width; x += xPeriod) {
+                    double v = row[x - r.x];
+                    if (!Double.isNaN(v) && !(hasBlank && v == blank))
+                        p.samples[p.numSamples++] = v;
+                }
+            }
+
+            // median of runs of NMED pixels, ignoring blank pixels. A run starting in
+            // this tile takes its last pixels from the next tile if necessary.
+            if ((y - region.y) % YSKIP == 0) {
+                for (int j = mx0; j < r.x + r.width && j + NMED <= region.x + region.width; j += XSKIP) {
+                    int inTile = Math.min(NMED, r.x + r.width - j);
+                    System.arraycopy(row, j - r.x, run, 0, inTile);
+                    if (inTile < NMED) {
+                        Rectangle rest = new Rectangle(j + inTile, y, NMED - inTile, 1);
+                        double[] v = im.getData(rest).getSamples(rest.x, y, rest.width, 1, 0, (double[]) null);
+                        System.arraycopy(v, 0, run, inTile, rest.width);
+                    }
+
+                    int n = 0;
+                    for (int k = 0; k < NMED; k++) {
+                        double v = run[k];
+                        if (Double.isNaN(v) || (hasBlank && v == blank))
+                            continue;
+                        // insertion sort
+                        int l = n++;
+                        while (l > 0 && med[l - 1] > v) {
+                            med[l] = med[l - 1];
+                            l--;
+                        }
+                        med[l] = v;
+                    }
+                    if (n > 0)
+                        p.addMedian(med[n / 2]);
+                }
+            }
+        }
+        return p;
+    }
+}
@@ -81,7 +81,10 @@ public abstract class FITSData {
         }
 
         // The dimensions of the arguments to tiler.getTile() are dependent on NAXIS.
-        _tiler.getTile(destArray, corners, lengths);
+        // The tiler seeks in the underlying stream, so tiles are read one at a time.
+        synchronized (_tiler) {
+            _tiler.getTile(destArray, corners, lengths);
+        }
     }
 
     /**
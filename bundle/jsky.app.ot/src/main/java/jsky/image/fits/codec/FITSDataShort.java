@@ -70,6 +70,9 @@ public class FITSDataShort extends FITSData {
                 xWidth = x1 - x0 + 1;
 
         if (_mappedBuffer != null) {
+            // tiles may be read in parallel, so each gets its own buffer position
+            ShortBuffer buffer = _mappedBuffer.duplicate();
+
             // flip the Y axis while reading, and save time later on
             int tmpY0 = y0;
             y0 = scaledHeight - y1 - 1;
@@ -79,8 +82,8 @@ public class FITSDataShort extends FITSData {
             if (subsample == 1) {
                 // normal or zoomed in: include all pixels
                 for (int j = y1; j >= y0; j--) {
-                    _mappedBuffer.position(j * _width + x0);
-                    _mappedBuffer.get(destArray, (y1 - j) * tw, xWidth);
+                    buffer.position(j * _width + x0);
+                    buffer.get(destArray, (y1 - j) * tw, xWidth);
                 }
             } else {
                 // zoomed out: skip subsample pixels
@@ -88,7 +91,7 @@ public class FITSDataShort extends FITSData {
                     int dst = (y1 - j) * tw;
                     int src = (j * _width + x0) * subsample;
                     for (int i = x0; i <= x1; i++) {
-                        destArray[dst++] = _mappedBuffer.get(src);
+                        destArray[dst++] = buffer.get(src);
                         src += subsample;
                     }
                 }
@@ -24,6 +24,7 @@ import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -137,6 +138,10 @@ public class FITSImage extends jsky.image.SimpleRenderedImage {
 
     /**
      * Construct a FITSImage from an image file or URL.
+     * <p>
+     * The image data of local files (including "file:" URLs) is memory mapped, so it
+     * isn't read onto the heap. Gzipped files are uncompressed to a temporary file
+     * once, which is then mapped and reused when the same file is opened again.
      *
      * @param fileOrUrl the file name or URL
      */
@@ -145,7 +150,13 @@ public class FITSImage extends jsky.image.SimpleRenderedImage {
         // work more efficiently with thier own I/O classes (they also handle
         // gzipped FITS files).
         try {
-            _fits = new Fits(fileOrUrl);
+            File file = _getLocalFile(fileOrUrl);
+            if (file != null) {
+                // (the Fits(File) constructor would read the file as a stream)
+                _fits = new Fits(UncompressedFITSCache.uncompressed(file).getPath());
+            } else {
+                _fits = new Fits(fileOrUrl);
+            }
             _fits.read();
         } catch (Exception e) {
             // Might be an HCompressed FITS file...
@@ -216,6 +227,27 @@ public class FITSImage extends jsky.image.SimpleRenderedImage {
     }
 
 
+    /**
+     * Return the local file for the given file name or "file:" URL, or null if it
+     * is remote or doesn't exist.
+     */
+    private static File _getLocalFile(String fileOrUrl) {
+        File file;
+        if (fileOrUrl.startsWith("file:")) {
+            try {
+                file = new File(new URL(fileOrUrl).toURI());
+            } catch (Exception e) {
+                return null;
+            }
+        } else if (fileOrUrl.startsWith("http:") || fileOrUrl.startsWith("https:") || fileOrUrl.startsWith("ftp:")) {
+            return null;
+        } else {
+            file = new File(fileOrUrl);
+        }
+        return file.isFile() ? file : null;
+    }
+
+
     /**
      * Close the FITS input stream. After calling this method, this object should
      * no longer be used.
@@ -282,12 +314,13 @@ public class FITSImage extends jsky.image.SimpleRenderedImage {
      *
      * @param num The HDU number (0 is the primary HDU).
      */
-    public void setHDU(int num) throws IOException, FitsException {
+    public synchronized void setHDU(int num) throws IOException, FitsException {
         if (_hduIndex == num)
             return;
 
         _hduIndex = num;
         _hdu = (ImageHDU) _fits.getHDU(num);
+        _byteBuffer = null;
         if (_hdu != null) {
             _tiler = _hdu.getTiler();
             _axes = _hdu.getAxes();
@@ -574,6 +607,15 @@ public class FITSImage extends jsky.image.SimpleRenderedImage {
         return names;
     }
 
+    /**
+     * Return a prescaled image that fits entirely in a window of the given size,
+     * or null if the image already fits or there are any errors. Unlike the
+     * "#preview_image" property, this doesn't depend on the static preview size.
+     */
+    public TiledImage getPreviewImage(int size) {
+        return _getPreviewImage(size);
+    }
+
     /**
      * Return a prescaled PlanarImage that fits entirely in a window of the given size,
      * of null if there are any errors.
@@ -629,7 +671,7 @@ public class FITSImage extends jsky.image.SimpleRenderedImage {
      * @return true if the new scale value caused a new image to be generated, requiring
      *         an image update in the viewer widget
      */
-    public boolean setScale(float scale) throws IOException {
+    public synchronized boolean setScale(float scale) throws IOException {
         boolean needsUpdate = false;
         if (scale > 1)
             scale = 1;
@@ -713,8 +755,11 @@ public class FITSImage extends jsky.image.SimpleRenderedImage {
 
 
     // Initialize a memory mapped byte buffer for accessing the FITS image data, if
-    // possible
+    // possible. The data unit of the current HDU is only mapped once, changing the
+    // scale only changes the way the buffer is read.
     private void _initByteBuffer() throws IOException {
+        if (_byteBuffer != null)
+            return;
         ArrayDataInput arrayDataInput = _fits.getStream();
         if (arrayDataInput instanceof BufferedFile) {
             long headerSize = _header.getSize();
@@ -722,7 +767,7 @@ public class FITSImage extends jsky.image.SimpleRenderedImage {
             long size = _hdu.getSize() - headerSize;
             BufferedFile bufferedFile = (BufferedFile) arrayDataInput;
             FileChannel channel = bufferedFile.getChannel();
-            System.gc(); // XXX got out of memory errors here
+            // (FileChannel.map collects unused mappings itself if it runs out of address space)
             _byteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
         }
     }
@@ -785,23 +830,42 @@ public class FITSImage extends jsky.image.SimpleRenderedImage {
     /**
      * Generate and return the given tile (required by the RenderedImage interface).
      * Note that tileX and tileY are indices into the tile array, not pixel locations.
+     * <p>
+     * Tiles are read outside of the lock on this object, so that several tiles may be
+     * decoded in parallel (see jsky.image.gui.TileRenderer).
      *
      * @param tileX the X index of the requested tile in the tile array.
      * @param tileY the Y index of the requested tile in the tile array.
      * @return the tile given by (tileX, tileY).
      */
-    public synchronized Raster getTile(int tileX, int tileY) {
-        if (_empty) {
-            return RasterFactory.createWritableRaster(sampleModel, new Point(0, 0));
-        }
+    public Raster getTile(int tileX, int tileY) {
+        FITSData fitsData;
+        WritableRaster tile;
+        int subsample, w, h;
+        synchronized (this) {
+            if (_empty) {
+                return RasterFactory.createWritableRaster(sampleModel, new Point(0, 0));
+            }
+
+            Raster cached = _tileCache.getTile(this, tileX, tileY);
+            if (cached != null)
+                return cached;
 
-        Raster tile = _tileCache.getTile(this, tileX, tileY);
-        if (tile == null) {
-            //System.out.println("XXX FITSImage: get new tile (" + tileX + ", " + tileY + ") at scale = " + _scale);
+            // the scale may change while the tile is read, so remember the current settings
+            fitsData = _fitsData;
+            subsample = _subsample;
+            w = width;
+            h = height;
             Point origin = new Point(tileXToX(tileX), tileYToY(tileY));
             tile = RasterFactory.createWritableRaster(sampleModel, origin);
-            _fillTile(tile);
-            _tileCache.add(this, tileX, tileY, tile);
+        }
+
+        _fillTile(fitsData, tile, subsample, w, h);
+
+        synchronized (this) {
+            // don't cache tiles for a previous scale or HDU
+            if (fitsData == _fitsData && subsample == _subsample)
+                _tileCache.add(this, tileX, tileY, tile);
         }
         return tile;
     }
@@ -810,9 +874,9 @@ public class FITSImage extends jsky.image.SimpleRenderedImage {
     /**
      * This method fills the given tile with the appropriate image data.
      */
-    private Raster _fillTile(Raster tile) {
+    private static Raster _fillTile(FITSData fitsData, Raster tile, int subsample, int width, int height) {
         try {
-            _fitsData.getTile(tile, _subsample, width, height);
+            fitsData.getTile(tile, subsample, width, height);
         } catch (EOFException e) {
             //System.out.println("XXX FITSImage.getTile(): warning: " + e.toString());
             // just ignore EOF ???
@@ -0,0 +1,105 @@
+package jsky.image.fits.codec;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Keeps uncompressed copies of gzipped FITS files, so that their image data can be
+ * memory mapped like that of plain FITS files instead of being read onto the heap
+ * each time the file is opened. The copies are kept in a directory under the
+ * temporary directory, named after the path, size and modification time of the
+ * original file, and the least recently used ones are removed when their total
+ * size exceeds a limit.
+ *
+ * @see FITSImage#FITSImage(String)
+ */
+final class UncompressedFITSCache {
+
+    private static final Logger LOG = Logger.getLogger(UncompressedFITSCache.class.getName());
+
+    /** The directory holding the uncompressed files */
+    private static final File DIR = new File(System.getProperty("java.io.tmpdir"),
+            "jsky-fits-" + System.getProperty("user.name"));
+
+    /** The maximum total size of the uncompressed files, in bytes */
+    private static final long MAX_BYTES = 512L * 1024 * 1024;
+
+    private UncompressedFITSCache() {
+    }
+
+    /**
+     * Return a file with the uncompressed contents of the given FITS file. This is
+     * the file itself unless it is gzipped.
+     */
+    static synchronized File uncompressed(File file) throws IOException {
+        if (!_isGzipped(file))
+            return file;
+
+        String name = Integer.toHexString(file.getAbsolutePath().hashCode())
+                + "-" + Long.toHexString(file.length())
+                + "-" + Long.toHexString(file.lastModified()) + ".fits";
+        File res = new File(DIR, name);
+        if (res.isFile()) {
+            // mark as recently used
+            res.setLastModified(System.currentTimeMillis());
+            return res;
+        }
+
+        if (!DIR.isDirectory() && !DIR.mkdirs())
+            throw new IOException("Can't create directory " + DIR);
+
+        File tmp = File.createTempFile(".fits", ".tmp", DIR);
+        try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp.toPath(), res.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+
+        _prune(res);
+        return res;
+    }
+
+    // Return true if the file starts with the gzip magic number.
+    private static boolean _isGzipped(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    // Remove the least recently used files, other than the given one, while the
+    // total size exceeds the limit. Files that are still mapped may not be
+    // deleted on some platforms, those are tried again next time.
+    private static void _prune(File keep) {
+        File[] files = DIR.listFiles((dir, name) -> name.endsWith(".fits"));
+        if (files == null)
+            return;
+
+        long total = 0;
+        for (File f : files)
+            total += f.length();
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (total <= MAX_BYTES)
+                break;
+            if (f.equals(keep))
+                continue;
+            long len = f.length();
+            if (f.delete())
+                total -= len;
+            else
+                LOG.log(Level.FINE, "Could not remove " + f);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.GraphicsDevice;
 import java.awt.Insets;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
@@ -25,6 +26,7 @@ import javax.media.jai.Interpolation;
 import javax.media.jai.InterpolationNearest;
 import javax.media.jai.JAI;
 import javax.media.jai.PlanarImage;
+import javax.media.jai.TiledImage;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.event.EventListenerList;
@@ -164,6 +166,25 @@ public class DivaGraphicsImageDisplay extends JCanvas implements GraphicsImageDi
     /** Saved image scale for comparison */
     private float _savedScale;
 
+    /** Size of the window the preview image for tiled rendering fits in */
+    private static final int PREVIEW_SIZE = 512;
+
+    /** Computes the image tiles in parallel, if tiled rendering is enabled, otherwise null */
+    private TileRenderer _tileRenderer;
+
+    /** The image processor output the current preview was made from */
+    private PlanarImage _previewSource;
+
+    /** The processed preview image for tiled rendering, or null */
+    private PlanarImage _previewImage;
+
+    /** The FITS preview image data (before processing), or null */
+    private TiledImage _rawPreview;
+
+    /** The FITS image and HDU index the raw preview was read from */
+    private FITSImage _rawPreviewImage;
+    private int _rawPreviewHDU;
+
 
     /**
      * Construct an image display widget with the given graphics pane and name to display
@@ -486,6 +507,8 @@ public class DivaGraphicsImageDisplay extends JCanvas implements GraphicsImageDi
                 _fitsImage.close();
                 _fitsImage = null;
             }
+            if (_tileRenderer != null)
+                _tileRenderer.flush();
             setImage(PlanarImage.wrapRenderedImage(new EmptyRenderedImage(w, w)));
             _imageLayer.setVisible(false);
         } catch (Exception e) {
@@ -522,6 +545,11 @@ public class DivaGraphicsImageDisplay extends JCanvas implements GraphicsImageDi
         // scale and translate the image as needed
         _displayImage = scale(im);
 
+        if (_tileRenderer != null) {
+            _tileRenderer.setImage(_displayImage);
+            _updatePreview(im);
+        }
+
         _sampleModel = _displayImage.getSampleModel();
         if (_sampleModel == null)
             return;
@@ -550,6 +578,89 @@ public class DivaGraphicsImageDisplay extends JCanvas implements GraphicsImageDi
     }
 
 
+    /**
+     * Set to true to compute the image tiles in parallel on worker threads (default: false).
+     * Tiles that are not ready yet are painted from a subsampled preview of the image,
+     * so panning and zooming don't have to wait for the image data.
+     */
+    public void setTiledRendering(boolean b) {
+        if (b == (_tileRenderer != null))
+            return;
+
+        _previewSource = null;
+        _previewImage = null;
+        _rawPreview = null;
+        _rawPreviewImage = null;
+        if (b) {
+            _tileRenderer = new TileRenderer(TileRenderer.DEFAULT_MAX_BYTES, bounds -> {
+                Insets insets = getInsets();
+                repaint(bounds.x + insets.left, bounds.y + insets.top, bounds.width, bounds.height);
+            });
+            if (_displayImage != null) {
+                _tileRenderer.setImage(_displayImage);
+                _updatePreview(_imageProcessor.getDisplayImage());
+            }
+        } else {
+            _tileRenderer.flush();
+            _tileRenderer = null;
+        }
+    }
+
+    /** Return true if the image tiles are computed in parallel on worker threads. */
+    public boolean isTiledRendering() {
+        return _tileRenderer != null;
+    }
+
+    /**
+     * Make a new preview image for tiled rendering if the output of the image processor
+     * changed. Only FITS images have a preview, since it can be read quickly.
+     */
+    private void _updatePreview(PlanarImage processed) {
+        if (processed == _previewSource)
+            return;
+        _previewSource = processed;
+        _previewImage = null;
+
+        PlanarImage source = _imageProcessor.getSourceImage();
+        Object o = (source == null) ? null : source.getProperty("#fits_image");
+        if (o instanceof FITSImage) {
+            // the raw preview only depends on the image data, so keep it for color changes, etc.
+            FITSImage fitsImage = (FITSImage) o;
+            if (fitsImage != _rawPreviewImage || fitsImage.getCurrentHDUIndex() != _rawPreviewHDU) {
+                _rawPreviewImage = fitsImage;
+                _rawPreviewHDU = fitsImage.getCurrentHDUIndex();
+                _rawPreview = fitsImage.getPreviewImage(PREVIEW_SIZE);
+            }
+            if (_rawPreview != null) {
+                ImageProcessor ip = new ImageProcessor();
+                ip.setSourceImage(_rawPreview, _imageProcessor);
+                ip.update();
+                _previewImage = ip.getDisplayImage();
+            }
+        } else {
+            _rawPreview = null;
+            _rawPreviewImage = null;
+        }
+        _tileRenderer.setPreview(_previewImage);
+    }
+
+    /**
+     * Paint the preview image for tiled rendering, scaled to the size of the image,
+     * so that the tiles which are not ready yet show something.
+     */
+    private void _paintPreview(Graphics2D g2D, Insets insets) {
+        BufferedImage preview = _tileRenderer.getPreview();
+        PlanarImage source = _imageProcessor.getSourceImage();
+        if (preview == null || _previewImage == null || _rawPreview == null || source == null)
+            return;
+
+        double scale = (_scale == 1 || _prescaled) ? 1.0 : _scale;
+        AffineTransform trans = AffineTransform.getTranslateInstance(insets.left - _origin.x, insets.top - _origin.y);
+        trans.scale(scale * source.getWidth() / _rawPreview.getWidth(), scale * source.getHeight() / _rawPreview.getHeight());
+        trans.translate(_previewImage.getMinX(), _previewImage.getMinY());
+        g2D.drawImage(preview, trans, null);
+    }
+
     /** Set to true (default) to automatically center the image, if it is smaller than the window. */
     public void setAutoCenterImage(boolean b) {
         _autoCenterImage = b;
@@ -697,15 +808,26 @@ public class DivaGraphicsImageDisplay extends JCanvas implements GraphicsImageDi
         tymax = minInt(tymax, _maxTileY);
         Insets insets = getInsets();
 
+        // When printing or saving, wait for the tiles as before.
+        boolean tiled = _tileRenderer != null
+                && g2D.getDeviceConfiguration().getDevice().getType() == GraphicsDevice.TYPE_RASTER_SCREEN;
+        if (tiled) {
+            _tileRenderer.request(txmin, tymin, txmax, tymax);
+            _paintPreview(g2D, insets);
+        }
+
         // Loop over tiles within the clipping region
         for (tj = tymin; tj <= tymax; tj++) {
             for (ti = txmin; ti <= txmax; ti++) {
                 int tx = TileXtoX(ti);
                 int ty = TileYtoY(tj);
 
-                Raster tile = _displayImage.getTile(ti, tj);
-                if (tile == null)
+                Raster tile = tiled ? _tileRenderer.getTile(ti, tj) : _displayImage.getTile(ti, tj);
+                if (tile == null) {
+                    if (tiled)
+                        continue; // painted from the preview until it is ready
                     break;
+                }
                 DataBuffer dataBuffer = tile.getDataBuffer();
                 if (dataBuffer == null)
                     break;
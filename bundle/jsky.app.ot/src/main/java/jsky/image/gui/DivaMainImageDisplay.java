@@ -327,6 +327,7 @@ public class DivaMainImageDisplay extends DivaGraphicsImageDisplay implements Ma
      */
     public DivaMainImageDisplay(GraphicsPane pane) {
         super(pane, new ImageProcessor(), "Main Image");
+        setTiledRendering(true);
 
         setDownloadState(false);
         updateEnabledStates();
@@ -16,9 +16,6 @@ import java.awt.FlowLayout;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.DataBuffer;
 
-import javax.media.jai.Histogram;
-import javax.media.jai.ROI;
-import javax.media.jai.ROIShape;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JLabel;
@@ -146,9 +143,7 @@ public class ImageCutLevels extends JPanel {
         }
         if (factor >= 0.0) {
             Rectangle2D.Double region = imageDisplay.getVisibleArea();
-            ROI roi = new ROIShape(region);
-            Histogram histogram = imageProcessor.getHistogram(numValues, roi);
-            yValues = histogram.getBins(0);
+            yValues = imageProcessor.getHistogramBins(numValues, region);
             chart.getXYPlot().setDataset(new SimpleDataset(xValues, yValues));
         }
     }
@@ -229,6 +224,11 @@ public class ImageCutLevels extends JPanel {
         medianFilterButton.setToolTipText(_I18N.getString("medianFilterTip"));
         medianFilterButton.addActionListener(ev -> medianFilter());
 
+        JButton zscaleButton = new JButton(_I18N.getString("zscale"));
+        panel.add(zscaleButton);
+        zscaleButton.setToolTipText(_I18N.getString("zscaleTip"));
+        zscaleButton.addActionListener(ev -> zscale());
+
         JButton closeButton = new JButton(_I18N.getString("close"));
         closeButton.setToolTipText(_I18N.getString("closeTip"));
         panel.add(closeButton);
@@ -286,6 +286,15 @@ public class ImageCutLevels extends JPanel {
     }
 
 
+    /**
+     * Automatically set the cut levels using the zscale algorithm
+     */
+    void zscale() {
+        imageProcessor.autoSetZScaleCutLevels(imageDisplay.getVisibleArea());
+        imageProcessor.update();
+    }
+
+
     /**
      * Update the display to show the current cut levels and pixel distribution
      */
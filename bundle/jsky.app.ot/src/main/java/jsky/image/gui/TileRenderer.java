@@ -0,0 +1,326 @@
+package jsky.image.gui;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.media.jai.PlanarImage;
+import javax.swing.SwingUtilities;
+
+/**
+ * Computes the tiles of a display image on a bounded pool of worker threads, so that
+ * decoding, rescaling and color mapping of several tiles is done in parallel and
+ * painting never has to wait for the image data.
+ * <p>
+ * The tiles in the visible area are computed first, starting nearest to the center,
+ * followed by a margin of tiles around it, so that panning finds them ready. Until a
+ * tile is ready, the display paints that part of the image from a subsampled preview
+ * of the whole image, if one was given.
+ * <p>
+ * Computed tiles are kept in a cache that is bounded by the number of bytes of tile
+ * data, or by the size of the visible area if that is larger. The methods of this
+ * class are meant to be called on the Swing thread, and the listener is notified
+ * there whenever tiles of the current image become ready.
+ *
+ * @see DivaGraphicsImageDisplay#setTiledRendering(boolean)
+ */
+public class TileRenderer {
+
+    private static final Logger LOG = Logger.getLogger(TileRenderer.class.getName());
+
+    /** The default limit for the tile cache in bytes */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    /** Number of tiles around the visible area that are computed ahead of time */
+    private static final int MARGIN = 1;
+
+    // Shared by all displays, one thread is left for the Swing thread.
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            r -> {
+                Thread t = new Thread(r, "TileRenderer");
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            });
+
+    /** Receives notification when tiles are ready to be painted. */
+    public interface Listener {
+        /**
+         * Called on the Swing thread when tiles or the preview of the current image
+         * are ready.
+         *
+         * @param bounds the area that can be repainted, in display image coordinates
+         */
+        void tilesReady(Rectangle bounds);
+    }
+
+    // The maximum size of the tile cache in bytes
+    private final long _maxBytes;
+
+    // The current limit: the maximum size, unless the visible tiles need more
+    private long _limit;
+
+    // Notified when tiles are ready
+    private final Listener _listener;
+
+    // The image whose tiles are computed
+    private volatile PlanarImage _image;
+
+    // Computed tiles of the current image, least recently used first, by tile index
+    private final LinkedHashMap<Long, Raster> _tiles = new LinkedHashMap<>(64, 0.75F, true);
+
+    // Tiles of the current image that are waiting to be computed, by tile index
+    private final Map<Long, CompletableFuture<Raster>> _pending = new HashMap<>();
+
+    // The number of bytes used by the tiles in the cache
+    private long _bytes;
+
+    // A rendered preview of the whole image, or null
+    private volatile BufferedImage _preview;
+
+    // The preview image being rendered, to ignore outdated results
+    private PlanarImage _pendingPreview;
+
+
+    /**
+     * Create a tile renderer.
+     *
+     * @param maxBytes the maximum amount of tile data to keep in the cache
+     * @param listener notified when tiles are ready to be painted
+     */
+    public TileRenderer(long maxBytes, Listener listener) {
+        _maxBytes = maxBytes;
+        _limit = maxBytes;
+        _listener = listener;
+    }
+
+    /** Return the image whose tiles are computed. */
+    public PlanarImage getImage() {
+        return _image;
+    }
+
+    /**
+     * Set the image whose tiles are computed. The tiles of the previous image are
+     * discarded and any work remaining for it is skipped.
+     */
+    public synchronized void setImage(PlanarImage im) {
+        if (im == _image)
+            return;
+        _image = im;
+        _tiles.clear();
+        _pending.clear();
+        _bytes = 0;
+    }
+
+    /**
+     * Set the preview to paint for tiles that are not ready yet. The preview is rendered
+     * on a worker thread and the listener is notified when it is ready.
+     *
+     * @param preview a processed image covering the whole image at lower resolution,
+     *                or null for no preview
+     * @return a future that completes with the rendered preview
+     */
+    public CompletableFuture<BufferedImage> setPreview(PlanarImage preview) {
+        _pendingPreview = preview;
+        if (preview == null) {
+            _preview = null;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<BufferedImage> f = CompletableFuture.supplyAsync(preview::getAsBufferedImage, POOL);
+        f.whenComplete((bi, ex) -> SwingUtilities.invokeLater(() -> {
+            if (preview != _pendingPreview)
+                return;
+            if (ex != null) {
+                LOG.log(Level.WARNING, "Could not render the preview image", ex);
+                return;
+            }
+            _preview = bi;
+            PlanarImage im = _image;
+            if (im != null)
+                _listener.tilesReady(im.getBounds());
+        }));
+        return f;
+    }
+
+    /** Return the rendered preview, or null if there is none (yet). */
+    public BufferedImage getPreview() {
+        return _preview;
+    }
+
+    /**
+     * Return the given tile of the current image if it has been computed, otherwise null.
+     * This method doesn't start computing the tile, see {@link #request}.
+     */
+    public synchronized Raster getTile(int tileX, int tileY) {
+        return _tiles.get(_key(tileX, tileY));
+    }
+
+    /**
+     * Start computing the tiles in the given range of tile indices (normally the
+     * visible area), followed by a margin of tiles around it. Tiles that are computed
+     * or pending already are not computed again.
+     *
+     * @return a future that completes when all tiles in the given range are ready
+     */
+    public synchronized CompletableFuture<Void> request(int minTileX, int minTileY, int maxTileX, int maxTileY) {
+        PlanarImage im = _image;
+        if (im == null)
+            return CompletableFuture.completedFuture(null);
+
+        // visible tiles first, nearest the center first
+        List<long[]> visible = _tileRange(im, minTileX, minTileY, maxTileX, maxTileY);
+        double cx = (minTileX + maxTileX) / 2.0, cy = (minTileY + maxTileY) / 2.0;
+        visible.sort((a, b) -> Double.compare(_dist(a, cx, cy), _dist(b, cx, cy)));
+
+        // Visible tiles must not evict each other, otherwise they would be computed again
+        // for each repaint.  The limit is set first since tiles may be ready right away.
+        long visibleBytes = visible.size() * _tileBytes(im);
+        _limit = Math.max(_maxBytes, visibleBytes);
+
+        List<CompletableFuture<Raster>> futures = new ArrayList<>(visible.size());
+        for (long[] t : visible)
+            futures.add(_schedule(im, (int) t[0], (int) t[1]));
+
+        // then the tiles around them, as long as they fit in the cache
+        if (visibleBytes < _maxBytes) {
+            List<long[]> margin = _tileRange(im, minTileX - MARGIN, minTileY - MARGIN, maxTileX + MARGIN, maxTileY + MARGIN);
+            long bytes = visibleBytes;
+            for (long[] t : margin) {
+                if (t[0] >= minTileX && t[0] <= maxTileX && t[1] >= minTileY && t[1] <= maxTileY)
+                    continue;
+                bytes += _tileBytes(im);
+                if (bytes > _maxBytes)
+                    break;
+                _schedule(im, (int) t[0], (int) t[1]);
+            }
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+    }
+
+    /** Discard all computed tiles, e.g. when the image data is released. */
+    public synchronized void flush() {
+        _tiles.clear();
+        _bytes = 0;
+    }
+
+    /** Return the number of bytes used by the computed tiles in the cache. */
+    public synchronized long getCachedBytes() {
+        return _bytes;
+    }
+
+    /** Return the maximum number of bytes used by the computed tiles in the cache. */
+    public long getMaxBytes() {
+        return _maxBytes;
+    }
+
+
+    // Start computing the given tile, unless it is ready or pending already.
+    private CompletableFuture<Raster> _schedule(PlanarImage im, int tileX, int tileY) {
+        Long key = _key(tileX, tileY);
+        Raster tile = _tiles.get(key);
+        if (tile != null)
+            return CompletableFuture.completedFuture(tile);
+
+        CompletableFuture<Raster> f = _pending.get(key);
+        if (f != null)
+            return f;
+
+        // the returned future completes once the tile is in the cache
+        f = CompletableFuture.supplyAsync(() -> {
+            // skip tiles of an image that has been replaced in the meantime
+            if (im != _image)
+                return null;
+            return im.getTile(tileX, tileY);
+        }, POOL).whenComplete((t, ex) -> {
+            if (ex != null)
+                LOG.log(Level.WARNING, "Could not compute tile (" + tileX + ", " + tileY + ")", ex);
+            if (_done(im, key, t)) {
+                Rectangle bounds = new Rectangle(im.tileXToX(tileX), im.tileYToY(tileY), im.getTileWidth(), im.getTileHeight());
+                SwingUtilities.invokeLater(() -> {
+                    if (im == _image)
+                        _listener.tilesReady(bounds);
+                });
+            }
+        });
+
+        // if the tile was computed already, it was added to the cache by this thread
+        if (!f.isDone())
+            _pending.put(key, f);
+        return f;
+    }
+
+    // Add a computed tile to the cache and return true if it belongs to the current image.
+    private synchronized boolean _done(PlanarImage im, Long key, Raster tile) {
+        if (im != _image)
+            return false;
+        _pending.remove(key);
+        if (tile == null)
+            return false;
+
+        Raster prev = _tiles.put(key, tile);
+        if (prev != null)
+            _bytes -= _rasterBytes(prev);
+        _bytes += _rasterBytes(tile);
+
+        // evict the least recently used tiles, but keep the one just computed
+        Iterator<Map.Entry<Long, Raster>> it = _tiles.entrySet().iterator();
+        while (_bytes > _limit && _tiles.size() > 1) {
+            Map.Entry<Long, Raster> e = it.next();
+            if (e.getKey().equals(key))
+                continue;
+            _bytes -= _rasterBytes(e.getValue());
+            it.remove();
+        }
+        return true;
+    }
+
+    // The tile indices in the given range, clipped to the image.
+    private static List<long[]> _tileRange(PlanarImage im, int minTileX, int minTileY, int maxTileX, int maxTileY) {
+        int x0 = Math.max(minTileX, im.getMinTileX());
+        int y0 = Math.max(minTileY, im.getMinTileY());
+        int x1 = Math.min(maxTileX, im.getMinTileX() + im.getNumXTiles() - 1);
+        int y1 = Math.min(maxTileY, im.getMinTileY() + im.getNumYTiles() - 1);
+        List<long[]> res = new ArrayList<>();
+        for (int ty = y0; ty <= y1; ty++)
+            for (int tx = x0; tx <= x1; tx++)
+                res.add(new long[]{tx, ty});
+        return res;
+    }
+
+    private static double _dist(long[] t, double cx, double cy) {
+        double dx = t[0] - cx, dy = t[1] - cy;
+        return dx * dx + dy * dy;
+    }
+
+    private static Long _key(int tileX, int tileY) {
+        return ((long) tileY << 32) | (tileX & 0xffffffffL);
+    }
+
+    // Expected size of a tile of the given image in bytes
+    private static long _tileBytes(PlanarImage im) {
+        int dataType = im.getSampleModel().getDataType();
+        return (long) im.getTileWidth() * im.getTileHeight() * im.getNumBands()
+                * DataBuffer.getDataTypeSize(dataType) / 8;
+    }
+
+    // Size of the data of the given tile in bytes
+    private static long _rasterBytes(Raster tile) {
+        DataBuffer db = tile.getDataBuffer();
+        return (long) db.getSize() * db.getNumBanks() * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+    }
+}
@@ -71,6 +71,20 @@ object BackgroundImageLoader {
     */
   private val highPriorityEC = newExecutor(Thread.NORM_PRIORITY)
 
+  /** Max number of images waiting to be prefetched */
+  val PrefetchCapacity: Int = 1000
+
+  /** Number of images prefetched at the same time */
+  val PrefetchParallelism: Int = 4
+
+  /**
+    * Images to download for the observations of the programs being opened. The queue
+    * threads wait for the downloads that run on the low priority pool
+    */
+  private val prefetchQueue =
+    new ImagePrefetchQueue(PrefetchCapacity, PrefetchParallelism, Executors.newFixedThreadPool(PrefetchParallelism, imageDownloadsThreadFactory(Thread.MIN_PRIORITY)))(
+      q => loadImage(q, ImageCatalogPanel.resetListener)(lowPriorityEC).flatMap(_.fold(taskUnit)(e => Task.delay(updateTpeImage(e)))))
+
   private def logError[A](x: Throwable \/ A): Unit = x match {
     case -\/(e) => Log.log(Level.SEVERE, e.getMessage, e)
     case \/-(_) => // Ignore, successful case
@@ -91,10 +105,14 @@ object BackgroundImageLoader {
         i      <- requestedImage(tpeCtx)
       } yield i
 
-    // remove duplicates and request images
-    val tasks = targets.distinct.map(requestImageDownload(lowPriorityEC))
-    // Run as low priority
-    runAsync(tasks)(logError)(lowPriorityEC)
+    // remove duplicates and queue the images to download in the background
+    val task = for {
+      queries  <- targets.distinct.traverseU(queryFor)
+      accepted <- queries.distinct.traverseU(prefetchQueue.offer)
+      dropped  =  accepted.count(!_)
+      _        <- Task.delay(if (dropped > 0) Log.warning(s"Image prefetch queue full, $dropped images not requested"))
+    } yield ()
+    runAsync(task)(logError)(lowPriorityEC)
   }
 
   /** Called when a program is removed to clear the cache */
@@ -132,11 +150,19 @@ object BackgroundImageLoader {
     */
   private[image] def requestImageDownload(pool: ExecutorService)(t: TargetImageRequest): Task[Unit] =
     for {
-      catalog  <- ObservationCatalogOverrides.catalogFor(t.key, t.obsWavelength)
-      image    <- loadImage(ImageSearchQuery(catalog, t.coordinates, catalog.imageSize, t.site), ImageCatalogPanel.resetListener)(pool)
+      query    <- queryFor(t)
+      image    <- loadImage(query, ImageCatalogPanel.resetListener)(pool)
       _        <- image.fold(taskUnit)(e => Task.delay(updateTpeImage(e)))
     } yield ()
 
+  /**
+    * The image query for a request, with the catalog selected for the observation
+    */
+  private def queryFor(t: TargetImageRequest): Task[ImageSearchQuery] =
+    ObservationCatalogOverrides.catalogFor(t.key, t.obsWavelength).map { catalog =>
+      ImageSearchQuery(catalog, t.coordinates, catalog.imageSize, t.site)
+    }
+
   /**
     * Load an image for the given query
     * It will check if the image is in the cache or in progress before requesting a download
@@ -149,7 +175,7 @@ object BackgroundImageLoader {
 
     def downloadImage(prefs: ImageCatalogPreferences): Task[ImageInFile] = {
       val task = for {
-        _ <- KnownImagesSets.start(query) *> listener.downloadStarts
+        _ <- listener.downloadStarts
         f <- TaskHelper.selectFirstToComplete(readImageToFile(prefs.cacheDir))(pool)
         _ <- StoredImagesCache.add(f) *> ImageCacheOnDisk.pruneCache(prefs.imageCacheSize) // Add to cache and prune. Cache pruning goes in a different thread
       } yield f
@@ -161,8 +187,10 @@ object BackgroundImageLoader {
       }
     }
 
+    // Marking the query as in progress is atomic, so it is only downloaded once even if
+    // requested by the UI and the prefetch queue at the same time
     def checkIfNeededAndDownload(prefs: ImageCatalogPreferences): Task[Option[ImageInFile]] =
-      KnownImagesSets.inProgress(query).ifM(Task.now(none), downloadImage(prefs).map(Some.apply))
+      KnownImagesSets.tryStart(query).ifM(downloadImage(prefs).map(Some.apply), Task.now(none))
 
     // Try to find the image on the cache, else download
     for {
@@ -188,11 +216,8 @@ object BackgroundImageLoader {
     } yield TargetImageRequest(key, coords, ObsWavelengthExtractor.extractObsWavelength(tpe), site)
 
   /**
-    * Utility methods to run the tasks on separate threads of the pool
+    * Utility method to run the task on a separate thread
     */
-  private def runAsync[A](tasks: List[Task[A]])(f: Throwable \/ List[A] => Unit)(pool: ExecutorService) =
-    Task.gatherUnordered(tasks.map(t => Task.fork(t)(pool))).unsafePerformAsync(f)
-
   private def runAsync[A](task: Task[A])(f: Throwable \/ A => Unit)(pool: ExecutorService) =
     Task.fork(task).unsafePerformAsync(f)
 
@@ -8,6 +8,7 @@ import java.beans.{PropertyChangeEvent, PropertyChangeListener}
 import java.time.Instant
 import java.util.concurrent.TimeoutException
 import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.logging.Logger
 import javax.swing.SwingUtilities
 import edu.gemini.ags.api.{AgsHash, AgsRegistrar, AgsStrategy}
@@ -156,7 +157,7 @@ object BagsState {
     // come back from the AGS lookup when in RunningEditedState, we store them
     // but move to PendingState to run again.
     private[ags] override val edit: StateTransition =
-      (RunningEditedState(k), ioUnit)
+      (RunningEditedState(k), BagsManager.abandonAction(k))
 
     // Successful AGS lookup while running (and not edited).  Apply the update
     // and move to IdleState.
@@ -338,6 +339,10 @@ object BagsManager {
   // This is our mutable state.  It is only read/written by the Swing thread.
   private var stateMap  = ==>>.empty[ProgKey, ObsKey ==>> BagsState]
 
+  // Flags polled by the running AGS lookups, set to abandon a lookup whose
+  // results will be ignored anyway.  Lookups remove their own entry when done.
+  private val lookups   = new ConcurrentHashMap[ObsKey, AtomicBoolean]()
+
   // Listeners for changes to the Bags Status.
   // Management must be done on the Swing EDT.
   private var listeners: List[BagsStateListener] = Nil
@@ -432,12 +437,14 @@ object BagsManager {
     //    so the search will happen again.
     // 3. If currently in the middle of a search, check the hash value. If it
     //    differs the eventual results will no longer apply so mark it as
-    //    RunningEdited.
+    //    RunningEdited and abandon the search.
     val obsMap  = (obsMap0/:obsList) { (m,o) =>
       val k = ObsKey(o)
       val s = m.lookup(k).fold(IdleState(k, None): BagsState) {
         case IdleState(_, Some(hash)) => IdleState(k, hashObs(o).filter(_ === hash))
-        case RunningState(_, c, h)    => if (hashObs(o).contains(h)) RunningState(k, c, h) else RunningEditedState(k)
+        case RunningState(_, c, h)    =>
+          if (hashObs(o).contains(h)) RunningState(k, c, h)
+          else { abandonAction(k).unsafePerformIO(); RunningEditedState(k) }
         case other                    => other
       }
       m + (k -> s)
@@ -467,6 +474,7 @@ object BagsManager {
   def unwatch(prog: ISPProgram): Unit = Swing.onEDT {
     prog.removeStructureChangeListener(StructureListener)
     prog.removeCompositeChangeListener(ChangeListener)
+    stateMap.lookup(ProgKey(prog)).foreach(_.keys.foreach(abandonAction(_).unsafePerformIO()))
     stateMap = stateMap - ProgKey(prog)
   }
 
@@ -528,7 +536,12 @@ object BagsManager {
   }
 
   private[ags] def triggerAgsAction(k: ObsKey, ctx: ObsContext, ags: AgsStrategy): IO[Unit] = IO {
-    ags.select(ctx, OT.getMagnitudeTable)(blockingExecutionContext).onComplete {
+    val abandoned = new AtomicBoolean(false)
+    Option(lookups.put(k, abandoned)).foreach(_.set(true))
+
+    ags.select(ctx, OT.getMagnitudeTable, () => abandoned.get)(blockingExecutionContext).andThen {
+      case _ => lookups.remove(k, abandoned)
+    }.onComplete {
       case Success(opt) =>
         Log.info(s"Successful BAGS lookup for observation=${k.oid.getOrElse("?")}; applying on ${Thread.currentThread}")
         BagsManager.success(k, opt)
@@ -544,6 +557,10 @@ object BagsManager {
     }
   }
 
+  private[ags] def abandonAction(k: ObsKey): IO[Unit] = IO {
+    Option(lookups.remove(k)).foreach(_.set(true))
+  }
+
   private[ags] def clearAction(k: ObsKey): IO[Unit] =
     applyAction(k, None, None)
 
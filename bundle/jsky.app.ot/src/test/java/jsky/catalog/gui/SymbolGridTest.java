@@ -0,0 +1,81 @@
+package jsky.catalog.gui;
+
+import org.junit.Test;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the items found with the symbol grid with those found by testing all items.
+ */
+public final class SymbolGridTest {
+
+    private final List<Integer> items = new ArrayList<>();
+    private final List<Rectangle2D> bounds = new ArrayList<>();
+
+    private SymbolGrid<Integer> grid(int n, long seed) {
+        final Random rnd = new Random(seed);
+        for (int i = 0; i < n; ++i) {
+            // mostly small symbols, a few large ones spanning many cells
+            final double size = (i % 50 == 0) ? 300. : 2. + rnd.nextDouble() * 10.;
+            items.add(i);
+            bounds.add(new Rectangle2D.Double(rnd.nextDouble() * 1000. - 100., rnd.nextDouble() * 800., size, size));
+        }
+        return new SymbolGrid<>(items, bounds);
+    }
+
+    private Set<Integer> expected(Rectangle2D r) {
+        final Set<Integer> res = new HashSet<>();
+        for (int i = 0; i < items.size(); ++i) {
+            final Rectangle2D b = bounds.get(i);
+            if (b.getMaxX() >= r.getMinX() && b.getMinX() <= r.getMaxX() && b.getMaxY() >= r.getMinY() && b.getMinY() <= r.getMaxY())
+                res.add(items.get(i));
+        }
+        return res;
+    }
+
+    private static Set<Integer> found(SymbolGrid<Integer> grid, Rectangle2D r) {
+        final Set<Integer> res = new HashSet<>();
+        grid.query(r, i -> assertTrue("reported twice: " + i, res.add(i)));
+        return res;
+    }
+
+    @Test
+    public void testRegions() {
+        final SymbolGrid<Integer> grid = grid(5000, 1);
+        final Random rnd = new Random(2);
+        for (int k = 0; k < 200; ++k) {
+            final Rectangle2D r = new Rectangle2D.Double(rnd.nextDouble() * 1400. - 300., rnd.nextDouble() * 1200. - 200.,
+                    rnd.nextDouble() * 400., rnd.nextDouble() * 400.);
+            assertEquals(expected(r), found(grid, r));
+        }
+
+        // everything
+        assertEquals(5000, found(grid, new Rectangle2D.Double(-1000., -1000., 5000., 5000.)).size());
+    }
+
+    @Test
+    public void testPoints() {
+        final SymbolGrid<Integer> grid = grid(2000, 3);
+        final Random rnd = new Random(4);
+        for (int k = 0; k < 500; ++k) {
+            final double x = rnd.nextDouble() * 1000., y = rnd.nextDouble() * 800.;
+            final Set<Integer> res = new HashSet<>();
+            grid.query(x, y, res::add);
+            assertEquals(expected(new Rectangle2D.Double(x, y, 0., 0.)), res);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final SymbolGrid<Integer> grid = new SymbolGrid<>(items, bounds);
+        assertEquals(0, grid.size());
+        assertTrue(found(grid, new Rectangle2D.Double(0., 0., 100., 100.)).isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+package jsky.image;
+
+import org.junit.Test;
+
+import javax.media.jai.RasterFactory;
+import javax.media.jai.TiledImage;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the statistics gathered in parallel over the tiles of an image with a
+ * straightforward computation over its pixels.
+ */
+public final class ImageStatisticsTest {
+
+    private static final double BLANK = -999.;
+
+    // A smooth background with a few bright pixels and blank pixels.
+    private static double value(int x, int y) {
+        if ((x * 13 + y * 7) % 101 == 0) return BLANK;
+        if ((x * 31 + y * 17) % 97 == 0) return 5000.;
+        return 100 + (x * 7919 + y * 104729) % 50 + x / 10;
+    }
+
+    private static TiledImage image(int dataType, int w, int h, int tileSize) {
+        final TiledImage im = new TiledImage(0, 0, w, h, 0, 0,
+                RasterFactory.createBandedSampleModel(dataType, tileSize, tileSize, 1), null);
+        for (int y = 0; y < h; ++y) for (int x = 0; x < w; ++x) im.setSample(x, y, 0, value(x, y));
+        return im;
+    }
+
+    private static List<Double> pixels(Rectangle r, int xPeriod, int yPeriod) {
+        final List<Double> res = new ArrayList<>();
+        for (int y = r.y; y < r.y + r.height; y += yPeriod)
+            for (int x = r.x; x < r.x + r.width; x += xPeriod)
+                if (value(x, y) != BLANK) res.add(value(x, y));
+        res.sort(null);
+        return res;
+    }
+
+    private static double interpolate(List<Double> sorted, double pos) {
+        final int i = (int) pos;
+        return sorted.get(i) + (sorted.get(i + 1) - sorted.get(i)) * (pos - i);
+    }
+
+    private void testType(int dataType) {
+        final Rectangle region = new Rectangle(10, 20, 300, 200);
+        final ImageStatistics s = ImageStatistics.compute(image(dataType, 400, 300, 64), region, BLANK, 4, 4);
+
+        final List<Double> all = pixels(region, 1, 1);
+        double sum = 0.;
+        for (double v : all) sum += v;
+        assertEquals(region.width * region.height, s.getCount() + s.getBlankCount());
+        assertEquals(all.size(), s.getCount());
+        assertEquals(all.get(0), s.getMin(), 0.);
+        assertEquals(all.get(all.size() - 1), s.getMax(), 0.);
+        assertEquals(sum / all.size(), s.getMean(), 1e-6);
+
+        final List<Double> sample = pixels(region, 4, 4);
+        assertEquals(sample.size(), s.getSampleCount());
+        assertEquals(sample.get(0), s.getPercentile(0.), 0.);
+        assertEquals(sample.get(sample.size() - 1), s.getPercentile(100.), 0.);
+
+        // percent cut levels leave the same number of values out on either side
+        final double[] cuts = s.getPercentCutLevels(90., s.getMin(), s.getMax());
+        final double cutoff = sample.size() * 0.05;
+        assertEquals(interpolate(sample, cutoff), cuts[0], 1e-9);
+        assertEquals(interpolate(sample, sample.size() - 1 - cutoff), cuts[1], 1e-9);
+
+        // the histogram counts every sampled value in range
+        final int[] bins = s.getHistogram(64, s.getMin(), s.getMax() + 1);
+        int n = 0;
+        for (int b : bins) n += b;
+        assertEquals(sample.size(), n);
+
+        // the bright pixels are filtered out, the mean is included
+        final double[] median = s.getMedianFilterCutLevels(s.getMean());
+        assertTrue(median[0] <= s.getMean() && s.getMean() <= median[1]);
+        assertTrue(median[1] < 5000.);
+
+        // zscale ignores the bright pixels as well
+        final double[] zscale = s.getZScaleCutLevels(0.25);
+        assertTrue(zscale[0] >= s.getMin() && zscale[0] < zscale[1] && zscale[1] < 5000.);
+    }
+
+    @Test public void testShort()  { testType(DataBuffer.TYPE_SHORT);  }
+    @Test public void testInt()    { testType(DataBuffer.TYPE_INT);    }
+    @Test public void testFloat()  { testType(DataBuffer.TYPE_FLOAT);  }
+    @Test public void testDouble() { testType(DataBuffer.TYPE_DOUBLE); }
+
+    @Test
+    public void testStatisticsDoNotDependOnTiling() {
+        final Rectangle region = new Rectangle(3, 5, 250, 180);
+        final ImageStatistics a = ImageStatistics.compute(image(DataBuffer.TYPE_FLOAT, 300, 200, 37), region, BLANK, 4, 4);
+        final ImageStatistics b = ImageStatistics.compute(image(DataBuffer.TYPE_FLOAT, 300, 200, 512), region, BLANK, 4, 4);
+        assertEquals(a.getSampleCount(), b.getSampleCount());
+        for (double p = 0.; p <= 100.; p += 12.5) assertEquals(a.getPercentile(p), b.getPercentile(p), 0.);
+        assertEquals(a.getMin(), b.getMin(), 0.);
+        assertEquals(a.getMax(), b.getMax(), 0.);
+        assertEquals(a.getCount(), b.getCount());
+
+        // the median filter runs straddle the small tiles
+        final double inf = Double.POSITIVE_INFINITY;
+        assertEquals(a.getMedianFilterCutLevels(inf)[0], b.getMedianFilterCutLevels(inf)[0], 0.);
+        assertEquals(a.getMedianFilterCutLevels(-inf)[1], b.getMedianFilterCutLevels(-inf)[1], 0.);
+    }
+
+    @Test
+    public void testAllBlank() {
+        final TiledImage im = new TiledImage(0, 0, 50, 50, 0, 0,
+                RasterFactory.createBandedSampleModel(DataBuffer.TYPE_FLOAT, 64, 64, 1), null);
+        for (int y = 0; y < 50; ++y) for (int x = 0; x < 50; ++x) im.setSample(x, y, 0, Float.NaN);
+        final ImageStatistics s = ImageStatistics.compute(im, new Rectangle(0, 0, 50, 50), Double.NaN, 4, 4);
+        assertEquals(0, s.getCount());
+        assertEquals(2500, s.getBlankCount());
+        assertEquals(0, s.getSampleCount());
+        assertArrayEquals(new double[]{1., 2.}, s.getPercentCutLevels(95., 1., 2.), 0.);
+    }
+}
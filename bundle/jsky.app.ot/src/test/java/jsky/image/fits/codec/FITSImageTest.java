@@ -0,0 +1,185 @@
+package jsky.image.fits.codec;
+
+import nom.tam.fits.Fits;
+import nom.tam.fits.Header;
+import nom.tam.fits.ImageData;
+import nom.tam.fits.ImageHDU;
+import nom.tam.util.BufferedFile;
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the pixels of memory mapped FITS images with those decoded from a
+ * stream, which are read onto the heap.
+ */
+public final class FITSImageTest {
+
+    private final List<File> files = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (File f : files) f.delete();
+    }
+
+    // Pixel values that differ by position and HDU, within the range of bytes.
+    private static double value(int x, int y, int hdu) {
+        return (x * 3 + y * 7 + hdu * 11) % 120;
+    }
+
+    private static Object data(int bitpix, int w, int h, int hdu) {
+        switch (bitpix) {
+            case 8: {
+                final byte[][] a = new byte[h][w];
+                for (int y = 0; y < h; ++y) for (int x = 0; x < w; ++x) a[y][x] = (byte) value(x, y, hdu);
+                return a;
+            }
+            case 16: {
+                final short[][] a = new short[h][w];
+                for (int y = 0; y < h; ++y) for (int x = 0; x < w; ++x) a[y][x] = (short) -value(x, y, hdu);
+                return a;
+            }
+            case 32: {
+                final int[][] a = new int[h][w];
+                for (int y = 0; y < h; ++y) for (int x = 0; x < w; ++x) a[y][x] = (int) value(x, y, hdu) * 100000;
+                return a;
+            }
+            case -32: {
+                final float[][] a = new float[h][w];
+                for (int y = 0; y < h; ++y) for (int x = 0; x < w; ++x) a[y][x] = (float) value(x, y, hdu) / 3;
+                return a;
+            }
+            case -64: {
+                final double[][] a = new double[h][w];
+                for (int y = 0; y < h; ++y) for (int x = 0; x < w; ++x) a[y][x] = value(x, y, hdu) / 7;
+                return a;
+            }
+            default:
+                throw new IllegalArgumentException("BITPIX " + bitpix);
+        }
+    }
+
+    private File write(int bitpix, int w, int h, int hdus) throws Exception {
+        final Fits fits = new Fits();
+        for (int i = 0; i < hdus; ++i) {
+            final ImageData d = new ImageData(data(bitpix, w, h, i));
+            fits.addHDU(new ImageHDU(new Header(d), d));
+        }
+        final File f = File.createTempFile("FITSImageTest", ".fits");
+        files.add(f);
+        final BufferedFile out = new BufferedFile(f.getPath(), "rw");
+        try {
+            fits.write(out);
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    private File gzip(File f) throws Exception {
+        final File gz = new File(f.getPath() + ".gz");
+        files.add(gz);
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+            Files.copy(f.toPath(), out);
+        }
+        return gz;
+    }
+
+    private static FITSImage streamed(File f, int page) throws Exception {
+        try (InputStream in = new FileInputStream(f)) {
+            final FITSImage im = new FITSImage(new Fits(in), new FITSDecodeParam(), page);
+            assertNull(im.getByteBuffer());
+            return im;
+        }
+    }
+
+    private static FITSImage mapped(String fileOrUrl, int page) throws Exception {
+        final FITSImage im = new FITSImage(fileOrUrl);
+        im.setHDU(page);
+        assertNotNull(im.getByteBuffer());
+        assertTrue(im.isYFlipped());
+        return im;
+    }
+
+    // The mapped image is flipped in Y while reading, and optionally subsampled.
+    private static void assertSamePixels(FITSImage expected, FITSImage mapped, int subsample) {
+        final Raster e = expected.getData();
+        final Raster m = mapped.getData();
+        assertEquals(expected.getWidth() / subsample, m.getWidth());
+        assertEquals(expected.getHeight() / subsample, m.getHeight());
+        for (int y = 0; y < m.getHeight(); ++y) {
+            final int ey = (m.getHeight() - 1 - y) * subsample;
+            for (int x = 0; x < m.getWidth(); ++x) {
+                assertEquals("(" + x + ", " + y + ")", e.getSampleDouble(x * subsample, ey, 0), m.getSampleDouble(x, y, 0), 0.0);
+            }
+        }
+    }
+
+    private void testBitpix(int bitpix) throws Exception {
+        // a single tile and several tiles
+        for (int[] size : new int[][]{{200, 150}, {512, 768}}) {
+            final File f = write(bitpix, size[0], size[1], 1);
+            assertSamePixels(streamed(f, 0), mapped(f.getPath(), 0), 1);
+        }
+    }
+
+    @Test public void testByte()   throws Exception { testBitpix(8);   }
+    @Test public void testShort()  throws Exception { testBitpix(16);  }
+    @Test public void testInt()    throws Exception { testBitpix(32);  }
+    @Test public void testFloat()  throws Exception { testBitpix(-32); }
+    @Test public void testDouble() throws Exception { testBitpix(-64); }
+
+    @Test
+    public void testPage() throws Exception {
+        final File f = write(16, 256, 256, 3);
+        for (int page = 0; page < 3; ++page) {
+            assertSamePixels(streamed(f, page), mapped(f.getPath(), page), 1);
+        }
+
+        // switching back and forth maps the data of each HDU
+        final FITSImage im = mapped(f.getPath(), 2);
+        im.setHDU(1);
+        assertSamePixels(streamed(f, 1), im, 1);
+    }
+
+    @Test
+    public void testSubsample() throws Exception {
+        final File f = write(-32, 512, 512, 1);
+        final FITSImage im = mapped(f.getPath(), 0);
+        assertTrue(im.setScale(0.5F));
+        assertEquals(2, im.getSubsample());
+        assertSamePixels(streamed(f, 0), im, 2);
+
+        assertTrue(im.setScale(1.0F));
+        assertSamePixels(streamed(f, 0), im, 1);
+    }
+
+    @Test
+    public void testFileUrl() throws Exception {
+        final File f = write(32, 200, 150, 1);
+        assertSamePixels(streamed(f, 0), mapped(f.toURI().toURL().toString(), 0), 1);
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        final File f  = write(16, 200, 150, 2);
+        final File gz = gzip(f);
+        assertSamePixels(streamed(f, 1), mapped(gz.getPath(), 1), 1);
+
+        // opening the file again uses the same uncompressed copy
+        assertEquals(UncompressedFITSCache.uncompressed(gz), UncompressedFITSCache.uncompressed(gz));
+        assertEquals(f, UncompressedFITSCache.uncompressed(f));
+    }
+}
@@ -0,0 +1,106 @@
+package jsky.catalog.gui
+
+import java.awt.{Graphics2D, Shape}
+import java.awt.geom.{AffineTransform, Ellipse2D, Rectangle2D}
+import java.awt.image.BufferedImage
+import java.util.function.Consumer
+
+import jsky.util.java2d.ShapeUtilities
+
+import scala.util.Random
+
+/**
+ * Compares painting catalog symbols the way the BasicTablePlotter used to, by
+ * testing every symbol against the paint region and transforming every symbol after
+ * each pan or zoom, with painting through the SymbolGrid index and transforming only
+ * the painted symbols. Reports the times against the number of table rows, for a
+ * viewport showing a small part of the plotted area.
+ * Run with `test:runMain jsky.catalog.gui.BasicTablePlotterBenchmark`.
+ */
+object BasicTablePlotterBenchmark {
+
+  private val RowCounts  = List(1000, 10000, 50000, 200000)
+  private val Area       = 20000.0
+  private val Viewport   = new Rectangle2D.Double(5000, 5000, 1280, 1024)
+  private val Iterations = 10
+
+  private def time[A](name: String)(a: => A): A = {
+    val t0 = System.nanoTime
+    val r  = a
+    println(f"    $name%-16s ${(System.nanoTime - t0) / 1000000.0 / Iterations}%9.3f ms")
+    r
+  }
+
+  private def shapes(n: Int): Array[Shape] = {
+    val rnd = new Random(n)
+    Array.fill[Shape](n) {
+      val r = 3 + rnd.nextDouble() * 10
+      new Ellipse2D.Double(rnd.nextDouble() * Area - r, rnd.nextDouble() * Area - r, r * 2, r * 2)
+    }
+  }
+
+  private def graphics(): Graphics2D = {
+    val g = new BufferedImage(Viewport.width.toInt, Viewport.height.toInt, BufferedImage.TYPE_INT_RGB).createGraphics()
+    g.translate(-Viewport.x, -Viewport.y)
+    g
+  }
+
+  def main(args: Array[String]): Unit = {
+    val pan = AffineTransform.getTranslateInstance(-3, 2)
+
+    RowCounts.foreach { n =>
+      println(s"$n rows")
+      val g = graphics()
+
+      println("   linear")
+      val linear = shapes(n)
+      time("paint") {
+        (1 to Iterations).foreach { _ =>
+          linear.foreach(s => if (s.intersects(Viewport)) g.draw(s))
+        }
+      }
+      time("pan + paint") {
+        (1 to Iterations).foreach { _ =>
+          var i = 0
+          while (i < linear.length) { linear(i) = ShapeUtilities.transformModify(linear(i), pan); i += 1 }
+          linear.foreach(s => if (s.intersects(Viewport)) g.draw(s))
+        }
+      }
+      time("hit") {
+        (1 to Iterations).foreach { _ =>
+          linear.exists(_.contains(Viewport.getCenterX, Viewport.getCenterY))
+        }
+      }
+
+      println("   indexed")
+      val plotted = shapes(n)
+      val bounds  = new java.util.ArrayList[Rectangle2D](n)
+      plotted.foreach(s => bounds.add(s.getBounds2D))
+      val grid    = time("index")((1 to Iterations).map(_ => new SymbolGrid[Shape](java.util.Arrays.asList(plotted: _*), bounds)).last)
+      val trans   = new AffineTransform()
+      def paint(): Unit = {
+        val inverse = trans.createInverse()
+        grid.query(inverse.createTransformedShape(Viewport).getBounds2D, new Consumer[Shape] {
+          def accept(s: Shape): Unit = {
+            val screen = ShapeUtilities.transformModify(ShapeUtilities.cloneShape(s), trans)
+            if (screen.intersects(Viewport)) g.draw(screen)
+          }
+        })
+      }
+      time("paint")((1 to Iterations).foreach(_ => paint()))
+      time("pan + paint") {
+        (1 to Iterations).foreach { _ =>
+          trans.preConcatenate(pan)
+          paint()
+        }
+      }
+      time("hit") {
+        (1 to Iterations).foreach { _ =>
+          val p = trans.createInverse().transform(new java.awt.geom.Point2D.Double(Viewport.getCenterX, Viewport.getCenterY), null)
+          grid.query(p.getX, p.getY, new Consumer[Shape] { def accept(s: Shape): Unit = s.contains(p) })
+        }
+      }
+      g.dispose()
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package jsky.image.gui
+
+import java.awt.Rectangle
+import java.awt.geom.Rectangle2D
+import java.io.File
+import javax.media.jai.{JAI, PlanarImage}
+
+import jsky.image.ImageProcessor
+import jsky.image.fits.codec.FITSImage
+import nom.tam.fits.{Fits, Header, ImageData, ImageHDU}
+import nom.tam.util.BufferedFile
+
+/**
+ * Compares painting a large FITS image tile by tile on the calling thread with the
+ * parallel rendering of the TileRenderer, for synthetic images of each BITPIX type.
+ * Reports the time to the first visible frame (the preview, for the tile renderer),
+ * until all visible tiles are ready, and until the whole image is rendered.
+ * Run with `test:runMain jsky.image.gui.TileRendererBenchmark [size]`.
+ */
+object TileRendererBenchmark {
+
+  private val BitPix     = List(8, 16, 32, -32, -64)
+  private val Window     = new Rectangle(0, 0, 1280, 1024)
+  private val Iterations = 3
+
+  // Smooth background with some stars, so that the cut levels are realistic.
+  private def value(x: Int, y: Int): Double = {
+    val bg   = 1000 + 200 * math.sin(x / 300.0) * math.cos(y / 200.0)
+    val star = if ((x * 31 + y * 17) % 997 == 0) 20000 else 0
+    bg + star + (x * 7919 + y * 104729) % 50
+  }
+
+  private def data(bitpix: Int, size: Int): AnyRef = {
+    def fill[A](a: Array[Array[A]])(f: Double => A): Array[Array[A]] = {
+      for (y <- 0 until size) {
+        val row = a(y)
+        var x   = 0
+        while (x < size) { row(x) = f(value(x, y)); x += 1 }
+      }
+      a
+    }
+    bitpix match {
+      case   8 => fill(Array.ofDim[Byte](size, size))(v => (v / 100).toByte)
+      case  16 => fill(Array.ofDim[Short](size, size))(_.toShort)
+      case  32 => fill(Array.ofDim[Int](size, size))(_.toInt)
+      case -32 => fill(Array.ofDim[Float](size, size))(_.toFloat)
+      case -64 => fill(Array.ofDim[Double](size, size))(identity)
+    }
+  }
+
+  private def write(bitpix: Int, size: Int): File = {
+    val f    = File.createTempFile(s"bitpix$bitpix-", ".fits")
+    f.deleteOnExit()
+    val d    = new ImageData(data(bitpix, size))
+    val fits = new Fits()
+    fits.addHDU(new ImageHDU(new Header(d), d))
+    val out  = new BufferedFile(f.getPath, "rw")
+    try fits.write(out) finally out.close()
+    f
+  }
+
+  private def time[A](name: String)(a: => A): A = {
+    val t0 = System.nanoTime
+    val r  = a
+    println(f"    $name%-16s ${(System.nanoTime - t0) / 1000000.0}%9.2f ms")
+    r
+  }
+
+  private def flush(): Unit =
+    JAI.getDefaultInstance.getTileCache.flush()
+
+  private def tileRange(im: PlanarImage, r: Rectangle): (Int, Int, Int, Int) =
+    (im.XToTileX(r.x), im.YToTileY(r.y), im.XToTileX(r.x + r.width - 1), im.YToTileY(r.y + r.height - 1))
+
+  private def serial(im: PlanarImage, r: Rectangle): Unit = {
+    val (x0, y0, x1, y1) = tileRange(im, r)
+    for (ty <- y0 to y1; tx <- x0 to x1) im.getTile(tx, ty)
+  }
+
+  private def parallel(renderer: TileRenderer, im: PlanarImage, r: Rectangle): Unit = {
+    val (x0, y0, x1, y1) = tileRange(im, r)
+    renderer.request(x0, y0, x1, y1).join()
+  }
+
+  def main(args: Array[String]): Unit = {
+    val size = args.headOption.map(_.toInt).getOrElse(4096)
+    BitPix.foreach { bitpix =>
+      println(s"BITPIX $bitpix, $size x $size")
+      val file = write(bitpix, size)
+
+      (1 to Iterations).foreach { i =>
+        println(s"  Iteration $i")
+        flush()
+        val fits   = new FITSImage(file.getPath)
+        val region = new Rectangle2D.Double(0, 0, Window.width, Window.height)
+        val ip     = time("open") {
+          val p = new ImageProcessor()
+          p.setSourceImage(PlanarImage.wrapRenderedImage(fits), region)
+          p.update()
+          p
+        }
+        val im     = ip.getDisplayImage
+        val all    = im.getBounds
+
+        println("   serial")
+        flush()
+        time("visible")(serial(im, Window))
+        time("full")(serial(im, all))
+
+        println("   parallel")
+        flush()
+        val renderer = new TileRenderer(Long.MaxValue, new TileRenderer.Listener {
+          def tilesReady(bounds: Rectangle): Unit = ()
+        })
+        renderer.setImage(im)
+        time("preview") {
+          val p = new ImageProcessor()
+          p.setSourceImage(fits.getPreviewImage(512), ip)
+          p.update()
+          renderer.setPreview(p.getDisplayImage).join()
+        }
+        time("visible")(parallel(renderer, im, Window))
+        time("full")(parallel(renderer, im, all))
+
+        fits.close()
+      }
+    }
+  }
+}
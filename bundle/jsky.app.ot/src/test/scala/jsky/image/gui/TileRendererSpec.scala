@@ -0,0 +1,62 @@
+package jsky.image.gui
+
+import java.awt.Rectangle
+import java.awt.image.DataBuffer
+import javax.media.jai.{PlanarImage, RasterFactory, TiledImage}
+
+import org.scalatest.{FlatSpec, Matchers}
+
+class TileRendererSpec extends FlatSpec with Matchers {
+
+  // A byte image of 4 x 4 tiles of 16 x 16 pixels, i.e. 256 bytes per tile
+  private val TileBytes = 256L
+
+  private def image(): PlanarImage = {
+    val sm = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_BYTE, 16, 16, 1)
+    val cm = PlanarImage.createColorModel(sm)
+    new TiledImage(0, 0, 64, 64, 0, 0, sm, cm)
+  }
+
+  private def renderer(maxBytes: Long): TileRenderer = {
+    val r = new TileRenderer(maxBytes, new TileRenderer.Listener {
+      override def tilesReady(bounds: Rectangle): Unit = ()
+    })
+    r.setImage(image())
+    r
+  }
+
+  "A TileRenderer" should "keep the visible tiles within the byte budget" in {
+    val r = renderer(4 * TileBytes)
+    r.request(0, 0, 1, 1).join()
+    r.getCachedBytes shouldBe 4 * TileBytes
+    (for (x <- 0 to 1; y <- 0 to 1) yield r.getTile(x, y)) should not contain (null)
+  }
+
+  it should "evict the least recently used tiles when the budget is exceeded" in {
+    val r = renderer(4 * TileBytes)
+    r.request(0, 0, 1, 1).join()
+    r.request(2, 2, 3, 3).join()
+    r.getCachedBytes shouldBe 4 * TileBytes
+    (for (x <- 0 to 1; y <- 0 to 1) yield r.getTile(x, y)).forall(_ == null) shouldBe true
+    (for (x <- 2 to 3; y <- 2 to 3) yield r.getTile(x, y)) should not contain (null)
+  }
+
+  it should "keep all visible tiles even if they exceed the budget" in {
+    val r = renderer(2 * TileBytes)
+    r.request(0, 0, 3, 3).join()
+    r.getCachedBytes shouldBe 16 * TileBytes
+  }
+
+  it should "discard the tiles when flushed or given a new image" in {
+    val r = renderer(4 * TileBytes)
+    r.request(0, 0, 1, 1).join()
+    r.flush()
+    r.getCachedBytes shouldBe 0L
+    r.getTile(0, 0) shouldBe null
+
+    r.request(0, 0, 1, 1).join()
+    r.setImage(image())
+    r.getCachedBytes shouldBe 0L
+    r.getTile(0, 0) shouldBe null
+  }
+}
@@ -0,0 +1,580 @@
+package jsky.coords;
+
+import java.awt.geom.Point2D;
+
+/**
+ * The conversions of WCSTransform.pix2wcs and wcs2pix for arrays of points. The
+ * projection constants, rotation terms and precession matrix are computed once, when
+ * the object is created, instead of for each point, and no objects are allocated per
+ * point, except for the rarely used plate solutions and FK4/FK5/galactic system
+ * changes, which are done with the single point routines.
+ * <p>
+ * The arithmetic for each point is the same as in worldpos.getPosition,
+ * worldpos.getPixels, wcscon.fk4prec and wcscon.fk5prec, in the same order, so that
+ * the results are identical to those of the single point methods. Keep them in sync
+ * when changing either one.
+ * <p>
+ * An instance holds a snapshot of the WCSTransform settings and is not changed by the
+ * conversions, so it may be used by several threads at once.
+ *
+ * @see WCSTransform#pix2wcs(double[], double[], double[], double[])
+ * @see WCSTransform#wcs2pix(double[], double[], double[], double[])
+ */
+final class WCSProjection {
+
+    // constants of the original C code (not exactly 2pi and pi/180)
+    private static final double cond2r = 1.745329252e-2;
+    private static final double twopi = 6.28318530717959;
+    private static final double deps = 1.0e-5;
+
+    private final WCSTransform wcs;
+
+    private final int itype;
+    private final double xref, yref, xrefpix, yrefpix, xinc, yinc;
+    private final double rot, cosr, sinr;
+    private final int rotmat, coorflip;
+    private final double cd11, cd12, cd21, cd22;
+    private final double dc11, dc12, dc21, dc22;
+
+    // reference point in radians and its trig terms, for the non-linear projections
+    private final double ra0, dec0, cos0, sin0;
+
+    // constants of the MER and AIT projections
+    private final double geo1, geo2, geo3;
+
+    // precession matrices from the image equinox to the standard one and back, or null
+    private final double[][] precToStd, precFromStd;
+
+    WCSProjection(WCSTransform wcs) {
+        this.wcs = wcs;
+        itype = wcs.pcode;
+        xref = wcs.xref;
+        yref = wcs.yref;
+        xrefpix = wcs.xrefpix;
+        yrefpix = wcs.yrefpix;
+        xinc = wcs.xinc;
+        yinc = wcs.yinc;
+        rot = WCSTransform.degrad(wcs.rot);
+        cosr = Math.cos(rot);
+        sinr = Math.sin(rot);
+        rotmat = wcs.rotmat;
+        coorflip = wcs.coorflip;
+        cd11 = wcs.cd11;
+        cd12 = wcs.cd12;
+        cd21 = wcs.cd21;
+        cd22 = wcs.cd22;
+        dc11 = wcs.dc11;
+        dc12 = wcs.dc12;
+        dc21 = wcs.dc21;
+        dc22 = wcs.dc22;
+
+        if (coorflip > 0) {
+            dec0 = WCSTransform.degrad(xref);
+            ra0 = WCSTransform.degrad(yref);
+        } else {
+            ra0 = WCSTransform.degrad(xref);
+            dec0 = WCSTransform.degrad(yref);
+        }
+        cos0 = Math.cos(dec0);
+        sin0 = Math.sin(dec0);
+
+        double g1 = 0.0, g2 = 0.0, g3 = 0.0, dt, dx, dy;
+        if (itype == 6) {
+            // -MER
+            dt = yinc * cosr + xinc * sinr;
+            if (dt == 0.0) dt = 1.0;
+            dy = WCSTransform.degrad(yref / 2.0 + 45.0);
+            dx = dy + dt / 2.0 * cond2r;
+            dy = Math.log(Math.tan(dy));
+            dx = Math.log(Math.tan(dx));
+            g2 = WCSTransform.degrad(dt) / (dx - dy);
+            g3 = g2 * dy;
+            g1 = Math.cos(WCSTransform.degrad(yref));
+            if (g1 <= 0.0) g1 = 1.0;
+        } else if (itype == 7) {
+            // -AIT
+            dt = yinc * cosr + xinc * sinr;
+            if (dt == 0.0) dt = 1.0;
+            dt = WCSTransform.degrad(dt);
+            dy = WCSTransform.degrad(yref);
+            dx = Math.sin(dy + dt) / Math.sqrt((1.0 + Math.cos(dy + dt)) / 2.0) -
+                    Math.sin(dy) / Math.sqrt((1.0 + Math.cos(dy)) / 2.0);
+            if (dx == 0.0) dx = 1.0;
+            g2 = dt / dx;
+            dt = xinc * cosr - yinc * sinr;
+            if (dt == 0.0) dt = 1.0;
+            dt = WCSTransform.degrad(dt);
+            dx = 2.0 * Math.cos(dy) * Math.sin(dt / 2.0);
+            if (dx == 0.0) dx = 1.0;
+            g1 = dt * Math.sqrt((1.0 + Math.cos(dy) * Math.cos(dt / 2.0)) / 2.0) / dx;
+            g3 = g2 * Math.sin(dy) / Math.sqrt((1.0 + Math.cos(dy)) / 2.0);
+        }
+        geo1 = g1;
+        geo2 = g2;
+        geo3 = g3;
+
+        if (wcs.radecsys.startsWith("FK4") && wcs.equinox != 1950.0) {
+            precToStd = wcscon.mprecfk4(wcs.equinox, 1950.0);
+            precFromStd = wcscon.mprecfk4(1950.0, wcs.equinox);
+        } else if (wcs.radecsys.startsWith("FK5") && wcs.equinox != 2000.0) {
+            precToStd = wcscon.mprecfk5(wcs.equinox, 2000.0);
+            precFromStd = wcscon.mprecfk5(2000.0, wcs.equinox);
+        } else {
+            precToStd = precFromStd = null;
+        }
+    }
+
+
+    /**
+     * Convert the pixel coordinates in the given range of the input arrays to world
+     * coordinates, as WCSTransform.pix2wcs does, and store them in the output arrays,
+     * which may be the input arrays. Points that can't be converted are set to NaN.
+     *
+     * @return the number of points converted
+     */
+    int pix2wcs(double[] xpix, double[] ypix, double[] xpos, double[] ypos, int from, int to) {
+        int n = 0;
+        double[] p = new double[2];
+        for (int i = from; i < to; i++) {
+            boolean ok;
+            if (wcs.plate_fit > 0) {
+                Point2D.Double r = platepos.getPosition(xpix[i], ypix[i], wcs);
+                ok = r != null;
+                if (ok) {
+                    p[0] = r.x;
+                    p[1] = r.y;
+                }
+            } else {
+                ok = worldpos(xpix[i], ypix[i], p);
+            }
+
+            if (ok && itype > 0) {
+                if (precToStd != null)
+                    precess(precToStd, p);
+                if (wcs.changesys != 0)
+                    changesys(p);
+            }
+
+            if (ok) {
+                xpos[i] = p[0];
+                ypos[i] = p[1];
+                n++;
+            } else {
+                xpos[i] = ypos[i] = Double.NaN;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Convert the world coordinates in the given range of the input arrays to pixel
+     * coordinates, as WCSTransform.wcs2pix does, and store them in the output arrays,
+     * which may be the input arrays. Points that can't be converted are set to NaN.
+     *
+     * @return the number of points converted
+     */
+    int wcs2pix(double[] xpos, double[] ypos, double[] xpix, double[] ypix, int from, int to) {
+        int n = 0;
+        double[] p = new double[2];
+        for (int i = from; i < to; i++) {
+            p[0] = xpos[i];
+            p[1] = ypos[i];
+
+            // Convert coordinates to same system as image
+            if (wcs.changesys == 1 || wcs.changesys == 2) {
+                Point2D.Double r = new Point2D.Double(p[0], p[1]);
+                r = (wcs.changesys == 1) ? wcscon.fk524e(r, wcs.epoch) : wcscon.fk425e(r, wcs.epoch);
+                p[0] = r.x;
+                p[1] = r.y;
+            }
+
+            // Convert coordinates from FK4 or FK5 to equinox used
+            if (precFromStd != null)
+                precess(precFromStd, p);
+
+            boolean ok;
+            if (wcs.plate_fit > 0) {
+                Point2D.Double r = platepos.getPixels(p[0], p[1], wcs);
+                ok = r != null;
+                if (ok) {
+                    p[0] = r.x;
+                    p[1] = r.y;
+                }
+            } else {
+                ok = worldpix(p[0], p[1], p);
+            }
+
+            if (ok) {
+                xpix[i] = p[0];
+                ypix[i] = p[1];
+                n++;
+            } else {
+                xpix[i] = ypix[i] = Double.NaN;
+            }
+        }
+        return n;
+    }
+
+
+    // Convert the output of the projection to the output coordinate system.
+    private void changesys(double[] p) {
+        Point2D.Double r = new Point2D.Double(p[0], p[1]);
+        if (wcs.changesys == 1)
+            r = wcscon.fk425e(r, wcs.epoch);
+        else if (wcs.changesys == 2)
+            r = wcscon.fk524e(r, wcs.epoch);
+        else if (wcs.changesys == 3)
+            r = wcscon.fk42gal(r);
+        else if (wcs.changesys == 4)
+            r = wcscon.fk52gal(r);
+        p[0] = r.x;
+        p[1] = r.y;
+    }
+
+    // Precess the position in degrees with the given matrix, as in wcscon.fk4prec/fk5prec.
+    private static void precess(double[][] pm, double[] p) {
+        double rra = WCSTransform.degrad(p[0]);
+        double rdec = WCSTransform.degrad(p[1]);
+
+        // slaDcs2c
+        double cosb = Math.cos(rdec);
+        double v0 = Math.cos(rra) * cosb;
+        double v1 = Math.sin(rra) * cosb;
+        double v2 = Math.sin(rdec);
+
+        // slaDmxv
+        double w0 = 0.0, w1 = 0.0, w2 = 0.0;
+        w0 += pm[0][0] * v0;
+        w0 += pm[0][1] * v1;
+        w0 += pm[0][2] * v2;
+        w1 += pm[1][0] * v0;
+        w1 += pm[1][1] * v1;
+        w1 += pm[1][2] * v2;
+        w2 += pm[2][0] * v0;
+        w2 += pm[2][1] * v1;
+        w2 += pm[2][2] * v2;
+
+        // slaDcc2s
+        double r = Math.sqrt(w0 * w0 + w1 * w1);
+        rra = (r != 0.0) ? Math.atan2(w1, w0) : 0.0;
+        rdec = (w2 != 0.0) ? Math.atan2(w2, r) : 0.0;
+
+        rra = slasubs.slaDranrm(rra);
+
+        p[0] = WCSTransform.raddeg(rra);
+        p[1] = WCSTransform.raddeg(rdec);
+    }
+
+    // worldpos.getPosition, storing the result in p and returning false where it returns null
+    private boolean worldpos(double xpix, double ypix, double[] p) {
+        double dx, dy, dz, tx;
+        double sins, coss, dect = 0.0, rat = 0.0, dt, l, m, mg, da, dd;
+        double decout, raout;
+
+        /* Offset from ref pixel */
+        dx = xpix - xrefpix;
+        dy = ypix - yrefpix;
+
+        /* Scale and rotate using CD matrix */
+        if (rotmat > 0) {
+            tx = dx * cd11 + dy * cd12;
+            dy = dx * cd21 + dy * cd22;
+            dx = tx;
+        } else {
+            /* Check axis increments - bail out if either 0 */
+            if ((xinc == 0.0) || (yinc == 0.0)) {
+                return false;
+            }
+
+            /* Scale using CDELT */
+            dx = dx * xinc;
+            dy = dy * yinc;
+
+            /* Take out rotation from CROTA */
+            if (rot != 0.0) {
+                tx = dx * cosr - dy * sinr;
+                dy = dx * sinr + dy * cosr;
+                dx = tx;
+            }
+        }
+
+        /* Default, linear result for error or pixel return  */
+        if (itype < 0) {
+            p[0] = xref + dx;
+            p[1] = yref + dy;
+            return true;
+        }
+
+        if (coorflip > 0) {
+            tx = dx;
+            dx = dy;
+            dy = tx;
+        }
+        l = WCSTransform.degrad(dx);
+        m = WCSTransform.degrad(dy);
+        sins = l * l + m * m;
+
+        /* process by case  */
+        switch (itype) {
+            case 0:   /* linear */
+                rat = ra0 + l;
+                dect = dec0 + m;
+                break;
+
+            case 1:   /* -SIN sin*/
+                coss = Math.sqrt(1.0 - sins);
+                dt = sin0 * coss + cos0 * m;
+                if ((dt > 1.0) || (dt < -1.0)) return false;
+                dect = Math.asin(dt);
+                rat = cos0 * coss - sin0 * m;
+                if ((rat == 0.0) && (l == 0.0)) return false;
+                rat = Math.atan2(l, rat) + ra0;
+                break;
+
+            case 2:   /* -TAN tan */
+                dect = cos0 - m * sin0;
+                if (dect == 0.0) return false;
+                rat = ra0 + Math.atan2(l, dect);
+                dect = Math.atan(Math.cos(rat - ra0) * (m * cos0 + sin0) / dect);
+                break;
+
+            case 3:   /* -ARC Arc*/
+                if (sins >= twopi * twopi / 4.0) return false;
+                sins = Math.sqrt(sins);
+                coss = Math.cos(sins);
+                if (sins != 0.0)
+                    sins = Math.sin(sins) / sins;
+                else
+                    sins = 1.0;
+                dt = m * cos0 * sins + sin0 * coss;
+                if ((dt > 1.0) || (dt < -1.0)) return false;
+                dect = Math.asin(dt);
+                da = coss - dt * sin0;
+                dt = l * sins * cos0;
+                if ((da == 0.0) && (dt == 0.0)) return false;
+                rat = ra0 + Math.atan2(dt, da);
+                break;
+
+            case 4:   /* -NCP North celestial pole*/
+                dect = cos0 - m * sin0;
+                if (dect == 0.0) return false;
+                rat = ra0 + Math.atan2(l, dect);
+                dt = Math.cos(rat - ra0);
+                if (dt == 0.0) return false;
+                dect = dect / dt;
+                if ((dect > 1.0) || (dect < -1.0)) return false;
+                dect = Math.acos(dect);
+                if (dec0 < 0.0) dect = -dect;
+                break;
+
+            case 5:   /* -GLS global sinusoid */
+                dect = dec0 + m;
+                if (Math.abs(dect) > twopi / 4.0) return false;
+                coss = Math.cos(dect);
+                if (Math.abs(l) > twopi * coss / 2.0) return false;
+                rat = ra0;
+                if (coss > deps) rat = rat + l / coss;
+                break;
+
+            case 6:   /* -MER mercator*/
+                rat = l / geo1 + ra0;
+                if (Math.abs(rat - ra0) > twopi) return false;
+                dt = 0.0;
+                if (geo2 != 0.0) dt = (m + geo3) / geo2;
+                dt = Math.exp(dt);
+                dect = 2.0 * Math.atan(dt) - twopi / 4.0;
+                break;
+
+            case 7:   /* -AIT Aitoff*/
+                rat = ra0;
+                dect = dec0;
+                if ((l == 0.0) && (m == 0.0)) break;
+                dz = 4.0 - l * l / (4.0 * geo1 * geo1) - ((m + geo3) / geo2) * ((m + geo3) / geo2);
+                if ((dz > 4.0) || (dz < 2.0)) return false;
+                dz = 0.5 * Math.sqrt(dz);
+                dd = (m + geo3) * dz / geo2;
+                if (Math.abs(dd) > 1.0) return false;
+                dd = Math.asin(dd);
+                if (Math.abs(Math.cos(dd)) < deps) return false;
+                da = l * dz / (2.0 * geo1 * Math.cos(dd));
+                if (Math.abs(da) > 1.0) return false;
+                da = Math.asin(da);
+                rat = ra0 + 2.0 * da;
+                dect = dd;
+                break;
+
+            case 8:   /* -STG Sterographic*/
+                dz = (4.0 - sins) / (4.0 + sins);
+                if (Math.abs(dz) > 1.0) return false;
+                dect = dz * sin0 + m * cos0 * (1.0 + dz) / 2.0;
+                if (Math.abs(dect) > 1.0) return false;
+                dect = Math.asin(dect);
+                rat = Math.cos(dect);
+                if (Math.abs(rat) < deps) return false;
+                rat = l * (1.0 + dz) / (2.0 * rat);
+                if (Math.abs(rat) > 1.0) return false;
+                rat = Math.asin(rat);
+                mg = 1.0 + Math.sin(dect) * sin0 + Math.cos(dect) * cos0 * Math.cos(rat);
+                if (Math.abs(mg) < deps) return false;
+                mg = 2.0 * (Math.sin(dect) * cos0 - Math.cos(dect) * sin0 * Math.cos(rat)) / mg;
+                if (Math.abs(mg - m) > deps) rat = twopi / 2.0 - rat;
+                rat = ra0 + rat;
+                break;
+        }
+
+        /*  return ra in range  */
+        raout = rat;
+        decout = dect;
+        if (raout - ra0 > twopi / 2.0) raout = raout - twopi;
+        if (raout - ra0 < -twopi / 2.0) raout = raout + twopi;
+        if (raout < 0.0) raout += twopi; /* added by DCW 10/12/94 */
+
+        /*  correct units back to degrees  */
+        p[0] = WCSTransform.raddeg(raout);
+        p[1] = WCSTransform.raddeg(decout);
+        return true;
+    }
+
+    // worldpos.getPixels, storing the result in p and returning false where it returns null
+    private boolean worldpix(double xpos, double ypos, double[] p) {
+        double dx, dy, ra = 0.0, dec = 0.0, coss = 0.0, sins = 0.0, dt, da, dd, sint = 0.0, cosda = 0.0;
+        double l = 0.0, m = 0.0, tx;
+
+        /* Nonlinear position */
+        if (itype > 0 && itype < 9) {
+            if (coorflip > 0) {
+                dt = xpos - yref;
+            } else {
+                dt = xpos - xref;
+            }
+
+            /* 0h wrap-around tests added by D.Wells 10/12/94: */
+            if (dt > 180.0) xpos -= 360.0;
+            if (dt < -180.0) xpos += 360.0;
+
+            ra = WCSTransform.degrad(xpos);
+            dec = WCSTransform.degrad(ypos);
+
+            /* Compute direction cosine */
+            coss = Math.cos(dec);
+            sins = Math.sin(dec);
+            cosda = Math.cos(ra - ra0);
+            l = Math.sin(ra - ra0) * coss;
+            sint = sins * sin0 + coss * cos0 * cosda;
+        }
+
+        /* Process by case  */
+        switch (itype) {
+            case 1:   /* -SIN sin*/
+                if (sint < 0.0) return false;
+                m = sins * cos0 - coss * sin0 * cosda;
+                break;
+
+            case 2:   /* -TAN tan */
+                if (sint <= 0.0) return false;
+                m = sins * sin0 + coss * cos0 * cosda;
+                l = l / m;
+                m = (sins * cos0 - coss * sin0 * cosda) / m;
+                break;
+
+            case 3:   /* -ARC Arc*/
+                m = sins * sin0 + coss * cos0 * cosda;
+                if (m < -1.0) m = -1.0;
+                if (m > 1.0) m = 1.0;
+                m = Math.acos(m);
+                if (m != 0)
+                    m = m / Math.sin(m);
+                else
+                    m = 1.0;
+                l = l * m;
+                m = (sins * cos0 - coss * sin0 * cosda) * m;
+                break;
+
+            case 4:   /* -NCP North celestial pole*/
+                if (dec0 == 0.0)
+                    return false;  /* can't stand the equator */
+                else
+                    m = (cos0 - coss * cosda) / sin0;
+                break;
+
+            case 5:   /* -GLS global sinusoid */
+                dt = ra - ra0;
+                if (Math.abs(dec) > twopi / 4.0) return false;
+                if (Math.abs(dec0) > twopi / 4.0) return false;
+                m = dec - dec0;
+                l = dt * coss;
+                break;
+
+            case 6:   /* -MER mercator*/
+                dt = ra - ra0;
+                l = geo1 * dt;
+                dt = dec / 2.0 + twopi / 8.0;
+                dt = Math.tan(dt);
+                if (dt < deps) return false;
+                m = geo2 * Math.log(dt) - geo3;
+                break;
+
+            case 7:   /* -AIT Aitoff*/
+                da = (ra - ra0) / 2.0;
+                if (Math.abs(da) > twopi / 4.0) return false;
+                dt = Math.sqrt((1.0 + Math.cos(dec) * Math.cos(da)) / 2.0);
+                if (Math.abs(dt) < deps) return false;
+                l = 2.0 * geo1 * Math.cos(dec) * Math.sin(da) / dt;
+                m = geo2 * Math.sin(dec) / dt - geo3;
+                break;
+
+            case 8:   /* -STG Sterographic*/
+                da = ra - ra0;
+                if (Math.abs(dec) > twopi / 4.0) return false;
+                dd = 1.0 + sins * sin0 + coss * cos0 * Math.cos(da);
+                if (Math.abs(dd) < deps) return false;
+                dd = 2.0 / dd;
+                l = l * dd;
+                m = dd * (sins * cos0 - coss * sin0 * Math.cos(da));
+                break;
+        }
+
+        /* Back to degrees  */
+        if (itype > 0 && itype < 9) {
+            dx = WCSTransform.raddeg(l);
+            dy = WCSTransform.raddeg(m);
+        }
+
+        /* For linear or pixel projection */
+        else {
+            dx = xpos - xref;
+            dy = ypos - yref;
+        }
+
+        if (coorflip > 0) {
+            tx = dx;
+            dx = dy;
+            dy = tx;
+        }
+
+        /* Scale and rotate using CD matrix */
+        if (rotmat > 0) {
+            tx = dx * dc11 + dy * dc12;
+            dy = dx * dc21 + dy * dc22;
+            dx = tx;
+        } else {
+            /* Correct for rotation */
+            if (rot != 0.0) {
+                tx = dx * cosr + dy * sinr;
+                dy = dy * cosr - dx * sinr;
+                dx = tx;
+            }
+
+            /* Scale using CDELT */
+            if (xinc != 0.)
+                dx = dx / xinc;
+            if (yinc != 0.)
+                dy = dy / yinc;
+        }
+
+        /* Convert to pixels  */
+        p[0] = dx + xrefpix;
+        p[1] = dy + yrefpix;
+        return true;
+    }
+}
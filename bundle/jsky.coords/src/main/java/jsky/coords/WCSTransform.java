@@ -42,6 +42,8 @@
 package jsky.coords;
 
 import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 
 /**
@@ -129,6 +131,12 @@ public class WCSTransform implements WorldCoordinateConverter {
     // allan: added for quick access to degrees per pixel
     Point2D.Double degPerPixel;
 
+    /** Arrays with more points than this are converted in parallel by the batch methods */
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    // number of points converted by each task when converting in parallel
+    private static final int PARALLEL_CHUNK = 1 << 14;
+
     /** Message if header does not contain a valid World Coordinate System */
     public static final String NO_WCS_IN_HEADER_MESSAGE // 00/23/06 Added for OPR 41378, jDoggett
             = "The header does not contain a valid world coordinate system.";
@@ -1080,6 +1088,97 @@ public class WCSTransform implements WorldCoordinateConverter {
 
         return pixels;
     }
+
+    /**
+     * Converts arrays of pixel coordinates to World Coordinates. The result for each
+     * point is the same as that of pix2wcs(xpix[i], ypix[i]), but the projection
+     * constants are only computed once and no objects are allocated per point. Large
+     * arrays are converted in parallel.
+     * Unlike pix2wcs, this method does not change the state of this object.
+     *
+     * @param xpix the pixel X coordinates
+     * @param ypix the pixel Y coordinates
+     * @param xpos set to the world X coordinates (RA) in degrees, may be xpix
+     * @param ypos set to the world Y coordinates (Dec) in degrees, may be ypix
+     * @return the number of points converted: points that can't be converted, or all
+     *         points if the WCSTransform is not valid, are set to NaN
+     */
+    public int pix2wcs(double[] xpix, double[] ypix, double[] xpos, double[] ypos) {
+        int n = checkLengths(xpix, ypix, xpos, ypos);
+        if (!isValid()) {
+            Arrays.fill(xpos, 0, n, Double.NaN);
+            Arrays.fill(ypos, 0, n, Double.NaN);
+            return 0;
+        }
+
+        WCSProjection proj = new WCSProjection(this);
+        if (n <= PARALLEL_THRESHOLD)
+            return proj.pix2wcs(xpix, ypix, xpos, ypos, 0, n);
+        return IntStream.range(0, (n + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK).parallel()
+                .map(c -> proj.pix2wcs(xpix, ypix, xpos, ypos, c * PARALLEL_CHUNK, Math.min(n, (c + 1) * PARALLEL_CHUNK)))
+                .sum();
+    }
+
+    /**
+     * Converts arrays of World Coordinates to pixel coordinates. The result for each
+     * point is the same as that of wcs2pix(xpos[i], ypos[i]), but the projection
+     * constants are only computed once and no objects are allocated per point. Large
+     * arrays are converted in parallel.
+     * Unlike wcs2pix, this method does not change the state of this object.
+     *
+     * @param xpos the world X coordinates (RA) in degrees
+     * @param ypos the world Y coordinates (Dec) in degrees
+     * @param xpix set to the pixel X coordinates, may be xpos
+     * @param ypix set to the pixel Y coordinates, may be ypos
+     * @return the number of points converted: points that can't be converted, or all
+     *         points if the WCSTransform is not valid, are set to NaN
+     */
+    public int wcs2pix(double[] xpos, double[] ypos, double[] xpix, double[] ypix) {
+        int n = checkLengths(xpos, ypos, xpix, ypix);
+        if (!isValid()) {
+            Arrays.fill(xpix, 0, n, Double.NaN);
+            Arrays.fill(ypix, 0, n, Double.NaN);
+            return 0;
+        }
+
+        WCSProjection proj = new WCSProjection(this);
+        if (n <= PARALLEL_THRESHOLD)
+            return proj.wcs2pix(xpos, ypos, xpix, ypix, 0, n);
+        return IntStream.range(0, (n + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK).parallel()
+                .map(c -> proj.wcs2pix(xpos, ypos, xpix, ypix, c * PARALLEL_CHUNK, Math.min(n, (c + 1) * PARALLEL_CHUNK)))
+                .sum();
+    }
+
+    /**
+     * Convert the given image coordinates to world coordinates degrees in the equinox
+     * of the current image, in place. Points that are out of the WCS range are set to NaN.
+     *
+     * @return the number of points converted
+     * @see #pix2wcs(double[], double[], double[], double[])
+     */
+    public int imageToWorldCoords(double[] x, double[] y) {
+        return pix2wcs(x, y, x, y);
+    }
+
+    /**
+     * Convert the given world coordinates (degrees, in the equinox of the current image)
+     * to image coordinates, in place. Points that are out of range are set to NaN.
+     *
+     * @return the number of points converted
+     * @see #wcs2pix(double[], double[], double[], double[])
+     */
+    public int worldToImageCoords(double[] x, double[] y) {
+        return wcs2pix(x, y, x, y);
+    }
+
+    // Check that the arrays have the same length and return it
+    private static int checkLengths(double[] x, double[] y, double[] xout, double[] yout) {
+        int n = x.length;
+        if (y.length != n || xout.length != n || yout.length != n)
+            throw new IllegalArgumentException("Coordinate arrays have different lengths: "
+                    + n + ", " + y.length + ", " + xout.length + ", " + yout.length);
+        return n;
+    }
 }
 
 /* File libwcs/wcs.c
@@ -0,0 +1,156 @@
+package jsky.coords;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the array conversions of WCSTransform give exactly the same results as
+ * the single point conversions, for all projections and the various options.
+ */
+public final class WCSTransformBatchTest {
+
+    private static final String[] PROJECTIONS = {"LINEAR", "-SIN", "-TAN", "-ARC", "-NCP", "-GLS", "-MER", "-AIT", "-STG"};
+
+    private static WCSTransform wcs(String proj, double cra, double cdec, double rotate, int equinox) {
+        return new WCSTransform(cra, cdec, 1.5, 1.5, 256., 256., 512, 512, rotate, equinox, 0., proj);
+    }
+
+    private static Point2D.Double pix2wcs(WCSTransform wcs, double x, double y) {
+        try {
+            return wcs.pix2wcs(x, y);
+        } catch (NullPointerException e) {
+            return null; // precessing a point that is out of range
+        }
+    }
+
+    private static void assertSame(Point2D.Double expected, double x, double y) {
+        if (expected == null) {
+            assertTrue(Double.isNaN(x) && Double.isNaN(y));
+        } else {
+            assertEquals(Double.doubleToLongBits(expected.x), Double.doubleToLongBits(x));
+            assertEquals(Double.doubleToLongBits(expected.y), Double.doubleToLongBits(y));
+        }
+    }
+
+    // Compare both directions over a grid extending well beyond the image and return
+    // the number of pixel positions converted.
+    private static int check(WCSTransform wcs) {
+        final int n = 60 * 60;
+        final double[] xpix = new double[n], ypix = new double[n];
+        for (int i = 0; i < n; ++i) {
+            xpix[i] = -700. + (i % 60) * 33.7;
+            ypix[i] = -700. + (i / 60) * 31.3;
+        }
+        final double[] ra = new double[n], dec = new double[n];
+        final int converted = wcs.pix2wcs(xpix, ypix, ra, dec);
+
+        int expected = 0;
+        for (int i = 0; i < n; ++i) {
+            final Point2D.Double p = pix2wcs(wcs, xpix[i], ypix[i]);
+            if (p != null) ++expected;
+            assertSame(p, ra[i], dec[i]);
+        }
+        assertEquals(expected, converted);
+
+        // back again, in place, including the points that are out of range
+        final double[] x = ra.clone(), y = dec.clone();
+        for (int i = 0; i < n; ++i) {
+            if (Double.isNaN(x[i])) {
+                x[i] = (i * 7.3) % 360.;
+                y[i] = (i * 3.1) % 180. - 90.;
+            }
+        }
+        final double[] xin = x.clone(), yin = y.clone();
+        final int back = wcs.worldToImageCoords(x, y);
+        expected = 0;
+        for (int i = 0; i < n; ++i) {
+            final Point2D.Double p = wcs.wcs2pix(xin[i], yin[i]);
+            if (p != null) ++expected;
+            assertSame(p, x[i], y[i]);
+        }
+        assertEquals(expected, back);
+        return converted;
+    }
+
+    @Test
+    public void testProjections() {
+        for (String proj : PROJECTIONS) {
+            assertTrue(check(wcs(proj, 150.1, 2.2, 0., 2000)) > 0);
+            assertTrue(check(wcs(proj, 283.4, -67.9, 23.5, 2000)) > 0);
+            check(wcs(proj, 0., 0., 0., 2000)); // NCP fails everywhere on the equator
+        }
+    }
+
+    @Test
+    public void testPixelProjection() {
+        final WCSTransform wcs = wcs("-TAN", 10., 20., 5., 2000);
+        wcs.pcode = -1;
+        check(wcs);
+    }
+
+    @Test
+    public void testCDMatrix() {
+        for (String proj : PROJECTIONS) {
+            final WCSTransform wcs = wcs(proj, 45., 30., 0., 2000);
+            wcs.rotmat = 1;
+            wcs.cd11 = -4.1e-4;
+            wcs.cd12 = 0.3e-4;
+            wcs.cd21 = 0.2e-4;
+            wcs.cd22 = 4.2e-4;
+            final double det = wcs.cd11 * wcs.cd22 - wcs.cd12 * wcs.cd21;
+            wcs.dc11 = wcs.cd22 / det;
+            wcs.dc12 = -wcs.cd12 / det;
+            wcs.dc21 = -wcs.cd21 / det;
+            wcs.dc22 = wcs.cd11 / det;
+            check(wcs);
+        }
+    }
+
+    @Test
+    public void testCoordinateFlip() {
+        for (String proj : PROJECTIONS) {
+            final WCSTransform wcs = wcs(proj, 30., 60., 12., 2000);
+            wcs.coorflip = 1;
+            check(wcs);
+        }
+    }
+
+    @Test
+    public void testPrecession() {
+        for (String proj : PROJECTIONS) {
+            check(wcs(proj, 120., -35., 3., 1975));   // FK4
+            check(wcs(proj, 120., -35., 3., 2015));   // FK5
+        }
+    }
+
+    @Test
+    public void testChangeSystem() {
+        for (int changesys = 1; changesys <= 4; ++changesys) {
+            final WCSTransform wcs = wcs("-TAN", 200., 10., 0., changesys % 2 == 1 ? 1950 : 2000);
+            wcs.changesys = changesys;
+            check(wcs);
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        final WCSTransform wcs = wcs("-SIN", 80., -40., 17., 2015);
+        final int n = WCSTransform.PARALLEL_THRESHOLD * 3 + 123;
+        final double[] x = new double[n], y = new double[n];
+        for (int i = 0; i < n; ++i) {
+            x[i] = (i % 512) + 0.25;
+            y[i] = (i / 512) % 512 + 0.75;
+        }
+        final double[] ra = new double[n], dec = new double[n];
+        assertEquals(n, wcs.pix2wcs(x, y, ra, dec));
+        for (int i = 0; i < n; i += 97) assertSame(wcs.pix2wcs(x[i], y[i]), ra[i], dec[i]);
+        assertEquals(n, wcs.wcs2pix(ra, dec, ra, dec));
+        for (int i = 0; i < n; i += 97) {
+            assertEquals(x[i], ra[i], 1e-6);
+            assertEquals(y[i], dec[i], 1e-6);
+        }
+    }
+}
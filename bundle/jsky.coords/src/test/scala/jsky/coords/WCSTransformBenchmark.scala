@@ -0,0 +1,52 @@
+package jsky.coords
+
+/**
+ * Compares converting points one at a time with WCSTransform.pix2wcs/wcs2pix with the
+ * array versions, below and above the size where they convert in parallel. Reports
+ * the number of points converted per second for a few projections.
+ * Run with `test:runMain jsky.coords.WCSTransformBenchmark`.
+ */
+object WCSTransformBenchmark {
+
+  private val Projections = List("-TAN", "-SIN", "-AIT")
+  private val Sizes       = List(10000, WCSTransform.PARALLEL_THRESHOLD * 16)
+  private val Iterations  = 20
+
+  private def time(name: String, n: Int)(a: => Unit): Unit = {
+    (1 to 3).foreach(_ => a) // warm up
+    val t0 = System.nanoTime
+    (1 to Iterations).foreach(_ => a)
+    val s  = (System.nanoTime - t0) / 1e9 / Iterations
+    println(f"    $name%-16s ${n / s / 1e6}%9.2f Mpoints/s")
+  }
+
+  def main(args: Array[String]): Unit = {
+    Projections.foreach { proj =>
+      // an FK5 image in equinox 2015, so that the positions are precessed as well
+      val wcs = new WCSTransform(83.8, -5.4, 0.5, 0.5, 1024, 1024, 2048, 2048, 12.0, 2015, 0.0, proj)
+
+      Sizes.foreach { n =>
+        println(s"$proj, $n points")
+        val x   = Array.tabulate(n)(i => (i % 2048).toDouble + 0.5)
+        val y   = Array.tabulate(n)(i => ((i / 2048) % 2048).toDouble + 0.5)
+        val ra  = new Array[Double](n)
+        val dec = new Array[Double](n)
+        wcs.pix2wcs(x, y, ra, dec)
+
+        time("pix2wcs", n) {
+          var i = 0
+          while (i < n) { wcs.pix2wcs(x(i), y(i)); i += 1 }
+        }
+        time("pix2wcs array", n)(wcs.pix2wcs(x, y, ra, dec))
+
+        val px = new Array[Double](n)
+        val py = new Array[Double](n)
+        time("wcs2pix", n) {
+          var i = 0
+          while (i < n) { wcs.wcs2pix(ra(i), dec(i)); i += 1 }
+        }
+        time("wcs2pix array", n)(wcs.wcs2pix(ra, dec, px, py))
+      }
+    }
+  }
+}
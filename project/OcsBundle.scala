@@ -216,7 +216,7 @@ trait OcsBundle {
     project.in(file("bundle/edu.gemini.qpt.client")).dependsOn(
       bundle_edu_gemini_shared_skyobject,
       bundle_edu_gemini_pot,
-      bundle_edu_gemini_qpt_shared,
+      bundle_edu_gemini_qpt_shared           % "test->test;compile->compile",
       bundle_edu_gemini_shared_util,
       bundle_edu_gemini_spModel_core,
       bundle_edu_gemini_spModel_pio,
@@ -444,6 +444,7 @@ trait OcsBundle {
 
   lazy val bundle_edu_gemini_spdb_shell =
     project.in(file("bundle/edu.gemini.spdb.shell")).dependsOn(
+      bundle_edu_gemini_p2checker,
       bundle_edu_gemini_pot,
       bundle_edu_gemini_shared_util,
       bundle_edu_gemini_spModel_core,